@@ -0,0 +1,90 @@
+package swim.sattrack.agents;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import swim.sattrack.bench.TleDataset;
+import swim.sattrack.store.CatalogSnapshot;
+import swim.sattrack.store.SatelliteState;
+import swim.structure.Value;
+
+/**
+ * The plain work in SatelliteAgent.updateSatellite for one poll of one
+ * satellite, run through the agent's own SatelliteRecord: short info
+ * change detection, the track history append, the hand off to the
+ * aggregation channel and the put of the satellite's state to the
+ * catalog snapshot. saveState puts once per snapshot interval, here
+ * once per pass over the catalog, so the cost is spread over the
+ * updates of a pass. Lane sets need a running plane and are left out. Satellites are visited round robin so the per satellite state of
+ * catalogSize agents is in play.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class SatelliteUpdateBenchmark {
+
+  static final int DISTINCT_VECTORS = 1000;
+  static final int TRACK_HISTORY_SIZE = 32;
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int catalogSize;
+
+  private Value[][] vectors; // two polls per distinct vector, positions differ
+  private SatelliteRecord[] records;
+  private final AggregationChannel channel = new AggregationChannel();
+  private int next;
+  private long timestamp = 1600000000000L;
+
+  @Setup
+  public void setup() {
+    this.vectors = new Value[2][DISTINCT_VECTORS];
+    for (int i = 0; i < DISTINCT_VECTORS; i++) {
+      this.vectors[0][i] = TleDataset.vector(i + 1, 0);
+      this.vectors[1][i] = TleDataset.vector(i + 1, 1);
+    }
+    this.records = new SatelliteRecord[this.catalogSize];
+    for (int i = 0; i < this.catalogSize; i++) {
+      this.records[i] = new SatelliteRecord(TRACK_HISTORY_SIZE, 0L);
+      this.records[i].update(this.vectors[0][i % DISTINCT_VECTORS], this.timestamp, this.channel, timestamp -> { });
+      this.channel.pollUpdate();
+    }
+  }
+
+  @Benchmark
+  public void updateSatellite(Blackhole blackhole) {
+    final int satellite = this.next;
+    this.next = satellite + 1 == this.catalogSize ? 0 : satellite + 1;
+    this.timestamp += 1L;
+    final Value stateData = this.vectors[(int) (this.timestamp / this.catalogSize) & 1][satellite % DISTINCT_VECTORS];
+
+    final SatelliteRecord record = this.records[satellite];
+    blackhole.consume(record.update(stateData, this.timestamp, this.channel, blackhole::consume));
+    // drain straight away so the queue does not grow across iterations
+    final Value changed = this.channel.pollUpdate();
+    if (changed != null) {
+      blackhole.consume(changed);
+    } else {
+      blackhole.consume(this.channel.pollTouch());
+    }
+    if (this.next == 0) {
+      // a pass over the catalog is done, each satellite was saved once
+      for (SatelliteRecord saved : this.records) {
+        final SatelliteState state = saved.toState();
+        if (state != null) {
+          CatalogSnapshot.shared().put(state);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,95 @@
+package swim.sattrack.agents;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import swim.sattrack.bench.TleDataset;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * SatelliteShardAgent.updateSatellites for one satellite: the row
+ * lookup, short info change detection and track append in a
+ * SatelliteShardStore holding catalogSize satellites, to compare with
+ * SatelliteUpdateBenchmark. Setup prints the heap the populated store
+ * retains after a GC, the vectors it holds included.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ShardStoreBenchmark implements SatelliteShardStore.Listener {
+
+  static final int TRACK_HISTORY_SIZE = 16;
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int catalogSize;
+
+  private Value[] vectors;
+  private SatelliteShardStore store;
+  private int next;
+  private long timestamp = 1600000000000L;
+  private long changes;
+
+  @Setup
+  public void setup() {
+    final long heapBefore = usedHeap();
+    this.vectors = new Value[this.catalogSize];
+    this.store = new SatelliteShardStore(1024, TRACK_HISTORY_SIZE);
+    for (int i = 0; i < this.catalogSize; i++) {
+      this.vectors[i] = TleDataset.vector(i + 1, 0);
+      this.store.update(this.vectors[i], this.timestamp, this);
+    }
+    final long retained = usedHeap() - heapBefore;
+    System.out.println(String.format("[ShardStoreBenchmark] %d satellites retain %d bytes, %d per satellite",
+        this.catalogSize, retained, retained / this.catalogSize));
+  }
+
+  @Benchmark
+  public int updateSatellite() {
+    final int satellite = this.next;
+    this.next = satellite + 1 == this.catalogSize ? 0 : satellite + 1;
+    this.timestamp += 1L;
+    return this.store.update(this.vectors[satellite], this.timestamp, this);
+  }
+
+  @Override
+  public void didChangeShortInfo(Record changed) {
+    this.changes += 1L;
+  }
+
+  @Override
+  public void didUpdateUnchanged(int row) {
+    this.changes += 1L;
+  }
+
+  @Override
+  public void didChangeElements(int row, Value tle) {
+    this.changes += 1L;
+  }
+
+  @Override
+  public void didTrack(int row) {
+  }
+
+  @Override
+  public void didDecay(int row) {
+  }
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+}
@@ -0,0 +1,71 @@
+package swim.sattrack.agents.connectors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import swim.sattrack.bench.TleDataset;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * TleMessagesAgent.processMessages: one poll's vector lists split into
+ * an addressed update per satellite. The sink stands in for command(),
+ * so this measures addressing and iteration, not message delivery.
+ * With shards > 0 the vectors are grouped per shard as in sharded mode.
+ * The same poll is sent every time, so with dedup on every vector after
+ * the first poll is a duplicate cut down to its position.
+ * Time is per poll of catalogSize satellites.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class FanOutBenchmark {
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int catalogSize;
+
+  @Param({"0", "64"})
+  public int shards;
+
+  @Param({"off", "position"})
+  public String dedup;
+
+  private List<Value> records;
+  private SatelliteFanOut fanOut;
+
+  @Setup
+  public void setup() {
+    this.fanOut = new SatelliteFanOut(this.shards);
+    this.fanOut.setDedup("off".equals(this.dedup) ? SatelliteFanOut.Dedup.OFF : SatelliteFanOut.Dedup.POSITION);
+    this.records = new ArrayList<>();
+    Record vectorList = null;
+    for (int i = 0; i < this.catalogSize; i++) {
+      if (i % TleDataset.VECTORS_PER_RECORD == 0) {
+        vectorList = Record.create(TleDataset.VECTORS_PER_RECORD);
+        this.records.add(vectorList);
+      }
+      vectorList.item(TleDataset.vector(i + 1, 0));
+    }
+  }
+
+  @Benchmark
+  public int fanOut(Blackhole blackhole) {
+    return this.fanOut.fanOut(this.records, (nodeUri, laneUri, value) -> {
+      blackhole.consume(nodeUri);
+      blackhole.consume(value);
+    });
+  }
+
+}
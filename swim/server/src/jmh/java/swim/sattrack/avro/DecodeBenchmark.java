@@ -0,0 +1,49 @@
+package swim.sattrack.avro;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.avro.generic.GenericRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import swim.sattrack.bench.TleDataset;
+
+/**
+ * Kafka payload decoding as done by KafkaConsumerWorker.decodeRecord:
+ * avro binary to GenericRecord against the local schema, then straight
+ * to a Swim Value. 1000 TLE vectors, 50 to a payload, reported per vector.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DecodeBenchmark {
+
+  static final int VECTOR_COUNT = 1000;
+
+  private List<byte[]> payloads;
+  private AvroSchemaDecoder decoder;
+
+  @Setup
+  public void setup() throws IOException {
+    this.payloads = TleDataset.payloads(VECTOR_COUNT);
+    this.decoder = new AvroSchemaDecoder(TleDataset.listSchema(), true);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(VECTOR_COUNT)
+  public void decodeRecords(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < this.payloads.size(); i++) {
+      final GenericRecord record = this.decoder.decode(this.payloads.get(i));
+      blackhole.consume(AvroValues.toValue(record.get("tleDataset")));
+    }
+  }
+
+}
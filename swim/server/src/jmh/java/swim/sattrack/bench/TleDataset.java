@@ -0,0 +1,184 @@
+package swim.sattrack.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+
+import swim.json.Json;
+import swim.sattrack.avro.AvroValues;
+import swim.structure.Value;
+
+/**
+ * Synthetic TLE data for the benchmarks, built from the sample record
+ * in rawData/tle-sample.json and the kafka/tle.avsc schema (both put on
+ * the jmh classpath by build.gradle). Every satellite gets its own
+ * catalog number and a position which moves with the variant, so
+ * repeated updates look like new polls.
+ */
+public final class TleDataset {
+
+  public static final int VECTORS_PER_RECORD = 50; // matches the tleVectorList50 records the producer sends
+
+  private static Schema listSchema;
+  private static Value sample;
+
+  private TleDataset() {
+    // static only
+  }
+
+  public static synchronized Schema listSchema() {
+    if (listSchema == null) {
+      listSchema = new Schema.Parser().parse(resource("/tle.avsc"));
+    }
+    return listSchema;
+  }
+
+  public static Schema vectorSchema() {
+    return listSchema().getField("tleDataset").schema().getElementType();
+  }
+
+  /**
+   * the sample record, its keys quoted so it parses as JSON
+   */
+  public static synchronized Value sample() {
+    if (sample == null) {
+      final String text = resource("/tle-sample.json")
+          .replace('\'', '"')
+          .replaceAll("(?m)^(\\s*)(\\w+):", "$1\"$2\":");
+      sample = Json.parse(text);
+    }
+    return sample;
+  }
+
+  /**
+   * one satellite as an avro record
+   */
+  public static GenericRecord vectorRecord(int catalogNumber, int variant) {
+    final Schema schema = vectorSchema();
+    final Value source = sample();
+    final GenericRecord vector = new GenericData.Record(schema);
+    for (Schema.Field field : schema.getFields()) {
+      vector.put(field.name(), fieldValue(field, source.get(field.name()), catalogNumber, variant));
+    }
+    return vector;
+  }
+
+  /**
+   * one satellite the way the TleMessagesAgent receives it, after decoding
+   */
+  public static Value vector(int catalogNumber, int variant) {
+    return AvroValues.toValue(vectorRecord(catalogNumber, variant));
+  }
+
+  /**
+   * kafka payloads for count satellites, VECTORS_PER_RECORD to a record,
+   * with the 5 byte schema registry header
+   */
+  public static List<byte[]> payloads(int count) throws IOException {
+    final Schema schema = listSchema();
+    final Schema arraySchema = schema.getField("tleDataset").schema();
+    final GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(schema);
+    final List<byte[]> payloads = new ArrayList<>();
+    BinaryEncoder encoder = null;
+    for (int start = 0; start < count; start += VECTORS_PER_RECORD) {
+      final int end = Math.min(count, start + VECTORS_PER_RECORD);
+      final GenericData.Array<GenericRecord> vectors = new GenericData.Array<>(end - start, arraySchema);
+      for (int i = start; i < end; i++) {
+        vectors.add(vectorRecord(i + 1, 0));
+      }
+      final GenericRecord list = new GenericData.Record(schema);
+      list.put("timestamp", Long.toString(1600000000000L + start));
+      list.put("tleDataset", vectors);
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      out.write(new byte[] {0, 0, 0, 0, 1}); // magic byte and schema id
+      encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+      writer.write(list, encoder);
+      encoder.flush();
+      payloads.add(out.toByteArray());
+    }
+    return payloads;
+  }
+
+  private static Object fieldValue(Schema.Field field, Value source, int catalogNumber, int variant) {
+    final String name = field.name();
+    final double phase = catalogNumber * 0.618 + variant * 0.01;
+    if ("catalogNumber".equals(name)) {
+      return catalogNumber;
+    } else if ("name".equals(name)) {
+      return source.stringValue("") + " " + catalogNumber;
+    } else if ("latitude".equals(name)) {
+      return Math.toDegrees(Math.asin(Math.sin(phase)));
+    } else if ("longitude".equals(name)) {
+      return ((phase * 57.29577951308232) % 360.0) - 180.0;
+    } else if ("height".equals(name)) {
+      return (float) (400.0 + (catalogNumber % 1000));
+    }
+    final Schema schema = field.schema();
+    switch (schema.getType()) {
+      case STRING:
+        return source.stringValue("");
+      case INT:
+        return (int) number(source);
+      case LONG:
+        return (long) number(source);
+      case FLOAT:
+        return (float) number(source);
+      case DOUBLE:
+        return number(source);
+      case ARRAY:
+        final GenericData.Array<Object> items = new GenericData.Array<>(source.length(), schema);
+        for (int i = 0; i < source.length(); i++) {
+          items.add(source.getItem(i).stringValue(""));
+        }
+        return items;
+      case RECORD:
+        // position
+        final GenericRecord position = new GenericData.Record(schema);
+        position.put("x", 6778.0 * Math.cos(phase));
+        position.put("y", 6778.0 * Math.sin(phase));
+        position.put("z", 100.0 * Math.sin(phase * 3.0));
+        return position;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * the sample holds every number as a string, anything which does not parse is 0
+   */
+  private static double number(Value source) {
+    try {
+      return Double.parseDouble(source.stringValue("0").trim());
+    } catch (NumberFormatException ex) {
+      return 0.0;
+    }
+  }
+
+  private static String resource(String path) {
+    try (InputStream in = TleDataset.class.getResourceAsStream(path)) {
+      if (in == null) {
+        throw new IllegalStateException("missing benchmark resource " + path);
+      }
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    } catch (IOException ex) {
+      throw new IllegalStateException("unable to read benchmark resource " + path, ex);
+    }
+  }
+
+}
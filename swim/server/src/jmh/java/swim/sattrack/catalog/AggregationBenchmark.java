@@ -0,0 +1,124 @@
+package swim.sattrack.catalog;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import swim.recon.Recon;
+import swim.sattrack.bench.TleDataset;
+import swim.structure.Item;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * AggregationAgent.addSatellite(s) against a catalog already holding
+ * catalogSize satellites: the partial position updates which make up
+ * most of the traffic, and full short info records which also rerun
+ * the group-by counts. Uses the dimensions from server.recon.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class AggregationBenchmark {
+
+  static final int DISTINCT_VECTORS = 1000;
+  static final String DIMENSIONS = "{"
+      + "{lane: satellitesTypeCount, field: type, other: rocketBody, groups: {"
+      + "payload: {name: Payload, values: PAYLOAD}, debris: {name: Debris, values: DEBRIS}, "
+      + "rocketBody: {name: \"Rocket Body\", values: \"ROCKET BODY\"}}},"
+      + "{lane: satellitesByCountry, field: countryCode, missing: Unknown},"
+      + "{lane: satellitesByRcsSize, field: rcsSize, missing: Unknown},"
+      + "{lane: satellitesByLaunchSite, field: launchSiteCode, missing: Unknown},"
+      + "{lane: satellitesByOrbitRegime, field: orbitRegime, missing: Unknown}}";
+
+  private static final GroupByAggregator.GroupListener IGNORE_GROUPS = (dimension, group, count) -> { };
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int catalogSize;
+
+  private AggregationState state;
+  private Value[] fullInfo;
+  private Record[][] positionDeltas; // two alternating positions per distinct vector
+  private int next;
+  private long timestamp = 1600000000000L;
+
+  @Setup
+  public void setup() {
+    this.state = new AggregationState(this.catalogSize, 2.0, GroupByAggregator.fromConfig(Recon.parse(DIMENSIONS)));
+    this.fullInfo = new Value[DISTINCT_VECTORS];
+    this.positionDeltas = new Record[2][DISTINCT_VECTORS];
+    for (int i = 0; i < DISTINCT_VECTORS; i++) {
+      this.fullInfo[i] = shortInfo(TleDataset.vector(i + 1, 0));
+      for (int variant = 0; variant < 2; variant++) {
+        final Value moved = TleDataset.vector(i + 1, variant + 1);
+        this.positionDeltas[variant][i] = Record.create(5)
+            .slot("catalogNumber", i + 1)
+            .slot("latitude", moved.get("latitude"))
+            .slot("longitude", moved.get("longitude"))
+            .slot("height", moved.get("height"))
+            .slot("position", moved.get("position"));
+      }
+    }
+    for (int i = 0; i < this.catalogSize; i++) {
+      this.state.update(withCatalogNumber(this.fullInfo[i % DISTINCT_VECTORS], i + 1), this.timestamp, IGNORE_GROUPS);
+    }
+  }
+
+  @Benchmark
+  public int updatePosition() {
+    final int satellite = nextSatellite();
+    final Record delta = this.positionDeltas[(int) (this.timestamp / this.catalogSize) & 1][satellite % DISTINCT_VECTORS];
+    delta.put("catalogNumber", satellite + 1);
+    return this.state.update(delta, this.timestamp, IGNORE_GROUPS);
+  }
+
+  @Benchmark
+  public int updateFullInfo() {
+    final int satellite = nextSatellite();
+    final Value info = this.fullInfo[satellite % DISTINCT_VECTORS];
+    ((Record) info).put("catalogNumber", satellite + 1);
+    return this.state.update(info, this.timestamp, IGNORE_GROUPS);
+  }
+
+  private int nextSatellite() {
+    final int satellite = this.next;
+    this.next = satellite + 1 == this.catalogSize ? 0 : satellite + 1;
+    this.timestamp += 1L;
+    return satellite;
+  }
+
+  /**
+   * the fields SatelliteAgent reports to the aggregation agent
+   */
+  private static Record shortInfo(Value vector) {
+    final Record info = Record.create(13);
+    for (Item item : vector) {
+      final String key = item.key().stringValue(null);
+      if ("name".equals(key) || "catalogNumber".equals(key) || "intlDesignator".equals(key) || "type".equals(key)
+          || "orbitalPeriod".equals(key) || "tle".equals(key) || "position".equals(key) || "height".equals(key)
+          || "latitude".equals(key) || "longitude".equals(key) || "countryCode".equals(key)
+          || "rcsSize".equals(key) || "launchSiteCode".equals(key)) {
+        info.slot(key, item.toValue());
+      }
+    }
+    return info;
+  }
+
+  private static Value withCatalogNumber(Value info, int catalogNumber) {
+    final Record copy = Record.create(13);
+    for (Item item : info) {
+      copy.slot(item.key().stringValue(null), item.toValue());
+    }
+    copy.put("catalogNumber", catalogNumber);
+    return copy;
+  }
+
+}
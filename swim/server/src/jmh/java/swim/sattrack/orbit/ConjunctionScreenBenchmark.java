@@ -0,0 +1,71 @@
+package swim.sattrack.orbit;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * One full conjunction screen of catalogSize objects spread over low
+ * to geostationary orbit radii, on a pool of parallelism threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ConjunctionScreenBenchmark {
+
+  @Param({"1000", "16000", "100000", "1000000"})
+  public int catalogSize;
+
+  @Param({"1", "2", "4", "8"})
+  public int parallelism;
+
+  @Param({"10.0"})
+  public double threshold;
+
+  private double[] x;
+  private double[] y;
+  private double[] z;
+  private ForkJoinPool pool;
+  private ConjunctionScreen screen;
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(42L);
+    this.x = new double[this.catalogSize];
+    this.y = new double[this.catalogSize];
+    this.z = new double[this.catalogSize];
+    for (int i = 0; i < this.catalogSize; i++) {
+      // most objects in low earth orbit, the rest out to geostationary
+      final double radius = random.nextDouble() < 0.8 ? 6678.0 + random.nextDouble() * 1500.0 : 7000.0 + random.nextDouble() * 35164.0;
+      final double theta = random.nextDouble() * 2.0 * Math.PI;
+      final double phi = Math.acos(2.0 * random.nextDouble() - 1.0);
+      this.x[i] = radius * Math.sin(phi) * Math.cos(theta);
+      this.y[i] = radius * Math.sin(phi) * Math.sin(theta);
+      this.z[i] = radius * Math.cos(phi);
+    }
+    this.pool = new ForkJoinPool(this.parallelism);
+    this.screen = new ConjunctionScreen(this.pool);
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.pool.shutdown();
+  }
+
+  @Benchmark
+  public int screen() {
+    return this.screen.screen(this.x, this.y, this.z, this.catalogSize, this.threshold, 1000).size();
+  }
+
+}
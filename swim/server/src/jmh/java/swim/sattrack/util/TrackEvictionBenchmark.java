@@ -0,0 +1,82 @@
+package swim.sattrack.util;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The tracks lane history: appending to full rings so every append
+ * evicts the oldest point, by capacity and by retention age, across
+ * catalogSize satellites visited round robin.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class TrackEvictionBenchmark {
+
+  static final long TRACK_INTERVAL = 60000L;
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int catalogSize;
+
+  @Param({"32", "100"})
+  public int trackHistorySize;
+
+  private TrackRing[] rings;
+  private long[] lastTimestamp;
+  private int next;
+
+  @Setup
+  public void setup() {
+    this.rings = new TrackRing[this.catalogSize];
+    this.lastTimestamp = new long[this.catalogSize];
+    for (int i = 0; i < this.catalogSize; i++) {
+      final TrackRing ring = new TrackRing(this.trackHistorySize);
+      long timestamp = 1600000000000L;
+      for (int j = 0; j < this.trackHistorySize; j++) {
+        timestamp += TRACK_INTERVAL;
+        ring.append(timestamp, j * 0.1, j * 0.2, 400.0);
+      }
+      this.rings[i] = ring;
+      this.lastTimestamp[i] = timestamp;
+    }
+  }
+
+  @Benchmark
+  public long appendEvictingOldest() {
+    final int satellite = nextSatellite();
+    final long timestamp = this.lastTimestamp[satellite] += TRACK_INTERVAL;
+    return this.rings[satellite].append(timestamp, 12.5, 45.0, 410.0);
+  }
+
+  /**
+   * a retention of three quarters of the ring, so each append also trims by age
+   */
+  @Benchmark
+  public long appendWithRetention() {
+    final int satellite = nextSatellite();
+    final TrackRing ring = this.rings[satellite];
+    final long timestamp = this.lastTimestamp[satellite] += TRACK_INTERVAL;
+    long evicted = ring.append(timestamp, 12.5, 45.0, 410.0);
+    final long cutoff = timestamp - TRACK_INTERVAL * (this.trackHistorySize * 3 / 4);
+    while (ring.size() > 1 && ring.oldestTimestamp() < cutoff) {
+      evicted = ring.removeOldest();
+    }
+    return evicted;
+  }
+
+  private int nextSatellite() {
+    final int satellite = this.next;
+    this.next = satellite + 1 == this.catalogSize ? 0 : satellite + 1;
+    return satellite;
+  }
+
+}
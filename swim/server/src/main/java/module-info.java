@@ -3,8 +3,10 @@ open module swim.sattrack {
   requires swim.server;
   requires swim.client;
   requires swim.xml;
+  requires jdk.httpserver;
 
   requires io.confluent;
   requires org.apache.avro;
   exports swim.sattrack;
+  exports swim.sattrack.journal;
 }
@@ -27,9 +27,23 @@ public class ApplicationPlane extends AbstractPlane {
     System.out.println("Running Satellite Tracker Plane...");
     kernel.run();
 
+    space.command(Uri.parse("/metrics"), Uri.parse("start"), Value.absent());
     space.command(Uri.parse("/aggregation"), Uri.parse("start"), Value.absent());
+    space.command(Uri.parse("/propagator"), Uri.parse("start"), Value.absent());
+    space.command(Uri.parse("/conjunctions"), Uri.parse("start"), Value.absent());
     space.command(Uri.parse("/layoutManager"), Uri.parse("start"), Value.absent());
-    space.command(Uri.parse("/bridges/tleMessagesAgent"), Uri.parse("init"), Value.absent());
+    // -Dsattrack.ingest=replay or journal feeds the satellites without kafka
+    final String ingest = System.getProperty("sattrack.ingest", "kafka");
+    final String bridge;
+    if ("replay".equals(ingest)) {
+      bridge = "/bridges/replay";
+    } else if ("journal".equals(ingest)) {
+      bridge = "/bridges/tleJournal";
+    } else {
+      bridge = "/bridges/tleMessagesAgent";
+    }
+    // restore the last catalog snapshot, the snapshot agent inits the bridge once it has
+    space.command(Uri.parse("/snapshot"), Uri.parse("restore"), Record.create(1).slot("init", bridge));
 
   }
 }
@@ -1,10 +1,25 @@
 package swim.sattrack.agents;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import swim.api.SwimLane;
 import swim.api.agent.AbstractAgent;
 import swim.api.lane.CommandLane;
-import swim.api.lane.ValueLane;
+import swim.api.lane.DemandMapLane;
 import swim.api.lane.MapLane;
+import swim.api.warp.WarpUplink;
+import swim.concurrent.TimerRef;
+import swim.sattrack.catalog.AggregationState;
+import swim.sattrack.catalog.GroupByAggregator;
+import swim.sattrack.catalog.GroupByDimension;
+import swim.sattrack.catalog.SatelliteCatalog;
+import swim.sattrack.catalog.SpatialIndex;
+import swim.sattrack.orbit.OrbitCatalog;
+import swim.sattrack.orbit.PassPredictor;
+import swim.structure.Item;
 import swim.structure.Record;
 import swim.structure.Value;
 import swim.uri.Uri;
@@ -12,9 +27,46 @@ import swim.uri.Uri;
 /**
  * The AggregationAgent handles data which is aggregate across all
  * satellites including a list of all satellites
+ *
+ * Satellite data is kept once in a columnar SatelliteCatalog and the
+ * list lanes are demand lanes which project records out of it only
+ * when a downlink needs them.
+ * Count lanes such as satellitesTypeCount and satellitesByCountry are
+ * group-by dimensions declared in server.recon and kept up to date
+ * incrementally as satellites are added, changed and removed.
+ * The list lanes go through a CueThrottle, so a burst of updates
+ * reaches each downlink at no more than listUpdatesPerSecond keys with
+ * only the latest value of each, whatever the other downlinks do.
+ * Satellite agents and shards queue their changes in the
+ * AggregationChannel, this agent is its only consumer and drains it
+ * every flushInterval.
  */
 public class AggregationAgent extends AbstractAgent {
 
+    private static final int INITIAL_CATALOG_SIZE = 16384;
+    private static final long MAX_EXPIRY_SWEEP_INTERVAL = 60000L;
+    private static final Uri RESEND_INFO_LANE = Uri.parse("resendInfo");
+    private static final Uri QUERY_RESULT_LANE = Uri.parse("queryResult");
+    private static final double DEFAULT_INDEX_CELL_DEGREES = 2.0;
+    private static final int DEFAULT_VIEWPORT_LIMIT = 2000;
+    private static final long DEFAULT_FLUSH_INTERVAL = 250L;
+    private static final int DEFAULT_FLUSH_BATCH = 1000;
+
+    private static final SatelliteCatalog.TypeFilter PAYLOAD = type -> "PAYLOAD".equals(type);
+    private static final SatelliteCatalog.TypeFilter DEBRIS = type -> "DEBRIS".equals(type);
+    private static final SatelliteCatalog.TypeFilter ROCKET_BODY = type -> !PAYLOAD.matches(type) && !DEBRIS.matches(type);
+
+    private Value agentConfig;
+    private AggregationState state; // created in didStart, once the cell size and aggregator are known
+    private SatelliteCatalog catalog;
+    private final Map<GroupByDimension, MapLane<String, Record>> dimensionLanes = new HashMap<>();
+    private long expireAfter = 0L; // ms without an update before a satellite is dropped, 0 to keep forever
+    private TimerRef expiryTimer;
+    private long flushInterval; // ms between drains of the AggregationChannel
+    private int flushBatch; // max updates applied per drain before yielding
+    private TimerRef flushTimer;
+    private CueThrottle<String> listThrottle; // rate limits what each uplink of the list lanes is sent
+
     /**
      * List of all satellite WebAgents which have been created
      * The UI uses this to draw the satellites on the map.
@@ -22,54 +74,25 @@ public class AggregationAgent extends AbstractAgent {
      * Satellite WebAgent when it gets its update.
      */
     @SwimLane("satelliteList")
-    MapLane<String, Value> satelliteList = this.<String, Value>mapLane();
-
-    @SwimLane("satellitesTypeCount")
-    MapLane<String, Record> satellitesTypeCount = this.<String, Record>mapLane();
-
-    @SwimLane("satellitesByCountry")
-    MapLane<String, Record> satellitesByCountry = this.<String, Record>mapLane();
+    DemandMapLane<String, Value> satelliteList = this.<String, Value>demandMapLane()
+      .onCue((key, uplink) -> listValue(uplink, key))
+      .onSync(uplink -> this.listThrottle.sync(uplink, this.catalog.keys(null)));
 
     @SwimLane("payloadList")
-    MapLane<String, Value> payloadList = this.<String, Value>mapLane()
-      .didUpdate((k, n, o) -> {
-        Value typeRecord = this.satellitesTypeCount.get("payload");
-        Integer typeCount = typeRecord.get("count").intValue(0);
-        if(typeCount != this.payloadList.size()) {
-          Record newCount = Record.create(2)
-            .slot("name", "Payload")
-            .slot("count", this.payloadList.size());
-          this.satellitesTypeCount.put("payload", newCount);
-        }        
-        
-      });    
+    DemandMapLane<String, Value> payloadList = this.<String, Value>demandMapLane()
+      .onCue((key, uplink) -> listValue(uplink, key))
+      .onSync(uplink -> this.listThrottle.sync(uplink, this.catalog.keys(PAYLOAD)));
 
     @SwimLane("debrisList")
-    MapLane<String, Value> debrisList = this.<String, Value>mapLane()
-      .didUpdate((k, n, o) -> {
-        Value typeRecord = this.satellitesTypeCount.get("debris");
-        Integer typeCount = typeRecord.get("count").intValue(0);
-        if(typeCount != this.debrisList.size()) {
-          Record newCount = Record.create(2)
-            .slot("name", "Debris")
-            .slot("count", this.debrisList.size());
-          this.satellitesTypeCount.put("debris", newCount);
-        }        
-      });    
+    DemandMapLane<String, Value> debrisList = this.<String, Value>demandMapLane()
+      .onCue((key, uplink) -> listValue(uplink, key))
+      .onSync(uplink -> this.listThrottle.sync(uplink, this.catalog.keys(DEBRIS)));
 
     @SwimLane("rocketBodyList")
-    MapLane<String, Value> rocketBodyList = this.<String, Value>mapLane()
-      .didUpdate((k, n, o) -> {
-        Value typeRecord = this.satellitesTypeCount.get("rocketBody");
-        Integer typeCount = typeRecord.get("count").intValue(0);
-        if(typeCount != this.rocketBodyList.size()) {
-          Record newCount = Record.create(2)
-            .slot("name", "Rocket Body")
-            .slot("count", this.rocketBodyList.size());
-          this.satellitesTypeCount.put("rocketBody", newCount);
-        }        
-      });    
-        
+    DemandMapLane<String, Value> rocketBodyList = this.<String, Value>demandMapLane()
+      .onCue((key, uplink) -> listValue(uplink, key))
+      .onSync(uplink -> this.listThrottle.sync(uplink, this.catalog.keys(ROCKET_BODY)));
+
     /**
      * Command lane used by Satellite WebAgents to add/update
      * its data in the main satellite list.
@@ -77,34 +100,259 @@ public class AggregationAgent extends AbstractAgent {
     @SwimLane("addSatellite")
     public CommandLane<Value> addSatellite = this.<Value>commandLane()
         .onCommand((Value newValue) -> {
-          String catId = newValue.get("catalogNumber").stringValue();
-          Value currSat = this.satelliteList.get(catId);
-          if(currSat == Value.absent()) {
-            String satType = newValue.get("type").stringValue();
-            switch(satType) {
-              case "PAYLOAD":
-                this.payloadList.put(catId, newValue);
-                break;
-              case "DEBRIS":
-                this.debrisList.put(catId, newValue);
-                break;
-              default:
-                this.rocketBodyList.put(catId, newValue);
-                break;
+          updateSatellite(newValue, System.currentTimeMillis());
+        });
+
+    /**
+     * Batched form of addSatellite, one record with an item per
+     * satellite, each holding the catalogNumber and only the fields
+     * which changed. Satellite agents in this process go through the
+     * AggregationChannel instead.
+     */
+    @SwimLane("addSatellites")
+    public CommandLane<Value> addSatellites = this.<Value>commandLane()
+        .onCommand((Value batch) -> {
+          long timestamp = System.currentTimeMillis();
+          for (Item update : batch) {
+            updateSatellite(update.toValue(), timestamp);
+          }
+        });
 
+    /**
+     * Command lane used by ViewportAgents to find the satellites inside
+     * their bounds. The value holds the viewport node, south, west,
+     * north and east in degrees and optionally minHeight/maxHeight in km
+     * and limit. The result is sent back to the viewport's queryResult lane.
+     */
+    @SwimLane("queryViewport")
+    public CommandLane<Value> queryViewport = this.<Value>commandLane()
+        .onCommand((Value query) -> {
+          String viewportNode = query.get("node").stringValue(null);
+          if (viewportNode != null) {
+            command(Uri.parse(viewportNode), QUERY_RESULT_LANE, queryBounds(query));
+          }
+        });
+
+    /**
+     * Command lane to drop a satellite, for example once it has decayed.
+     * The value is the catalog number.
+     */
+    @SwimLane("removeSatellite")
+    public CommandLane<Value> removeSatellite = this.<Value>commandLane()
+        .onCommand((Value catalogNumber) -> {
+          removeSatellite(catalogNumber.intValue(-1));
+        });
+
+    private void updateSatellite(Value newValue, long timestamp) {
+        int catalogId = newValue.get("catalogNumber").intValue(-1);
+        int oldRow = this.catalog.row(catalogId);
+        if (oldRow < 0 && !newValue.get("type").isDefined()) {
+            // a partial update for a satellite we dropped, ask it for everything again rather than list half a row
+            command(SatelliteShards.hostUri(catalogId), RESEND_INFO_LANE, Value.fromObject(catalogId));
+            return;
+        }
+        String oldType = oldRow >= 0 ? this.catalog.type(oldRow) : null;
+
+        int row = this.state.update(newValue, timestamp, this::didUpdateGroup);
+        if (row < 0) {
+            return;
+        }
+        String catId = Integer.toString(catalogId);
+        String satType = this.catalog.type(row);
+        if (oldRow >= 0 && listFor(oldType) != listFor(satType)) {
+            listFor(oldType).remove(catId);
+        }
+        this.listThrottle.cue(catId);
+    }
+
+    /**
+     * apply what the satellites queued in the AggregationChannel, at most
+     * flushBatch at a time so the other lanes get a turn in between
+     */
+    private void flushChannel() {
+        AggregationChannel channel = AggregationChannel.shared();
+        long timestamp = System.currentTimeMillis();
+        int count = 0;
+        try {
+            Value update;
+            while (count < this.flushBatch && (update = channel.pollUpdate()) != null) {
+                updateSatellite(update, timestamp);
+                count += 1;
+            }
+            int catalogId;
+            while (count < this.flushBatch && (catalogId = channel.pollTouch()) >= 0) {
+                if (!this.catalog.touch(catalogId, timestamp)) {
+                    // alive but dropped, by expiry for example, ask it for its short info again
+                    command(SatelliteShards.hostUri(catalogId), RESEND_INFO_LANE, Value.fromObject(catalogId));
+                }
+                count += 1;
             }
-            // System.out.println(newValue);
-            String countryCode = newValue.get("countryCode").stringValue("Unknown");
-            Value currCountryValue = this.satellitesByCountry.get(countryCode);
-            Integer countryCount = currCountryValue.get("count").intValue(0) + 1;
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+        this.flushTimer.reschedule(channel.pending() > 0 ? 0L : this.flushInterval);
+    }
+
+    /**
+     * the list entry of a satellite, or null while the uplink has no room for it
+     */
+    private Value listValue(WarpUplink uplink, String key) {
+        return this.listThrottle.admit(uplink, key) ? this.catalog.toValue(key) : null;
+    }
+
+    /**
+     * cue a satellite on the lists it is in now, called by the throttle
+     */
+    private void cueLists(String catId) {
+        int row = this.catalog.row(SatelliteCatalog.parseKey(catId));
+        if (row >= 0) {
+            listFor(this.catalog.type(row)).cue(catId);
+            this.satelliteList.cue(catId);
+        }
+    }
+
+    private void removeSatellite(int catalogId) {
+        int row = this.catalog.row(catalogId);
+        if (row < 0) {
+            return;
+        }
+        String catId = Integer.toString(catalogId);
+        this.listThrottle.remove(catId);
+        listFor(this.catalog.type(row)).remove(catId);
+        this.satelliteList.remove(catId);
+        this.state.remove(catalogId, this::didUpdateGroup);
+    }
+
+    private DemandMapLane<String, Value> listFor(String satType) {
+        if (PAYLOAD.matches(satType)) {
+            return this.payloadList;
+        } else if (DEBRIS.matches(satType)) {
+            return this.debrisList;
+        } else {
+            return this.rocketBodyList;
+        }
+    }
+
+    /**
+     * publish a changed group count on the dimension's lane
+     */
+    private void didUpdateGroup(GroupByDimension dimension, String group, int count) {
+        MapLane<String, Record> lane = this.dimensionLanes.get(dimension);
+        if (count > 0 || dimension.isConfiguredGroup(group)) {
             Record newCount = Record.create(2)
-              .slot("name", countryCode)
-              .slot("count", countryCount);
-            this.satellitesByCountry.put(countryCode, newCount);
+                .slot("name", dimension.groupName(group))
+                .slot("count", count);
+            lane.put(group, newCount);
+        } else {
+            lane.remove(group);
+        }
+    }
+
+    /**
+     * satellites inside a bounding box and optional height band
+     */
+    private Value queryBounds(Value query) {
+        // clients may send the latitudes either way round, longitudes follow SpatialIndex.query
+        double lat1 = query.get("south").doubleValue(-90.0);
+        double lat2 = query.get("north").doubleValue(90.0);
+        double south = Math.min(lat1, lat2);
+        double north = Math.max(lat1, lat2);
+        double west = query.get("west").doubleValue(-180.0);
+        double east = query.get("east").doubleValue(180.0);
+        double minHeight = query.get("minHeight").doubleValue(Double.NEGATIVE_INFINITY);
+        double maxHeight = query.get("maxHeight").doubleValue(Double.POSITIVE_INFINITY);
+        int limit = query.get("limit").intValue(DEFAULT_VIEWPORT_LIMIT);
+
+        Record satellites = Record.create();
+        int[] count = new int[1];
+        this.state.spatialIndex().query(south, west, north, east, catalogId -> {
+            int row = this.catalog.row(catalogId);
+            double lat = this.catalog.latitude(row);
+            double lng = this.catalog.longitude(row);
+            double alt = this.catalog.height(row);
+            if (lat >= south && lat <= north && SpatialIndex.containsLongitude(west, east, lng) && !(alt < minHeight) && !(alt > maxHeight)) {
+                count[0] += 1;
+                if (count[0] <= limit) {
+                    String satType = this.catalog.type(row);
+                    satellites.item(Record.create(5)
+                        .slot("id", catalogId)
+                        .slot("lat", lat)
+                        .slot("lng", lng)
+                        .slot("height", alt)
+                        .slot("type", satType != null ? satType : "UNKNOWN"));
+                }
+            }
+        });
+        return Record.create(3)
+            .slot("count", count[0])
+            .slot("truncated", count[0] > limit)
+            .slot("satellites", satellites);
+    }
+
+    /**
+     * drop satellites which have not been updated within expireAfter,
+     * they are no longer propagated or predicted either until their
+     * agent sends its elements again
+     */
+    private void expireSatellites() {
+        long cutoff = System.currentTimeMillis() - this.expireAfter;
+        List<Integer> expired = new ArrayList<>();
+        for (int row = 0; row < this.catalog.size(); row++) {
+            if (this.catalog.updated(row) < cutoff) {
+                expired.add(this.catalog.catalogNumber(row));
+            }
+        }
+        if (!expired.isEmpty()) {
+            System.out.println(String.format("[AggregationAgent] expiring %d satellites", expired.size()));
+            for (Integer catalogId : expired) {
+                removeSatellite(catalogId);
+                OrbitCatalog.shared().remove(catalogId);
+                PassPredictor.shared().remove(catalogId);
+            }
+        }
+        this.expiryTimer.reschedule(Math.min(this.expireAfter, MAX_EXPIRY_SWEEP_INTERVAL));
+    }
+
+    /**
+     * open one count lane per configured dimension and prepopulate
+     * the configured groups so the UI does not see null counts
+     */
+    @Override
+    public void didStart() {
+        this.agentConfig = getProp("config");
+        this.listThrottle = new CueThrottle<>(this, this.agentConfig.get("listUpdatesPerSecond").intValue(0), this::cueLists);
+        GroupByAggregator aggregator = GroupByAggregator.fromConfig(this.agentConfig.get("dimensions"));
+        double cellDegrees = this.agentConfig.get("indexCellDegrees").doubleValue(DEFAULT_INDEX_CELL_DEGREES);
+        this.state = new AggregationState(INITIAL_CATALOG_SIZE, cellDegrees, aggregator);
+        this.catalog = this.state.catalog();
+        for (GroupByDimension dimension : aggregator.dimensions()) {
+            MapLane<String, Record> lane = this.<String, Record>mapLane();
+            openLane(Uri.parse(dimension.laneName()), lane);
+            this.dimensionLanes.put(dimension, lane);
+            for (String group : dimension.configuredGroups()) {
+                didUpdateGroup(dimension, group, dimension.count(group));
+            }
+        }
+        this.flushInterval = this.agentConfig.get("flushInterval").longValue(DEFAULT_FLUSH_INTERVAL);
+        this.flushBatch = this.agentConfig.get("flushBatch").intValue(DEFAULT_FLUSH_BATCH);
+        this.flushTimer = setTimer(this.flushInterval, this::flushChannel);
+        this.expireAfter = this.agentConfig.get("expireAfter").longValue(0L);
+        if (this.expireAfter > 0L) {
+            this.expiryTimer = setTimer(Math.min(this.expireAfter, MAX_EXPIRY_SWEEP_INTERVAL), this::expireSatellites);
+        }
+    }
 
-            this.satelliteList.put(catId, newValue);  
-          }    
+    @Override
+    public void willStop() {
+        if (this.flushTimer != null) {
+            this.flushTimer.cancel();
+        }
+        if (this.expiryTimer != null) {
+            this.expiryTimer.cancel();
+        }
+        if (this.listThrottle != null) {
+            this.listThrottle.cancel();
+        }
+    }
 
-        });    
-         
-}
\ No newline at end of file
+}
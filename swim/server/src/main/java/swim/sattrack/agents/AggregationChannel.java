@@ -0,0 +1,74 @@
+package swim.sattrack.agents;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import swim.structure.Value;
+
+/**
+ * Coalesces satellite updates bound for the AggregationAgent.
+ * SatelliteAgents and shards offer their changed fields here instead of
+ * each sending a command, and touch the satellites whose update changed
+ * no short info field. The AggregationAgent is the only consumer, it
+ * drains the channel on its own flush timer.
+ */
+final class AggregationChannel {
+
+  private static final AggregationChannel SHARED = new AggregationChannel();
+
+  private final ConcurrentLinkedQueue<Value> updates = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<Integer> touches = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pending = new AtomicInteger(); // the queues' size() walks the whole queue
+
+  static AggregationChannel shared() {
+    return SHARED;
+  }
+
+  /**
+   * queue the changed short info fields of a satellite
+   */
+  void offer(Value update) {
+    this.updates.add(update);
+    this.pending.incrementAndGet();
+  }
+
+  /**
+   * queue a satellite which was updated without any short info change,
+   * so the aggregation still knows it is alive
+   */
+  void touch(int catalogNumber) {
+    this.touches.add(catalogNumber);
+    this.pending.incrementAndGet();
+  }
+
+  /**
+   * number of updates and touches waiting for the aggregation
+   */
+  int pending() {
+    return this.pending.get();
+  }
+
+  /**
+   * next queued update or null when there is none
+   */
+  Value pollUpdate() {
+    final Value update = this.updates.poll();
+    if (update != null) {
+      this.pending.decrementAndGet();
+    }
+    return update;
+  }
+
+  /**
+   * next touched catalog number or -1 when there is none
+   */
+  int pollTouch() {
+    final Integer catalogNumber = this.touches.poll();
+    if (catalogNumber == null) {
+      return -1;
+    }
+    this.pending.decrementAndGet();
+    return catalogNumber;
+  }
+
+}
@@ -0,0 +1,204 @@
+package swim.sattrack.agents;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import swim.api.SwimLane;
+import swim.api.agent.AbstractAgent;
+import swim.api.lane.CommandLane;
+import swim.api.lane.MapLane;
+import swim.api.lane.ValueLane;
+import swim.concurrent.TimerRef;
+import swim.sattrack.orbit.ConjunctionScreen;
+import swim.sattrack.orbit.OrbitCatalog;
+import swim.sattrack.orbit.OrbitFrame;
+import swim.sattrack.orbit.Sgp4;
+import swim.structure.Record;
+import swim.structure.Value;
+import swim.uri.Uri;
+
+/**
+ * The ConjunctionAgent screens the propagated catalog for close approaches.
+ * Every screenInterval it takes the latest OrbitFrame, bins the positions
+ * into a 3D spatial hash and publishes every pair closer than threshold km
+ * on the closeApproaches lane, keyed by "lowerId-higherId".
+ * The screen runs on the common fork/join pool, off the agent, and is
+ * published back on it through the didScreen lane. A tick which comes
+ * while a screen is running is skipped.
+ */
+public class ConjunctionAgent extends AbstractAgent {
+
+  private static final long DEFAULT_SCREEN_INTERVAL = 15000L;
+  private static final double DEFAULT_THRESHOLD = 10.0;
+  private static final int DEFAULT_MAX_PAIRS = 1000;
+  private static final Uri DID_SCREEN_LANE = Uri.parse("didScreen");
+
+  private Value agentConfig;
+  private long screenInterval = DEFAULT_SCREEN_INTERVAL;
+  private double threshold = DEFAULT_THRESHOLD;
+  private int maxPairs = DEFAULT_MAX_PAIRS;
+  private TimerRef screenTimer;
+  private long lastScreenedTick = -1L;
+
+  private final ConjunctionScreen screen = new ConjunctionScreen();
+  private double[] x = new double[0];
+  private double[] y = new double[0];
+  private double[] z = new double[0];
+  private int[] ids = new int[0];
+  private Set<String> published = new HashSet<>();
+  private final AtomicBoolean screening = new AtomicBoolean(false); // a screen owns the arrays until published
+  private long screenedTick;
+  private long screenedTime;
+  private volatile ConjunctionScreen.Result result; // handed from the pool to didScreen
+  private volatile int screenedCount;
+  private volatile long screenMillis;
+
+  /**
+   * pairs closer than threshold in the last screen
+   */
+  @SwimLane("closeApproaches")
+  protected MapLane<String, Value> closeApproaches = this.<String, Value>mapLane();
+
+  /**
+   * size and timing of the last screen
+   */
+  @SwimLane("stats")
+  protected ValueLane<Value> stats = this.<Value>valueLane();
+
+  /**
+   * a screen finished on the pool, publish it on the agent
+   */
+  @SwimLane("didScreen")
+  private CommandLane<Value> didScreen = this.<Value>commandLane()
+      .onCommand((Value value) -> {
+        this.publish();
+      });
+
+  private void screen() {
+    try {
+      if (!this.screening.get()) {
+        final OrbitFrame frame = OrbitCatalog.shared().acquireFrame();
+        final int count;
+        try {
+          count = frame.tick() != this.lastScreenedTick ? copyPositions(frame) : -1;
+        } finally {
+          OrbitCatalog.shared().releaseFrame(frame);
+        }
+        if (count >= 0) {
+          this.screenPositions(count);
+        }
+      }
+    } catch (Exception ex) {
+      ex.printStackTrace();
+    }
+    this.screenTimer.reschedule(this.screenInterval);
+  }
+
+  /**
+   * copy the positions out so the frame goes back to the catalog before
+   * the screen runs, returns how many there are
+   */
+  private int copyPositions(OrbitFrame frame) {
+    this.lastScreenedTick = frame.tick();
+    this.screenedTick = frame.tick();
+    this.screenedTime = frame.timeMillis();
+    final int size = frame.size();
+    if (this.x.length < size) {
+      this.x = new double[size];
+      this.y = new double[size];
+      this.z = new double[size];
+      this.ids = new int[size];
+    }
+    int count = 0;
+    for (int slot = 0; slot < size; slot++) {
+      if (frame.status(slot) == Sgp4.OK) {
+        this.x[count] = frame.get(slot, OrbitFrame.X);
+        this.y[count] = frame.get(slot, OrbitFrame.Y);
+        this.z[count] = frame.get(slot, OrbitFrame.Z);
+        this.ids[count] = frame.catalogNumber(slot);
+        count += 1;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * screen on the common fork/join pool, the arrays are left alone until
+   * didScreen has published the result
+   */
+  private void screenPositions(int count) {
+    this.screening.set(true);
+    final double screenThreshold = this.threshold;
+    final int screenMaxPairs = this.maxPairs;
+    ForkJoinPool.commonPool().execute(() -> {
+      final long startTime = System.currentTimeMillis();
+      try {
+        this.result = this.screen.screen(this.x, this.y, this.z, count, screenThreshold, screenMaxPairs);
+      } catch (Exception ex) {
+        ex.printStackTrace();
+      } finally {
+        this.screenedCount = count;
+        this.screenMillis = System.currentTimeMillis() - startTime;
+        command(nodeUri(), DID_SCREEN_LANE, Value.absent());
+      }
+    });
+  }
+
+  /**
+   * publish a finished screen, only sending changed pairs to downlinks
+   */
+  private void publish() {
+    final ConjunctionScreen.Result result = this.result;
+    this.result = null;
+    if (result == null) {
+      this.screening.set(false);
+      return;
+    }
+    final Set<String> current = new HashSet<>();
+    for (int i = 0; i < result.size(); i++) {
+      final int a = Math.min(this.ids[result.a(i)], this.ids[result.b(i)]);
+      final int b = Math.max(this.ids[result.a(i)], this.ids[result.b(i)]);
+      final String key = a + "-" + b;
+      current.add(key);
+      this.closeApproaches.put(key, Record.create(4)
+          .slot("a", a)
+          .slot("b", b)
+          .slot("distance", result.distance(i))
+          .slot("timestamp", this.screenedTime));
+    }
+    for (String key : this.published) {
+      if (!current.contains(key)) {
+        this.closeApproaches.remove(key);
+      }
+    }
+    this.published = current;
+    this.screening.set(false);
+
+    this.stats.set(Record.create(5)
+        .slot("tick", this.screenedTick)
+        .slot("timestamp", this.screenedTime)
+        .slot("satellites", this.screenedCount)
+        .slot("pairs", result.size())
+        .slot("screenMillis", this.screenMillis));
+  }
+
+  @Override
+  public void didStart() {
+    System.out.println("[ConjunctionAgent] didStart");
+    this.agentConfig = getProp("config");
+    this.screenInterval = this.agentConfig.get("screenInterval").longValue(DEFAULT_SCREEN_INTERVAL);
+    this.threshold = this.agentConfig.get("threshold").doubleValue(DEFAULT_THRESHOLD);
+    this.maxPairs = this.agentConfig.get("maxPairs").intValue(DEFAULT_MAX_PAIRS);
+    this.screenTimer = setTimer(this.screenInterval, this::screen);
+  }
+
+  @Override
+  public void willStop() {
+    if (this.screenTimer != null) {
+      this.screenTimer.cancel();
+    }
+  }
+
+}
@@ -0,0 +1,180 @@
+package swim.sattrack.agents;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+import swim.api.agent.AbstractAgent;
+import swim.api.warp.WarpUplink;
+import swim.concurrent.TimerRef;
+
+/**
+ * Rate limits what each uplink of an agent's demand lanes is sent.
+ * Demand lanes build the value for a key when an uplink is ready for
+ * it, so a slow downlink only holds the set of keys it is owed and
+ * always gets the latest value, never the intermediate ones. Changes
+ * are cued on the lanes straight away and the lanes' onCue asks admit
+ * whether that uplink has room left, at most maxPerSecond keys spread
+ * over short windows. A key an uplink has no room for is skipped, its
+ * onCue returns null, and owed to the uplink. Owed keys are cued again
+ * once the window has passed, every uplink with room then builds the
+ * latest value, so one slow or busy client never holds back the others.
+ * Keys of a sync are always admitted.
+ * Not thread safe, owned by a single agent.
+ */
+final class CueThrottle<K> {
+
+  static final long WINDOW_MILLIS = 100L;
+
+  private final AbstractAgent agent;
+  private final Consumer<K> cue; // cues a key on its lanes
+  private final int perWindow; // 0 admits every key straight away
+  private final Map<WarpUplink, Window<K>> windows = new WeakHashMap<>(); // closed uplinks are pruned
+  private TimerRef drainTimer;
+
+  CueThrottle(AbstractAgent agent, int maxPerSecond, Consumer<K> cue) {
+    this.agent = agent;
+    this.cue = cue;
+    this.perWindow = maxPerSecond > 0 ? Math.max(1, (int) (maxPerSecond * WINDOW_MILLIS / 1000L)) : 0;
+  }
+
+  /**
+   * a key changed, cue it for every uplink
+   */
+  void cue(K key) {
+    this.cue.accept(key);
+  }
+
+  /**
+   * called from onCue, true when the uplink may be sent the key now.
+   * Otherwise the key is owed and onCue returns null
+   */
+  boolean admit(WarpUplink uplink, K key) {
+    if (this.perWindow == 0) {
+      return true;
+    }
+    final Window<K> window = windowOf(uplink);
+    if (window.syncKey != null && window.syncKey.equals(key)) {
+      window.syncKey = null;
+      return true;
+    }
+    final long now = System.currentTimeMillis();
+    if (now - window.start >= WINDOW_MILLIS) {
+      window.start = now;
+      window.sent = 0;
+    }
+    if (window.sent < this.perWindow) {
+      window.sent += 1;
+      window.owed.remove(key);
+      return true;
+    }
+    if (window.owed.add(key) && (this.drainTimer == null || !this.drainTimer.isScheduled())) {
+      this.drainTimer = this.agent.setTimer(WINDOW_MILLIS - (now - window.start), this::drain);
+    }
+    return false;
+  }
+
+  /**
+   * wrap the keys of a demand map lane's onSync so they are admitted
+   * whatever the uplink's window, a sync is only sent once
+   */
+  Iterator<K> sync(WarpUplink uplink, Iterator<K> keys) {
+    if (this.perWindow == 0) {
+      return keys;
+    }
+    final Window<K> window = windowOf(uplink);
+    return new Iterator<K>() {
+      @Override
+      public boolean hasNext() {
+        return keys.hasNext();
+      }
+
+      @Override
+      public K next() {
+        final K key = keys.next();
+        window.syncKey = key; // the lane builds its value right after
+        return key;
+      }
+    };
+  }
+
+  /**
+   * forget an owed key, for example when its entry was removed
+   */
+  void remove(K key) {
+    for (Window<K> window : this.windows.values()) {
+      window.owed.remove(key);
+    }
+  }
+
+  /**
+   * keys owed to all uplinks together
+   */
+  int pendingCount() {
+    int count = 0;
+    for (Window<K> window : this.windows.values()) {
+      count += window.owed.size();
+    }
+    return count;
+  }
+
+  private Window<K> windowOf(WarpUplink uplink) {
+    Window<K> window = this.windows.get(uplink);
+    if (window == null) {
+      window = new Window<>();
+      this.windows.put(uplink, window);
+    }
+    return window;
+  }
+
+  /**
+   * cue up to a window's worth of each uplink's owed keys again, each
+   * uplink is cued a key once and takes it back if it has no room yet
+   */
+  private void drain() {
+    final LinkedHashSet<K> keys = new LinkedHashSet<>();
+    boolean owing = false;
+    final Iterator<Map.Entry<WarpUplink, Window<K>>> entries = this.windows.entrySet().iterator();
+    while (entries.hasNext()) {
+      final Map.Entry<WarpUplink, Window<K>> entry = entries.next();
+      if (!entry.getKey().isConnected()) {
+        entries.remove();
+        continue;
+      }
+      final Iterator<K> owed = entry.getValue().owed.iterator();
+      int taken = 0;
+      while (owed.hasNext() && taken < this.perWindow) {
+        keys.add(owed.next());
+        owed.remove();
+        taken += 1;
+      }
+      owing |= owed.hasNext();
+    }
+    for (K key : keys) {
+      this.cue.accept(key);
+    }
+    if (owing) {
+      this.drainTimer.reschedule(WINDOW_MILLIS);
+    }
+  }
+
+  void cancel() {
+    if (this.drainTimer != null) {
+      this.drainTimer.cancel();
+    }
+    this.windows.clear();
+  }
+
+  /**
+   * what one uplink was sent in its current window and is still owed
+   */
+  static final class Window<K> {
+    long start;
+    int sent;
+    K syncKey;
+    final LinkedHashSet<K> owed = new LinkedHashSet<>();
+  }
+
+}
@@ -0,0 +1,189 @@
+package swim.sattrack.agents;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import swim.api.SwimLane;
+import swim.api.agent.AbstractAgent;
+import swim.api.lane.CommandLane;
+import swim.api.lane.MapLane;
+import swim.api.lane.ValueLane;
+import swim.concurrent.TimerRef;
+import swim.sattrack.orbit.PassPredictor;
+import swim.structure.Record;
+import swim.structure.Value;
+import swim.uri.Uri;
+
+/**
+ * A Ground Station Agent predicts upcoming passes over one observer.
+ * The client sends the observer location to setObserver and links to
+ * the passes map lane, keyed by "catalogNumber-riseTime". Predictions
+ * come from the shared PassPredictor, which caches passes per station
+ * and TLE, so stations watched by many agents are only computed once.
+ * Predictions run on the common fork/join pool, off the agent, and are
+ * published back on it through the didPredict lane.
+ */
+public class GroundStationAgent extends AbstractAgent {
+
+  private static final long DEFAULT_REFRESH_INTERVAL = 60000L;
+  private static final long DEFAULT_HORIZON = 43200000L; // 12 hours
+  private static final long DEFAULT_STEP = 60000L;
+  private static final int DEFAULT_MAX_PASSES = 500;
+  private static final Uri DID_PREDICT_LANE = Uri.parse("didPredict");
+
+  private Value agentConfig;
+  private long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+  private long horizon = DEFAULT_HORIZON;
+  private long step = DEFAULT_STEP;
+  private int maxPasses = DEFAULT_MAX_PASSES;
+  private TimerRef refreshTimer;
+  private PassPredictor.Station station;
+  private final AtomicBoolean predicting = new AtomicBoolean(false); // at most one prediction in flight
+  private volatile PassPredictor.Station predictedStation; // what the finished prediction was for
+  private volatile PassPredictor.Prediction prediction; // handed from the pool to didPredict
+  private volatile long predictStart;
+
+  /**
+   * observer being predicted for:
+   * {latitude, longitude, height (km), minElevation (degrees)}
+   */
+  @SwimLane("observer")
+  protected ValueLane<Value> observer = this.<Value>valueLane();
+
+  /**
+   * upcoming passes ordered by rise time, at most maxPasses
+   */
+  @SwimLane("passes")
+  protected MapLane<String, Value> passes = this.<String, Value>mapLane();
+
+  /**
+   * how many satellites were recomputed or served from the cache on the last refresh
+   */
+  @SwimLane("stats")
+  protected ValueLane<Value> stats = this.<Value>valueLane();
+
+  @SwimLane("setObserver")
+  public CommandLane<Value> setObserver = this.<Value>commandLane()
+    .onCommand((Value newObserver) -> {
+      this.observer.set(newObserver);
+      this.station = stationFor(newObserver);
+      this.refresh();
+    });
+
+  /**
+   * a prediction finished on the pool, publish it on the agent
+   */
+  @SwimLane("didPredict")
+  private CommandLane<Value> didPredict = this.<Value>commandLane()
+    .onCommand((Value value) -> {
+      this.publish();
+    });
+
+  private static PassPredictor.Station stationFor(Value observerValue) {
+    if (!observerValue.get("latitude").isDefined() || !observerValue.get("longitude").isDefined()) {
+      return null;
+    }
+    return new PassPredictor.Station(observerValue.get("latitude").doubleValue(0.0),
+      observerValue.get("longitude").doubleValue(0.0),
+      observerValue.get("height").doubleValue(0.0),
+      observerValue.get("minElevation").doubleValue(0.0));
+  }
+
+  private void refresh() {
+    if (this.station != null) {
+      this.predict();
+    }
+    if (this.refreshTimer == null || !this.refreshTimer.isScheduled()) {
+      this.refreshTimer = setTimer(this.refreshInterval, this::refresh);
+    }
+  }
+
+  /**
+   * start a prediction on the pool unless one is running, which the
+   * agent picks up again once it has published
+   */
+  private void predict() {
+    if (!this.predicting.compareAndSet(false, true)) {
+      return;
+    }
+    final PassPredictor.Station forStation = this.station;
+    final long startTime = System.currentTimeMillis();
+    final long predictHorizon = this.horizon;
+    final long predictStep = this.step;
+    ForkJoinPool.commonPool().execute(() -> {
+      try {
+        this.prediction = PassPredictor.shared().predict(forStation, startTime, predictHorizon, predictStep);
+      } catch (Exception ex) {
+        ex.printStackTrace();
+      } finally {
+        this.predictedStation = forStation;
+        this.predictStart = startTime;
+        command(nodeUri(), DID_PREDICT_LANE, Value.absent());
+      }
+    });
+  }
+
+  /**
+   * publish the soonest passes, only sending changed entries to downlinks
+   */
+  private void publish() {
+    final PassPredictor.Prediction prediction = this.prediction;
+    final long startTime = this.predictStart;
+    this.prediction = null;
+    this.predicting.set(false);
+    if (prediction == null || this.station == null) {
+      return;
+    }
+    if (!this.predictedStation.equals(this.station)) {
+      // the observer moved while we predicted, start over for the new one
+      this.predict();
+      return;
+    }
+    final List<PassPredictor.Pass> upcoming = prediction.passes();
+    final Set<String> current = new HashSet<>(this.passes.keySet());
+    for (int i = 0; i < upcoming.size() && i < this.maxPasses; i++) {
+      final PassPredictor.Pass pass = upcoming.get(i);
+      final String key = pass.catalogNumber() + "-" + pass.rise();
+      final Value passValue = Record.create(7)
+        .slot("catalogNumber", pass.catalogNumber())
+        .slot("rise", pass.rise())
+        .slot("culmination", pass.culmination())
+        .slot("set", pass.set())
+        .slot("maxElevation", pass.maxElevation())
+        .slot("riseAzimuth", pass.riseAzimuth())
+        .slot("setAzimuth", pass.setAzimuth());
+      if (!current.remove(key) || !passValue.equals(this.passes.get(key))) {
+        this.passes.put(key, passValue);
+      }
+    }
+    for (String key : current) {
+      this.passes.remove(key);
+    }
+    this.stats.set(Record.create(5)
+      .slot("timestamp", startTime)
+      .slot("passes", upcoming.size())
+      .slot("computed", prediction.computed())
+      .slot("cached", prediction.cached())
+      .slot("predictMillis", System.currentTimeMillis() - startTime));
+  }
+
+  @Override
+  public void didStart() {
+    this.agentConfig = getProp("config");
+    this.refreshInterval = this.agentConfig.get("refreshInterval").longValue(DEFAULT_REFRESH_INTERVAL);
+    this.horizon = this.agentConfig.get("horizon").longValue(DEFAULT_HORIZON);
+    this.step = this.agentConfig.get("step").longValue(DEFAULT_STEP);
+    this.maxPasses = this.agentConfig.get("maxPasses").intValue(DEFAULT_MAX_PASSES);
+  }
+
+  @Override
+  public void willStop() {
+    if (this.refreshTimer != null) {
+      this.refreshTimer.cancel();
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+package swim.sattrack.agents;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import swim.api.SwimLane;
+import swim.api.agent.AbstractAgent;
+import swim.api.lane.MapLane;
+import swim.concurrent.TimerRef;
+import swim.sattrack.metrics.Counter;
+import swim.sattrack.metrics.Gauge;
+import swim.sattrack.metrics.LatencyHistogram;
+import swim.sattrack.metrics.Metrics;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * The MetricsAgent publishes the shared ingest metrics.
+ * Every publishInterval it rolls the latency histograms and puts every
+ * counter (with its rate), gauge and histogram on the metrics lane,
+ * keyed by metric name. When prometheusPort is set the same metrics
+ * are served in the Prometheus text format at /metrics on that port.
+ */
+public class MetricsAgent extends AbstractAgent {
+
+  private static final long DEFAULT_PUBLISH_INTERVAL = 1000L;
+  private static final Gauge AGGREGATION_QUEUE_DEPTH = Metrics.shared()
+      .gauge("sattrack_aggregation_queue_depth", "satellite updates waiting to be sent to the aggregation agent");
+  private static final Gauge HEAP_USED = Metrics.shared()
+      .gauge("sattrack_heap_used_bytes", "java heap in use, including garbage not yet collected");
+
+  private Value agentConfig;
+  private long publishInterval = DEFAULT_PUBLISH_INTERVAL;
+  private TimerRef publishTimer;
+  private HttpServer prometheusServer;
+  private long lastPublishTime;
+  private final Map<String, Long> lastCounts = new HashMap<>();
+
+  /**
+   * every metric by name: counters as {total, perSecond}, gauges by
+   * label values, histograms as {count, p50, p90, p99, p999, max, mean}
+   * in microseconds with the quantiles of the last interval
+   */
+  @SwimLane("metrics")
+  protected MapLane<String, Value> metrics = this.<String, Value>mapLane();
+
+  private void publish() {
+    try {
+      AGGREGATION_QUEUE_DEPTH.set(AggregationChannel.shared().pending());
+      final Runtime runtime = Runtime.getRuntime();
+      HEAP_USED.set(runtime.totalMemory() - runtime.freeMemory());
+      final long now = System.currentTimeMillis();
+      final double elapsedSeconds = this.lastPublishTime > 0L ? (now - this.lastPublishTime) / 1000.0 : 0.0;
+      this.lastPublishTime = now;
+      final Set<String> current = new HashSet<>();
+
+      for (Counter counter : Metrics.shared().counters()) {
+        final long total = counter.sum();
+        final Long lastCount = this.lastCounts.put(counter.name(), total);
+        final double perSecond = lastCount != null && elapsedSeconds > 0.0 ? (total - lastCount) / elapsedSeconds : 0.0;
+        this.putMetric(current, counter.name(), Record.create(2)
+            .slot("total", total)
+            .slot("perSecond", perSecond));
+      }
+      for (Gauge gauge : Metrics.shared().gauges()) {
+        if (gauge.labelNames().length == 0) {
+          for (Gauge.Sample sample : gauge.samples()) {
+            this.putMetric(current, gauge.name(), Value.fromObject(sample.value()));
+          }
+        } else {
+          final Record samples = Record.create();
+          for (Gauge.Sample sample : gauge.samples()) {
+            samples.slot(sample.key(), sample.value());
+          }
+          this.putMetric(current, gauge.name(), samples);
+        }
+      }
+      for (LatencyHistogram histogram : Metrics.shared().histograms()) {
+        final LatencyHistogram.Snapshot interval = histogram.roll();
+        final long count = histogram.count();
+        this.putMetric(current, histogram.name(), Record.create(7)
+            .slot("count", interval.count())
+            .slot("p50", interval.p50())
+            .slot("p90", interval.p90())
+            .slot("p99", interval.p99())
+            .slot("p999", interval.p999())
+            .slot("max", histogram.maxMicros())
+            .slot("mean", count > 0L ? histogram.sumMicros() / count : 0L));
+      }
+
+      for (String name : new HashSet<>(this.metrics.keySet())) {
+        if (!current.contains(name)) {
+          this.metrics.remove(name);
+        }
+      }
+    } catch (Exception ex) {
+      ex.printStackTrace();
+    }
+    this.publishTimer.reschedule(this.publishInterval);
+  }
+
+  private void putMetric(Set<String> current, String name, Value metricValue) {
+    current.add(name);
+    if (!metricValue.equals(this.metrics.get(name))) {
+      this.metrics.put(name, metricValue);
+    }
+  }
+
+  /**
+   * serve the metrics for Prometheus to scrape, on its own thread so a
+   * scrape never waits on the agent
+   */
+  private void startPrometheusServer(int port) {
+    try {
+      this.prometheusServer = HttpServer.create(new InetSocketAddress(port), 0);
+      this.prometheusServer.createContext("/metrics", exchange -> {
+        try {
+          final byte[] body = Metrics.shared().prometheusText().getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        } finally {
+          exchange.close();
+        }
+      });
+      this.prometheusServer.start();
+      System.out.println(String.format("[MetricsAgent] serving prometheus metrics on port %d", port));
+    } catch (IOException ex) {
+      System.out.println(String.format("[MetricsAgent] unable to serve prometheus metrics on port %d", port));
+      ex.printStackTrace();
+    }
+  }
+
+  @Override
+  public void didStart() {
+    System.out.println("[MetricsAgent] didStart");
+    this.agentConfig = getProp("config");
+    this.publishInterval = this.agentConfig.get("publishInterval").longValue(DEFAULT_PUBLISH_INTERVAL);
+    final int prometheusPort = this.agentConfig.get("prometheusPort").intValue(0);
+    if (prometheusPort > 0) {
+      this.startPrometheusServer(prometheusPort);
+    }
+    this.publishTimer = setTimer(this.publishInterval, this::publish);
+  }
+
+  @Override
+  public void willStop() {
+    if (this.publishTimer != null) {
+      this.publishTimer.cancel();
+    }
+    if (this.prometheusServer != null) {
+      this.prometheusServer.stop(0);
+    }
+  }
+
+}
@@ -0,0 +1,142 @@
+package swim.sattrack.agents;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import swim.api.SwimLane;
+import swim.api.agent.AbstractAgent;
+import swim.api.lane.DemandLane;
+import swim.api.lane.ValueLane;
+import swim.api.warp.WarpUplink;
+import swim.concurrent.TimerRef;
+import swim.sattrack.agents.connectors.SatelliteFanOut;
+import swim.sattrack.orbit.OrbitCatalog;
+import swim.sattrack.orbit.OrbitFrame;
+import swim.sattrack.orbit.PositionFrames;
+import swim.sattrack.orbit.Sgp4;
+import swim.structure.Data;
+import swim.structure.Record;
+import swim.structure.Value;
+import swim.uri.Uri;
+
+/**
+ * The PropagatorAgent drives the shared OrbitCatalog.
+ * Every tickInterval it propagates the whole catalog to the current
+ * time. Every positionInterval it pushes each satellite agent its new
+ * position, so they need no timers of their own. In sharded mode the
+ * shards read the ticks from the catalog instead.
+ * The positionFrames lane streams the whole catalog as compact binary
+ * frames, a keyframe when a client links and deltas after that.
+ */
+public class PropagatorAgent extends AbstractAgent {
+
+  private static final long DEFAULT_TICK_INTERVAL = 1000L;
+  private static final Uri PROPAGATED_LANE = Uri.parse("propagated");
+
+  private Value agentConfig;
+  private long tickInterval = DEFAULT_TICK_INTERVAL;
+  private long positionInterval; // ms between position pushes to the satellite agents, 0 for none
+  private long lastPush;
+  private TimerRef tickTimer;
+  private final SatelliteFanOut satelliteUris = new SatelliteFanOut(0); // only for its node uri cache
+  private int[] decayPushed = new int[0]; // per slot, the catalog number last told it decayed or -1
+  private final PositionFrames positionFrameEncoder = new PositionFrames();
+  private final Map<WarpUplink, Long> sentFrameTicks = new WeakHashMap<>(); // last tick sent to each uplink
+
+  /**
+   * size of the catalog and timing of the last tick
+   */
+  @SwimLane("stats")
+  protected ValueLane<Value> stats = this.<Value>valueLane();
+
+  /**
+   * binary position frames for every satellite, see PositionFrames for the format.
+   * Each uplink gets the shared delta when it has the previous tick and a
+   * keyframe when it is new or has fallen behind.
+   */
+  @SwimLane("positionFrames")
+  protected DemandLane<Value> positionFrames = this.<Value>demandLane()
+      .onCue(this::nextPositionFrame);
+
+  private Value nextPositionFrame(WarpUplink uplink) {
+    final Long sentTick = this.sentFrameTicks.get(uplink);
+    final byte[] frameBytes = this.positionFrameEncoder.frameFor(sentTick != null ? sentTick : -1L);
+    this.sentFrameTicks.put(uplink, this.positionFrameEncoder.tick());
+    return Data.wrap(frameBytes);
+  }
+
+  private void tick() {
+    final long startTime = System.currentTimeMillis();
+    try {
+      final OrbitFrame frame = OrbitCatalog.shared().tick(startTime);
+      final Record tickStats = Record.create(5)
+          .slot("tick", frame.tick())
+          .slot("timestamp", frame.timeMillis())
+          .slot("satellites", OrbitCatalog.shared().size())
+          .slot("deepSpace", OrbitCatalog.shared().deepSpaceCount())
+          .slot("tickMillis", System.currentTimeMillis() - startTime);
+      this.stats.set(tickStats);
+      this.positionFrameEncoder.update(frame);
+      this.positionFrames.cue();
+      if (this.positionInterval > 0L && frame.timeMillis() - this.lastPush >= this.positionInterval) {
+        this.lastPush = frame.timeMillis();
+        this.pushPositions(frame);
+      }
+    } catch (Exception ex) {
+      ex.printStackTrace();
+    }
+    this.tickTimer.reschedule(this.tickInterval);
+  }
+
+  /**
+   * send every satellite agent its position of this tick, and the ones
+   * which decayed a single decayed update
+   */
+  private void pushPositions(OrbitFrame frame) {
+    final int size = frame.size();
+    if (this.decayPushed.length < size) {
+      final int oldSize = this.decayPushed.length;
+      this.decayPushed = Arrays.copyOf(this.decayPushed, size);
+      Arrays.fill(this.decayPushed, oldSize, size, -1);
+    }
+    for (int slot = 0; slot < size; slot++) {
+      final int status = frame.status(slot);
+      final int catalogNumber = frame.catalogNumber(slot);
+      if (status == Sgp4.OK) {
+        this.decayPushed[slot] = -1;
+        command(this.satelliteUris.nodeUri(catalogNumber), PROPAGATED_LANE, Record.create(4)
+            .slot("timestamp", frame.timeMillis())
+            .slot("latitude", frame.get(slot, OrbitFrame.LATITUDE))
+            .slot("longitude", frame.get(slot, OrbitFrame.LONGITUDE))
+            .slot("height", frame.get(slot, OrbitFrame.HEIGHT)));
+      } else if (status == Sgp4.ERROR_DECAYED && this.decayPushed[slot] != catalogNumber) {
+        // the satellite removes itself from the catalog, until then its slot keeps reporting the decay
+        this.decayPushed[slot] = catalogNumber;
+        command(this.satelliteUris.nodeUri(catalogNumber), PROPAGATED_LANE, Record.create(2)
+            .slot("timestamp", frame.timeMillis())
+            .slot("decayed", true));
+      }
+    }
+  }
+
+  @Override
+  public void didStart() {
+    System.out.println("[PropagatorAgent] didStart");
+    this.agentConfig = getProp("config");
+    this.tickInterval = this.agentConfig.get("tickInterval").longValue(DEFAULT_TICK_INTERVAL);
+    if (!SatelliteShards.enabled()) {
+      // /satellite/:id agents are only views in sharded mode, a push would start one per satellite
+      this.positionInterval = this.agentConfig.get("positionInterval").longValue(0L);
+    }
+    this.tickTimer = setTimer(this.tickInterval, this::tick);
+  }
+
+  @Override
+  public void willStop() {
+    if (this.tickTimer != null) {
+      this.tickTimer.cancel();
+    }
+  }
+
+}
@@ -1,10 +1,31 @@
 package swim.sattrack.agents;
 
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import swim.api.SwimLane;
 import swim.api.agent.AbstractAgent;
 import swim.api.lane.CommandLane;
+import swim.api.lane.DemandLane;
+import swim.api.lane.DemandMapLane;
 import swim.api.lane.ValueLane;
-import swim.api.lane.MapLane;
+import swim.api.warp.WarpUplink;
+import swim.concurrent.TimerRef;
+import swim.sattrack.agents.connectors.SatelliteFanOut;
+import swim.sattrack.metrics.Counter;
+import swim.sattrack.metrics.Gauge;
+import swim.sattrack.metrics.LatencyHistogram;
+import swim.sattrack.metrics.Metrics;
+import swim.sattrack.orbit.OrbitCatalog;
+import swim.sattrack.orbit.OrbitHandle;
+import swim.sattrack.orbit.PassPredictor;
+import swim.sattrack.store.CatalogSnapshot;
+import swim.sattrack.store.PassivationStore;
+import swim.sattrack.store.SatelliteState;
+import swim.sattrack.util.TrackRing;
+import swim.structure.Item;
 import swim.structure.Value;
 import swim.structure.Record;
 import swim.uri.Uri;
@@ -15,12 +36,60 @@ import swim.uri.Uri;
  * the TleMessagesAgent when it receives new data from the 
  * Space-Track.org API via our Swim Kafka Connector. 
  *
+ * In sharded mode (see SatelliteShards) the satellite lives in its
+ * SatelliteShardAgent and this agent is only a view of it, started
+ * when a client links to it. It watches the satellite in its shard and
+ * applies the viewUpdate commands the shard sends to the same lanes.
+ * A view closes, and unwatches, once no client has been linked to it
+ * for viewCloseAfter.
+ *
+ * With passivateAfter set an agent which has had no updates and no
+ * links for that long hands its state to the PassivationStore and
+ * stops. The next updateData command or client link starts it again
+ * and it takes its state back before anything else.
  */
 public class SatelliteAgent extends AbstractAgent {
 
-  final private int HISTORY_SIZE = 100; // max number of tracks to keep
+  private static final int DEFAULT_TRACK_HISTORY_SIZE = 100; // max number of tracks to keep
+  private static final int DEFAULT_SPARKLINE_POINTS = 32;
+  private static final Uri AGGREGATION_NODE = Uri.parse("/aggregation");
+  private static final Uri REMOVE_SATELLITE_LANE = Uri.parse("removeSatellite");
+  private static final Uri UPDATE_SATELLITES_LANE = Uri.parse("updateSatellites");
+  private static final Uri WATCH_LANE = Uri.parse("watch");
+  private static final Uri UNWATCH_LANE = Uri.parse("unwatch");
+  private static final String DEFAULT_PASSIVATION_PATH = "snapshot/passivated.log";
+  private static final long DEFAULT_VIEW_CLOSE_AFTER = 60000L;
+  private static final LatencyHistogram END_TO_END_LATENCY = Metrics.shared()
+      .histogram("sattrack_end_to_end_latency_seconds", "time from the kafka record timestamp to the satellite's lastUpdate");
+  private static final Counter PASSIVATIONS = Metrics.shared()
+      .counter("sattrack_satellite_passivations_total", "idle satellite agents passivated");
+  private static final Counter REHYDRATIONS = Metrics.shared()
+      .counter("sattrack_satellite_rehydrations_total", "satellite agents started again from their passivated state");
+  private static final Gauge PASSIVATED = Metrics.shared()
+      .gauge("sattrack_passivated_satellites", "satellites held in the passivation store instead of an agent");
+
   private Value agentConfig; // will hold agent config values from server.recon
   private String swimUrl; 
+  private Uri swimHostUri;
+  private SatelliteRecord record; // short info, track history and snapshot state
+  private TrackRing trackRing; // the record's
+  private long trackInterval; // min ms between track points taken from the propagated position, 0 for none
+  private int sparklinePoints;
+  private int[] sparklineIndexes;
+  private OrbitHandle orbitHandle;
+  private boolean decayReported = false;
+  private Value currentLatitude = Value.absent();
+  private Value currentLongitude = Value.absent();
+  private Value currentHeight = Value.absent();
+  private CueThrottle<DemandLane<Value>> positionThrottle; // latitude, longitude, height and sparkline
+  private CueThrottle<Long> trackThrottle;
+  private int viewOf = -1; // catalog number mirrored from its shard in sharded mode
+  private long passivateAfter; // ms without updates or links before passivating, 0 never
+  private long viewCloseAfter; // ms without links before a view closes
+  private long lastActivity;
+  private TimerRef idleTimer;
+  private TimerRef snapshotTimer; // pending put of our state to the catalog snapshot
+  private final Map<WarpUplink, Boolean> uplinks = new WeakHashMap<>(); // client links, closed ones are pruned
 
   @SwimLane("catalogNumber")
   protected ValueLane<Value> catalogNumber;
@@ -28,11 +97,25 @@ public class SatelliteAgent extends AbstractAgent {
   @SwimLane("name")
   protected ValueLane<Value> name;
 
+  /**
+   * position lanes are demand lanes so a slow downlink is only ever
+   * owed the latest value, what each uplink is sent is rate limited by
+   * positionThrottle
+   */
   @SwimLane("latitude")
-  protected ValueLane<Value> latitude;
+  protected DemandLane<Value> latitude = this.<Value>demandLane()
+    .onCue(uplink -> this.admitPosition(uplink, this.latitude) ? this.currentLatitude : null);
 
   @SwimLane("longitude")
-  protected ValueLane<Value> longitude;
+  protected DemandLane<Value> longitude = this.<Value>demandLane()
+    .onCue(uplink -> this.admitPosition(uplink, this.longitude) ? this.currentLongitude : null);
+
+  /**
+   * height above the WGS-84 ellipsoid in km
+   */
+  @SwimLane("height")
+  protected DemandLane<Value> height = this.<Value>demandLane()
+    .onCue(uplink -> this.admitPosition(uplink, this.height) ? this.currentHeight : null);
 
   /**
    * lane which hold all of the data returned from API for this satellite
@@ -44,11 +127,44 @@ public class SatelliteAgent extends AbstractAgent {
    * rough predictions of where the satellite is and will be
    */
   @SwimLane("tracks")
-  protected MapLane<Long, Value> tracks = this.<Long, Value>mapLane()
-    .didUpdate((key, newValue, oldValue) -> {
-      if (this.tracks.size() > HISTORY_SIZE) {
-        this.tracks.remove(this.tracks.getIndex(0).getKey());
+  protected DemandMapLane<Long, Value> tracks = this.<Long, Value>demandMapLane()
+    .onCue((key, uplink) -> {
+      if (this.trackThrottle != null && !this.trackThrottle.admit(uplink, key)) {
+        return null;
       }
+      final int index = this.trackRing != null ? this.trackRing.indexOf(key) : -1;
+      return index >= 0 ? trackPoint(index) : Value.absent();
+    })
+    .onSync(uplink -> {
+      if (this.trackRing == null) {
+        return Collections.<Long>emptyIterator();
+      }
+      return this.trackThrottle != null ? this.trackThrottle.sync(uplink, this.trackRing.timestamps()) : this.trackRing.timestamps();
+    });
+
+  /**
+   * the track history downsampled to at most sparklinePoints points, oldest first
+   */
+  @SwimLane("sparkline")
+  protected DemandLane<Value> sparkline = this.<Value>demandLane()
+    .onCue(uplink -> {
+      if (!this.admitPosition(uplink, this.sparkline)) {
+        return null;
+      }
+      if (this.trackRing == null) {
+        return Value.absent();
+      }
+      final int count = this.trackRing.downsample(this.sparklinePoints, this.sparklineIndexes);
+      final Record points = Record.create(count);
+      for (int i = 0; i < count; i++) {
+        final int index = this.sparklineIndexes[i];
+        points.item(Record.create(4)
+          .slot("timestamp", this.trackRing.timestamp(index))
+          .slot("lat", (float) this.trackRing.latitude(index))
+          .slot("lng", (float) this.trackRing.longitude(index))
+          .slot("height", (float) this.trackRing.height(index)));
+      }
+      return points;
     });
 
   /**
@@ -67,36 +183,129 @@ public class SatelliteAgent extends AbstractAgent {
   /**
    * command lane used to update satellite data
    * This data comes from Kafka and so the structure matches
-   * the schema in /kafka/tle.avsc
+   * the schema in /kafka/tle.avsc, possibly wrapped with its Kafka
+   * timestamp by the SatelliteFanOut
    */
   @SwimLane("updateData")
   public CommandLane<Value> updateData = this.<Value>commandLane()
       .onCommand((Value newValue) -> {
-        if(!newValue.equals(Value.absent()) && newValue != null) {
-          this.updateSatellite(newValue);
+        if (this.viewOf >= 0) {
+          // sharded, the shard owns the satellite
+          command(SatelliteShards.hostUri(this.viewOf), UPDATE_SATELLITES_LANE, Record.of(newValue));
+        } else if(!newValue.equals(Value.absent()) && newValue != null) {
+          this.lastActivity = System.currentTimeMillis();
+          this.updateSatellite(SatelliteFanOut.vectorOf(newValue), SatelliteFanOut.kafkaTimestampOf(newValue));
         }
       });      
     
+  /**
+   * a vector from the connector whose element set had not changed, cut
+   * down to catalogNumber, latitude, longitude, height, position and
+   * kafkaTimestamp
+   */
+  @SwimLane("updatePosition")
+  public CommandLane<Value> updatePosition = this.<Value>commandLane()
+      .onCommand((Value position) -> {
+        if (this.viewOf >= 0) {
+          command(SatelliteShards.hostUri(this.viewOf), UPDATE_SATELLITES_LANE, Record.of(position));
+        } else if (position.isDefined()) {
+          this.lastActivity = System.currentTimeMillis();
+          this.updateSatellitePosition(position);
+        }
+      });
+
+  /**
+   * our propagated position, pushed by the PropagatorAgent every
+   * positionInterval: {timestamp, latitude, longitude, height}, or
+   * {timestamp, decayed} once the propagator finds we decayed.
+   * Not an update, so it does not keep us from passivating.
+   */
+  @SwimLane("propagated")
+  public CommandLane<Value> propagated = this.<Value>commandLane()
+      .onCommand((Value position) -> {
+        if (this.viewOf < 0) {
+          this.updatePropagated(position);
+        }
+      });
+
+  /**
+   * used by the aggregation agent when it has dropped this satellite
+   * and needs the full short info again instead of just the changes
+   */
+  @SwimLane("resendInfo")
+  public CommandLane<Value> resendInfo = this.<Value>commandLane()
+      .onCommand((Value value) -> {
+        if (this.viewOf >= 0) {
+          return;
+        }
+        this.record.shortInfo().reset();
+        if (this.fullRowData.get() != null && this.fullRowData.get().isDefined()) {
+          this.record.sendShortInfo(this.fullRowData.get(), AggregationChannel.shared());
+        }
+      });
+
+  /**
+   * sent by the SnapshotAgent on startup, the satellite takes its state
+   * from the last snapshot unless Kafka has already updated it
+   */
+  @SwimLane("restore")
+  public CommandLane<Value> restore = this.<Value>commandLane()
+      .onCommand((Value catalogId) -> {
+        if (this.viewOf >= 0) {
+          return;
+        }
+        final SatelliteState state = CatalogSnapshot.shared().takeRestored(catalogId.intValue(-1));
+        if (state != null && this.lastUpdate.get() == null) {
+          this.restoreState(state);
+        }
+      });
+
+  /**
+   * the state of our satellite sent by its shard in sharded mode:
+   * the full row when it changed, the position and new track points
+   */
+  @SwimLane("viewUpdate")
+  public CommandLane<Value> viewUpdate = this.<Value>commandLane()
+      .onCommand((Value view) -> {
+        final Value row = view.get("row");
+        if (row.isDefined()) {
+          this.fullRowData.set(row);
+          setIfChanged(this.catalogNumber, row.get("catalogNumber"));
+          setIfChanged(this.name, row.get("name"));
+          setIfChanged(this.tle, row.get("tle"));
+        }
+        this.updatePositionLanes(view.get("latitude"), view.get("longitude"), view.get("height"));
+        for (Item point : view.get("tracks")) {
+          this.addTrackPoint(point.get("timestamp").longValue(0L), point.get("lat").doubleValue(0.0),
+              point.get("lng").doubleValue(0.0), point.get("height").doubleValue(0.0));
+        }
+        final long updated = view.get("lastUpdate").longValue(0L);
+        if (updated > 0L && (this.lastUpdate.get() == null || this.lastUpdate.get() != updated)) {
+          this.lastUpdate.set(updated);
+        }
+      });
+
   /**
    * Method to parse out the data sent from kafka
    */
-  private void updateSatellite(Value stateData) {
+  private void updateSatellite(Value stateData, long kafkaTimestamp) {
     long timestamp = System.currentTimeMillis();
 
     this.fullRowData.set(stateData); // store new state data on fullState Value Lane
-    this.catalogNumber.set(stateData.get("catalogNumber"));
-    this.name.set(stateData.get("name"));
-    this.latitude.set(stateData.get("latitude"));
-    this.longitude.set(stateData.get("longitude"));
-    this.tle.set(stateData.get("tle"));
-
-    Value currentTrackPoint = Record.create(2)
-      .slot("lat", stateData.get("latitude").floatValue(0f))
-      .slot("lng", stateData.get("longitude").floatValue(0f))
-      .toValue();
-  
-    this.tracks.put(timestamp, currentTrackPoint);    
+    // only set lanes which changed so downlinks are not sent duplicate values
+    setIfChanged(this.catalogNumber, stateData.get("catalogNumber"));
+    setIfChanged(this.name, stateData.get("name"));
+    this.updatePositionLanes(stateData.get("latitude"), stateData.get("longitude"), stateData.get("height"));
+    if (setIfChanged(this.tle, stateData.get("tle"))
+        || this.orbitHandle != null && this.orbitHandle.isReleased() && !this.decayReported) {
+      // new elements, or ours were dropped from the orbit catalog when the aggregation expired us
+      this.submitElements(stateData.get("catalogNumber").intValue(-1), this.tle.get());
+    }
 
+    // track point and short info
+    if (this.record.update(stateData, timestamp, AggregationChannel.shared(), this::removeTrack)) {
+      this.cueTrack(timestamp);
+    }
 
     // tracks are based on TLE propagation done by NodeJS prior to sending data into Kafka
     // Value tracks = stateData.get("tracks");
@@ -115,35 +324,292 @@ public class SatelliteAgent extends AbstractAgent {
   
     // }
 
-    // create record of info to send to aggregation agent for this satellite
-    Record shortInfo = Record.create()
-      .slot("name", stateData.get("name"))
-      .slot("catalogNumber", stateData.get("catalogNumber"))
-      .slot("intlDesignator", stateData.get("intlDesignator"))
-      .slot("type", stateData.get("type"))
-      .slot("orbitalPeriod", stateData.get("orbitalPeriod"))
-      .slot("tle", stateData.get("tle"))
-      .slot("position", stateData.get("position"))
-      .slot("height", stateData.get("height"))
-      .slot("latitude", stateData.get("latitude"))
-      .slot("longitude", stateData.get("longitude"))
-      .slot("countryCode", stateData.get("countryCode"))
-      .slot("rcsSize", stateData.get("rcsSize"))
-      .slot("launchSiteCode", stateData.get("launchSiteCode"));
-
-    // send into to aggregation
+    this.lastUpdate.set(timestamp); // update lastUpdate Value Lane
+    this.saveState();
+    if (kafkaTimestamp >= 0L) {
+      END_TO_END_LATENCY.record((timestamp - kafkaTimestamp) * 1000L);
+    }
+
+  }
+
+  /**
+   * the position, track point and position short info of an update,
+   * without the full row and TLE checks of updateSatellite
+   */
+  private void updateSatellitePosition(Value position) {
+    final long timestamp = System.currentTimeMillis();
+    this.updatePositionLanes(position.get("latitude"), position.get("longitude"), position.get("height"));
+    if (this.record.updatePosition(position, timestamp, AggregationChannel.shared(), this::removeTrack)) {
+      this.cueTrack(timestamp);
+    }
+    this.lastUpdate.set(timestamp);
+    this.saveState();
+    final long kafkaTimestamp = SatelliteFanOut.kafkaTimestampOf(position);
+    if (kafkaTimestamp >= 0L) {
+      END_TO_END_LATENCY.record((timestamp - kafkaTimestamp) * 1000L);
+    }
+  }
+
+  private void restoreState(SatelliteState state) {
+    final Value row = state.row();
+    this.fullRowData.set(row);
+    setIfChanged(this.catalogNumber, row.get("catalogNumber"));
+    setIfChanged(this.name, row.get("name"));
+    if (setIfChanged(this.tle, row.get("tle"))) {
+      this.submitElements(state.catalogNumber(), this.tle.get());
+    }
+    this.updatePositionLanes(Value.fromObject(state.latitude()), Value.fromObject(state.longitude()),
+        Value.fromObject(state.height()));
+    this.record.restore(state);
+    for (int i = 0; i < state.trackSize(); i++) {
+      this.addTrackPoint(state.trackTimestamp(i), state.trackLatitude(i), state.trackLongitude(i), state.trackHeight(i));
+    }
+    this.record.sendShortInfo(row, AggregationChannel.shared());
+    this.lastUpdate.set(state.lastUpdate());
+    CatalogSnapshot.shared().put(state);
+  }
+
+  /**
+   * our row, position or track history changed, hand them to the
+   * catalog snapshot once per snapshot interval rather than copying the
+   * track history on every update. Called on Kafka updates and new track
+   * points, not on every propagated position.
+   */
+  private void saveState() {
+    if (this.snapshotTimer == null || !this.snapshotTimer.isScheduled()) {
+      this.snapshotTimer = setTimer(CatalogSnapshot.shared().interval(), this::putState);
+    }
+  }
+
+  private void putState() {
+    final SatelliteState state = this.record.toState();
+    if (state != null) {
+      CatalogSnapshot.shared().put(state);
+    }
+  }
+
+  /**
+   * drop a pending saveState, true when there was one
+   */
+  private boolean cancelSaveState() {
+    if (this.snapshotTimer != null && this.snapshotTimer.isScheduled()) {
+      this.snapshotTimer.cancel();
+      return true;
+    }
+    return false;
+  }
+
+  private void didLink(WarpUplink uplink) {
+    this.uplinks.put(uplink, Boolean.TRUE);
+    this.lastActivity = System.currentTimeMillis();
+  }
+
+  /**
+   * watch our lanes for client links, checking every idleAfter whether
+   * we are idle
+   */
+  private void trackLinks(long idleAfter) {
+    this.catalogNumber.didUplink(this::didLink);
+    this.name.didUplink(this::didLink);
+    this.latitude.didUplink(this::didLink);
+    this.longitude.didUplink(this::didLink);
+    this.height.didUplink(this::didLink);
+    this.fullRowData.didUplink(this::didLink);
+    this.tracks.didUplink(this::didLink);
+    this.sparkline.didUplink(this::didLink);
+    this.tle.didUplink(this::didLink);
+    this.lastUpdate.didUplink(this::didLink);
+    this.lastActivity = System.currentTimeMillis();
+    this.idleTimer = setTimer(idleAfter, this::checkIdle);
+  }
+
+  /**
+   * timer callback which passivates us, or closes us when we are a
+   * view, once we have been idle for that long with no client linked
+   */
+  private void checkIdle() {
+    final long idleAfter = this.viewOf >= 0 ? this.viewCloseAfter : this.passivateAfter;
+    final long idle = System.currentTimeMillis() - this.lastActivity;
+    if (idle < idleAfter) {
+      this.idleTimer.reschedule(idleAfter - idle);
+      return;
+    }
+    this.uplinks.keySet().removeIf(uplink -> !uplink.isConnected());
+    if (this.uplinks.isEmpty()) {
+      if (this.viewOf >= 0) {
+        // willStop unwatches
+        this.idleTimer = null;
+        close();
+        return;
+      } else if (this.passivate()) {
+        return;
+      }
+    }
+    this.idleTimer.reschedule(idleAfter);
+  }
+
+  /**
+   * hand our state to the passivation store and stop, the store drops
+   * it from the snapshot once it is written
+   */
+  private boolean passivate() {
+    final SatelliteState state = this.record.toState();
+    if (state == null) {
+      return false;
+    }
+    this.cancelSaveState();
+    CatalogSnapshot.shared().put(state);
+    if (!PassivationStore.shared().passivate(state)) {
+      return false;
+    }
+    this.releaseOrbit();
+    this.idleTimer = null;
+    PASSIVATIONS.increment();
+    PASSIVATED.set(PassivationStore.shared().size());
+    close();
+    return true;
+  }
+
+  /**
+   * take back our state if we were passivated
+   */
+  private void rehydrate(int catalogId) {
+    final SatelliteState state = PassivationStore.shared().take(catalogId);
+    if (state != null) {
+      this.restoreState(state);
+      REHYDRATIONS.increment();
+      PASSIVATED.set(PassivationStore.shared().size());
+    }
+  }
+
+  /**
+   * append to the track history and cue the new point
+   */
+  private void addTrackPoint(long timestamp, double lat, double lng, double alt) {
+    if (this.record.addTrackPoint(timestamp, lat, lng, alt, this::removeTrack)) {
+      this.cueTrack(timestamp);
+    }
+  }
+
+  private void cueTrack(long timestamp) {
+    this.trackThrottle.cue(timestamp);
+    this.positionThrottle.cue(this.sparkline);
+  }
+
+  private void removeTrack(long timestamp) {
+    this.trackThrottle.remove(timestamp);
+    this.tracks.remove(timestamp);
+  }
+
+  /**
+   * cue the position lanes whose value changed
+   */
+  private void updatePositionLanes(Value lat, Value lng, Value alt) {
+    if (!lat.equals(this.currentLatitude)) {
+      this.currentLatitude = lat;
+      this.positionThrottle.cue(this.latitude);
+    }
+    if (!lng.equals(this.currentLongitude)) {
+      this.currentLongitude = lng;
+      this.positionThrottle.cue(this.longitude);
+    }
+    if (!alt.equals(this.currentHeight)) {
+      this.currentHeight = alt;
+      this.positionThrottle.cue(this.height);
+    }
+  }
+
+  private Value trackPoint(int index) {
+    return Record.create(3)
+      .slot("lat", (float) this.trackRing.latitude(index))
+      .slot("lng", (float) this.trackRing.longitude(index))
+      .slot("height", (float) this.trackRing.height(index));
+  }
+
+  private static boolean setIfChanged(ValueLane<Value> lane, Value newValue) {
+    if (newValue.equals(lane.get())) {
+      return false;
+    }
+    lane.set(newValue);
+    return true;
+  }
+
+  /**
+   * hand a new TLE to the shared orbit catalog for propagation and
+   * to the pass predictor. The last two items of the tle lane are the
+   * two element lines.
+   */
+  private void submitElements(int catalogId, Value tleLines) {
+    final int lineCount = tleLines.length();
+    if (catalogId < 0 || lineCount < 2) {
+      return;
+    }
+    if (this.orbitHandle == null) {
+      this.orbitHandle = new OrbitHandle(catalogId);
+    }
+    final String line1 = tleLines.getItem(lineCount - 2).stringValue();
+    final String line2 = tleLines.getItem(lineCount - 1).stringValue();
     try {
-      command(Uri.parse(this.swimUrl), Uri.parse("/aggregation"), Uri.parse("addSatellite"), shortInfo); 
-    } catch(Exception ex) {
-      // TODO: find out why this throws a null pointer sometimes when data first starts coming in
-      // the null pointers do not seem to affect anything
-      // ex.printStackTrace();
+      OrbitCatalog.shared().submit(this.orbitHandle, line1, line2);
+      PassPredictor.shared().update(catalogId, line1, line2);
+    } catch (Exception ex) {
+      System.out.println(String.format("[SatelliteAgent] bad TLE for %d", catalogId));
     }
-    
-    this.lastUpdate.set(timestamp); // update lastUpdate Value Lane
+  }
 
+  /**
+   * whether an uplink of a position lane may be sent its value now, see CueThrottle
+   */
+  private boolean admitPosition(WarpUplink uplink, DemandLane<Value> lane) {
+    return this.positionThrottle == null || this.positionThrottle.admit(uplink, lane);
+  }
+
+  /**
+   * stop propagating and predicting passes for us until we submit our
+   * elements again, once we decayed or passivate
+   */
+  private void releaseOrbit() {
+    if (this.orbitHandle != null && !this.orbitHandle.isReleased()) {
+      OrbitCatalog.shared().remove(this.orbitHandle);
+      PassPredictor.shared().remove(this.orbitHandle.catalogNumber());
+    }
   }
 
+  /**
+   * copy a position pushed by the propagator onto the position lanes,
+   * adding a track point every trackInterval
+   */
+  private void updatePropagated(Value position) {
+    if (this.orbitHandle == null) {
+      // pushed before we took our state back
+      return;
+    }
+    if (position.get("decayed").booleanValue(false)) {
+      if (!this.decayReported) {
+        // let the aggregation drop us from its lists and counts
+        this.decayReported = true;
+        this.releaseOrbit();
+        this.cancelSaveState();
+        CatalogSnapshot.shared().remove(this.orbitHandle.catalogNumber());
+        command(this.swimHostUri, AGGREGATION_NODE, REMOVE_SATELLITE_LANE,
+            Value.fromObject(this.orbitHandle.catalogNumber()));
+      }
+      return;
+    }
+    this.decayReported = false;
+    final Value lat = position.get("latitude");
+    final Value lng = position.get("longitude");
+    final Value alt = position.get("height");
+    this.updatePositionLanes(lat, lng, alt);
+    this.record.position(lat.doubleValue(0.0), lng.doubleValue(0.0), alt.doubleValue(0.0));
+    final long timeMillis = position.get("timestamp").longValue(0L);
+    final int lastTrack = this.trackRing.size() - 1;
+    if (this.trackInterval > 0L
+        && (lastTrack < 0 || timeMillis - this.trackRing.timestamp(lastTrack) >= this.trackInterval)) {
+      this.addTrackPoint(timeMillis, lat.doubleValue(0.0), lng.doubleValue(0.0), alt.doubleValue(0.0));
+      this.saveState();
+    }
+  }
 
   /**
     Standard startup method called automatically when WebAgent is created
@@ -152,6 +618,51 @@ public class SatelliteAgent extends AbstractAgent {
   public void didStart() {
     this.agentConfig = getProp("config"); // grab config value for this agent from server.recon
     this.swimUrl = this.agentConfig.get("swimUrl").stringValue(); //update our swim url
+    this.swimHostUri = Uri.parse(this.swimUrl);
+    this.record = new SatelliteRecord(this.agentConfig.get("trackHistorySize").intValue(DEFAULT_TRACK_HISTORY_SIZE),
+        this.agentConfig.get("trackRetention").longValue(0L));
+    this.trackRing = this.record.trackRing();
+    this.trackInterval = this.agentConfig.get("trackInterval").longValue(0L);
+    this.sparklinePoints = Math.max(1, this.agentConfig.get("sparklinePoints").intValue(DEFAULT_SPARKLINE_POINTS));
+    this.sparklineIndexes = new int[this.sparklinePoints];
+    final int laneUpdateRate = this.agentConfig.get("laneUpdatesPerSecond").intValue(0);
+    this.positionThrottle = new CueThrottle<>(this, laneUpdateRate, DemandLane::cue);
+    this.trackThrottle = new CueThrottle<>(this, laneUpdateRate, this.tracks::cue);
+    if (SatelliteShards.enabled()) {
+      this.viewOf = getProp("id").intValue(-1);
+      command(SatelliteShards.hostUri(this.viewOf), WATCH_LANE, Value.fromObject(this.viewOf));
+      this.viewCloseAfter = this.agentConfig.get("viewCloseAfter").longValue(DEFAULT_VIEW_CLOSE_AFTER);
+      this.trackLinks(this.viewCloseAfter);
+      return;
+    }
+    this.passivateAfter = this.agentConfig.get("passivateAfter").longValue(0L);
+    if (this.passivateAfter > 0L) {
+      try {
+        PassivationStore.shared().open(Paths.get(this.agentConfig.get("passivationPath").stringValue(DEFAULT_PASSIVATION_PATH)));
+        this.rehydrate(getProp("id").intValue(-1));
+      } catch (Exception ex) {
+        System.out.println("[SatelliteAgent] unable to open the passivation store");
+        ex.printStackTrace();
+      }
+      this.trackLinks(this.passivateAfter);
+    }
+  }
+
+  @Override
+  public void willStop() {
+    if (this.viewOf >= 0) {
+      command(SatelliteShards.hostUri(this.viewOf), UNWATCH_LANE, Value.fromObject(this.viewOf));
+    }
+    if (this.idleTimer != null) {
+      this.idleTimer.cancel();
+    }
+    if (this.cancelSaveState()) {
+      this.putState();
+    }
+    if (this.positionThrottle != null) {
+      this.positionThrottle.cancel();
+      this.trackThrottle.cancel();
+    }
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+package swim.sattrack.agents;
+
+import java.util.function.LongConsumer;
+
+import swim.sattrack.store.SatelliteState;
+import swim.sattrack.util.TrackRing;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * The plain state of a SatelliteAgent next to its lanes: the short info
+ * last handed to the aggregation, the track history and the latest row
+ * and position kept for the catalog snapshot. The agent runs the work
+ * of an update which needs no lanes through here, so does the update
+ * benchmark. Not thread safe, owned by a single agent.
+ */
+final class SatelliteRecord {
+
+  private final ShortInfoDiff shortInfo = new ShortInfoDiff();
+  private final TrackRing trackRing;
+  private final long trackRetention; // ms of track history to keep, 0 keeps every point the ring holds
+  private int catalogId = -1;
+  private long lastUpdate;
+  private Value row = Value.absent();
+  private double latitude;
+  private double longitude;
+  private double height;
+
+  SatelliteRecord(int trackHistorySize, long trackRetention) {
+    this.trackRing = new TrackRing(trackHistorySize);
+    this.trackRetention = trackRetention;
+  }
+
+  TrackRing trackRing() {
+    return this.trackRing;
+  }
+
+  ShortInfoDiff shortInfo() {
+    return this.shortInfo;
+  }
+
+  /**
+   * a Kafka row: keep it and its position, append the track point and
+   * hand the changed short info to the channel. Track points evicted to
+   * make room are passed to removedTrack, false when the point was older
+   * than our latest one and not appended.
+   */
+  boolean update(Value stateData, long timestamp, AggregationChannel channel, LongConsumer removedTrack) {
+    this.row = stateData;
+    this.catalogId = stateData.get("catalogNumber").intValue(this.catalogId);
+    return this.updatePosition(stateData, this.shortInfo.diff(stateData), timestamp, channel, removedTrack);
+  }
+
+  /**
+   * a position only update, like update without the row
+   */
+  boolean updatePosition(Value position, long timestamp, AggregationChannel channel, LongConsumer removedTrack) {
+    return this.updatePosition(position, this.shortInfo.diffPosition(position), timestamp, channel, removedTrack);
+  }
+
+  private boolean updatePosition(Value position, Record changed, long timestamp, AggregationChannel channel,
+                                 LongConsumer removedTrack) {
+    final double lat = position.get("latitude").doubleValue(0.0);
+    final double lng = position.get("longitude").doubleValue(0.0);
+    final double alt = position.get("height").doubleValue(0.0);
+    this.position(lat, lng, alt);
+    final boolean appended = this.addTrackPoint(timestamp, lat, lng, alt, removedTrack);
+    this.offer(changed, channel);
+    this.lastUpdate = timestamp;
+    return appended;
+  }
+
+  /**
+   * take a restored or passivated state back, its track points are
+   * appended through addTrackPoint by the caller
+   */
+  void restore(SatelliteState state) {
+    this.row = state.row();
+    this.catalogId = state.catalogNumber();
+    this.lastUpdate = state.lastUpdate();
+    this.position(state.latitude(), state.longitude(), state.height());
+  }
+
+  /**
+   * a position which is not a Kafka update, such as a propagated one
+   */
+  void position(double lat, double lng, double alt) {
+    this.latitude = lat;
+    this.longitude = lng;
+    this.height = alt;
+  }
+
+  /**
+   * append to the track history, evicting points which are past the
+   * ring capacity or older than trackRetention. False when the point is
+   * older than our latest one, which is not in the ring to cue.
+   */
+  boolean addTrackPoint(long timestamp, double lat, double lng, double alt, LongConsumer removedTrack) {
+    final long evicted = this.trackRing.append(timestamp, lat, lng, alt);
+    if (evicted == TrackRing.REJECTED) {
+      return false;
+    } else if (evicted != TrackRing.NONE) {
+      removedTrack.accept(evicted);
+    }
+    if (this.trackRetention > 0L) {
+      final long cutoff = timestamp - this.trackRetention;
+      while (this.trackRing.size() > 1 && this.trackRing.oldestTimestamp() < cutoff) {
+        removedTrack.accept(this.trackRing.removeOldest());
+      }
+    }
+    return true;
+  }
+
+  /**
+   * queue the short info fields which changed since our last update for
+   * the aggregation agent, or just that we were updated when none did
+   */
+  void sendShortInfo(Value stateData, AggregationChannel channel) {
+    this.offer(this.shortInfo.diff(stateData), channel);
+  }
+
+  private void offer(Record changed, AggregationChannel channel) {
+    if (changed != null) {
+      channel.offer(changed);
+    } else if (this.catalogId >= 0) {
+      channel.touch(this.catalogId);
+    }
+  }
+
+  /**
+   * our latest row, position and track history, null before the first update
+   */
+  SatelliteState toState() {
+    if (this.catalogId < 0 || this.lastUpdate == 0L) {
+      return null;
+    }
+    final int size = this.trackRing.size();
+    final long[] timestamps = new long[size];
+    final float[] latitudes = new float[size];
+    final float[] longitudes = new float[size];
+    final float[] heights = new float[size];
+    for (int i = 0; i < size; i++) {
+      timestamps[i] = this.trackRing.timestamp(i);
+      latitudes[i] = (float) this.trackRing.latitude(i);
+      longitudes[i] = (float) this.trackRing.longitude(i);
+      heights[i] = (float) this.trackRing.height(i);
+    }
+    return new SatelliteState(this.catalogId, this.lastUpdate, this.row,
+        this.latitude, this.longitude, this.height, timestamps, latitudes, longitudes, heights);
+  }
+
+}
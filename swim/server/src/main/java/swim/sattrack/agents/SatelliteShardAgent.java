@@ -0,0 +1,336 @@
+package swim.sattrack.agents;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import swim.api.SwimLane;
+import swim.api.agent.AbstractAgent;
+import swim.api.lane.CommandLane;
+import swim.api.lane.ValueLane;
+import swim.concurrent.TimerRef;
+import swim.sattrack.agents.connectors.SatelliteFanOut;
+import swim.sattrack.metrics.Gauge;
+import swim.sattrack.metrics.LatencyHistogram;
+import swim.sattrack.metrics.Metrics;
+import swim.sattrack.orbit.OrbitCatalog;
+import swim.sattrack.orbit.OrbitFrame;
+import swim.sattrack.orbit.OrbitHandle;
+import swim.sattrack.orbit.PassPredictor;
+import swim.sattrack.store.CatalogSnapshot;
+import swim.sattrack.store.SatelliteState;
+import swim.structure.Item;
+import swim.structure.Record;
+import swim.structure.Value;
+import swim.uri.Uri;
+
+/**
+ * A Satellite Shard Agent hosts every satellite whose catalog number
+ * hashes to its shard (see SatelliteShards), in sharded mode only.
+ * It does what a SatelliteAgent does for each of them, reporting to
+ * the aggregation agent, the orbit catalog, the pass predictor and the
+ * snapshot, but keeps them in one SatelliteShardStore instead of an
+ * agent with its own lanes and timers per satellite.
+ *
+ * A /satellite/:id agent which a client links to watches its satellite
+ * here and is sent its state whenever it changes, so the per satellite
+ * lanes keep working for the satellites someone is looking at.
+ */
+public class SatelliteShardAgent extends AbstractAgent implements SatelliteShardStore.Listener {
+
+  private static final int DEFAULT_TRACK_HISTORY_SIZE = 16;
+  private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+  private static final Uri AGGREGATION_NODE = Uri.parse("/aggregation");
+  private static final Uri REMOVE_SATELLITE_LANE = Uri.parse("removeSatellite");
+  private static final Uri VIEW_UPDATE_LANE = Uri.parse("viewUpdate");
+  private static final LatencyHistogram END_TO_END_LATENCY = Metrics.shared()
+      .histogram("sattrack_end_to_end_latency_seconds", "time from the kafka record timestamp to the satellite's lastUpdate");
+  private static final Gauge SHARD_SATELLITES = Metrics.shared()
+      .gauge("sattrack_shard_satellites", "satellites hosted per shard", "shard");
+
+  private Value agentConfig;
+  private String shardId;
+  private Uri swimHostUri;
+  private long positionInterval;
+  private long trackInterval;
+  private TimerRef positionTimer;
+  private long lastPositionTick = -1L;
+  private SatelliteShardStore store;
+  private final BitSet changedRows = new BitSet(); // rows whose state the snapshot is owed
+  private TimerRef snapshotTimer;
+  private final Map<Integer, View> watched = new HashMap<>(); // catalog number to its view
+
+  /**
+   * how many satellites this shard hosts and how many are watched
+   */
+  @SwimLane("stats")
+  protected ValueLane<Value> stats = this.<Value>valueLane();
+
+  /**
+   * a list of satellite vectors, in the schema of /kafka/tle.avsc, or
+   * position only updates without a tle from the connector's dedup,
+   * either possibly wrapped with a Kafka timestamp by the SatelliteFanOut
+   */
+  @SwimLane("updateSatellites")
+  public CommandLane<Value> updateSatellites = this.<Value>commandLane()
+      .onCommand((Value vectors) -> {
+        final long timestamp = System.currentTimeMillis();
+        for (Item item : vectors) {
+          final Value update = item.toValue();
+          this.updateSatellite(SatelliteFanOut.vectorOf(update), SatelliteFanOut.kafkaTimestampOf(update), timestamp);
+        }
+        SHARD_SATELLITES.set(this.store.size(), this.shardId);
+      });
+
+  /**
+   * used by the aggregation agent when it has dropped a satellite and
+   * needs its full short info again. The value is the catalog number.
+   */
+  @SwimLane("resendInfo")
+  public CommandLane<Value> resendInfo = this.<Value>commandLane()
+      .onCommand((Value catalogId) -> {
+        final int row = this.store.row(catalogId.intValue(-1));
+        if (row >= 0) {
+          this.store.resendShortInfo(row, this);
+        }
+      });
+
+  /**
+   * sent by the SnapshotAgent on startup for each satellite of this shard in the snapshot
+   */
+  @SwimLane("restore")
+  public CommandLane<Value> restore = this.<Value>commandLane()
+      .onCommand((Value catalogId) -> {
+        final SatelliteState state = CatalogSnapshot.shared().takeRestored(catalogId.intValue(-1));
+        if (state != null && this.store.restore(state, this) >= 0) {
+          CatalogSnapshot.shared().put(state);
+          this.pushView(state.catalogNumber(), true);
+        }
+      });
+
+  /**
+   * a /satellite/:id view started, send it that satellite from now on
+   */
+  @SwimLane("watch")
+  public CommandLane<Value> watch = this.<Value>commandLane()
+      .onCommand((Value catalogId) -> {
+        final int id = catalogId.intValue(-1);
+        if (id >= 0) {
+          View view = this.watched.get(id);
+          if (view == null) {
+            view = new View(id);
+            this.watched.put(id, view);
+          }
+          view.watchers += 1;
+          this.pushView(view, true);
+        }
+      });
+
+  @SwimLane("unwatch")
+  public CommandLane<Value> unwatch = this.<Value>commandLane()
+      .onCommand((Value catalogId) -> {
+        final int id = catalogId.intValue(-1);
+        final View view = this.watched.get(id);
+        if (view != null && --view.watchers == 0) {
+          this.watched.remove(id);
+        }
+      });
+
+  private void updateSatellite(Value vector, long kafkaTimestamp, long timestamp) {
+    final boolean full = vector.get("tle").isDefined();
+    final int row = full ? this.store.update(vector, timestamp, this) : this.store.updatePosition(vector, timestamp, this);
+    if (row < 0) {
+      return;
+    }
+    this.saveState(row);
+    if (kafkaTimestamp >= 0L) {
+      END_TO_END_LATENCY.record((timestamp - kafkaTimestamp) * 1000L);
+    }
+    this.pushView(this.store.catalogNumber(row), full);
+  }
+
+  /**
+   * a satellite's row, position or track history changed, the snapshot
+   * is handed its state once per snapshot interval
+   */
+  private void saveState(int row) {
+    this.changedRows.set(row);
+    if (this.snapshotTimer == null || !this.snapshotTimer.isScheduled()) {
+      this.snapshotTimer = setTimer(CatalogSnapshot.shared().interval(), this::putStates);
+    }
+  }
+
+  private void putStates() {
+    for (int row = this.changedRows.nextSetBit(0); row >= 0; row = this.changedRows.nextSetBit(row + 1)) {
+      CatalogSnapshot.shared().put(this.store.toState(row));
+    }
+    this.changedRows.clear();
+  }
+
+  private void pushView(int catalogId, boolean full) {
+    if (!this.watched.isEmpty()) {
+      final View view = this.watched.get(catalogId);
+      if (view != null) {
+        this.pushView(view, full);
+      }
+    }
+  }
+
+  /**
+   * send the state of a watched satellite to its /satellite/:id view,
+   * with the full row and track history or just the position and latest track point
+   */
+  private void pushView(View watchedView, boolean full) {
+    final int catalogId = watchedView.catalogNumber;
+    final int row = this.store.row(catalogId);
+    if (row < 0) {
+      return;
+    }
+    final int points = this.store.trackSize(row);
+    final int first = full ? 0 : Math.max(0, points - 1);
+    final Record tracks = Record.create(points - first);
+    for (int i = first; i < points; i++) {
+      tracks.item(Record.create(4)
+          .slot("timestamp", this.store.trackTimestamp(row, i))
+          .slot("lat", this.store.trackLatitude(row, i))
+          .slot("lng", this.store.trackLongitude(row, i))
+          .slot("height", this.store.trackHeight(row, i)));
+    }
+    final Record view = Record.create(7)
+        .slot("catalogNumber", catalogId)
+        .slot("latitude", this.store.latitude(row))
+        .slot("longitude", this.store.longitude(row))
+        .slot("height", this.store.height(row))
+        .slot("lastUpdate", this.store.lastUpdate(row))
+        .slot("tracks", tracks);
+    if (full && this.store.fullRow(row) != null) {
+      view.slot("row", this.store.fullRow(row));
+    }
+    command(watchedView.nodeUri, VIEW_UPDATE_LANE, view);
+  }
+
+  @Override
+  public void didChangeShortInfo(Record changed) {
+    AggregationChannel.shared().offer(changed);
+  }
+
+  @Override
+  public void didUpdateUnchanged(int row) {
+    AggregationChannel.shared().touch(this.store.catalogNumber(row));
+  }
+
+  /**
+   * hand a new TLE to the shared orbit catalog and the pass predictor,
+   * the last two items of tle are the element lines
+   */
+  @Override
+  public void didChangeElements(int row, Value tleLines) {
+    final int catalogId = this.store.catalogNumber(row);
+    final int lineCount = tleLines.length();
+    if (lineCount < 2) {
+      return;
+    }
+    OrbitHandle handle = this.store.orbitHandle(row);
+    if (handle == null) {
+      handle = new OrbitHandle(catalogId);
+      this.store.setOrbitHandle(row, handle);
+    }
+    final String line1 = tleLines.getItem(lineCount - 2).stringValue();
+    final String line2 = tleLines.getItem(lineCount - 1).stringValue();
+    try {
+      OrbitCatalog.shared().submit(handle, line1, line2);
+      PassPredictor.shared().update(catalogId, line1, line2);
+    } catch (Exception ex) {
+      System.out.println(String.format("[SatelliteShardAgent] bad TLE for %d", catalogId));
+    }
+  }
+
+  @Override
+  public void didTrack(int row) {
+    this.saveState(row);
+  }
+
+  /**
+   * let the aggregation drop a decayed satellite from its lists and counts
+   */
+  @Override
+  public void didDecay(int row) {
+    final int catalogId = this.store.catalogNumber(row);
+    // stop propagating and predicting it until a new element set arrives
+    OrbitCatalog.shared().remove(this.store.orbitHandle(row));
+    PassPredictor.shared().remove(catalogId);
+    this.changedRows.clear(row);
+    CatalogSnapshot.shared().remove(catalogId);
+    command(this.swimHostUri, AGGREGATION_NODE, REMOVE_SATELLITE_LANE, Value.fromObject(catalogId));
+  }
+
+  /**
+   * timer callback which copies the propagated positions of a new tick into the store
+   */
+  private void updatePositions() {
+    final OrbitFrame frame = OrbitCatalog.shared().acquireFrame();
+    if (frame.tick() != this.lastPositionTick) {
+      this.lastPositionTick = frame.tick();
+      try {
+        this.store.propagate(frame, this.trackInterval, this);
+      } catch (Exception ex) {
+        ex.printStackTrace();
+      } finally {
+        OrbitCatalog.shared().releaseFrame(frame);
+      }
+      for (View view : this.watched.values()) {
+        this.pushView(view, false);
+      }
+      this.stats.set(Record.create(3)
+          .slot("shard", this.shardId)
+          .slot("satellites", this.store.size())
+          .slot("watched", this.watched.size()));
+    } else {
+      OrbitCatalog.shared().releaseFrame(frame);
+    }
+    this.positionTimer.reschedule(this.positionInterval);
+  }
+
+  @Override
+  public void didStart() {
+    this.agentConfig = getProp("config");
+    this.shardId = getProp("id").stringValue("0");
+    this.swimHostUri = Uri.parse(this.agentConfig.get("swimUrl").stringValue());
+    this.store = new SatelliteShardStore(this.agentConfig.get("initialCapacity").intValue(DEFAULT_INITIAL_CAPACITY),
+        this.agentConfig.get("trackHistorySize").intValue(DEFAULT_TRACK_HISTORY_SIZE));
+    this.trackInterval = this.agentConfig.get("trackInterval").longValue(0L);
+    this.positionInterval = this.agentConfig.get("positionInterval").longValue(0L);
+    if (this.positionInterval > 0L) {
+      this.positionTimer = setTimer(this.positionInterval, this::updatePositions);
+    }
+  }
+
+  @Override
+  public void willStop() {
+    if (this.positionTimer != null) {
+      this.positionTimer.cancel();
+    }
+    if (this.snapshotTimer != null) {
+      this.snapshotTimer.cancel();
+      this.putStates();
+    }
+    SHARD_SATELLITES.remove(this.shardId);
+  }
+
+  /**
+   * a satellite watched by /satellite/:id views, with its node uri parsed once
+   */
+  private static final class View {
+
+    final int catalogNumber;
+    final Uri nodeUri;
+    int watchers;
+
+    View(int catalogNumber) {
+      this.catalogNumber = catalogNumber;
+      this.nodeUri = Uri.parse("/satellite/" + catalogNumber);
+    }
+
+  }
+
+}
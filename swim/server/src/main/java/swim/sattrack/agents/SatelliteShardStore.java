@@ -0,0 +1,392 @@
+package swim.sattrack.agents;
+
+import java.util.Arrays;
+
+import swim.sattrack.orbit.OrbitFrame;
+import swim.sattrack.orbit.OrbitHandle;
+import swim.sattrack.orbit.Sgp4;
+import swim.sattrack.store.SatelliteState;
+import swim.sattrack.util.IntIntMap;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * The satellites of one shard in column storage: the state a
+ * SatelliteAgent keeps in its lanes and fields, one row per catalog
+ * number, with the track history in a flat ring of trackCapacity
+ * points per row. Kept free of agent APIs so the update path can be
+ * benchmarked on its own, the SatelliteShardAgent acts on what the
+ * Listener is told. Not thread safe, owned by a single agent.
+ */
+final class SatelliteShardStore {
+
+  /**
+   * what the hosting agent has to pass on
+   */
+  interface Listener {
+    /**
+     * short info fields for the aggregation agent
+     */
+    void didChangeShortInfo(Record changed);
+
+    /**
+     * an update which changed no short info field, the aggregation
+     * still has to know the satellite is alive
+     */
+    void didUpdateUnchanged(int row);
+
+    /**
+     * a new element set to propagate
+     */
+    void didChangeElements(int row, Value tle);
+
+    /**
+     * a track point was added from the propagated position
+     */
+    void didTrack(int row);
+
+    /**
+     * the propagator reports the satellite decayed
+     */
+    void didDecay(int row);
+  }
+
+  private final IntIntMap rows;
+  private final int trackCapacity;
+  private int size;
+
+  private int[] catalogNumber;
+  private Value[] fullRow;
+  private Value[] tle;
+  private Value[] shortInfoSent; // ShortInfoDiff.FIELDS per row
+  private OrbitHandle[] orbitHandle;
+  private double[] latitude;
+  private double[] longitude;
+  private double[] height;
+  private long[] lastUpdate;
+  private boolean[] decayReported;
+  private long[] trackTimestamp; // trackCapacity per row
+  private float[] trackLatitude;
+  private float[] trackLongitude;
+  private float[] trackHeight;
+  private int[] trackHead;
+  private int[] trackSize;
+
+  SatelliteShardStore(int initialCapacity, int trackCapacity) {
+    final int capacity = Math.max(16, initialCapacity);
+    this.rows = new IntIntMap(capacity, -1);
+    this.trackCapacity = Math.max(1, trackCapacity);
+    this.catalogNumber = new int[capacity];
+    this.fullRow = new Value[capacity];
+    this.tle = new Value[capacity];
+    this.shortInfoSent = new Value[capacity * ShortInfoDiff.FIELDS.length];
+    this.orbitHandle = new OrbitHandle[capacity];
+    this.latitude = new double[capacity];
+    this.longitude = new double[capacity];
+    this.height = new double[capacity];
+    this.lastUpdate = new long[capacity];
+    this.decayReported = new boolean[capacity];
+    this.trackTimestamp = new long[capacity * this.trackCapacity];
+    this.trackLatitude = new float[capacity * this.trackCapacity];
+    this.trackLongitude = new float[capacity * this.trackCapacity];
+    this.trackHeight = new float[capacity * this.trackCapacity];
+    this.trackHead = new int[capacity];
+    this.trackSize = new int[capacity];
+  }
+
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * row for a catalog number or -1
+   */
+  int row(int catalogId) {
+    return this.rows.get(catalogId);
+  }
+
+  int catalogNumber(int row) {
+    return this.catalogNumber[row];
+  }
+
+  Value fullRow(int row) {
+    return this.fullRow[row];
+  }
+
+  double latitude(int row) {
+    return this.latitude[row];
+  }
+
+  double longitude(int row) {
+    return this.longitude[row];
+  }
+
+  double height(int row) {
+    return this.height[row];
+  }
+
+  long lastUpdate(int row) {
+    return this.lastUpdate[row];
+  }
+
+  int trackSize(int row) {
+    return this.trackSize[row];
+  }
+
+  /**
+   * ith track point of a row, oldest first
+   */
+  long trackTimestamp(int row, int i) {
+    return this.trackTimestamp[trackIndex(row, i)];
+  }
+
+  float trackLatitude(int row, int i) {
+    return this.trackLatitude[trackIndex(row, i)];
+  }
+
+  float trackLongitude(int row, int i) {
+    return this.trackLongitude[trackIndex(row, i)];
+  }
+
+  float trackHeight(int row, int i) {
+    return this.trackHeight[trackIndex(row, i)];
+  }
+
+  OrbitHandle orbitHandle(int row) {
+    return this.orbitHandle[row];
+  }
+
+  /**
+   * apply a vector from Kafka, like SatelliteAgent.updateSatellite.
+   * Returns the row, or -1 without a catalog number.
+   */
+  int update(Value vector, long timestamp, Listener listener) {
+    final int catalogId = vector.get("catalogNumber").intValue(-1);
+    if (catalogId < 0) {
+      return -1;
+    }
+    final int row = rowFor(catalogId);
+    this.fullRow[row] = vector;
+    final Value tleLines = vector.get("tle");
+    final OrbitHandle handle = this.orbitHandle[row];
+    if (!tleLines.equals(this.tle[row])
+        || handle != null && handle.isReleased() && !this.decayReported[row]) {
+      // new elements, or ours were dropped from the orbit catalog when the aggregation expired the satellite
+      this.tle[row] = tleLines;
+      listener.didChangeElements(row, tleLines);
+    }
+    final double lat = vector.get("latitude").doubleValue(0.0);
+    final double lng = vector.get("longitude").doubleValue(0.0);
+    final double alt = vector.get("height").doubleValue(0.0);
+    this.latitude[row] = lat;
+    this.longitude[row] = lng;
+    this.height[row] = alt;
+    appendTrack(row, timestamp, lat, lng, alt);
+    this.lastUpdate[row] = timestamp;
+    final Record changed = ShortInfoDiff.diff(vector, this.shortInfoSent, row * ShortInfoDiff.FIELDS.length);
+    if (changed != null) {
+      listener.didChangeShortInfo(changed);
+    } else {
+      listener.didUpdateUnchanged(row);
+    }
+    return row;
+  }
+
+  /**
+   * apply a position only update from the connector, whose element set
+   * is unchanged. Returns the row, or -1 for a satellite not hosted here.
+   */
+  int updatePosition(Value position, long timestamp, Listener listener) {
+    final int row = this.rows.get(position.get("catalogNumber").intValue(-1));
+    if (row < 0) {
+      return -1;
+    }
+    final double lat = position.get("latitude").doubleValue(0.0);
+    final double lng = position.get("longitude").doubleValue(0.0);
+    final double alt = position.get("height").doubleValue(0.0);
+    this.latitude[row] = lat;
+    this.longitude[row] = lng;
+    this.height[row] = alt;
+    appendTrack(row, timestamp, lat, lng, alt);
+    this.lastUpdate[row] = timestamp;
+    final Record changed = ShortInfoDiff.diffPosition(position, this.shortInfoSent, row * ShortInfoDiff.FIELDS.length);
+    if (changed != null) {
+      listener.didChangeShortInfo(changed);
+    } else {
+      listener.didUpdateUnchanged(row);
+    }
+    return row;
+  }
+
+  /**
+   * take a satellite from the warm restart snapshot unless it was
+   * already updated. Returns the row or -1 when skipped.
+   */
+  int restore(SatelliteState state, Listener listener) {
+    final int existing = this.rows.get(state.catalogNumber());
+    if (existing >= 0 && this.lastUpdate[existing] > 0L) {
+      return -1;
+    }
+    final int row = rowFor(state.catalogNumber());
+    final Value rowValue = state.row();
+    this.fullRow[row] = rowValue;
+    final Value tleLines = rowValue.get("tle");
+    if (!tleLines.equals(this.tle[row])) {
+      this.tle[row] = tleLines;
+      listener.didChangeElements(row, tleLines);
+    }
+    this.latitude[row] = state.latitude();
+    this.longitude[row] = state.longitude();
+    this.height[row] = state.height();
+    for (int i = 0; i < state.trackSize(); i++) {
+      appendTrack(row, state.trackTimestamp(i), state.trackLatitude(i), state.trackLongitude(i), state.trackHeight(i));
+    }
+    this.lastUpdate[row] = state.lastUpdate();
+    final Record changed = ShortInfoDiff.diff(rowValue, this.shortInfoSent, row * ShortInfoDiff.FIELDS.length);
+    if (changed != null) {
+      listener.didChangeShortInfo(changed);
+    }
+    return row;
+  }
+
+  /**
+   * send the full short info of a row again on the next diff
+   */
+  void resendShortInfo(int row, Listener listener) {
+    final int offset = row * ShortInfoDiff.FIELDS.length;
+    ShortInfoDiff.reset(this.shortInfoSent, offset);
+    if (this.fullRow[row] != null) {
+      final Record changed = ShortInfoDiff.diff(this.fullRow[row], this.shortInfoSent, offset);
+      if (changed != null) {
+        listener.didChangeShortInfo(changed);
+      }
+    }
+  }
+
+  void setOrbitHandle(int row, OrbitHandle handle) {
+    this.orbitHandle[row] = handle;
+  }
+
+  /**
+   * copy the positions of a new propagation tick, adding a track point
+   * to rows whose last one is trackInterval old (0 adds none)
+   */
+  void propagate(OrbitFrame frame, long trackInterval, Listener listener) {
+    for (int row = 0; row < this.size; row++) {
+      final OrbitHandle handle = this.orbitHandle[row];
+      if (handle == null || handle.slot() < 0) {
+        continue;
+      }
+      final int slot = handle.slot();
+      if (frame.catalogNumber(slot) != this.catalogNumber[row]) {
+        // the frame is older than the slot, which was freed and reused since
+        continue;
+      }
+      final int status = frame.status(slot);
+      if (status == Sgp4.OK) {
+        final double lat = frame.get(slot, OrbitFrame.LATITUDE);
+        final double lng = frame.get(slot, OrbitFrame.LONGITUDE);
+        final double alt = frame.get(slot, OrbitFrame.HEIGHT);
+        this.latitude[row] = lat;
+        this.longitude[row] = lng;
+        this.height[row] = alt;
+        this.decayReported[row] = false;
+        final int points = this.trackSize[row];
+        if (trackInterval > 0L
+            && (points == 0 || frame.timeMillis() - trackTimestamp(row, points - 1) >= trackInterval)) {
+          appendTrack(row, frame.timeMillis(), lat, lng, alt);
+          listener.didTrack(row);
+        }
+      } else if (status == Sgp4.ERROR_DECAYED && !this.decayReported[row]) {
+        this.decayReported[row] = true;
+        listener.didDecay(row);
+      }
+    }
+  }
+
+  /**
+   * the row as a snapshot entry
+   */
+  SatelliteState toState(int row) {
+    final int points = this.trackSize[row];
+    final long[] timestamps = new long[points];
+    final float[] latitudes = new float[points];
+    final float[] longitudes = new float[points];
+    final float[] heights = new float[points];
+    for (int i = 0; i < points; i++) {
+      final int index = trackIndex(row, i);
+      timestamps[i] = this.trackTimestamp[index];
+      latitudes[i] = this.trackLatitude[index];
+      longitudes[i] = this.trackLongitude[index];
+      heights[i] = this.trackHeight[index];
+    }
+    return new SatelliteState(this.catalogNumber[row], this.lastUpdate[row], this.fullRow[row],
+        this.latitude[row], this.longitude[row], this.height[row], timestamps, latitudes, longitudes, heights);
+  }
+
+  /**
+   * add a track point to a row's ring, like TrackRing a point with the
+   * latest timestamp replaces that point and an older one is dropped
+   */
+  private void appendTrack(int row, long timestamp, double lat, double lng, double alt) {
+    final int points = this.trackSize[row];
+    final int index;
+    if (points > 0 && timestamp <= trackTimestamp(row, points - 1)) {
+      if (timestamp < trackTimestamp(row, points - 1)) {
+        return;
+      }
+      index = trackIndex(row, points - 1);
+    } else {
+      if (points == this.trackCapacity) {
+        index = row * this.trackCapacity + this.trackHead[row];
+        this.trackHead[row] = (this.trackHead[row] + 1) % this.trackCapacity;
+      } else {
+        index = trackIndex(row, points);
+        this.trackSize[row] = points + 1;
+      }
+      this.trackTimestamp[index] = timestamp;
+    }
+    this.trackLatitude[index] = (float) lat;
+    this.trackLongitude[index] = (float) lng;
+    this.trackHeight[index] = (float) alt;
+  }
+
+  private int trackIndex(int row, int i) {
+    return row * this.trackCapacity + (this.trackHead[row] + i) % this.trackCapacity;
+  }
+
+  private int rowFor(int catalogId) {
+    final int existing = this.rows.get(catalogId);
+    if (existing >= 0) {
+      return existing;
+    }
+    if (this.size == this.catalogNumber.length) {
+      grow(this.size << 1);
+    }
+    final int row = this.size;
+    this.size += 1;
+    this.rows.put(catalogId, row);
+    this.catalogNumber[row] = catalogId;
+    return row;
+  }
+
+  private void grow(int capacity) {
+    this.catalogNumber = Arrays.copyOf(this.catalogNumber, capacity);
+    this.fullRow = Arrays.copyOf(this.fullRow, capacity);
+    this.tle = Arrays.copyOf(this.tle, capacity);
+    this.shortInfoSent = Arrays.copyOf(this.shortInfoSent, capacity * ShortInfoDiff.FIELDS.length);
+    this.orbitHandle = Arrays.copyOf(this.orbitHandle, capacity);
+    this.latitude = Arrays.copyOf(this.latitude, capacity);
+    this.longitude = Arrays.copyOf(this.longitude, capacity);
+    this.height = Arrays.copyOf(this.height, capacity);
+    this.lastUpdate = Arrays.copyOf(this.lastUpdate, capacity);
+    this.decayReported = Arrays.copyOf(this.decayReported, capacity);
+    this.trackTimestamp = Arrays.copyOf(this.trackTimestamp, capacity * this.trackCapacity);
+    this.trackLatitude = Arrays.copyOf(this.trackLatitude, capacity * this.trackCapacity);
+    this.trackLongitude = Arrays.copyOf(this.trackLongitude, capacity * this.trackCapacity);
+    this.trackHeight = Arrays.copyOf(this.trackHeight, capacity * this.trackCapacity);
+    this.trackHead = Arrays.copyOf(this.trackHead, capacity);
+    this.trackSize = Arrays.copyOf(this.trackSize, capacity);
+  }
+
+}
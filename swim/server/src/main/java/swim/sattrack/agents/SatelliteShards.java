@@ -0,0 +1,56 @@
+package swim.sattrack.agents;
+
+import swim.uri.Uri;
+
+/**
+ * Placement of satellites in sharded mode. With -Dsattrack.shards=N
+ * satellites are hosted N to a /satelliteShard/:n agent, picked by
+ * hashing the catalog number, instead of one SatelliteAgent each.
+ * The /satellite/:id agents then only exist for clients which link to
+ * them and mirror their satellite from its shard. 0 or unset keeps one
+ * agent per satellite.
+ */
+public final class SatelliteShards {
+
+  private static final int COUNT = Math.max(0, Integer.getInteger("sattrack.shards", 0));
+  private static final Uri[] SHARD_URIS = new Uri[COUNT];
+
+  static {
+    for (int i = 0; i < COUNT; i++) {
+      SHARD_URIS[i] = Uri.parse("/satelliteShard/" + i);
+    }
+  }
+
+  private SatelliteShards() {
+    // static only
+  }
+
+  public static boolean enabled() {
+    return COUNT > 0;
+  }
+
+  public static int count() {
+    return COUNT;
+  }
+
+  /**
+   * shard of a catalog number out of shardCount
+   */
+  public static int shardOf(int catalogNumber, int shardCount) {
+    final int h = catalogNumber * 0x9E3779B9;
+    return ((h ^ (h >>> 16)) & 0x7FFFFFFF) % shardCount;
+  }
+
+  public static Uri shardUri(int shard) {
+    return SHARD_URIS[shard];
+  }
+
+  /**
+   * the agent to send a satellite's commands to: its shard in sharded
+   * mode, its own SatelliteAgent otherwise
+   */
+  public static Uri hostUri(int catalogNumber) {
+    return COUNT > 0 ? SHARD_URIS[shardOf(catalogNumber, COUNT)] : Uri.parse("/satellite/" + catalogNumber);
+  }
+
+}
@@ -0,0 +1,92 @@
+package swim.sattrack.agents;
+
+import java.util.Arrays;
+
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * Remembers the short info a SatelliteAgent last sent to the
+ * aggregation agent and works out which fields changed since.
+ * Satellite shards use the static variants over one shared array.
+ */
+final class ShortInfoDiff {
+
+  /**
+   * fields of the short info sent to the aggregation agent
+   */
+  static final String[] FIELDS = {
+    "name", "intlDesignator", "type", "orbitalPeriod", "tle", "position", "height",
+    "latitude", "longitude", "countryCode", "rcsSize", "launchSiteCode"
+  };
+
+  /**
+   * indexes into FIELDS of the fields a position only update carries
+   */
+  static final int[] POSITION_FIELDS = {5, 6, 7, 8};
+
+  private final Value[] lastSent = new Value[FIELDS.length];
+
+  /**
+   * the catalogNumber plus every field which changed, or null when
+   * nothing did. The returned fields count as sent.
+   */
+  Record diff(Value stateData) {
+    return diff(stateData, this.lastSent, 0);
+  }
+
+  /**
+   * like diff for a position only update, only its POSITION_FIELDS are
+   * compared so the fields it does not carry are not sent as absent
+   */
+  Record diffPosition(Value position) {
+    return diffPosition(position, this.lastSent, 0);
+  }
+
+  /**
+   * forget what was sent so the next diff holds every field
+   */
+  void reset() {
+    Arrays.fill(this.lastSent, null);
+  }
+
+  /**
+   * diff against the fields kept at lastSent[offset], for hosts which
+   * keep the sent fields of many satellites in one array
+   */
+  static Record diff(Value stateData, Value[] lastSent, int offset) {
+    Record shortInfo = null;
+    for (int i = 0; i < FIELDS.length; i++) {
+      final Value fieldValue = stateData.get(FIELDS[i]);
+      if (!fieldValue.equals(lastSent[offset + i])) {
+        if (shortInfo == null) {
+          shortInfo = Record.create().slot("catalogNumber", stateData.get("catalogNumber"));
+        }
+        shortInfo.slot(FIELDS[i], fieldValue);
+        lastSent[offset + i] = fieldValue;
+      }
+    }
+    return shortInfo;
+  }
+
+  static Record diffPosition(Value position, Value[] lastSent, int offset) {
+    Record shortInfo = null;
+    for (int i = 0; i < POSITION_FIELDS.length; i++) {
+      final int field = POSITION_FIELDS[i];
+      final Value fieldValue = position.get(FIELDS[field]);
+      if (!fieldValue.equals(lastSent[offset + field])) {
+        if (shortInfo == null) {
+          shortInfo = Record.create().slot("catalogNumber", position.get("catalogNumber"));
+        }
+        shortInfo.slot(FIELDS[field], fieldValue);
+        lastSent[offset + field] = fieldValue;
+      }
+    }
+    return shortInfo;
+  }
+
+  static void reset(Value[] lastSent, int offset) {
+    Arrays.fill(lastSent, offset, offset + FIELDS.length, null);
+  }
+
+}
@@ -0,0 +1,138 @@
+package swim.sattrack.agents;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import swim.api.SwimLane;
+import swim.api.agent.AbstractAgent;
+import swim.api.lane.CommandLane;
+import swim.api.lane.ValueLane;
+import swim.sattrack.store.CatalogSnapshot;
+import swim.sattrack.store.PassivationStore;
+import swim.structure.Record;
+import swim.structure.Value;
+import swim.uri.Uri;
+
+/**
+ * The SnapshotAgent owns the warm restart snapshot of the catalog.
+ * It starts the background snapshot writer and, when sent restore on
+ * startup, reads the last snapshot and tells every satellite in it to
+ * restore, which fills the aggregation lanes before Kafka has
+ * delivered anything. Satellites passivated before the restart are not
+ * in the snapshot, their short info is read from the passivation log
+ * and sent to the aggregation without starting their agents. The
+ * ingest bridge named by restore's init is only started after that, so
+ * Kafka updates never race the restored states.
+ *
+ * The aggregation's counts are not in the snapshot, they are rebuilt
+ * from the short info the restored satellites send it.
+ */
+public class SnapshotAgent extends AbstractAgent {
+
+  private static final String DEFAULT_PATH = "snapshot/catalog.snap";
+  private static final long DEFAULT_SNAPSHOT_INTERVAL = 10000L;
+  private static final String DEFAULT_PASSIVATION_PATH = "snapshot/passivated.log";
+  private static final int AGGREGATION_BATCH = 1000;
+  private static final Uri RESTORE_LANE = Uri.parse("restore");
+  private static final Uri INIT_LANE = Uri.parse("init");
+  private static final Uri AGGREGATION_NODE = Uri.parse("/aggregation");
+  private static final Uri ADD_SATELLITES_LANE = Uri.parse("addSatellites");
+
+  private Value agentConfig;
+  private Path snapshotPath;
+  private Path passivationPath;
+
+  /**
+   * how many satellites were restored and how long reading took
+   */
+  @SwimLane("stats")
+  protected ValueLane<Value> stats = this.<Value>valueLane();
+
+  /**
+   * restore the snapshot, then send init to the bridge node in the
+   * init slot, whether the restore worked or not
+   */
+  @SwimLane("restore")
+  public CommandLane<Value> restore = this.<Value>commandLane()
+    .onCommand((Value value) -> {
+      this.restoreSnapshot();
+      final String bridge = value.get("init").stringValue(null);
+      if (bridge != null) {
+        command(Uri.parse(bridge), INIT_LANE, Value.absent());
+      }
+    });
+
+  private void restoreSnapshot() {
+    final long startTime = System.currentTimeMillis();
+    try {
+      final int[] catalogNumbers = CatalogSnapshot.shared().restore(this.snapshotPath);
+      for (int catalogNumber : catalogNumbers) {
+        command(SatelliteShards.hostUri(catalogNumber), RESTORE_LANE, Value.fromObject(catalogNumber));
+      }
+      final int passivated = this.replayPassivated();
+      final long restoreMillis = System.currentTimeMillis() - startTime;
+      System.out.println(String.format("[SnapshotAgent] restored %d satellites and %d passivated in %d ms",
+        catalogNumbers.length, passivated, restoreMillis));
+      this.stats.set(Record.create(4)
+        .slot("timestamp", startTime)
+        .slot("restored", catalogNumbers.length)
+        .slot("passivated", passivated)
+        .slot("restoreMillis", restoreMillis));
+    } catch (Exception ex) {
+      System.out.println(String.format("[SnapshotAgent] unable to restore %s", this.snapshotPath));
+      ex.printStackTrace();
+    }
+  }
+
+  /**
+   * send the aggregation the short info of every passivated satellite,
+   * returns how many there were
+   */
+  private int replayPassivated() throws IOException {
+    if (SatelliteShards.enabled() || !Files.exists(this.passivationPath)) {
+      return 0;
+    }
+    PassivationStore.shared().open(this.passivationPath);
+    final ShortInfoDiff shortInfo = new ShortInfoDiff();
+    final Record[] batch = {Record.create()};
+    final int[] count = new int[1];
+    PassivationStore.shared().forEach(state -> {
+      shortInfo.reset();
+      final Record info = shortInfo.diff(state.row());
+      if (info == null) {
+        return;
+      }
+      batch[0].item(info);
+      count[0] += 1;
+      if (batch[0].size() == AGGREGATION_BATCH) {
+        command(AGGREGATION_NODE, ADD_SATELLITES_LANE, batch[0]);
+        batch[0] = Record.create();
+      }
+    });
+    if (batch[0].size() > 0) {
+      command(AGGREGATION_NODE, ADD_SATELLITES_LANE, batch[0]);
+    }
+    return count[0];
+  }
+
+  @Override
+  public void didStart() {
+    System.out.println("[SnapshotAgent] didStart");
+    this.agentConfig = getProp("config");
+    this.snapshotPath = Paths.get(this.agentConfig.get("path").stringValue(DEFAULT_PATH));
+    this.passivationPath = Paths.get(this.agentConfig.get("passivationPath").stringValue(DEFAULT_PASSIVATION_PATH));
+    final long snapshotInterval = this.agentConfig.get("snapshotInterval").longValue(DEFAULT_SNAPSHOT_INTERVAL);
+    if (snapshotInterval > 0L) {
+      CatalogSnapshot.shared().start(this.snapshotPath, snapshotInterval);
+    }
+  }
+
+  @Override
+  public void willStop() {
+    CatalogSnapshot.shared().stop();
+    PassivationStore.shared().close();
+  }
+
+}
@@ -0,0 +1,170 @@
+package swim.sattrack.agents;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import swim.api.SwimLane;
+import swim.api.agent.AbstractAgent;
+import swim.api.lane.CommandLane;
+import swim.api.lane.MapLane;
+import swim.api.lane.ValueLane;
+import swim.api.warp.WarpUplink;
+import swim.concurrent.TimerRef;
+import swim.structure.Item;
+import swim.structure.Record;
+import swim.structure.Value;
+import swim.uri.Uri;
+
+/**
+ * A Viewport Agent holds the satellites inside one client's map view.
+ * The client picks any id, sends its bounds to setBounds and links to
+ * the satellites map lane. Satellites entering the view show up as
+ * updates and satellites leaving it as removes, so a zoomed in map only
+ * receives the objects it can actually show instead of the full
+ * aggregation satelliteList. The view is only refreshed while a client
+ * is linked to satellites or changes, and the agent closes once nobody
+ * has been linked for closeAfter.
+ * The view polls the aggregation every refreshInterval rather than being
+ * pushed cell moves, since its entries carry positions which change on
+ * every update and not only when a satellite changes cell.
+ */
+public class ViewportAgent extends AbstractAgent {
+
+  private static final Uri AGGREGATION_NODE = Uri.parse("/aggregation");
+  private static final Uri QUERY_VIEWPORT_LANE = Uri.parse("queryViewport");
+  private static final long DEFAULT_REFRESH_INTERVAL = 1000L;
+  private static final long DEFAULT_CLOSE_AFTER = 60000L;
+
+  private Value agentConfig;
+  private long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+  private long closeAfter = DEFAULT_CLOSE_AFTER;
+  private TimerRef refreshTimer;
+  private Value query = Value.absent();
+  private long lastLinked; // last time a client was linked
+  private final Map<WarpUplink, Boolean> uplinks = new WeakHashMap<>(); // client links, closed ones are pruned
+
+  /**
+   * bounds currently being watched:
+   * {south, west, north, east, minHeight?, maxHeight?}
+   */
+  @SwimLane("bounds")
+  protected ValueLane<Value> bounds = this.<Value>valueLane();
+
+  /**
+   * satellites inside the bounds keyed by catalog number
+   */
+  @SwimLane("satellites")
+  protected MapLane<String, Value> satellites = this.<String, Value>mapLane();
+
+  /**
+   * ids which entered and left the view on the last refresh, plus the total match count
+   */
+  @SwimLane("changes")
+  protected ValueLane<Value> changes = this.<Value>valueLane();
+
+  @SwimLane("setBounds")
+  public CommandLane<Value> setBounds = this.<Value>commandLane()
+    .onCommand((Value newBounds) -> {
+      this.bounds.set(newBounds);
+      this.query = Record.create(8)
+        .slot("node", nodeUri().toString())
+        .slot("south", newBounds.get("south"))
+        .slot("west", newBounds.get("west"))
+        .slot("north", newBounds.get("north"))
+        .slot("east", newBounds.get("east"))
+        .slot("minHeight", newBounds.get("minHeight"))
+        .slot("maxHeight", newBounds.get("maxHeight"))
+        .slot("limit", newBounds.get("limit"));
+      this.sendQuery();
+    });
+
+  /**
+   * answer from the aggregation agent for our last query
+   */
+  @SwimLane("queryResult")
+  public CommandLane<Value> queryResult = this.<Value>commandLane()
+    .onCommand((Value result) -> {
+      this.applyResult(result);
+    });
+
+  private void sendQuery() {
+    if (this.query.isDefined()) {
+      command(AGGREGATION_NODE, QUERY_VIEWPORT_LANE, this.query);
+    }
+  }
+
+  private void didLink(WarpUplink uplink) {
+    this.uplinks.put(uplink, Boolean.TRUE);
+    this.lastLinked = System.currentTimeMillis();
+  }
+
+  /**
+   * timer callback which queries the aggregation while a client is
+   * linked and closes us once none has been for closeAfter
+   */
+  private void refresh() {
+    this.uplinks.keySet().removeIf(uplink -> !uplink.isConnected());
+    final long now = System.currentTimeMillis();
+    if (!this.uplinks.isEmpty()) {
+      this.lastLinked = now;
+      this.sendQuery();
+    } else if (now - this.lastLinked >= this.closeAfter) {
+      this.refreshTimer = null;
+      close();
+      return;
+    }
+    this.refreshTimer.reschedule(this.refreshInterval);
+  }
+
+  /**
+   * diff the new match set against the satellites lane, only changed
+   * entries are sent to downlinks
+   */
+  private void applyResult(Value result) {
+    final Set<String> current = new HashSet<>(this.satellites.keySet());
+    final Record entered = Record.create();
+    for (Item satellite : result.get("satellites")) {
+      final Value satelliteValue = satellite.toValue();
+      final String key = satelliteValue.get("id").stringValue();
+      if (!current.remove(key)) {
+        entered.item(key);
+        this.satellites.put(key, satelliteValue);
+      } else if (!satelliteValue.equals(this.satellites.get(key))) {
+        this.satellites.put(key, satelliteValue);
+      }
+    }
+    final Record left = Record.create(current.size());
+    for (String key : current) {
+      this.satellites.remove(key);
+      left.item(key);
+    }
+    if (entered.length() > 0 || left.length() > 0) {
+      this.changes.set(Record.create(4)
+        .slot("enter", entered)
+        .slot("leave", left)
+        .slot("count", result.get("count"))
+        .slot("truncated", result.get("truncated")));
+    }
+  }
+
+  @Override
+  public void didStart() {
+    this.agentConfig = getProp("config");
+    this.refreshInterval = this.agentConfig.get("refreshInterval").longValue(DEFAULT_REFRESH_INTERVAL);
+    this.closeAfter = this.agentConfig.get("closeAfter").longValue(DEFAULT_CLOSE_AFTER);
+    this.lastLinked = System.currentTimeMillis();
+    this.satellites.didUplink(this::didLink);
+    this.changes.didUplink(this::didLink);
+    this.refreshTimer = setTimer(this.refreshInterval, this::refresh);
+  }
+
+  @Override
+  public void willStop() {
+    if (this.refreshTimer != null) {
+      this.refreshTimer.cancel();
+    }
+  }
+
+}
@@ -0,0 +1,259 @@
+package swim.sattrack.agents.connectors;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.avro.generic.GenericRecord;
+
+import swim.json.Json;
+import swim.sattrack.avro.AvroSchemaDecoder;
+import swim.sattrack.avro.AvroValues;
+import swim.structure.Item;
+import swim.structure.Num;
+import swim.structure.Record;
+import swim.structure.Slot;
+import swim.structure.Text;
+import swim.structure.Value;
+
+/**
+ * Replays a recorded TLE dataset, frame by frame, at the times it was
+ * recorded. Two formats are read:
+ *   json, a single vector like rawData/tle-sample.json, an array of
+ *   vectors, or an array of {timestamp, tleDataset} vector lists.
+ *   JavaScript style quoting is accepted and numbers sent as strings
+ *   are converted to the types of the Avro schema.
+ *   avro, captured Kafka payloads, each one a 4 byte big endian
+ *   length followed by the payload as it was on the topic.
+ * Frames without a timestamp are spaced interval ms apart. When looping
+ * the dataset starts over interval ms after its last frame.
+ */
+public final class DatasetReplay implements ReplaySource {
+
+    private static final Set<String> INT_FIELDS = new HashSet<>(Arrays.asList(
+        "catalogNumber", "revolutionsAtEpoch", "elementSetNumber", "ephemerisType", "ordinal", "file"));
+    private static final Set<String> DOUBLE_FIELDS = new HashSet<>(Arrays.asList(
+        "eccentricity", "inclination", "rightAscension", "argPericenter", "meanAnomaly", "meanMotion",
+        "meanMotionDot", "meanMotionDotDot", "bStar", "orbitalPeriod", "apogee", "perigee",
+        "latitude", "longitude", "height"));
+
+    private final long[] frameTimes;
+    private final List<List<Value>> frames;
+    private final boolean loop;
+    private final long interval;
+    private long offset; // added to the frame times, grows by one dataset length per loop
+    private int next;
+
+    private DatasetReplay(long[] frameTimes, List<List<Value>> frames, boolean loop, long interval) {
+        this.frameTimes = frameTimes;
+        this.frames = frames;
+        this.loop = loop;
+        this.interval = interval;
+    }
+
+    /**
+     * first frame time, the replay clock starts here
+     */
+    public long startTime() {
+        return this.frameTimes.length > 0 ? this.frameTimes[0] : 0L;
+    }
+
+    public int frameCount() {
+        return this.frames.size();
+    }
+
+    @Override
+    public List<Value> poll(long replayTime) {
+        if (this.frames.isEmpty()) {
+            return null;
+        }
+        List<Value> due = Collections.emptyList();
+        while (this.frameTimes[this.next] + this.offset <= replayTime) {
+            if (due.isEmpty()) {
+                due = new ArrayList<>();
+            }
+            // frames are replayed more than once when looping, send copies so stamps do not pile up
+            for (Value records : this.frames.get(this.next)) {
+                due.add(records.branch());
+            }
+            this.next += 1;
+            if (this.next == this.frames.size()) {
+                if (!this.loop) {
+                    return due.isEmpty() ? null : due;
+                }
+                this.offset += this.frameTimes[this.next - 1] - this.frameTimes[0] + this.interval;
+                this.next = 0;
+            }
+        }
+        return due;
+    }
+
+    /**
+     * read a dataset file, format is json or avro
+     */
+    public static DatasetReplay open(String path, String format, AvroSchemaDecoder decoder, String recordKey,
+                                     boolean loop, long interval) throws IOException {
+        final Path file = Paths.get(path);
+        final List<Value> frameValues = "avro".equals(format)
+            ? readAvro(file, decoder, recordKey)
+            : readJson(file);
+        final List<List<Value>> frames = new ArrayList<>(frameValues.size());
+        final long[] frameTimes = new long[frameValues.size()];
+        long lastTime = 0L;
+        for (int i = 0; i < frameValues.size(); i++) {
+            final Value frame = frameValues.get(i);
+            final long time = timestamp(frame.get("timestamp"), i == 0 ? 0L : lastTime + interval);
+            // keep the frames in order even if a timestamp goes backwards
+            frameTimes[i] = i == 0 ? time : Math.max(lastTime, time);
+            lastTime = frameTimes[i];
+            frames.add(chunk(frame.get(recordKey)));
+        }
+        return new DatasetReplay(frameTimes, frames, loop, interval);
+    }
+
+    /**
+     * frames of a json file as {timestamp, tleDataset} records
+     */
+    private static List<Value> readJson(Path file) throws IOException {
+        final String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8)
+            .replace('\'', '"')
+            .replaceAll("(?m)^(\\s*)(\\w+):", "$1\"$2\":");
+        final Value dataset = Json.parse(text);
+        final List<Value> frames = new ArrayList<>();
+        if (dataset.get("catalogNumber").isDefined()) {
+            frames.add(frame(Value.absent(), Record.of(normalize(dataset))));
+        } else if (dataset.getItem(0).get("tleDataset").isDefined()) {
+            for (Item frame : dataset) {
+                final Record vectors = Record.create();
+                for (Item vector : frame.get("tleDataset")) {
+                    vectors.item(normalize(vector.toValue()));
+                }
+                frames.add(frame(frame.get("timestamp"), vectors));
+            }
+        } else {
+            final Record vectors = Record.create(dataset.length());
+            for (Item vector : dataset) {
+                vectors.item(normalize(vector.toValue()));
+            }
+            frames.add(frame(Value.absent(), vectors));
+        }
+        return frames;
+    }
+
+    /**
+     * frames of a capture file, length prefixed kafka payloads
+     */
+    private static List<Value> readAvro(Path file, AvroSchemaDecoder decoder, String recordKey) throws IOException {
+        final List<Value> frames = new ArrayList<>();
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            while (true) {
+                final int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException ex) {
+                    break;
+                }
+                final byte[] payload = new byte[length];
+                in.readFully(payload);
+                final GenericRecord record = decoder.decode(payload);
+                final Object timestamp = record.get("timestamp");
+                frames.add(frame(timestamp != null ? Text.from(timestamp.toString()) : Value.absent(),
+                    AvroValues.toValue(record.get(recordKey))));
+            }
+        }
+        return frames;
+    }
+
+    private static Value frame(Value timestamp, Value vectors) {
+        return Record.create(2).slot("timestamp", timestamp).slot("tleDataset", vectors);
+    }
+
+    /**
+     * split a vector list into records of at most VECTORS_PER_RECORD, like the producer sends
+     */
+    private static List<Value> chunk(Value vectors) {
+        final List<Value> records = new ArrayList<>();
+        Record current = null;
+        for (Item vector : vectors) {
+            if (current == null || current.length() == SyntheticCatalog.VECTORS_PER_RECORD) {
+                current = Record.create(SyntheticCatalog.VECTORS_PER_RECORD);
+                records.add(current);
+            }
+            current.item(vector.toValue());
+        }
+        return records;
+    }
+
+    /**
+     * a recorded vector with the schema types, numbers recorded as
+     * strings are converted and the epoch becomes epoch millis
+     */
+    private static Value normalize(Value vector) {
+        final Record normalized = Record.create(vector.length());
+        for (Item item : vector) {
+            if (!(item instanceof Slot)) {
+                continue;
+            }
+            final String key = item.key().stringValue();
+            final Value value = item.toValue();
+            if (!(value instanceof Text)) {
+                normalized.slot(key, value);
+            } else if (INT_FIELDS.contains(key)) {
+                normalized.slot(key, (int) number(value.stringValue()));
+            } else if (DOUBLE_FIELDS.contains(key)) {
+                normalized.slot(key, number(value.stringValue()));
+            } else if ("epoch".equals(key)) {
+                normalized.slot(key, timestamp(value, 0L));
+            } else {
+                normalized.slot(key, value);
+            }
+        }
+        return normalized;
+    }
+
+    private static double number(String text) {
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException ex) {
+            return 0.0;
+        }
+    }
+
+    /**
+     * epoch millis, or an ISO instant like "2020-09-17 20:35:53.198304Z"
+     */
+    private static long timestamp(Value value, long otherwise) {
+        if (!value.isDefined()) {
+            return otherwise;
+        }
+        if (value instanceof Num) {
+            return value.longValue();
+        }
+        final String text = value.stringValue("").trim();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException ex) {
+            // not millis
+        }
+        try {
+            return Instant.parse(text.replace(' ', 'T')).toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            return otherwise;
+        }
+    }
+
+}
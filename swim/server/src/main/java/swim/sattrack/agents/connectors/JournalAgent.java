@@ -0,0 +1,246 @@
+package swim.sattrack.agents.connectors;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import swim.api.SwimLane;
+import swim.api.lane.CommandLane;
+import swim.sattrack.journal.JournalReader;
+import swim.sattrack.metrics.Counter;
+import swim.sattrack.metrics.Metrics;
+import swim.structure.Value;
+import swim.uri.Uri;
+
+/**
+ * A JournalAgent ingests TLE vector lists from a local journal
+ * directory written with JournalWriter, a broker-less alternative to
+ * the KafkaAgent for single node and edge installs.
+ * JournalAgent extends MessageBrokerAgent which takes care of
+ * the connection state of the WebAgent
+ *
+ * A reader thread tails the memory-mapped journal segments and hands
+ * entries to the agent through a bounded queue, blocking while it is
+ * full. processMessages() runs on the agent's own context and the
+ * position after the last processed entry is committed every
+ * commitInterval ms, so a restart resumes from there.
+ */
+public abstract class JournalAgent extends MessageBrokerAgent {
+
+    private static final Uri DRAIN_LANE = Uri.parse("drainRecords");
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final long DEFAULT_POLL_INTERVAL = 5L;
+    private static final long DEFAULT_COMMIT_INTERVAL = 1000L;
+    private static final long CLOSE_TIMEOUT = 5000L;
+    private static final int READ_BATCH = 16;
+    private static final Counter JOURNAL_RECORDS = Metrics.shared()
+        .counter("sattrack_journal_records_total", "vector lists read from the local journal");
+
+    private Value agentConfig;
+    private volatile boolean isRunning = false;
+    private Thread readerThread;
+    private BlockingQueue<Entry> queue;
+    private final AtomicLong processedPosition = new AtomicLong(-1L);
+    private final AtomicBoolean drainRequested = new AtomicBoolean(false);
+
+    /**
+     * Command lane used by the reader thread to tell the agent
+     * there are entries waiting in the hand-off queue.
+     */
+    @SwimLane("drainRecords")
+    private CommandLane<Value> drainRecords = this.<Value>commandLane().onCommand(value -> {
+        drainQueue();
+    });
+
+    /**
+     * start tailing the journal
+     */
+    protected void connect() {
+        System.out.println("[JournalAgent] connect");
+        if (this.isRunning) {
+            System.out.println("[JournalAgent] reader already running");
+            return;
+        }
+        if (this.readerThread != null) {
+            try {
+                this.readerThread.join(CLOSE_TIMEOUT);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        final Path directory = Paths.get(this.agentConfig.get("path").stringValue("journal"));
+        final String readerId = this.agentConfig.get("readerId").stringValue("tleMessages");
+        final String offsetReset = this.agentConfig.get("offsetReset").stringValue("earliest");
+        final long pollInterval = Math.max(1L, this.agentConfig.get("pollInterval").longValue(DEFAULT_POLL_INTERVAL));
+        final long commitInterval = this.agentConfig.get("commitInterval").longValue(DEFAULT_COMMIT_INTERVAL);
+        final int queueCapacity = this.agentConfig.get("queueCapacity").intValue(DEFAULT_QUEUE_CAPACITY);
+
+        final long startPosition;
+        try {
+            startPosition = JournalReader.committedPosition(directory, readerId,
+                "latest".equals(offsetReset) ? JournalReader.LATEST : JournalReader.EARLIEST);
+        } catch (IOException ex) {
+            System.out.println("[JournalAgent] unable to read the committed position of " + readerId);
+            ex.printStackTrace();
+            return;
+        }
+        System.out.println(String.format("[JournalAgent] reading %s from %d", directory, startPosition));
+
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.processedPosition.set(-1L);
+        this.isRunning = true;
+        final BlockingQueue<Entry> handOff = this.queue;
+        this.readerThread = new Thread(() -> read(directory, readerId, startPosition, handOff, pollInterval, commitInterval),
+            "journal-reader-" + readerId);
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    /**
+     * stop the reader, it commits the processed position on its way out
+     */
+    protected void disconnect() {
+        this.isRunning = false;
+        if (this.readerThread != null) {
+            this.readerThread.interrupt();
+        }
+    }
+
+    /**
+     * runs on the reader thread. Waits for the journal to exist, then
+     * reads new entries every pollInterval ms while caught up.
+     */
+    private void read(Path directory, String readerId, long startPosition, BlockingQueue<Entry> handOff,
+                      long pollInterval, long commitInterval) {
+        final JournalReader reader = new JournalReader(directory);
+        long committed = startPosition;
+        long lastCommit = System.currentTimeMillis();
+        try {
+            while (this.isRunning && !reader.seek(startPosition)) {
+                Thread.sleep(pollInterval);
+            }
+            final JournalReader.Handler handler = (nextPosition, timestamp, vectorList) -> {
+                try {
+                    handOff.put(new Entry(nextPosition, timestamp, vectorList));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                JOURNAL_RECORDS.increment();
+                requestDrain();
+            };
+            while (this.isRunning && !Thread.currentThread().isInterrupted()) {
+                final int read = reader.read(READ_BATCH, handler);
+                final long now = System.currentTimeMillis();
+                if (now - lastCommit >= commitInterval) {
+                    committed = commit(directory, readerId, committed);
+                    lastCommit = now;
+                }
+                if (read == 0) {
+                    Thread.sleep(pollInterval);
+                }
+            }
+        } catch (InterruptedException ex) {
+            // disconnected
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        } finally {
+            this.isRunning = false;
+            commit(directory, readerId, committed);
+        }
+    }
+
+    /**
+     * save the processed position when it moved, returns the committed position
+     */
+    private long commit(Path directory, String readerId, long committed) {
+        final long processed = this.processedPosition.get();
+        if (processed < 0L || processed == committed) {
+            return committed;
+        }
+        try {
+            JournalReader.commitPosition(directory, readerId, processed);
+            return processed;
+        } catch (IOException ex) {
+            System.out.println("[JournalAgent] unable to commit position " + processed);
+            ex.printStackTrace();
+            return committed;
+        }
+    }
+
+    /**
+     * ask the agent to drain the queue, at most one request is in flight
+     */
+    private void requestDrain() {
+        if (this.drainRequested.compareAndSet(false, true)) {
+            command(nodeUri(), DRAIN_LANE, Value.absent());
+        }
+    }
+
+    /**
+     * runs on the agent context and hands everything queued so far to processMessages,
+     * then marks the position after the last entry as processed
+     */
+    private void drainQueue() {
+        this.drainRequested.set(false);
+        if (this.queue == null) {
+            return;
+        }
+        final List<Entry> entries = new ArrayList<>();
+        this.queue.drainTo(entries);
+        if (entries.isEmpty()) {
+            return;
+        }
+        final List<Value> records = new ArrayList<>(entries.size());
+        final long[] timestamps = new long[entries.size()];
+        for (Entry entry : entries) {
+            timestamps[records.size()] = entry.timestamp;
+            records.add(entry.vectorList);
+        }
+        this.processMessages(records, timestamps);
+        this.processedPosition.set(entries.get(entries.size() - 1).nextPosition);
+    }
+
+    /**
+     * abstract class used by parent class to handle
+     * new records read from the journal, timestamps[i] being the
+     * journal timestamp of records[i].
+     * Called on the agent context when there are new records.
+     */
+    abstract protected void processMessages(List<Value> records, long[] timestamps);
+
+    @Override
+    public void didStart() {
+        System.out.println("[JournalAgent] didStart");
+        this.agentConfig = getProp("config");
+        super.didStart();
+    }
+
+    @Override
+    public void willStop() {
+        this.isRunning = false;
+        super.willStop();
+    }
+
+    private static final class Entry {
+
+        final long nextPosition;
+        final long timestamp;
+        final Value vectorList;
+
+        Entry(long nextPosition, long timestamp, Value vectorList) {
+            this.nextPosition = nextPosition;
+            this.timestamp = timestamp;
+            this.vectorList = vectorList;
+        }
+
+    }
+
+}
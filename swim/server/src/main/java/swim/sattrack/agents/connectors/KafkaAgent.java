@@ -1,153 +1,209 @@
 package swim.sattrack.agents.connectors;
 
 import swim.sattrack.agents.connectors.MessageBrokerAgent;
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import swim.sattrack.avro.AvroSchemaDecoder;
+import java.io.IOException;
 import io.confluent.kafka.serializers.KafkaAvroDeserializer;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.avro.Schema;
-import org.apache.avro.generic.GenericRecord;
-import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 
 import swim.api.SwimLane;
-import swim.api.agent.AbstractAgent;
-import swim.api.agent.AgentContext;
 import swim.api.lane.CommandLane;
-import swim.api.lane.ValueLane;
-import swim.api.lane.MapLane;
 import swim.structure.Value;
-import swim.structure.Record;
-import swim.json.Json;
-import swim.codec.Utf8;
 import swim.uri.Uri;
 
 /**
- * A KafkaAgent is a generic WebAgent which can be used to 
+ * A KafkaAgent is a generic WebAgent which can be used to
  * create a Kafka Broker and ingest data for a specific topic.
- * KafkaAgent extends MessageBrokerAgent which takes care of 
+ * KafkaAgent extends MessageBrokerAgent which takes care of
  * the connection state of the WebAgent
+ *
+ * Polling happens on dedicated consumer threads so it never blocks
+ * the agent. consumerCount consumers join the same group and split the
+ * topic partitions between them, so decoding scales with partitions.
+ * Each consumer hands decoded records off through its own bounded queue
+ * which is drained into processMessages() on the agent's own context,
+ * keeping per-partition order. When a queue is full that consumer
+ * pauses its partitions until the agent catches up.
+ * Offsets are only committed for records processMessages() has
+ * returned for, so a crash replays unprocessed records instead of
+ * losing them.
  */
 public abstract class KafkaAgent extends MessageBrokerAgent {
 
-    private Consumer<Long, GenericRecord> consumer;
+    private static final Uri DRAIN_LANE = Uri.parse("drainRecords");
+    private static final int DEFAULT_QUEUE_CAPACITY = 16; // kafka records, each one holds a full vector list
+    private static final long CLOSE_TIMEOUT = 5000L;
+    private static final long DEFAULT_COMMIT_INTERVAL = 1000L;
+
     private Value agentConfig;
-    private boolean isRunning = true;
+    private volatile boolean isRunning = false;
+    private final List<KafkaConsumerWorker> workers = new ArrayList<>();
+    private final AtomicBoolean drainRequested = new AtomicBoolean(false);
 
     /**
-     * place to hold records found for the kafka topic
-     * the agent extending this class will handle the records found here
+     * Command lane used by the consumer threads to tell the agent
+     * there are records waiting in the hand-off queue.
      */
-    @SwimLane("recordList")
-    public MapLane<Long, Value> recordList = this.<Long, Value>mapLane();
+    @SwimLane("drainRecords")
+    private CommandLane<Value> drainRecords = this.<Value>commandLane().onCommand(value -> {
+        drainQueue();
+    });
 
     /**
      * handle connecting to kafka topic
      */
     protected void connect() {
         System.out.println("[KafkaAgent] connect");
+        if (this.isRunning) {
+            System.out.println("[KafkaAgent] consumers already running");
+            return;
+        }
+        // wait for any previous consumers to finish closing
+        for (KafkaConsumerWorker worker : this.workers) {
+            try {
+                worker.join(CLOSE_TIMEOUT);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        this.workers.clear();
 
         // define our connection values
         String servers = this.agentConfig.get("servers").stringValue();
         String topic = this.agentConfig.get("topic").stringValue();
         String schemaUrl = this.agentConfig.get("schemaUrl").stringValue();
         String groupIdConfig = this.agentConfig.get("groupIdConfig").stringValue();
+        String schemaPath = this.agentConfig.get("schemaPath").stringValue(null);
+        String recordKey = this.agentConfig.get("recordKey").stringValue();
+        long pollInterval = this.agentConfig.get("pollInterval").longValue(1000L);
+        long commitInterval = this.agentConfig.get("commitInterval").longValue(DEFAULT_COMMIT_INTERVAL);
+        String offsetReset = this.agentConfig.get("offsetReset").stringValue("latest");
+        int queueCapacity = this.agentConfig.get("queueCapacity").intValue(DEFAULT_QUEUE_CAPACITY);
+        int consumerCount = Math.max(1, this.agentConfig.get("consumerCount").intValue(1));
 
-        // create our kakfa properties object to be used by the consumer
+        // create our kakfa properties object to be used by the consumers
         final Properties kafkaProps = new Properties();
         kafkaProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, servers);
         kafkaProps.put(ConsumerConfig.GROUP_ID_CONFIG, groupIdConfig);
-        kafkaProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
-        kafkaProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "true");
+        // only used when the group has no committed offset for a partition
+        kafkaProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, offsetReset);
+        // offsets are committed by the workers once records are processed
+        kafkaProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
         kafkaProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        kafkaProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, KafkaAvroDeserializer.class.getName());
-        kafkaProps.put("schema.registry.url", schemaUrl);
-
-        // create a new kafka consumer and subscribe to our topic
-        this.consumer = new KafkaConsumer<>(kafkaProps);
-        this.consumer.subscribe(Collections.singletonList(topic));
-        
-        // start our consumer
-        runConsumer();
+        Schema schema = null;
+        if (schemaPath != null) {
+            // decode against the local schema file and skip the schema registry
+            try {
+                schema = AvroSchemaDecoder.fromFile(schemaPath).schema();
+            } catch (IOException ex) {
+                System.out.println("[KafkaAgent] unable to read schema file " + schemaPath);
+                ex.printStackTrace();
+                return;
+            }
+            kafkaProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        } else {
+            kafkaProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, KafkaAvroDeserializer.class.getName());
+            kafkaProps.put("schema.registry.url", schemaUrl);
+        }
+
+        // create one consumer per partition group, kafka balances the partitions between them
+        this.isRunning = true;
+        for (int i = 0; i < consumerCount; i++) {
+            final String workerName = String.format("kafka-consumer-%s-%d", topic, i);
+            final Properties workerProps = new Properties();
+            workerProps.putAll(kafkaProps);
+            workerProps.put(ConsumerConfig.CLIENT_ID_CONFIG, workerName);
+            // the schema decoder reuses its buffers so each consumer gets its own
+            final AvroSchemaDecoder schemaDecoder = schema != null ? new AvroSchemaDecoder(schema, true) : null;
+            final KafkaConsumerWorker worker = new KafkaConsumerWorker(workerName, workerProps, topic, schemaDecoder,
+                recordKey, pollInterval, commitInterval, queueCapacity, this::requestDrain);
+            this.workers.add(worker);
+            worker.start();
+        }
     }
 
     /**
-     * handle disconnect
+     * handle disconnect. Each consumer is closed by its own thread.
      */
     protected void disconnect() {
-        this.consumer.close();
-       
+        this.isRunning = false;
+        for (KafkaConsumerWorker worker : this.workers) {
+            worker.stop();
+        }
     }
 
     /**
-     * This method sets up a long polling loop which 
-     * has the consumer poll for new record from  the topic. 
-     * New Records are converted to JSON and added to the recordsList map lane
+     * ask the agent to drain the queue, at most one request is in flight
      */
-    private void runConsumer() {
-        System.out.println("[KafkaAgent] runConsumer");
-        String recordKey = this.agentConfig.get("recordKey").stringValue();
-        while (this.isRunning) {
-            final ConsumerRecords<Long, GenericRecord> records = this.consumer.poll(this.agentConfig.get("pollInterval").intValue());
-            System.out.println(String.format("[KafkaAgent] check for records %s", records.count()));
-            for (ConsumerRecord<Long, GenericRecord> rec : records) {
-
-                records.forEach(record -> {
-                    this.handleRecord(rec.value().get(recordKey).toString());
-                });                    
-            }
-            this.consumer.commitAsync();
-            if(this.recordList.size() > 0) {
-                this.processMessages();
-            }
-            
+    private void requestDrain() {
+        if (this.drainRequested.compareAndSet(false, true)) {
+            command(nodeUri(), DRAIN_LANE, Value.absent());
         }
     }
 
     /**
-     * convert a record to JSON and add to map lane
+     * runs on the agent context and hands everything queued so far to processMessages.
+     * Each queue is drained in order so records from one partition keep their order.
+     * The records are marked for commit once processMessages returns.
      */
-    private void handleRecord(String genericRecord) {
-        final long timestamp = System.currentTimeMillis();
-        InputStream targetStream = new ByteArrayInputStream(genericRecord.getBytes());
-        try {
-            final Value recordValue = Utf8.read(Json.parser(), targetStream);
-            this.recordList.put(timestamp, recordValue);
-
-        } catch(Exception ex) {
-            ex.printStackTrace();
+    private void drainQueue() {
+        this.drainRequested.set(false);
+        final List<KafkaConsumerWorker.PolledRecord> polled = new ArrayList<>();
+        final int[] drained = new int[this.workers.size()];
+        for (int i = 0; i < this.workers.size(); i++) {
+            drained[i] = this.workers.get(i).drainTo(polled);
+        }
+        if (polled.isEmpty()) {
+            return;
+        }
+        final List<Value> records = new ArrayList<>(polled.size());
+        final long[] timestamps = new long[polled.size()];
+        for (int i = 0; i < polled.size(); i++) {
+            if (polled.get(i).value.isDefined()) {
+                timestamps[records.size()] = polled.get(i).timestamp;
+                records.add(polled.get(i).value);
+            }
+        }
+        if (!records.isEmpty()) {
+            this.processMessages(records, timestamps);
+        }
+        int start = 0;
+        for (int i = 0; i < drained.length; i++) {
+            this.workers.get(i).markProcessed(polled.subList(start, start + drained[i]));
+            start += drained[i];
         }
     }
 
     /**
-     * abstract class used by parent class to parse 
-     * new records out of the recordList map lane.
-     * Called automatically by consumer when there are new records.
+     * abstract class used by parent class to handle
+     * new records drained from the hand-off queue, timestamps[i] being
+     * the Kafka timestamp of records[i] or -1.
+     * Called on the agent context when there are new records.
      */
-    abstract protected void processMessages();
+    abstract protected void processMessages(List<Value> records, long[] timestamps);
+
 
- 
     @Override
     public void didStart() {
         System.out.println("[KafkaAgent] didStart");
         this.agentConfig = getProp("config");
-        this.isRunning = true;
         super.didStart();
-    }    
+    }
 
     @Override
     public void willStop() {
-       
+
         this.isRunning = false;
         super.willStop();
     }
 
 
-}
\ No newline at end of file
+}
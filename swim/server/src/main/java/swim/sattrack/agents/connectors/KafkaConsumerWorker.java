@@ -0,0 +1,338 @@
+package swim.sattrack.agents.connectors;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+import swim.sattrack.avro.AvroSchemaDecoder;
+import swim.sattrack.avro.AvroValues;
+import swim.sattrack.metrics.Counter;
+import swim.sattrack.metrics.Gauge;
+import swim.sattrack.metrics.LatencyHistogram;
+import swim.sattrack.metrics.Metrics;
+import swim.structure.Value;
+
+/**
+ * One Kafka consumer running on its own thread.
+ * KafkaAgent starts one worker per configured consumer, all in the
+ * same consumer group so Kafka splits the topic partitions between them.
+ * Each worker decodes its records and offers them, in partition order,
+ * to its own bounded queue which the agent drains.
+ * Each record keeps its Kafka timestamp alongside the decoded value so
+ * satellites can measure end to end latency.
+ *
+ * Offsets are committed by hand, only for records the agent has
+ * processed. The agent marks records once processMessages() has
+ * handed them on and the worker commits the highest marked offset of
+ * each partition every commitInterval. Kafka resumes assigned
+ * partitions from their committed offsets, so a restart or rebalance
+ * resumes from the last processed record. Records still queued for a
+ * revoked partition are dropped, its new owner reads them again from
+ * the committed offset.
+ */
+final class KafkaConsumerWorker {
+
+    private static final long PAUSED_POLL_INTERVAL = 100L;
+    private static final long LAG_UPDATE_INTERVAL = 1000L;
+
+    private static final Counter RECORDS = Metrics.shared()
+        .counter("sattrack_kafka_records_total", "kafka records polled");
+    private static final LatencyHistogram BATCH_DECODE_TIME = Metrics.shared()
+        .histogram("sattrack_kafka_batch_decode_seconds", "time to decode the records of one poll");
+    private static final Gauge CONSUMER_LAG = Metrics.shared()
+        .gauge("sattrack_kafka_consumer_lag", "records between the consumer position and the end of the partition", "topic", "partition");
+
+    private final String name;
+    private final Consumer<String, Object> consumer;
+    private final AvroSchemaDecoder schemaDecoder; // null when using the schema registry
+    private final String recordKey;
+    private final long pollInterval;
+    private final long commitInterval;
+    private final BlockingQueue<PolledRecord> queue;
+    private final ArrayDeque<PolledRecord> overflow = new ArrayDeque<>(); // consumer thread only
+    private final Runnable onRecords;
+    private final Thread thread;
+    private volatile boolean isRunning = false;
+    private final Map<String, String[]> lagPartitions = new HashMap<>(); // partitions this worker reports lag for
+    private long lastLagUpdate;
+    // next offset to commit per partition, marked by the agent and committed by the consumer thread
+    private final Map<TopicPartition, OffsetAndMetadata> processedOffsets = new ConcurrentHashMap<>();
+    private long lastCommit;
+
+    KafkaConsumerWorker(String name, Properties kafkaProps, String topic, AvroSchemaDecoder schemaDecoder,
+                        String recordKey, long pollInterval, long commitInterval, int queueCapacity, Runnable onRecords) {
+        this.name = name;
+        this.consumer = new KafkaConsumer<>(kafkaProps);
+        this.consumer.subscribe(Collections.singletonList(topic), new CommitOnRebalance());
+        this.schemaDecoder = schemaDecoder;
+        this.recordKey = recordKey;
+        this.pollInterval = pollInterval;
+        this.commitInterval = commitInterval;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.onRecords = onRecords;
+        this.thread = new Thread(this::runConsumer, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.isRunning = true;
+        this.thread.start();
+    }
+
+    /**
+     * ask the worker to stop. wakeup() is the only consumer call
+     * which is safe from another thread, the worker closes its own consumer.
+     */
+    void stop() {
+        this.isRunning = false;
+        this.consumer.wakeup();
+    }
+
+    boolean isAlive() {
+        return this.thread.isAlive();
+    }
+
+    void join(long timeout) throws InterruptedException {
+        this.thread.join(timeout);
+    }
+
+    /**
+     * move everything queued so far into records, in arrival order
+     */
+    int drainTo(Collection<PolledRecord> records) {
+        return this.queue.drainTo(records);
+    }
+
+    /**
+     * called by the agent once records drained from this worker have
+     * been processed, they are committed on the next commit
+     */
+    void markProcessed(List<PolledRecord> records) {
+        for (int i = 0; i < records.size(); i++) {
+            final PolledRecord record = records.get(i);
+            // records arrive in partition order so the last one marked is the highest
+            this.processedOffsets.put(record.partition, new OffsetAndMetadata(record.offset + 1L));
+        }
+    }
+
+    /**
+     * Long polling loop for this worker.
+     * Anything the queue cannot take is held back and the assigned
+     * partitions are paused until the agent has drained the queue.
+     */
+    private void runConsumer() {
+        System.out.println(String.format("[KafkaAgent] runConsumer %s", this.name));
+        final ArrayDeque<PolledRecord> overflow = this.overflow;
+        boolean paused = false;
+        try {
+            while (this.isRunning) {
+                while (!overflow.isEmpty() && this.queue.offer(overflow.peek())) {
+                    overflow.poll();
+                }
+                if (!overflow.isEmpty() || this.queue.remainingCapacity() == 0) {
+                    // keep newly assigned partitions paused as well
+                    this.consumer.pause(this.consumer.assignment());
+                    paused = true;
+                } else if (paused && this.queue.size() <= this.queue.remainingCapacity()) {
+                    this.consumer.resume(this.consumer.paused());
+                    paused = false;
+                }
+
+                final ConsumerRecords<String, Object> records = this.consumer.poll(paused ? PAUSED_POLL_INTERVAL : this.pollInterval);
+                if (!records.isEmpty()) {
+                    System.out.println(String.format("[KafkaAgent] %s check for records %s", this.name, records.count()));
+                    RECORDS.add(records.count());
+                    final long decodeStart = System.nanoTime();
+                    for (ConsumerRecord<String, Object> rec : records) {
+                        final Value recordValue = this.decodeRecord(rec.value());
+                        // records which fail to decode are queued too so their offsets get committed in order
+                        final PolledRecord polled = new PolledRecord(new TopicPartition(rec.topic(), rec.partition()),
+                            rec.offset(), rec.timestamp(), recordValue);
+                        if (!overflow.isEmpty() || !this.queue.offer(polled)) {
+                            overflow.add(polled);
+                        }
+                    }
+                    BATCH_DECODE_TIME.recordNanosSince(decodeStart);
+                }
+                final long now = System.currentTimeMillis();
+                if (now - this.lastLagUpdate >= LAG_UPDATE_INTERVAL) {
+                    this.lastLagUpdate = now;
+                    this.updateLag();
+                }
+                if (now - this.lastCommit >= this.commitInterval) {
+                    this.lastCommit = now;
+                    this.commitProcessed(false);
+                }
+                if (!this.queue.isEmpty()) {
+                    this.onRecords.run();
+                }
+            }
+        } catch (WakeupException ex) {
+            // expected when stop() is called
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        } finally {
+            for (String[] partition : this.lagPartitions.values()) {
+                CONSUMER_LAG.remove(partition);
+            }
+            try {
+                this.commitProcessed(true);
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+            this.consumer.close();
+            System.out.println(String.format("[KafkaAgent] %s consumer closed", this.name));
+        }
+    }
+
+    /**
+     * commit the processed offsets of the partitions still assigned to
+     * this consumer, one offset per partition. Async while running,
+     * sync when partitions are revoked or the consumer is closing.
+     */
+    private void commitProcessed(boolean sync) {
+        if (this.processedOffsets.isEmpty()) {
+            return;
+        }
+        final Set<TopicPartition> assignment = this.consumer.assignment();
+        final Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : this.processedOffsets.entrySet()) {
+            // a partition marked again since being read here stays for the next commit
+            if (this.processedOffsets.remove(entry.getKey(), entry.getValue()) && assignment.contains(entry.getKey())) {
+                offsets.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        if (sync) {
+            this.consumer.commitSync(offsets);
+        } else {
+            this.consumer.commitAsync(offsets, (committed, ex) -> {
+                if (ex != null) {
+                    System.out.println(String.format("[KafkaAgent] %s offset commit failed: %s", this.name, ex.getMessage()));
+                }
+            });
+        }
+    }
+
+    /**
+     * copy the lag of each assigned partition from the consumer's own
+     * fetch metrics, which avoids asking the broker for end offsets
+     */
+    private void updateLag() {
+        final Map<String, String[]> current = new HashMap<>();
+        for (Map.Entry<MetricName, ? extends Metric> entry : this.consumer.metrics().entrySet()) {
+            final MetricName metricName = entry.getKey();
+            if (!"records-lag".equals(metricName.name()) || !"consumer-fetch-manager-metrics".equals(metricName.group())) {
+                continue;
+            }
+            final String topic = metricName.tags().get("topic");
+            final String partition = metricName.tags().get("partition");
+            final Object lag = entry.getValue().metricValue();
+            if (topic != null && partition != null && lag instanceof Number && !Double.isNaN(((Number) lag).doubleValue())) {
+                final String[] labels = {topic, partition};
+                CONSUMER_LAG.set(((Number) lag).doubleValue(), labels);
+                current.put(topic + "-" + partition, labels);
+            }
+        }
+        // drop partitions which were revoked from this worker
+        for (Map.Entry<String, String[]> entry : this.lagPartitions.entrySet()) {
+            if (!current.containsKey(entry.getKey())) {
+                CONSUMER_LAG.remove(entry.getValue());
+            }
+        }
+        this.lagPartitions.clear();
+        this.lagPartitions.putAll(current);
+    }
+
+    /**
+     * convert the recordKey field of a kafka payload straight to a Value.
+     * The payload is a GenericRecord when using the schema registry
+     * or raw bytes when decoding against a local schema file.
+     */
+    private Value decodeRecord(Object payload) {
+        try {
+            final GenericRecord genericRecord;
+            if (this.schemaDecoder != null) {
+                genericRecord = this.schemaDecoder.decode((byte[]) payload);
+            } else {
+                genericRecord = (GenericRecord) payload;
+            }
+            return AvroValues.toValue(genericRecord.get(this.recordKey));
+        } catch(Exception ex) {
+            ex.printStackTrace();
+            return Value.absent();
+        }
+    }
+
+    /**
+     * commits what has been processed before partitions move to another
+     * consumer and drops the records of those partitions which have not
+     * been drained yet. Runs on the consumer thread inside poll().
+     */
+    private final class CommitOnRebalance implements ConsumerRebalanceListener {
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            try {
+                commitProcessed(true);
+            } catch (Exception ex) {
+                System.out.println(String.format("[KafkaAgent] %s commit on revoke failed: %s", name, ex.getMessage()));
+            }
+            if (!partitions.isEmpty()) {
+                queue.removeIf(record -> partitions.contains(record.partition));
+                overflow.removeIf(record -> partitions.contains(record.partition));
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            if (partitions.isEmpty()) {
+                return;
+            }
+            System.out.println(String.format("[KafkaAgent] %s assigned %s partitions", name, partitions.size()));
+        }
+
+    }
+
+    /**
+     * a decoded record, where it came from and its timestamp (-1 for
+     * none), absent when it failed to decode
+     */
+    static final class PolledRecord {
+
+        final TopicPartition partition;
+        final long offset;
+        final long timestamp;
+        final Value value;
+
+        PolledRecord(TopicPartition partition, long offset, long timestamp, Value value) {
+            this.partition = partition;
+            this.offset = offset;
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+
+    }
+
+}
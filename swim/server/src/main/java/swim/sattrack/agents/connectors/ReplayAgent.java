@@ -0,0 +1,241 @@
+package swim.sattrack.agents.connectors;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import swim.api.SwimLane;
+import swim.api.lane.CommandLane;
+import swim.sattrack.avro.AvroSchemaDecoder;
+import swim.sattrack.metrics.Counter;
+import swim.sattrack.metrics.LatencyHistogram;
+import swim.sattrack.metrics.Metrics;
+import swim.structure.Value;
+import swim.uri.Uri;
+
+/**
+ * Feeds the satellite agents from a recorded dataset or a synthetic
+ * catalog instead of Kafka, for demos and load tests without a broker.
+ * source is "synthetic" or the path of a dataset file (see DatasetReplay).
+ * The replay clock runs speed times faster than the wall clock, so a
+ * capture spanning an hour replays in a minute at speed 60.
+ *
+ * The source is read on a dedicated thread which hands vector lists
+ * to the agent through a bounded queue, the same way the KafkaAgent
+ * does, and stalls when the agent falls behind. Each vector list keeps
+ * the time it was emitted alongside it, passed to the fan-out as its
+ * Kafka timestamp, so the end to end latency metrics cover replays too.
+ */
+public class ReplayAgent extends MessageBrokerAgent {
+
+    private static final Uri DRAIN_LANE = Uri.parse("drainRecords");
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final long DEFAULT_TICK = 100L;
+    private static final long DEFAULT_INTERVAL = 15000L;
+    private static final long CLOSE_TIMEOUT = 5000L;
+    private static final LatencyHistogram FAN_OUT_TIME = Metrics.shared()
+        .histogram("sattrack_fan_out_seconds", "time to send one drain of kafka records to the satellite agents");
+    private static final Counter SATELLITE_UPDATES = Metrics.shared()
+        .counter("sattrack_satellite_updates_total", "updates sent to satellite agents");
+    private static final Counter REPLAYED_RECORDS = Metrics.shared()
+        .counter("sattrack_replay_records_total", "vector lists emitted by the replay connector");
+
+    private Value agentConfig;
+    private volatile boolean isRunning = false;
+    private Thread replayThread;
+    private BlockingQueue<Emitted> queue;
+    private final AtomicBoolean drainRequested = new AtomicBoolean(false);
+    private final SatelliteFanOut fanOut = new SatelliteFanOut();
+    private final SatelliteFanOut.Sink updateSink = (nodeUri, laneUri, value) -> command(nodeUri, laneUri, value);
+
+    /**
+     * Command lane used by the replay thread to tell the agent
+     * there are records waiting in the hand-off queue.
+     */
+    @SwimLane("drainRecords")
+    private CommandLane<Value> drainRecords = this.<Value>commandLane().onCommand(value -> {
+        drainQueue();
+    });
+
+    /**
+     * open the source and start replaying it
+     */
+    protected void connect() {
+        System.out.println("[ReplayAgent] connect");
+        if (this.isRunning) {
+            System.out.println("[ReplayAgent] replay already running");
+            return;
+        }
+        if (!awaitReplayThread()) {
+            return;
+        }
+
+        final String source = this.agentConfig.get("source").stringValue("synthetic");
+        final double speed = Math.max(0.001, this.agentConfig.get("speed").doubleValue(1.0));
+        final long tick = Math.max(1L, this.agentConfig.get("tick").longValue(DEFAULT_TICK));
+        final int queueCapacity = this.agentConfig.get("queueCapacity").intValue(DEFAULT_QUEUE_CAPACITY);
+        final long startTime = System.currentTimeMillis();
+
+        final ReplaySource replaySource;
+        final long replayStart;
+        if ("synthetic".equals(source)) {
+            final int catalogSize = this.agentConfig.get("catalogSize").intValue(16000);
+            final long seed = this.agentConfig.get("seed").longValue(1L);
+            final long minUpdateInterval = this.agentConfig.get("minUpdateInterval").longValue(60000L);
+            final long maxUpdateInterval = this.agentConfig.get("maxUpdateInterval").longValue(3600000L);
+            replaySource = new SyntheticCatalog(catalogSize, seed, startTime, minUpdateInterval, maxUpdateInterval);
+            replayStart = startTime;
+            System.out.println(String.format("[ReplayAgent] synthetic catalog of %d objects", catalogSize));
+        } else {
+            try {
+                final DatasetReplay dataset = openDataset(source);
+                replaySource = dataset;
+                replayStart = dataset.startTime();
+                System.out.println(String.format("[ReplayAgent] replaying %d frames from %s", dataset.frameCount(), source));
+            } catch (IOException ex) {
+                System.out.println("[ReplayAgent] unable to read dataset " + source);
+                ex.printStackTrace();
+                return;
+            }
+        }
+
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.isRunning = true;
+        final BlockingQueue<Emitted> handOff = this.queue;
+        this.replayThread = new Thread(() -> replay(replaySource, handOff, replayStart, speed, tick), "replay-" + nodeUri());
+        this.replayThread.setDaemon(true);
+        this.replayThread.start();
+    }
+
+    /**
+     * stop replaying, the thread exits at its next tick
+     */
+    protected void disconnect() {
+        this.isRunning = false;
+        if (this.replayThread != null) {
+            this.replayThread.interrupt();
+        }
+    }
+
+    private boolean awaitReplayThread() {
+        if (this.replayThread != null) {
+            try {
+                this.replayThread.join(CLOSE_TIMEOUT);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            this.replayThread = null;
+        }
+        return true;
+    }
+
+    private DatasetReplay openDataset(String path) throws IOException {
+        final String format = this.agentConfig.get("format").stringValue(path.endsWith(".json") ? "json" : "avro");
+        final String recordKey = this.agentConfig.get("recordKey").stringValue("tleDataset");
+        final boolean loop = this.agentConfig.get("loop").booleanValue(true);
+        final long interval = this.agentConfig.get("interval").longValue(DEFAULT_INTERVAL);
+        AvroSchemaDecoder decoder = null;
+        if ("avro".equals(format)) {
+            final String schemaPath = this.agentConfig.get("schemaPath").stringValue("../../kafka/tle.avsc");
+            final boolean framed = this.agentConfig.get("framed").booleanValue(true);
+            decoder = new AvroSchemaDecoder(AvroSchemaDecoder.fromFile(schemaPath).schema(), framed);
+        }
+        return DatasetReplay.open(path, format, decoder, recordKey, loop, interval);
+    }
+
+    /**
+     * runs on the replay thread. Maps wall time to replay time, polls
+     * the source and blocks on the queue while it is full.
+     */
+    private void replay(ReplaySource source, BlockingQueue<Emitted> handOff, long replayStart, double speed, long tick) {
+        final long wallStart = System.currentTimeMillis();
+        try {
+            while (this.isRunning) {
+                final long now = System.currentTimeMillis();
+                final long replayTime = replayStart + (long) ((now - wallStart) * speed);
+                final List<Value> due = source.poll(replayTime);
+                if (due == null) {
+                    System.out.println("[ReplayAgent] replay finished");
+                    break;
+                }
+                for (Value records : due) {
+                    handOff.put(new Emitted(records, System.currentTimeMillis()));
+                    REPLAYED_RECORDS.increment();
+                    requestDrain();
+                }
+                Thread.sleep(Math.max(0L, tick - (System.currentTimeMillis() - now)));
+            }
+        } catch (InterruptedException ex) {
+            // disconnected
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        } finally {
+            this.isRunning = false;
+        }
+    }
+
+    /**
+     * ask the agent to drain the queue, at most one request is in flight
+     */
+    private void requestDrain() {
+        if (this.drainRequested.compareAndSet(false, true)) {
+            command(nodeUri(), DRAIN_LANE, Value.absent());
+        }
+    }
+
+    /**
+     * runs on the agent context, sends everything queued so far to the satellite agents
+     */
+    private void drainQueue() {
+        this.drainRequested.set(false);
+        if (this.queue == null) {
+            return;
+        }
+        final List<Emitted> emitted = new ArrayList<>();
+        this.queue.drainTo(emitted);
+        if (emitted.isEmpty()) {
+            return;
+        }
+        final List<Value> records = new ArrayList<>(emitted.size());
+        final long[] timestamps = new long[emitted.size()];
+        for (Emitted entry : emitted) {
+            timestamps[records.size()] = entry.timestamp;
+            records.add(entry.vectorList);
+        }
+        final long fanOutStart = System.nanoTime();
+        final int sent = this.fanOut.fanOut(records, timestamps, this.updateSink);
+        FAN_OUT_TIME.recordNanosSince(fanOutStart);
+        SATELLITE_UPDATES.add(sent);
+    }
+
+    @Override
+    public void didStart() {
+        System.out.println("[ReplayAgent] didStart");
+        this.agentConfig = getProp("config");
+        this.fanOut.setDedup(SatelliteFanOut.Dedup.from(this.agentConfig));
+        super.didStart();
+    }
+
+    @Override
+    public void willStop() {
+        this.isRunning = false;
+        super.willStop();
+    }
+
+    private static final class Emitted {
+
+        final Value vectorList;
+        final long timestamp;
+
+        Emitted(Value vectorList, long timestamp) {
+            this.vectorList = vectorList;
+            this.timestamp = timestamp;
+        }
+
+    }
+
+}
@@ -0,0 +1,20 @@
+package swim.sattrack.agents.connectors;
+
+import java.util.List;
+
+import swim.structure.Value;
+
+/**
+ * Where the ReplayAgent reads its TLE vector lists from.
+ * Sources run on the replay thread only.
+ */
+public interface ReplaySource {
+
+    /**
+     * the vector lists due by replayTime, in the shape of the Kafka
+     * tleDataset records. Empty when nothing is due, null once the
+     * source has nothing more to send.
+     */
+    List<Value> poll(long replayTime);
+
+}
@@ -0,0 +1,265 @@
+package swim.sattrack.agents.connectors;
+
+import java.util.Arrays;
+import java.util.List;
+
+import swim.sattrack.agents.SatelliteShards;
+import swim.sattrack.metrics.Counter;
+import swim.sattrack.metrics.Metrics;
+import swim.sattrack.util.IntIntMap;
+import swim.sattrack.util.IntLongMap;
+import swim.structure.Num;
+import swim.structure.Record;
+import swim.structure.Value;
+import swim.uri.Uri;
+
+/**
+ * Splits the TLE vector lists read from Kafka into one update per
+ * satellite, addressed to that satellite's agent. In sharded mode the
+ * vectors are grouped into one updateSatellites batch per shard instead.
+ * With dedup on, a vector whose element set (epoch and
+ * elementSetNumber) is the one last sent for its satellite is dropped
+ * or cut down to its position and sent to updatePosition, since the
+ * producer republishes every satellite on every cycle.
+ * Node URIs are built once per catalog number and cached, so a poll
+ * only allocates what the sink does with each vector. Vectors are sent
+ * as they are in the decoded batch, without copies, and never changed:
+ * when a record has a Kafka timestamp its vectors are sent wrapped in
+ * {vector, kafkaTimestamp} so the timestamp does not end up in the
+ * satellite's row. vectorOf and kafkaTimestampOf unwrap an update.
+ * Kept apart from the TleMessagesAgent so the fan-out can be
+ * benchmarked without a running plane. Not thread safe, owned by a
+ * single agent.
+ */
+public final class SatelliteFanOut {
+
+    public static final Uri UPDATE_DATA_LANE = Uri.parse("updateData");
+    public static final Uri UPDATE_SATELLITES_LANE = Uri.parse("updateSatellites");
+    public static final Uri UPDATE_POSITION_LANE = Uri.parse("updatePosition");
+    private static final String NODE_PREFIX = "/satellite/";
+    private static final String VECTOR = "vector";
+    private static final String KAFKA_TIMESTAMP = "kafkaTimestamp";
+    private static final long NO_ELEMENTS = Long.MIN_VALUE;
+    private static final Counter DUPLICATES = Metrics.shared()
+        .counter("sattrack_tle_duplicates_total", "vectors with an unchanged element set, dropped or sent as position only");
+
+    private final IntIntMap uriSlots = new IntIntMap(16384, -1);
+    private Uri[] nodeUris = new Uri[16384];
+    private final IntLongMap elementSets = new IntLongMap(16384, NO_ELEMENTS); // last element set key sent per catalog number
+    private final int shards;
+    private final Record[] shardBatches;
+    private Dedup dedup = Dedup.OFF;
+
+    /**
+     * what to do with a vector whose element set did not change
+     */
+    public enum Dedup {
+        OFF, DROP, POSITION;
+
+        /**
+         * off, drop or position from a connector config, drop when unset
+         * since positions are pushed by the propagator
+         */
+        public static Dedup from(Value config) {
+            final String mode = config.get("dedup").stringValue("drop");
+            if ("off".equalsIgnoreCase(mode)) {
+                return OFF;
+            } else if ("position".equalsIgnoreCase(mode)) {
+                return POSITION;
+            }
+            return DROP;
+        }
+    }
+
+    /**
+     * receives each update, normally a command to the agent
+     */
+    public interface Sink {
+        void send(Uri nodeUri, Uri laneUri, Value value);
+    }
+
+    /**
+     * one update per satellite agent, or per shard when sattrack.shards is set
+     */
+    public SatelliteFanOut() {
+        this(SatelliteShards.count());
+    }
+
+    /**
+     * shards 0 sends one update per satellite agent
+     */
+    public SatelliteFanOut(int shards) {
+        this.shards = shards;
+        this.shardBatches = new Record[shards];
+    }
+
+    public void setDedup(Dedup dedup) {
+        this.dedup = dedup;
+    }
+
+    /**
+     * returns the number of satellite updates sent
+     */
+    public int fanOut(List<Value> records, Sink sink) {
+        return fanOut(records, null, sink);
+    }
+
+    /**
+     * timestamps holds the Kafka timestamp of each record, -1 for none,
+     * or is null when there are none. Returns the number of satellite
+     * updates sent.
+     */
+    public int fanOut(List<Value> records, long[] timestamps, Sink sink) {
+        if (this.shards > 0) {
+            return fanOutToShards(records, timestamps, sink);
+        }
+        int sent = 0;
+        for (int r = 0; r < records.size(); r++) {
+            final Value vectorList = records.get(r);
+            final long timestamp = timestamps != null ? timestamps[r] : -1L;
+            final int count = vectorList.length();
+            for (int i = 0; i < count; i++) {
+                final Value vector = vectorList.getItem(i).toValue();
+                final Value catalogNumber = vector.get("catalogNumber");
+                if (!catalogNumber.isDefined()) {
+                    continue;
+                }
+                final Value update = dedup(catalogNumber.intValue(-1), vector, timestamp);
+                if (update != null) {
+                    sink.send(nodeUri(catalogNumber), vectorOf(update) == vector ? UPDATE_DATA_LANE : UPDATE_POSITION_LANE, update);
+                    sent += 1;
+                }
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * one updateSatellites batch per shard with the vectors it hosts
+     */
+    private int fanOutToShards(List<Value> records, long[] timestamps, Sink sink) {
+        int sent = 0;
+        for (int r = 0; r < records.size(); r++) {
+            final Value vectorList = records.get(r);
+            final long timestamp = timestamps != null ? timestamps[r] : -1L;
+            final int count = vectorList.length();
+            for (int i = 0; i < count; i++) {
+                final Value vector = vectorList.getItem(i).toValue();
+                final int catalogNumber = vector.get("catalogNumber").intValue(-1);
+                if (catalogNumber < 0) {
+                    continue;
+                }
+                // the shard tells a position only update by its missing tle
+                final Value update = dedup(catalogNumber, vector, timestamp);
+                if (update == null) {
+                    continue;
+                }
+                final int shard = SatelliteShards.shardOf(catalogNumber, this.shards);
+                if (this.shardBatches[shard] == null) {
+                    this.shardBatches[shard] = Record.create();
+                }
+                this.shardBatches[shard].item(update);
+                sent += 1;
+            }
+        }
+        for (int shard = 0; shard < this.shards; shard++) {
+            if (this.shardBatches[shard] != null) {
+                sink.send(SatelliteShards.shardUri(shard), UPDATE_SATELLITES_LANE, this.shardBatches[shard]);
+                this.shardBatches[shard] = null;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * the vector itself, wrapped with its timestamp if it has one, when
+     * its element set is new, otherwise null to drop it or its position
+     * only, depending on the dedup mode
+     */
+    private Value dedup(int catalogNumber, Value vector, long timestamp) {
+        if (this.dedup == Dedup.OFF || catalogNumber < 0) {
+            return timestamped(vector, timestamp);
+        }
+        final long elementSet = elementSetKey(vector);
+        if (elementSet == NO_ELEMENTS || this.elementSets.put(catalogNumber, elementSet) != elementSet) {
+            return timestamped(vector, timestamp);
+        }
+        DUPLICATES.increment();
+        if (this.dedup == Dedup.DROP) {
+            return null;
+        }
+        final Record position = Record.create(6)
+            .slot("catalogNumber", catalogNumber)
+            .slot("latitude", vector.get("latitude"))
+            .slot("longitude", vector.get("longitude"))
+            .slot("height", vector.get("height"))
+            .slot("position", vector.get("position"));
+        if (timestamp >= 0L) {
+            // our own record, the timestamp can go in it
+            position.slot(KAFKA_TIMESTAMP, timestamp);
+        }
+        return position;
+    }
+
+    private static Value timestamped(Value vector, long timestamp) {
+        return timestamp < 0L ? vector : Record.create(2).slot(VECTOR, vector).slot(KAFKA_TIMESTAMP, timestamp);
+    }
+
+    /**
+     * the vector or position only update sent by fanOut, without its timestamp
+     */
+    public static Value vectorOf(Value update) {
+        final Value vector = update.get(VECTOR);
+        return vector.isDefined() ? vector : update;
+    }
+
+    /**
+     * the Kafka timestamp an update was sent with, or -1
+     */
+    public static long kafkaTimestampOf(Value update) {
+        return update.get(KAFKA_TIMESTAMP).longValue(-1L);
+    }
+
+    /**
+     * epoch and elementSetNumber packed in a long, exact for epochs in
+     * ms and element set numbers of up to 4 digits. Text epochs, as in
+     * the JSON sample, are hashed.
+     */
+    static long elementSetKey(Value vector) {
+        final Value epoch = vector.get("epoch");
+        if (!epoch.isDefined()) {
+            return NO_ELEMENTS;
+        }
+        final long epochKey = epoch instanceof Num ? epoch.longValue() : epoch.stringValue("").hashCode();
+        return (epochKey << 14) | (vector.get("elementSetNumber").intValue(0) & 0x3FFF);
+    }
+
+    /**
+     * the agent URI of a satellite, cached for whole catalog numbers
+     */
+    public Uri nodeUri(Value catalogNumber) {
+        if (catalogNumber instanceof Num) {
+            final int id = catalogNumber.intValue();
+            if (id >= 0 && id == catalogNumber.doubleValue()) {
+                return nodeUri(id);
+            }
+        }
+        return Uri.parse(NODE_PREFIX + catalogNumber.stringValue(""));
+    }
+
+    public Uri nodeUri(int catalogNumber) {
+        final int slot = this.uriSlots.get(catalogNumber);
+        if (slot >= 0) {
+            return this.nodeUris[slot];
+        }
+        final int newSlot = this.uriSlots.size();
+        if (newSlot == this.nodeUris.length) {
+            this.nodeUris = Arrays.copyOf(this.nodeUris, newSlot << 1);
+        }
+        final Uri nodeUri = Uri.parse(NODE_PREFIX + catalogNumber);
+        this.nodeUris[newSlot] = nodeUri;
+        this.uriSlots.put(catalogNumber, newSlot);
+        return nodeUri;
+    }
+
+}
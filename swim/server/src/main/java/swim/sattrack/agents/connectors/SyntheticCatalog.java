@@ -0,0 +1,391 @@
+package swim.sattrack.agents.connectors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import swim.sattrack.orbit.Geodetic;
+import swim.sattrack.orbit.Sgp4;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * Generates a made up but realistic satellite catalog for load tests.
+ * Orbits are spread over the regimes of the real catalog (mostly low
+ * earth orbit, then medium, geostationary and Molniya), with valid
+ * TLE lines the propagator can use, and objects are split between
+ * payloads, debris and rocket bodies of several countries.
+ * Each object is updated at its own interval, drawn log-uniformly
+ * between minUpdateInterval and maxUpdateInterval, and its element set
+ * is renewed now and then. Vectors have the fields of the Kafka
+ * tleVectorList50 records, with the position worked out from the
+ * elements at the update time (two-body, good enough to drive the maps).
+ * Not thread safe.
+ */
+public final class SyntheticCatalog implements ReplaySource {
+
+    public static final int VECTORS_PER_RECORD = 50;
+
+    private static final double MU = 398600.8; // km3/s2
+    private static final double MILLIS_PER_DAY = 86400000.0;
+    private static final double NEW_ELEMENTS_CHANCE = 0.1; // per update
+    private static final String[] TYPES = {"PAYLOAD", "DEBRIS", "ROCKET BODY"};
+    private static final double[] TYPE_WEIGHTS = {0.35, 0.5, 0.15};
+    private static final String[] COUNTRIES = {"US", "CIS", "PRC", "UK", "FR", "JPN", "IND", "ESA"};
+    private static final double[] COUNTRY_WEIGHTS = {0.4, 0.3, 0.15, 0.04, 0.03, 0.03, 0.03, 0.02};
+    private static final String[] LAUNCH_SITES = {"AFETR", "AFWTR", "TYMSC", "PKMTR", "JSC", "XSC", "FRGUI", "SRILR"};
+    private static final String[] RCS_SIZES = {"SMALL", "MEDIUM", "LARGE"};
+
+    private final int size;
+    private final Random random;
+    private final long[] nextUpdate;
+    private final long[] updateInterval;
+    private final long[] epoch;
+    private final int[] elementSet;
+    private final double[] inclination; // degrees
+    private final double[] rightAscension;
+    private final double[] eccentricity;
+    private final double[] argPericenter;
+    private final double[] meanAnomaly; // at epoch
+    private final double[] meanMotion; // revs per day
+    private final double[] bStar;
+    private final byte[] type;
+    private final byte[] country;
+    private final byte[] rcsSize;
+    private final double[] position = new double[3];
+
+    public SyntheticCatalog(int size, long seed, long startMillis, long minUpdateInterval, long maxUpdateInterval) {
+        this.size = size;
+        this.random = new Random(seed);
+        this.nextUpdate = new long[size];
+        this.updateInterval = new long[size];
+        this.epoch = new long[size];
+        this.elementSet = new int[size];
+        this.inclination = new double[size];
+        this.rightAscension = new double[size];
+        this.eccentricity = new double[size];
+        this.argPericenter = new double[size];
+        this.meanAnomaly = new double[size];
+        this.meanMotion = new double[size];
+        this.bStar = new double[size];
+        this.type = new byte[size];
+        this.country = new byte[size];
+        this.rcsSize = new byte[size];
+        final double logMin = Math.log(Math.max(1L, minUpdateInterval));
+        final double logMax = Math.log(Math.max(minUpdateInterval, maxUpdateInterval));
+        for (int i = 0; i < size; i++) {
+            this.updateInterval[i] = Math.round(Math.exp(logMin + this.random.nextDouble() * (logMax - logMin)));
+            this.nextUpdate[i] = startMillis; // everything is sent once on the first poll
+            this.type[i] = (byte) pick(TYPE_WEIGHTS);
+            this.country[i] = (byte) pick(COUNTRY_WEIGHTS);
+            this.rcsSize[i] = (byte) this.random.nextInt(RCS_SIZES.length);
+            this.newOrbit(i, startMillis - (long) (this.random.nextDouble() * 3.0 * MILLIS_PER_DAY));
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * the vectors of every object due for an update by timeMillis, in
+     * records of VECTORS_PER_RECORD like the Kafka topic
+     */
+    @Override
+    public List<Value> poll(long timeMillis) {
+        final List<Value> records = new ArrayList<>();
+        Record vectors = null;
+        for (int i = 0; i < this.size; i++) {
+            if (this.nextUpdate[i] > timeMillis) {
+                continue;
+            }
+            this.nextUpdate[i] = timeMillis + this.updateInterval[i];
+            if (this.random.nextDouble() < NEW_ELEMENTS_CHANCE) {
+                this.renewElements(i, timeMillis);
+            }
+            if (vectors == null || vectors.length() == VECTORS_PER_RECORD) {
+                vectors = Record.create(VECTORS_PER_RECORD);
+                records.add(vectors);
+            }
+            vectors.item(this.vector(i, timeMillis));
+        }
+        return records;
+    }
+
+    /**
+     * object index as a vector at timeMillis
+     */
+    public Value vector(int index, long timeMillis) {
+        final int catalogNumber = index + 1;
+        final String typeName = TYPES[this.type[index]];
+        final String name = String.format("SYN-%d %s", catalogNumber,
+            this.type[index] == 0 ? "SAT" : this.type[index] == 1 ? "DEB" : "R/B");
+        final String designator = String.format("%d-%03d%s", 1960 + catalogNumber % 60, 1 + catalogNumber % 300,
+            (char) ('A' + catalogNumber % 26));
+        final double semiMajorAxis = semiMajorAxis(this.meanMotion[index]);
+        this.position(index, timeMillis);
+        final double[] geodetic = new double[3];
+        Geodetic.fromEci(this.position[0], this.position[1], this.position[2],
+            Sgp4.gmst(Sgp4.julianDate(timeMillis)), geodetic, 0);
+
+        return Record.create(34)
+            .slot("name", name)
+            .slot("intlDesignator", designator)
+            .slot("catalogNumber", catalogNumber)
+            .slot("type", typeName)
+            .slot("classificationType", "U")
+            .slot("epoch", this.epoch[index])
+            .slot("eccentricity", (float) this.eccentricity[index])
+            .slot("inclination", (float) this.inclination[index])
+            .slot("rightAscension", (float) this.rightAscension[index])
+            .slot("argPericenter", (float) this.argPericenter[index])
+            .slot("meanAnomaly", (float) this.meanAnomaly[index])
+            .slot("meanMotion", (float) this.meanMotion[index])
+            .slot("meanMotionDot", 0.0f)
+            .slot("meanMotionDotDot", 0.0f)
+            .slot("bStar", (float) this.bStar[index])
+            .slot("revolutionsAtEpoch", (int) (this.meanMotion[index] * 1000.0))
+            .slot("elementSetNumber", this.elementSet[index])
+            .slot("ephemerisType", 0)
+            .slot("comment", "SYNTHETIC")
+            .slot("originator", "SYNTHETIC")
+            .slot("ordinal", 1)
+            .slot("file", 0)
+            .slot("orbitalPeriod", (float) (1440.0 / this.meanMotion[index]))
+            .slot("apogee", (float) (semiMajorAxis * (1.0 + this.eccentricity[index]) - Sgp4.RADIUS_EARTH_KM))
+            .slot("perigee", (float) (semiMajorAxis * (1.0 - this.eccentricity[index]) - Sgp4.RADIUS_EARTH_KM))
+            .slot("latitude", geodetic[0])
+            .slot("longitude", geodetic[1])
+            .slot("height", (float) geodetic[2])
+            .slot("position", Record.create(3)
+                .slot("x", this.position[0])
+                .slot("y", this.position[1])
+                .slot("z", this.position[2]))
+            .slot("tle", Record.create(3)
+                .item("0 " + name)
+                .item(this.line1(index, catalogNumber, designator))
+                .item(this.line2(index, catalogNumber)))
+            .slot("countryCode", COUNTRIES[this.country[index]])
+            .slot("rcsSize", RCS_SIZES[this.rcsSize[index]])
+            .slot("launchSiteCode", LAUNCH_SITES[(catalogNumber * 7) % LAUNCH_SITES.length]);
+    }
+
+    /**
+     * pick an orbit regime and elements for object i, epoch at epochMillis
+     */
+    private void newOrbit(int i, long epochMillis) {
+        final double regime = this.random.nextDouble();
+        if (regime < 0.8) {
+            // low earth orbit, 300 to 2000 km
+            this.meanMotion[i] = meanMotion(Sgp4.RADIUS_EARTH_KM + 300.0 + 1700.0 * this.random.nextDouble());
+            this.eccentricity[i] = 0.02 * this.random.nextDouble() * this.random.nextDouble();
+            this.inclination[i] = 20.0 + 80.0 * this.random.nextDouble();
+        } else if (regime < 0.88) {
+            // navigation constellations
+            this.meanMotion[i] = 1.7 + 0.6 * this.random.nextDouble();
+            this.eccentricity[i] = 0.01 * this.random.nextDouble();
+            this.inclination[i] = 50.0 + 15.0 * this.random.nextDouble();
+        } else if (regime < 0.96) {
+            // geostationary belt
+            this.meanMotion[i] = 1.0027 + 0.002 * (this.random.nextDouble() - 0.5);
+            this.eccentricity[i] = 0.001 * this.random.nextDouble();
+            this.inclination[i] = 5.0 * this.random.nextDouble();
+        } else {
+            // Molniya
+            this.meanMotion[i] = 2.0 + 0.01 * this.random.nextDouble();
+            this.eccentricity[i] = 0.65 + 0.1 * this.random.nextDouble();
+            this.inclination[i] = 63.4;
+        }
+        this.rightAscension[i] = 360.0 * this.random.nextDouble();
+        this.argPericenter[i] = 360.0 * this.random.nextDouble();
+        this.meanAnomaly[i] = 360.0 * this.random.nextDouble();
+        this.bStar[i] = this.meanMotion[i] > 11.0 ? 0.0001 * this.random.nextDouble() : 0.0;
+        this.epoch[i] = epochMillis;
+        this.elementSet[i] = 1 + this.random.nextInt(998);
+    }
+
+    /**
+     * a new element set for the same orbit, as if the object was tracked again
+     */
+    private void renewElements(int i, long timeMillis) {
+        this.meanAnomaly[i] = meanAnomalyAt(i, timeMillis);
+        this.epoch[i] = timeMillis;
+        this.elementSet[i] = this.elementSet[i] % 999 + 1;
+    }
+
+    private double meanAnomalyAt(int i, long timeMillis) {
+        final double days = (timeMillis - this.epoch[i]) / MILLIS_PER_DAY;
+        final double anomaly = (this.meanAnomaly[i] + 360.0 * this.meanMotion[i] * days) % 360.0;
+        return anomaly < 0.0 ? anomaly + 360.0 : anomaly;
+    }
+
+    /**
+     * two-body ECI position of object i at timeMillis into this.position
+     */
+    private void position(int i, long timeMillis) {
+        final double e = this.eccentricity[i];
+        final double meanAnomalyRad = Math.toRadians(meanAnomalyAt(i, timeMillis));
+        double eccentricAnomaly = meanAnomalyRad;
+        for (int k = 0; k < 8; k++) {
+            eccentricAnomaly -= (eccentricAnomaly - e * Math.sin(eccentricAnomaly) - meanAnomalyRad)
+                / (1.0 - e * Math.cos(eccentricAnomaly));
+        }
+        final double a = semiMajorAxis(this.meanMotion[i]);
+        final double r = a * (1.0 - e * Math.cos(eccentricAnomaly));
+        final double trueAnomaly = 2.0 * Math.atan2(Math.sqrt(1.0 + e) * Math.sin(eccentricAnomaly * 0.5),
+            Math.sqrt(1.0 - e) * Math.cos(eccentricAnomaly * 0.5));
+        final double u = Math.toRadians(this.argPericenter[i]) + trueAnomaly;
+        final double node = Math.toRadians(this.rightAscension[i]);
+        final double inc = Math.toRadians(this.inclination[i]);
+        this.position[0] = r * (Math.cos(node) * Math.cos(u) - Math.sin(node) * Math.sin(u) * Math.cos(inc));
+        this.position[1] = r * (Math.sin(node) * Math.cos(u) + Math.cos(node) * Math.sin(u) * Math.cos(inc));
+        this.position[2] = r * Math.sin(u) * Math.sin(inc);
+    }
+
+    private String line1(int i, int catalogNumber, String designator) {
+        final StringBuilder line = new StringBuilder(69);
+        line.append("1 ").append(satnum(catalogNumber)).append("U ");
+        // international designator as YYNNNP
+        final String compact = designator.substring(2, 4) + designator.substring(5);
+        padRight(line, compact, 8).append(' ');
+        final long epochMillis = this.epoch[i];
+        final int year = epochYear(epochMillis);
+        final double dayOfYear = (epochMillis - yearStartMillis(year)) / MILLIS_PER_DAY + 1.0;
+        padLeft(line, Integer.toString(year % 100), 2, '0');
+        appendFixed(line, dayOfYear, 12, 8, '0');
+        line.append("  .00000000  00000-0 ");
+        line.append(exponent(this.bStar[i]));
+        line.append(" 0 ");
+        padLeft(line, Integer.toString(this.elementSet[i]), 4, ' ');
+        return withChecksum(line);
+    }
+
+    private String line2(int i, int catalogNumber) {
+        final StringBuilder line = new StringBuilder(69);
+        line.append("2 ").append(satnum(catalogNumber)).append(' ');
+        appendFixed(line, this.inclination[i], 8, 4, ' ');
+        line.append(' ');
+        appendFixed(line, this.rightAscension[i], 8, 4, ' ');
+        line.append(' ');
+        padLeft(line, Long.toString(Math.round(this.eccentricity[i] * 1.0e7)), 7, '0');
+        line.append(' ');
+        appendFixed(line, this.argPericenter[i], 8, 4, ' ');
+        line.append(' ');
+        appendFixed(line, this.meanAnomaly[i], 8, 4, ' ');
+        line.append(' ');
+        appendFixed(line, this.meanMotion[i], 11, 8, ' ');
+        padLeft(line, Integer.toString((int) (this.meanMotion[i] * 1000.0) % 100000), 5, ' ');
+        return withChecksum(line);
+    }
+
+    /**
+     * five character catalog number, Alpha-5 above 99999 and wrapped past its range
+     */
+    static String satnum(int catalogNumber) {
+        if (catalogNumber < 100000) {
+            final StringBuilder number = new StringBuilder(5);
+            return padLeft(number, Integer.toString(catalogNumber), 5, ' ').toString();
+        }
+        // A is 10 and I and O are skipped, so 24 letters cover 100000 to 339999
+        char letter = (char) ('A' + (catalogNumber / 10000 - 10) % 24);
+        if (letter >= 'I') {
+            letter += 1;
+        }
+        if (letter >= 'O') {
+            letter += 1;
+        }
+        final StringBuilder number = new StringBuilder(5).append(letter);
+        return padLeft(number, Integer.toString(catalogNumber % 10000), 4, '0').toString();
+    }
+
+    /**
+     * bStar as the TLE assumed decimal point field, ex " 18539-3"
+     */
+    static String exponent(double value) {
+        if (value == 0.0) {
+            return " 00000-0";
+        }
+        int exp = (int) Math.floor(Math.log10(Math.abs(value))) + 1;
+        long mantissa = Math.round(Math.abs(value) / Math.pow(10.0, exp) * 100000.0);
+        if (mantissa >= 100000L) {
+            mantissa /= 10L;
+            exp += 1;
+        }
+        final StringBuilder field = new StringBuilder(8).append(value < 0.0 ? '-' : ' ');
+        padLeft(field, Long.toString(mantissa), 5, '0');
+        return field.append(exp < 0 ? '-' : '+').append(Math.min(9, Math.abs(exp))).toString();
+    }
+
+    private static String withChecksum(StringBuilder line) {
+        int sum = 0;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sum += c - '0';
+            } else if (c == '-') {
+                sum += 1;
+            }
+        }
+        return line.append(sum % 10).toString();
+    }
+
+    private static StringBuilder appendFixed(StringBuilder line, double value, int width, int decimals, char pad) {
+        final long scale = (long) Math.pow(10.0, decimals);
+        final long scaled = Math.round(value * scale);
+        final String fraction = Long.toString(scaled % scale);
+        final String whole = Long.toString(scaled / scale);
+        padLeft(line, whole, width - decimals - 1, pad).append('.');
+        return padLeft(line, fraction, decimals, '0');
+    }
+
+    private static StringBuilder padLeft(StringBuilder line, String value, int width, char pad) {
+        for (int i = value.length(); i < width; i++) {
+            line.append(pad);
+        }
+        return line.append(value);
+    }
+
+    private static StringBuilder padRight(StringBuilder line, String value, int width) {
+        line.append(value);
+        for (int i = value.length(); i < width; i++) {
+            line.append(' ');
+        }
+        return line;
+    }
+
+    private static int epochYear(long epochMillis) {
+        int year = (int) (1970 + epochMillis / (365.2425 * MILLIS_PER_DAY));
+        while (yearStartMillis(year + 1) <= epochMillis) {
+            year += 1;
+        }
+        while (yearStartMillis(year) > epochMillis) {
+            year -= 1;
+        }
+        return year;
+    }
+
+    private static long yearStartMillis(int year) {
+        return java.time.LocalDate.of(year, 1, 1).toEpochDay() * 86400000L;
+    }
+
+    private static double semiMajorAxis(double revsPerDay) {
+        final double n = revsPerDay * 2.0 * Math.PI / 86400.0; // rad/s
+        return Math.cbrt(MU / (n * n));
+    }
+
+    private static double meanMotion(double semiMajorAxis) {
+        return Math.sqrt(MU / (semiMajorAxis * semiMajorAxis * semiMajorAxis)) * 86400.0 / (2.0 * Math.PI);
+    }
+
+    private int pick(double[] weights) {
+        double r = this.random.nextDouble();
+        for (int i = 0; i < weights.length - 1; i++) {
+            r -= weights[i];
+            if (r < 0.0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+}
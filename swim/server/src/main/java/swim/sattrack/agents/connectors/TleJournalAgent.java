@@ -0,0 +1,43 @@
+package swim.sattrack.agents.connectors;
+
+import java.util.List;
+
+import swim.sattrack.metrics.Counter;
+import swim.sattrack.metrics.LatencyHistogram;
+import swim.sattrack.metrics.Metrics;
+import swim.structure.Value;
+
+/**
+ * The TleJournalAgent relays the TLE data appended to the local
+ * journal to each satellite WebAgent, like the TleMessagesAgent does
+ * for Kafka. The journal directory and reader settings are defined in
+ * the config for this agent in server.recon
+ */
+public class TleJournalAgent extends JournalAgent {
+
+    private static final LatencyHistogram FAN_OUT_TIME = Metrics.shared()
+        .histogram("sattrack_fan_out_seconds", "time to send one drain of kafka records to the satellite agents");
+    private static final Counter SATELLITE_UPDATES = Metrics.shared()
+        .counter("sattrack_satellite_updates_total", "updates sent to satellite agents");
+
+    private final SatelliteFanOut fanOut = new SatelliteFanOut();
+    private final SatelliteFanOut.Sink updateSink = (nodeUri, laneUri, value) -> command(nodeUri, laneUri, value);
+
+    /**
+     * Handle all the records read from the journal.
+     */
+    @Override
+    protected void processMessages(List<Value> records, long[] timestamps) {
+        final long fanOutStart = System.nanoTime();
+        final int sent = this.fanOut.fanOut(records, timestamps, this.updateSink);
+        FAN_OUT_TIME.recordNanosSince(fanOutStart);
+        SATELLITE_UPDATES.add(sent);
+    }
+
+    @Override
+    public void didStart() {
+        this.fanOut.setDedup(SatelliteFanOut.Dedup.from(getProp("config")));
+        super.didStart();
+    }
+
+}
@@ -1,12 +1,11 @@
 package swim.sattrack.agents.connectors;
 
+import java.util.List;
 import swim.sattrack.agents.connectors.KafkaAgent;
-import swim.api.SwimLane;
-import swim.api.agent.AbstractAgent;
-import swim.api.lane.CommandLane;
-import swim.api.lane.ValueLane;
+import swim.sattrack.metrics.Counter;
+import swim.sattrack.metrics.LatencyHistogram;
+import swim.sattrack.metrics.Metrics;
 import swim.structure.Value;
-import swim.uri.Uri;
 
 /**
  * The TleMessagesAgent is responsible for relaying
@@ -18,30 +17,31 @@ import swim.uri.Uri;
  * in server.recon
  */
 public class TleMessagesAgent extends KafkaAgent {
-    Long firstKey;
-    Value vectorList;
-    String catalogNumber;
-    String newPath;
+
+    private static final LatencyHistogram FAN_OUT_TIME = Metrics.shared()
+        .histogram("sattrack_fan_out_seconds", "time to send one drain of kafka records to the satellite agents");
+    private static final Counter SATELLITE_UPDATES = Metrics.shared()
+        .counter("sattrack_satellite_updates_total", "updates sent to satellite agents");
+
+    private final SatelliteFanOut fanOut = new SatelliteFanOut();
+    private final SatelliteFanOut.Sink updateSink = (nodeUri, laneUri, value) -> command(nodeUri, laneUri, value);
 
     /**
      * Handle all the records the Kafka Broker found for this agent's topic.
      */
     @Override
-    protected void processMessages() {
-        System.out.println(String.format("[TleMessagesAgent] processMessages %s", this.recordList.size()));
-        while(this.recordList.size() > 0) {
-            this.firstKey = this.recordList.getIndex(0).getKey();
-            this.vectorList = this.recordList.get(firstKey);
-
-            this.vectorList.forEach(vector -> {
-
-                catalogNumber = vector.get("catalogNumber").stringValue();
-                newPath = String.format("/satellite/%s", catalogNumber);
-                command(Uri.parse(newPath), Uri.parse("updateData"), Value.fromObject(vector));
-            });
+    protected void processMessages(List<Value> records, long[] timestamps) {
+        System.out.println(String.format("[TleMessagesAgent] processMessages %s", records.size()));
+        final long fanOutStart = System.nanoTime();
+        final int sent = this.fanOut.fanOut(records, timestamps, this.updateSink);
+        FAN_OUT_TIME.recordNanosSince(fanOutStart);
+        SATELLITE_UPDATES.add(sent);
+    }
 
-            this.recordList.remove(firstKey);
-        }        
+    @Override
+    public void didStart() {
+        this.fanOut.setDedup(SatelliteFanOut.Dedup.from(getProp("config")));
+        super.didStart();
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,237 @@
+package swim.sattrack.agents.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import swim.structure.Field;
+import swim.structure.Item;
+import swim.structure.Record;
+import swim.structure.Slot;
+import swim.structure.Value;
+
+/**
+ * Applies RFC 6902 style JSON patch operations to a layout template.
+ * Operations are records of {op, path, value, from} where op is add,
+ * remove, replace, move, copy or test and paths are JSON pointers such
+ * as "/widgets/3/x". Objects are records of slots and arrays are
+ * records of items, "-" appends to an array.
+ * A patch is applied to a copy of the document, so when any operation
+ * fails the document is left as it was, and the values it inserts are
+ * copies too so the document never shares records with the patch.
+ */
+final class JsonPatch {
+
+  private JsonPatch() {
+  }
+
+  static final class PatchException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    PatchException(String message) {
+      super(message);
+    }
+
+  }
+
+  /**
+   * the patched copy of document, throws when an operation does not apply
+   */
+  static Value apply(Value document, Value operations) throws PatchException {
+    Value result = deepCopy(document);
+    for (Item operation : operations) {
+      result = applyOperation(result, operation.toValue());
+    }
+    return result;
+  }
+
+  private static Value applyOperation(Value document, Value operation) throws PatchException {
+    final String op = operation.get("op").stringValue("");
+    final List<String> path = parsePointer(operation.get("path").stringValue(null));
+    switch (op) {
+      case "add":
+        return add(document, path, deepCopy(requireValue(operation)));
+      case "remove":
+        remove(document, path);
+        return document;
+      case "replace":
+        if (path.isEmpty()) {
+          return deepCopy(requireValue(operation));
+        }
+        remove(document, path);
+        return add(document, path, deepCopy(requireValue(operation)));
+      case "move":
+        final List<String> from = parsePointer(operation.get("from").stringValue(null));
+        if (path.size() > from.size() && path.subList(0, from.size()).equals(from)) {
+          throw new PatchException("cannot move " + pointer(from) + " into itself");
+        }
+        return add(document, path, remove(document, from));
+      case "copy":
+        return add(document, path, deepCopy(resolve(document, parsePointer(operation.get("from").stringValue(null)))));
+      case "test":
+        if (!resolve(document, path).equals(requireValue(operation))) {
+          throw new PatchException("test failed at " + pointer(path));
+        }
+        return document;
+      default:
+        throw new PatchException("unknown op " + op);
+    }
+  }
+
+  private static Value requireValue(Value operation) throws PatchException {
+    if (!hasKey(operation, "value")) {
+      throw new PatchException("missing value");
+    }
+    return operation.get("value");
+  }
+
+  private static Value add(Value document, List<String> path, Value value) throws PatchException {
+    if (path.isEmpty()) {
+      return value;
+    }
+    final Record parent = container(resolve(document, path.subList(0, path.size() - 1)), path);
+    final String token = path.get(path.size() - 1);
+    if (isArray(parent, token)) {
+      final int index = "-".equals(token) ? parent.size() : index(token, parent.size() + 1, path);
+      parent.add(index, value);
+    } else {
+      parent.put(token, value);
+    }
+    return document;
+  }
+
+  /**
+   * remove the value at path and return it
+   */
+  private static Value remove(Value document, List<String> path) throws PatchException {
+    if (path.isEmpty()) {
+      throw new PatchException("cannot remove the whole document");
+    }
+    final Record parent = container(resolve(document, path.subList(0, path.size() - 1)), path);
+    final String token = path.get(path.size() - 1);
+    if (isArray(parent, token) && !hasKey(parent, token)) {
+      return parent.remove(index(token, parent.size(), path)).toValue();
+    }
+    final Item removed = parent.removeKey(token);
+    if (removed == null) {
+      throw new PatchException("nothing at " + pointer(path));
+    }
+    return removed.toValue();
+  }
+
+  private static Value resolve(Value document, List<String> path) throws PatchException {
+    Value current = document;
+    for (int i = 0; i < path.size(); i++) {
+      final String token = path.get(i);
+      final Record parent = container(current, path);
+      if (hasKey(parent, token)) {
+        current = parent.get(token);
+      } else if (isArray(parent, token)) {
+        current = parent.getItem(index(token, parent.size(), path)).toValue();
+      } else {
+        throw new PatchException("nothing at " + pointer(path.subList(0, i + 1)));
+      }
+    }
+    return current;
+  }
+
+  private static Record container(Value value, List<String> path) throws PatchException {
+    if (!(value instanceof Record)) {
+      throw new PatchException("not an object or array on the way to " + pointer(path));
+    }
+    return (Record) value;
+  }
+
+  /**
+   * a record without slots is an array when addressed by index
+   */
+  private static boolean isArray(Record record, String token) {
+    if (!"-".equals(token) && !isIndex(token)) {
+      return false;
+    }
+    for (Item item : record) {
+      if (item instanceof Field) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean hasKey(Value record, String key) {
+    for (Item item : record) {
+      if (item instanceof Field && key.equals(item.key().stringValue(null))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isIndex(String token) {
+    if (token.isEmpty() || (token.length() > 1 && token.charAt(0) == '0')) {
+      return false;
+    }
+    for (int i = 0; i < token.length(); i++) {
+      if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int index(String token, int limit, List<String> path) throws PatchException {
+    final int index;
+    try {
+      index = Integer.parseInt(token);
+    } catch (NumberFormatException ex) {
+      throw new PatchException("bad array index at " + pointer(path));
+    }
+    if (index < 0 || index >= limit) {
+      throw new PatchException("array index out of range at " + pointer(path));
+    }
+    return index;
+  }
+
+  /**
+   * split a JSON pointer into unescaped tokens, "" is the whole document
+   */
+  static List<String> parsePointer(String pointer) throws PatchException {
+    if (pointer == null) {
+      throw new PatchException("missing path");
+    }
+    final List<String> tokens = new ArrayList<>();
+    if (pointer.isEmpty()) {
+      return tokens;
+    }
+    if (pointer.charAt(0) != '/') {
+      throw new PatchException("path must start with /: " + pointer);
+    }
+    for (String token : pointer.substring(1).split("/", -1)) {
+      tokens.add(token.replace("~1", "/").replace("~0", "~"));
+    }
+    return tokens;
+  }
+
+  private static String pointer(List<String> tokens) {
+    final StringBuilder pointer = new StringBuilder();
+    for (String token : tokens) {
+      pointer.append('/').append(token.replace("~", "~0").replace("/", "~1"));
+    }
+    return pointer.toString();
+  }
+
+  static Value deepCopy(Value value) {
+    if (!(value instanceof Record)) {
+      return value; // text, numbers and the like are immutable
+    }
+    final Record copy = Record.create(value.length());
+    for (Item item : value) {
+      if (item instanceof Field) {
+        copy.add(Slot.of(item.key().stringValue(), deepCopy(item.toValue())));
+      } else {
+        copy.item(deepCopy(item.toValue()));
+      }
+    }
+    return copy;
+  }
+
+}
@@ -1,30 +1,172 @@
 package swim.sattrack.agents.ui;
 
+import java.util.ArrayDeque;
+
 import swim.api.SwimLane;
 import swim.api.agent.AbstractAgent;
 import swim.api.lane.CommandLane;
+import swim.api.lane.MapLane;
 import swim.api.lane.ValueLane;
+import swim.structure.Item;
+import swim.structure.Record;
 import swim.structure.Value;
+import swim.uri.Uri;
 
 /**
     Each Layout created in the Layout Editor is its own WebAgent
     The agents are managed by LayoutManager
+
+    Layouts are versioned. Edits can be sent to applyPatch as JSON patch
+    operations against the version they were made on, and subscribers
+    of the patches lane receive only those operations. The template
+    lane holds the full layout with the version it is as of in its
+    templateVersion slot. It is only republished on a full update or once
+    PATCH_HISTORY patches have built up, so a client applies the patches
+    newer than its templateVersion. A client tags its patches with a
+    patchId of its own and looks for that id in patchRejected, so it is
+    told about its own rejections however many clients are editing.
  */
 public class LayoutAgent extends AbstractAgent {
 
+    private static final int PATCH_HISTORY = 64;
+    private static final Uri LAYOUT_MANAGER = Uri.parse("/layoutManager");
+    private static final Uri LAYOUT_PATCHED = Uri.parse("layoutPatched");
+    private static final String TEMPLATE_VERSION = "templateVersion";
+
+    private Value document = Value.absent(); // the template with every patch applied
+    private long currentVersion = 0L;
+    private final ArrayDeque<String> rejectedIds = new ArrayDeque<>(); // patchRejected keys, oldest first
+
     /**
-        Value Lane to hold JSON object which describes the layout
+        Value Lane to hold JSON object which describes the layout, and
+        its version in the templateVersion slot
      */
     @SwimLane("template")
     ValueLane<Value> template = this.<Value>valueLane();
 
+    /**
+        latest version, the one patches must be made against
+     */
+    @SwimLane("version")
+    ValueLane<Long> version = this.<Long>valueLane();
+
+    /**
+        patches applied since the template, keyed by the version they
+        produced: {version, patchId, ops}
+     */
+    @SwimLane("patches")
+    MapLane<Long, Value> patches = this.<Long, Value>mapLane();
+
+    /**
+        the last PATCH_HISTORY patches which were not applied, keyed by
+        their patchId: {patchId, baseVersion, version, reason}
+     */
+    @SwimLane("patchRejected")
+    MapLane<String, Value> patchRejected = this.<String, Value>mapLane();
+
     /**
         Command Lane to create/update layout data
      */
     @SwimLane("updateTemplate")
     public CommandLane<Value> updateLayout = this.<Value>commandLane()
         .onCommand((Value templateData) -> {
-            template.set(templateData);
+            // a client may send back a template it got from us
+            this.document = templateData instanceof Record && templateData.get(TEMPLATE_VERSION).isDefined()
+                ? withVersion((Record) templateData, Value.absent()) : templateData;
+            this.currentVersion += 1L;
+            this.publishTemplate();
         });
-     
+
+    /**
+        Command Lane to edit the layout with {patchId, baseVersion, ops},
+        ops being RFC 6902 operations. Patches made against an older
+        version than the current one are rejected, the client should catch
+        up and retry. An applied patch also sets the layout's lastEdit,
+        which is added to the ops sent to subscribers.
+     */
+    @SwimLane("applyPatch")
+    public CommandLane<Value> applyPatch = this.<Value>commandLane()
+        .onCommand((Value patch) -> {
+            final String patchId = patch.get("patchId").stringValue("");
+            final long baseVersion = patch.get("baseVersion").longValue(-1L);
+            if (!this.document.isDefined()) {
+                this.rejectPatch(patchId, baseVersion, "no layout");
+            } else if (baseVersion != this.currentVersion) {
+                this.rejectPatch(patchId, baseVersion, "stale version");
+            } else {
+                Value ops = patch.get("ops");
+                try {
+                    final Value patched = JsonPatch.apply(this.document, ops);
+                    if (patched instanceof Record) {
+                        final Record lastEdit = Record.create(3)
+                            .slot("op", "add")
+                            .slot("path", "/lastEdit")
+                            .slot("value", System.currentTimeMillis());
+                        ((Record) patched).put("lastEdit", lastEdit.get("value"));
+                        final Record published = Record.create(ops.length() + 1);
+                        for (Item op : ops) {
+                            published.add(op);
+                        }
+                        ops = published.item(lastEdit);
+                    }
+                    this.document = patched;
+                } catch (JsonPatch.PatchException ex) {
+                    this.rejectPatch(patchId, baseVersion, ex.getMessage());
+                    return;
+                }
+                this.currentVersion += 1L;
+                if (this.patches.size() >= PATCH_HISTORY) {
+                    this.publishTemplate();
+                } else {
+                    this.patches.put(this.currentVersion, Record.create(3)
+                        .slot("version", this.currentVersion)
+                        .slot("patchId", patchId)
+                        .slot("ops", ops));
+                    this.version.set(this.currentVersion);
+                }
+                // let the manager update its list and save the layout
+                command(LAYOUT_MANAGER, LAYOUT_PATCHED, this.document);
+            }
+        });
+
+    /**
+        send the whole document and start a new patch history from it
+     */
+    private void publishTemplate() {
+        this.patches.clear();
+        this.template.set(this.document instanceof Record
+            ? withVersion((Record) this.document, Value.fromObject(this.currentVersion)) : this.document);
+        this.version.set(this.currentVersion);
+    }
+
+    /**
+        a copy of layout with its templateVersion slot set, or dropped
+        when version is absent. Patches replace the document rather than
+        changing it, so the copy can share its values.
+     */
+    private static Record withVersion(Record layout, Value version) {
+        final Record versioned = Record.create(layout.size() + 1);
+        versioned.addAll(layout);
+        if (version.isDefined()) {
+            versioned.put(TEMPLATE_VERSION, version);
+        } else {
+            versioned.removeKey(TEMPLATE_VERSION);
+        }
+        return versioned;
+    }
+
+    private void rejectPatch(String patchId, long baseVersion, String reason) {
+        if (this.patchRejected.containsKey(patchId)) {
+            this.rejectedIds.remove(patchId);
+        } else if (this.rejectedIds.size() >= PATCH_HISTORY) {
+            this.patchRejected.remove(this.rejectedIds.poll());
+        }
+        this.rejectedIds.add(patchId);
+        this.patchRejected.put(patchId, Record.create(4)
+            .slot("patchId", patchId)
+            .slot("baseVersion", baseVersion)
+            .slot("version", this.currentVersion)
+            .slot("reason", reason));
+    }
+
 }
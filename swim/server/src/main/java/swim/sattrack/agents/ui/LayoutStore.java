@@ -0,0 +1,117 @@
+package swim.sattrack.agents.ui;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import swim.json.Json;
+import swim.structure.Value;
+
+/**
+ * Layout files for the LayoutsManagerAgent, one <layoutId>.json per layout.
+ * Saves are written on a background thread, each one to a temp file
+ * which is then renamed over the layout, so a reader or a crash never
+ * sees half a layout. Saves of a layout within coalesceDelay of each
+ * other are coalesced, only the latest one is serialized and written.
+ * Saved layouts must not be changed afterwards.
+ */
+final class LayoutStore {
+
+  private static final String EXTENSION = ".json";
+  private static final long CLOSE_TIMEOUT = 5L; // seconds to wait for a write in progress
+
+  private final Path directory;
+  private final long coalesceDelay;
+  private final Map<String, Value> pending = new ConcurrentHashMap<>(); // latest unwritten layout per id
+  private final ScheduledThreadPoolExecutor writer;
+
+  LayoutStore(Path directory, long coalesceDelay) {
+    this.directory = directory;
+    this.coalesceDelay = coalesceDelay;
+    this.writer = new ScheduledThreadPoolExecutor(1, runnable -> {
+      final Thread thread = new Thread(runnable, "layout-store");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // close() writes the pending layouts itself rather than waiting out their delay
+    this.writer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  /**
+   * read and parse every layout in the directory, in parallel.
+   * Files which cannot be read or parsed are skipped.
+   */
+  List<Value> loadAll() throws IOException {
+    try (Stream<Path> files = Files.list(this.directory)) {
+      return files
+        .filter(path -> path.getFileName().toString().endsWith(EXTENSION) && Files.isRegularFile(path))
+        .collect(Collectors.toList())
+        .parallelStream()
+        .map(LayoutStore::load)
+        .filter(Value::isDefined)
+        .collect(Collectors.toList());
+    }
+  }
+
+  private static Value load(Path path) {
+    try {
+      return Json.parse(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+    } catch (Exception ex) {
+      System.out.println("[LayoutManager] unable to load template " + path + ": " + ex.getMessage());
+      return Value.absent();
+    }
+  }
+
+  /**
+   * queue a layout to be written, replacing any unwritten content for it
+   */
+  void save(String layoutId, Value layout) {
+    if (this.pending.put(layoutId, layout) == null) {
+      this.writer.schedule(() -> flush(layoutId), this.coalesceDelay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void flush(String layoutId) {
+    final Value layout = this.pending.remove(layoutId);
+    if (layout == null) {
+      return;
+    }
+    final Path target = this.directory.resolve(layoutId + EXTENSION);
+    final Path temp = this.directory.resolve(layoutId + EXTENSION + ".tmp");
+    try {
+      Files.write(temp, Json.toString(layout).getBytes(StandardCharsets.UTF_8));
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      System.out.println("[LayoutManager] saved " + target);
+    } catch (IOException ex) {
+      System.out.println("[LayoutManager] unable to save " + target + ": " + ex.getMessage());
+    }
+  }
+
+  /**
+   * stop the writer, letting a write in progress finish, then write
+   * everything still pending
+   */
+  void close() {
+    this.writer.shutdown();
+    try {
+      if (!this.writer.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS)) {
+        System.out.println("[LayoutManager] timed out waiting for the layout writer");
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    for (String layoutId : this.pending.keySet()) {
+      flush(layoutId);
+    }
+  }
+
+}
@@ -1,11 +1,8 @@
 package swim.sattrack.agents.ui;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
 
 import swim.api.SwimLane;
 import swim.api.agent.AbstractAgent;
@@ -18,8 +15,11 @@ import swim.uri.Uri;
 
 public class LayoutsManagerAgent extends AbstractAgent {
 
+  private static final long DEFAULT_SAVE_DELAY = 1000L;
+
   private Value agentConfig;
   private String templatesPath;
+  private LayoutStore layoutStore;
 
   @SwimLane("layoutListRecords")
   MapLane<String, Value> layoutListRecords = this.<String, Value>mapLane();
@@ -43,7 +43,7 @@ public class LayoutsManagerAgent extends AbstractAgent {
         layoutListRecords.put(layoutId, layoutInfo);
 
         command(Uri.parse("/layout/" + layoutId), Uri.parse("updateTemplate"), obj);   
-        saveLayoutToFile(layoutId, Json.toString(obj));
+        saveLayoutToFile(layoutId, obj);
       } else {
         System.out.println("no layout data sent in this request");
       }
@@ -67,7 +67,7 @@ public class LayoutsManagerAgent extends AbstractAgent {
         layoutListRecords.put(layoutId, layoutInfo);
 
         command(Uri.parse("/layout/" + layoutId), Uri.parse("updateTemplate"), obj);   
-        saveLayoutToFile(layoutId, Json.toString(obj));
+        saveLayoutToFile(layoutId, obj);
 
       } else {
         System.out.println("no layout data sent in this request");
@@ -75,6 +75,26 @@ public class LayoutsManagerAgent extends AbstractAgent {
     });    
 
 
+  /**
+   * sent by a LayoutAgent after applying a patch, with the patched layout
+   */
+  @SwimLane("layoutPatched")
+  public CommandLane<Value> layoutPatched = this.<Value>commandLane()
+    .onCommand((Value layout) -> {
+      String layoutId = layout.get("layoutId").stringValue(null);
+      if (layoutId == null) {
+        return;
+      }
+      Record layoutInfo = Record.create()
+        .slot("title", layout.get("title").stringValue())
+        .slot("changeDate", layout.get("lastEdit").stringValue())
+        .slot("systemLayout", layout.get("systemLayout").booleanValue(false));
+      if (!layoutInfo.equals(layoutListRecords.get(layoutId))) {
+        layoutListRecords.put(layoutId, layoutInfo);
+      }
+      saveLayoutToFile(layoutId, layout);
+    });
+
   /**
    * This is a command lane used to remove layouts
    */
@@ -89,63 +109,42 @@ public class LayoutsManagerAgent extends AbstractAgent {
   public void didStart() {
     this.agentConfig = getProp("config");
     this.templatesPath = agentConfig.get("templatesPath").stringValue("");
+    this.layoutStore = new LayoutStore(Paths.get(this.templatesPath),
+      agentConfig.get("saveDelay").longValue(DEFAULT_SAVE_DELAY));
     loadDefaultTemplates();
   }
 
-  private void loadDefaultTemplates() {
-    final File folder = new File(this.templatesPath);
-    File[] listOfFiles = folder.listFiles();
-    System.out.println("[LayoutManager] Load templates from:" + folder);
-    for (final File fileEntry : listOfFiles) {
-      if (!fileEntry.isDirectory()) {
-            
-          try(BufferedReader bufferedReader = new BufferedReader(new FileReader(fileEntry))) {  
-            String line = bufferedReader.readLine();
-            String templateContent = line;
-            while(line != null) {
-                line = bufferedReader.readLine();
-                if(line != null && line != "null") {
-                  templateContent += line;
-                }
-            }            
-            Value obj = Json.parse(templateContent); 
-            // System.out.println(obj.get("systemLayout"));
-            Record layoutInfo = Record.create()
-              .slot("title", obj.get("title").stringValue())
-              .slot("changeDate", obj.get("lastEdit").stringValue())
-              .slot("systemLayout", obj.get("systemLayout").booleanValue(false));
-            layoutListRecords.put(obj.get("layoutId").stringValue(), Value.fromObject(layoutInfo));
-
-            command(Uri.parse("/layout/" + obj.get("layoutId").stringValue()), Uri.parse("updateTemplate"), obj);   
-  
-          } catch (FileNotFoundException e) {
-              System.out.println("File not found:" + templatesPath + fileEntry);
-          } catch (IOException e) {
-              System.out.println("error reading file");
-          }
-      
-      } else {
-          System.out.println(fileEntry.getName());
-      }
+  @Override
+  public void willStop() {
+    if (this.layoutStore != null) {
+      this.layoutStore.close();
     }
-
-
-
   }
 
-  public void saveLayoutToFile(String layoutId, String layoutData) {
-    String directory = templatesPath;
-    String fileName = layoutId + ".json";  
-    String absolutePath = directory + File.separator + fileName;
-
-    System.out.println("Save:" + absolutePath);
-    try(FileOutputStream fileOutputStream = new FileOutputStream(absolutePath)) {  
-      fileOutputStream.write(layoutData.getBytes());
-    } catch (FileNotFoundException e) {
-        System.out.println("template file not found");
+  private void loadDefaultTemplates() {
+    System.out.println("[LayoutManager] Load templates from:" + this.templatesPath);
+    final List<Value> templates;
+    try {
+      templates = this.layoutStore.loadAll();
     } catch (IOException e) {
-      System.out.println("file write error");
-        // exception handling
-    }      
+      System.out.println("[LayoutManager] unable to list templates in " + this.templatesPath);
+      return;
+    }
+    for (Value obj : templates) {
+      Record layoutInfo = Record.create()
+        .slot("title", obj.get("title").stringValue())
+        .slot("changeDate", obj.get("lastEdit").stringValue())
+        .slot("systemLayout", obj.get("systemLayout").booleanValue(false));
+      layoutListRecords.put(obj.get("layoutId").stringValue(), Value.fromObject(layoutInfo));
+
+      command(Uri.parse("/layout/" + obj.get("layoutId").stringValue()), Uri.parse("updateTemplate"), obj);
+    }
+  }
+
+  /**
+   * queue a layout to be written by the layout store, off the agent thread
+   */
+  public void saveLayoutToFile(String layoutId, Value layout) {
+    this.layoutStore.save(layoutId, layout);
   }
 }
@@ -0,0 +1,60 @@
+package swim.sattrack.avro;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+
+/**
+ * Decodes Avro payloads against a local schema file (ex: /kafka/tle.avsc)
+ * so a consumer does not need to call the schema registry.
+ * Payloads written by the Confluent serializer start with a magic byte
+ * and a 4 byte schema id, which is skipped when framed is true.
+ * Not thread safe, the decoder and record are reused between calls.
+ */
+public final class AvroSchemaDecoder {
+
+  private static final byte MAGIC_BYTE = 0x0;
+  private static final int HEADER_SIZE = 5;
+
+  private final Schema schema;
+  private final GenericDatumReader<GenericRecord> reader;
+  private final boolean framed;
+  private BinaryDecoder decoder;
+  private GenericRecord reuse;
+
+  public AvroSchemaDecoder(Schema schema, boolean framed) {
+    this.schema = schema;
+    this.reader = new GenericDatumReader<>(schema);
+    this.framed = framed;
+  }
+
+  public static AvroSchemaDecoder fromFile(String schemaPath) throws IOException {
+    return new AvroSchemaDecoder(new Schema.Parser().parse(new File(schemaPath)), true);
+  }
+
+  public Schema schema() {
+    return this.schema;
+  }
+
+  /**
+   * decode a raw payload. The returned record is reused by the next call
+   * so convert it before decoding again.
+   */
+  public GenericRecord decode(byte[] payload) throws IOException {
+    int offset = 0;
+    if (this.framed) {
+      if (payload.length < HEADER_SIZE || payload[0] != MAGIC_BYTE) {
+        throw new IOException("unknown magic byte in framed avro payload");
+      }
+      offset = HEADER_SIZE;
+    }
+    this.decoder = DecoderFactory.get().binaryDecoder(payload, offset, payload.length - offset, this.decoder);
+    this.reuse = this.reader.read(this.reuse, this.decoder);
+    return this.reuse;
+  }
+
+}
@@ -0,0 +1,98 @@
+package swim.sattrack.avro;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.IndexedRecord;
+
+import swim.structure.Bool;
+import swim.structure.Data;
+import swim.structure.Num;
+import swim.structure.Record;
+import swim.structure.Text;
+import swim.structure.Value;
+
+/**
+ * Converts decoded Avro data straight into Swim structures.
+ * Works for GenericRecord as well as generated SpecificRecord classes
+ * since both are IndexedRecords that carry their own schema.
+ * This replaces the old toString() -> JSON -> parse round trip.
+ */
+public final class AvroValues {
+
+  private AvroValues() {
+    // static only
+  }
+
+  /**
+   * convert any Avro datum into a Value
+   */
+  public static Value toValue(Object datum) {
+    if (datum == null) {
+      return Value.extant();
+    } else if (datum instanceof IndexedRecord) {
+      return toRecord((IndexedRecord) datum);
+    } else if (datum instanceof CharSequence) {
+      return Text.from(datum.toString());
+    } else if (datum instanceof Integer) {
+      return Num.from(((Integer) datum).intValue());
+    } else if (datum instanceof Long) {
+      return Num.from(((Long) datum).longValue());
+    } else if (datum instanceof Float) {
+      return Num.from(((Float) datum).floatValue());
+    } else if (datum instanceof Double) {
+      return Num.from(((Double) datum).doubleValue());
+    } else if (datum instanceof Boolean) {
+      return Bool.from(((Boolean) datum).booleanValue());
+    } else if (datum instanceof Collection<?>) {
+      return toArray((Collection<?>) datum);
+    } else if (datum instanceof Map<?, ?>) {
+      return toMap((Map<?, ?>) datum);
+    } else if (datum instanceof ByteBuffer) {
+      final ByteBuffer buffer = ((ByteBuffer) datum).duplicate();
+      final byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return Data.wrap(bytes);
+    } else if (datum instanceof GenericFixed) {
+      return Data.wrap(((GenericFixed) datum).bytes().clone());
+    } else if (datum instanceof GenericEnumSymbol<?>) {
+      return Text.from(datum.toString());
+    }
+    return Value.fromObject(datum);
+  }
+
+  /**
+   * convert an Avro record into a Record with one slot per schema field
+   */
+  public static Record toRecord(IndexedRecord datum) {
+    final List<Schema.Field> fields = datum.getSchema().getFields();
+    final int fieldCount = fields.size();
+    final Record record = Record.create(fieldCount);
+    for (int i = 0; i < fieldCount; i++) {
+      final Schema.Field field = fields.get(i);
+      record.slot(field.name(), toValue(datum.get(field.pos())));
+    }
+    return record;
+  }
+
+  private static Record toArray(Collection<?> datum) {
+    final Record record = Record.create(datum.size());
+    for (Object item : datum) {
+      record.item(toValue(item));
+    }
+    return record;
+  }
+
+  private static Record toMap(Map<?, ?> datum) {
+    final Record record = Record.create(datum.size());
+    for (Map.Entry<?, ?> entry : datum.entrySet()) {
+      record.slot(entry.getKey().toString(), toValue(entry.getValue()));
+    }
+    return record;
+  }
+
+}
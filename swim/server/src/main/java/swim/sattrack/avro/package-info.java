@@ -0,0 +1,4 @@
+/**
+ * Avro decoding helpers used by the Kafka connectors.
+ */
+package swim.sattrack.avro;
@@ -0,0 +1,71 @@
+package swim.sattrack.catalog;
+
+import swim.structure.Value;
+
+/**
+ * Everything the AggregationAgent keeps about the satellites, without
+ * its lanes: the column catalog, the lat/lng grid index used for
+ * viewport queries and the group-by counts. Kept free of agent APIs so
+ * the update path can be benchmarked on its own.
+ * Not thread safe, owned by a single agent.
+ */
+public final class AggregationState {
+
+  private final SatelliteCatalog catalog;
+  private final SpatialIndex spatialIndex;
+  private final GroupByAggregator aggregator; // null for no group-by counts
+
+  public AggregationState(int initialCapacity, double cellDegrees, GroupByAggregator aggregator) {
+    this.catalog = new SatelliteCatalog(initialCapacity);
+    this.spatialIndex = new SpatialIndex(cellDegrees, initialCapacity);
+    this.aggregator = aggregator;
+  }
+
+  public SatelliteCatalog catalog() {
+    return this.catalog;
+  }
+
+  public SpatialIndex spatialIndex() {
+    return this.spatialIndex;
+  }
+
+  public GroupByAggregator aggregator() {
+    return this.aggregator;
+  }
+
+  /**
+   * apply a full or partial satellite update. The index is only moved
+   * when the position changed and the counts only rerun when a field
+   * they depend on changed. Returns the row, or -1 without a catalog number.
+   */
+  public int update(Value newValue, long timestamp, GroupByAggregator.GroupListener listener) {
+    final int catalogId = newValue.get("catalogNumber").intValue(-1);
+    final int oldRow = this.catalog.row(catalogId);
+    final int row = this.catalog.put(newValue, timestamp);
+    if (row < 0) {
+      return -1;
+    }
+    if (oldRow < 0 || newValue.get("latitude").isDefined() || newValue.get("longitude").isDefined()) {
+      this.spatialIndex.update(catalogId, this.catalog.latitude(row), this.catalog.longitude(row));
+    }
+    if (this.aggregator != null && (oldRow < 0 || this.aggregator.dependsOn(newValue))) {
+      this.aggregator.update(catalogId, this.catalog.toValue(row), listener);
+    }
+    return row;
+  }
+
+  /**
+   * drop a satellite everywhere, returns false when it was not known
+   */
+  public boolean remove(int catalogId, GroupByAggregator.GroupListener listener) {
+    if (!this.catalog.remove(catalogId)) {
+      return false;
+    }
+    this.spatialIndex.remove(catalogId);
+    if (this.aggregator != null) {
+      this.aggregator.remove(catalogId, listener);
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,98 @@
+package swim.sattrack.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import swim.sattrack.util.StringDictionary;
+import swim.structure.Item;
+import swim.structure.Value;
+
+/**
+ * Incremental group-by counts over a set of members keyed by int id.
+ * Each update moves the member between groups in every dimension and
+ * reports only the groups whose count actually changed, so inserts,
+ * changes of type or country and removals all stay correct without
+ * ever recounting.
+ */
+public final class GroupByAggregator {
+
+  /**
+   * derived field name which groups by OrbitRegime instead of a record field
+   */
+  public static final String ORBIT_REGIME = "orbitRegime";
+
+  /**
+   * told about every group whose count changed, count 0 means the group is now empty
+   */
+  public interface GroupListener {
+    void didUpdateGroup(GroupByDimension dimension, String group, int count);
+  }
+
+  private final List<GroupByDimension> dimensions;
+
+  GroupByAggregator(List<GroupByDimension> dimensions) {
+    this.dimensions = dimensions;
+  }
+
+  /**
+   * build the dimensions from a config record with one item per dimension
+   */
+  public static GroupByAggregator fromConfig(Value dimensionsConfig) {
+    final List<GroupByDimension> dimensions = new ArrayList<>();
+    for (Item dimensionConfig : dimensionsConfig) {
+      dimensions.add(GroupByDimension.fromConfig(dimensionConfig.toValue()));
+    }
+    return new GroupByAggregator(Collections.unmodifiableList(dimensions));
+  }
+
+  public List<GroupByDimension> dimensions() {
+    return this.dimensions;
+  }
+
+  /**
+   * true when a partial update touches a field any dimension groups by
+   */
+  public boolean dependsOn(Value delta) {
+    for (int i = 0; i < this.dimensions.size(); i++) {
+      if (this.dimensions.get(i).dependsOn(delta)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * insert or update a member from its full record
+   */
+  public void update(int memberId, Value info, GroupListener listener) {
+    for (int i = 0; i < this.dimensions.size(); i++) {
+      final GroupByDimension dimension = this.dimensions.get(i);
+      move(dimension, memberId, dimension.groupOf(info), listener);
+    }
+  }
+
+  /**
+   * remove a member from every group it is counted in
+   */
+  public void remove(int memberId, GroupListener listener) {
+    for (int i = 0; i < this.dimensions.size(); i++) {
+      move(this.dimensions.get(i), memberId, null, listener);
+    }
+  }
+
+  private static void move(GroupByDimension dimension, int memberId, String group, GroupListener listener) {
+    final int oldCode = dimension.assign(memberId, group);
+    final int code = group != null ? dimension.groups.codeOf(group) : StringDictionary.NONE;
+    if (oldCode == code) {
+      return;
+    }
+    if (oldCode != StringDictionary.NONE) {
+      listener.didUpdateGroup(dimension, dimension.group(oldCode), dimension.countOf(oldCode));
+    }
+    if (code != StringDictionary.NONE) {
+      listener.didUpdateGroup(dimension, group, dimension.countOf(code));
+    }
+  }
+
+}
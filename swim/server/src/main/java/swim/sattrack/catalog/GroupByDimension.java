@@ -0,0 +1,148 @@
+package swim.sattrack.catalog;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import swim.sattrack.util.IntIntMap;
+import swim.sattrack.util.StringDictionary;
+import swim.structure.Item;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * One group-by dimension of a GroupByAggregator, for example
+ * satellites by country. Group keys are dictionary encoded and the
+ * counts and each member's current group live in primitive arrays.
+ *
+ * Configured from a record such as
+ * {lane: "satellitesByCountry", field: "countryCode", missing: "Unknown"}
+ * with optional groups: {payload: {name: "Payload", values: "PAYLOAD"}}
+ * and other: "rocketBody" to fold raw values into named groups.
+ */
+public final class GroupByDimension {
+
+  final String laneName;
+  final String field;
+  final String missing; // group for members without a value, null to leave them out
+  final String other; // group for values not listed in groups, null to use the raw value
+  final Map<String, String> valueGroups = new HashMap<>();
+  final Map<String, String> groupNames = new HashMap<>();
+
+  final StringDictionary groups = new StringDictionary();
+  final IntIntMap memberGroups = new IntIntMap(1024, StringDictionary.NONE);
+  int[] counts = new int[16];
+
+  GroupByDimension(String laneName, String field, String missing, String other) {
+    this.laneName = laneName;
+    this.field = field;
+    this.missing = missing;
+    this.other = other;
+  }
+
+  static GroupByDimension fromConfig(Value config) {
+    final String field = config.get("field").stringValue();
+    final String laneName = config.get("lane").stringValue(field);
+    final GroupByDimension dimension = new GroupByDimension(laneName, field,
+        config.get("missing").stringValue(null), config.get("other").stringValue(null));
+    for (Item group : config.get("groups")) {
+      final String groupKey = group.key().stringValue();
+      final Value groupConfig = group.toValue();
+      dimension.groupNames.put(groupKey, groupConfig.get("name").stringValue(groupKey));
+      final Value values = groupConfig.get("values");
+      if (values instanceof Record) {
+        for (Item value : values) {
+          dimension.valueGroups.put(value.stringValue(), groupKey);
+        }
+      } else if (values.isDefined()) {
+        dimension.valueGroups.put(values.stringValue(), groupKey);
+      }
+    }
+    return dimension;
+  }
+
+  public String laneName() {
+    return this.laneName;
+  }
+
+  /**
+   * display name of a group, the key unless configured otherwise
+   */
+  public String groupName(String group) {
+    final String name = this.groupNames.get(group);
+    return name != null ? name : group;
+  }
+
+  /**
+   * the configured groups, published with a zero count on startup
+   */
+  public Iterable<String> configuredGroups() {
+    return this.groupNames.keySet();
+  }
+
+  public boolean isConfiguredGroup(String group) {
+    return this.groupNames.containsKey(group);
+  }
+
+  public int count(String group) {
+    final int code = this.groups.codeOf(group);
+    return code >= 0 && code < this.counts.length ? this.counts[code] : 0;
+  }
+
+  boolean dependsOn(Value delta) {
+    if (GroupByAggregator.ORBIT_REGIME.equals(this.field)) {
+      return delta.get("orbitalPeriod").isDefined() || delta.get("tle").isDefined();
+    }
+    return delta.get(this.field).isDefined();
+  }
+
+  /**
+   * group key for a member record, or null when it should not be counted
+   */
+  String groupOf(Value info) {
+    final String value;
+    if (GroupByAggregator.ORBIT_REGIME.equals(this.field)) {
+      value = OrbitRegime.of(info);
+    } else {
+      value = info.get(this.field).stringValue(null);
+    }
+    if (value == null || value.isEmpty()) {
+      return this.missing;
+    }
+    final String group = this.valueGroups.get(value);
+    if (group != null) {
+      return group;
+    }
+    return this.other != null ? this.other : value;
+  }
+
+  /**
+   * move a member to a group, returning its old group code so the caller can publish both
+   */
+  int assign(int memberId, String group) {
+    final int code = group != null ? this.groups.encode(group) : StringDictionary.NONE;
+    final int oldCode = code != StringDictionary.NONE
+        ? this.memberGroups.put(memberId, code) : this.memberGroups.remove(memberId);
+    if (oldCode != code) {
+      if (oldCode != StringDictionary.NONE) {
+        this.counts[oldCode] -= 1;
+      }
+      if (code != StringDictionary.NONE) {
+        if (code >= this.counts.length) {
+          this.counts = Arrays.copyOf(this.counts, Math.max(code + 1, this.counts.length << 1));
+        }
+        this.counts[code] += 1;
+      }
+    }
+    return oldCode;
+  }
+
+  String group(int code) {
+    return this.groups.decode(code);
+  }
+
+  int countOf(int code) {
+    return this.counts[code];
+  }
+
+}
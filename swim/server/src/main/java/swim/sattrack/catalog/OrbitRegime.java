@@ -0,0 +1,59 @@
+package swim.sattrack.catalog;
+
+import swim.structure.Value;
+
+/**
+ * Rough orbit regime of a satellite from its period and the
+ * eccentricity in its TLE. Used as a derived group-by field.
+ */
+public final class OrbitRegime {
+
+  public static final String LEO = "LEO";
+  public static final String MEO = "MEO";
+  public static final String GEO = "GEO";
+  public static final String HEO = "HEO";
+
+  static final float LEO_MAX_PERIOD = 128f; // minutes, about 2000 km altitude
+  static final float GEO_MIN_PERIOD = 1300f;
+  static final float GEO_MAX_PERIOD = 1600f;
+  static final double HEO_MIN_ECCENTRICITY = 0.25;
+
+  private OrbitRegime() {
+    // static only
+  }
+
+  /**
+   * regime for a satellite short info record, or null without a period
+   */
+  public static String of(Value info) {
+    final float period = info.get("orbitalPeriod").floatValue(Float.NaN);
+    if (Float.isNaN(period)) {
+      return null;
+    }
+    if (eccentricity(info.get("tle")) >= HEO_MIN_ECCENTRICITY) {
+      return HEO;
+    } else if (period < LEO_MAX_PERIOD) {
+      return LEO;
+    } else if (period >= GEO_MIN_PERIOD && period <= GEO_MAX_PERIOD) {
+      return GEO;
+    } else {
+      return MEO;
+    }
+  }
+
+  /**
+   * eccentricity from columns 27-33 of TLE line 2, 0 when it can not be read
+   */
+  static double eccentricity(Value tleLines) {
+    final String line2 = tleLines.getItem(tleLines.length() - 1).stringValue(null);
+    if (line2 == null || line2.length() < 33) {
+      return 0.0;
+    }
+    try {
+      return Double.parseDouble("." + line2.substring(26, 33).trim());
+    } catch (NumberFormatException ex) {
+      return 0.0;
+    }
+  }
+
+}
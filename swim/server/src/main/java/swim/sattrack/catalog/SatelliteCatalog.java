@@ -0,0 +1,359 @@
+package swim.sattrack.catalog;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import swim.sattrack.util.IntIntMap;
+import swim.sattrack.util.StringDictionary;
+import swim.structure.Num;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * Column store for the short satellite info the SatelliteAgents
+ * report to the aggregation agent. One row per catalog number,
+ * numbers kept in primitive arrays and the low cardinality strings
+ * (type, country, rcs size, launch site) dictionary encoded.
+ * Lane values are projected back out with toValue() on demand.
+ * Not thread safe, owned by a single agent.
+ */
+public final class SatelliteCatalog {
+
+  private final IntIntMap rows;
+  private int size;
+
+  private int[] catalogNumber;
+  private String[] name;
+  private String[] intlDesignator;
+  private String[] tle; // TLE_LINES per row
+  private int[] type;
+  private int[] country;
+  private int[] rcsSize;
+  private int[] launchSite;
+  private float[] orbitalPeriod;
+  private float[] height;
+  private double[] latitude;
+  private double[] longitude;
+  private double[] position; // x, y, z per row
+  private long[] updated; // time of the last put
+
+  private final StringDictionary types = new StringDictionary();
+  private final StringDictionary countries = new StringDictionary();
+  private final StringDictionary rcsSizes = new StringDictionary();
+  private final StringDictionary launchSites = new StringDictionary();
+
+  static final int TLE_LINES = 3;
+
+  public SatelliteCatalog(int initialCapacity) {
+    final int capacity = Math.max(16, initialCapacity);
+    this.rows = new IntIntMap(capacity, -1);
+    this.catalogNumber = new int[capacity];
+    this.name = new String[capacity];
+    this.intlDesignator = new String[capacity];
+    this.tle = new String[capacity * TLE_LINES];
+    this.type = new int[capacity];
+    this.country = new int[capacity];
+    this.rcsSize = new int[capacity];
+    this.launchSite = new int[capacity];
+    this.orbitalPeriod = new float[capacity];
+    this.height = new float[capacity];
+    this.latitude = new double[capacity];
+    this.longitude = new double[capacity];
+    this.position = new double[capacity * 3];
+    this.updated = new long[capacity];
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * row for a catalog number or -1
+   */
+  public int row(int catalogId) {
+    return this.rows.get(catalogId);
+  }
+
+  public int catalogNumber(int row) {
+    return this.catalogNumber[row];
+  }
+
+  public String type(int row) {
+    return this.types.decode(this.type[row]);
+  }
+
+  public String country(int row) {
+    return this.countries.decode(this.country[row]);
+  }
+
+  public double latitude(int row) {
+    return this.latitude[row];
+  }
+
+  public double longitude(int row) {
+    return this.longitude[row];
+  }
+
+  public float height(int row) {
+    return this.height[row];
+  }
+
+  public long updated(int row) {
+    return this.updated[row];
+  }
+
+  /**
+   * insert a row for the short info record sent by a SatelliteAgent,
+   * or apply a partial update holding only the changed fields.
+   * Returns the row, or -1 when the record has no catalog number.
+   */
+  public int put(Value info, long timestamp) {
+    final int catalogId = info.get("catalogNumber").intValue(-1);
+    if (catalogId < 0) {
+      return -1;
+    }
+    int row = this.rows.get(catalogId);
+    final boolean isNew = row < 0;
+    if (isNew) {
+      if (this.size == this.catalogNumber.length) {
+        grow(this.size << 1);
+      }
+      row = this.size;
+      this.size += 1;
+      this.rows.put(catalogId, row);
+      this.catalogNumber[row] = catalogId;
+    }
+    // existing rows only take the fields present in the update
+    Value field = info.get("name");
+    if (isNew || field.isDefined()) {
+      this.name[row] = field.stringValue(null);
+    }
+    field = info.get("intlDesignator");
+    if (isNew || field.isDefined()) {
+      this.intlDesignator[row] = field.stringValue(null);
+    }
+    field = info.get("tle");
+    if (isNew || field.isDefined()) {
+      for (int i = 0; i < TLE_LINES; i++) {
+        this.tle[row * TLE_LINES + i] = field.getItem(i).stringValue(null);
+      }
+    }
+    field = info.get("type");
+    if (isNew || field.isDefined()) {
+      this.type[row] = this.types.encode(field.stringValue(null));
+    }
+    field = info.get("countryCode");
+    if (isNew || field.isDefined()) {
+      this.country[row] = this.countries.encode(field.stringValue(null));
+    }
+    field = info.get("rcsSize");
+    if (isNew || field.isDefined()) {
+      this.rcsSize[row] = this.rcsSizes.encode(field.stringValue(null));
+    }
+    field = info.get("launchSiteCode");
+    if (isNew || field.isDefined()) {
+      this.launchSite[row] = this.launchSites.encode(field.stringValue(null));
+    }
+    field = info.get("orbitalPeriod");
+    if (isNew || field.isDefined()) {
+      this.orbitalPeriod[row] = field.floatValue(Float.NaN);
+    }
+    field = info.get("height");
+    if (isNew || field.isDefined()) {
+      this.height[row] = field.floatValue(Float.NaN);
+    }
+    field = info.get("latitude");
+    if (isNew || field.isDefined()) {
+      this.latitude[row] = field.doubleValue(Double.NaN);
+    }
+    field = info.get("longitude");
+    if (isNew || field.isDefined()) {
+      this.longitude[row] = field.doubleValue(Double.NaN);
+    }
+    field = info.get("position");
+    if (isNew || field.isDefined()) {
+      this.position[row * 3] = field.get("x").doubleValue(Double.NaN);
+      this.position[row * 3 + 1] = field.get("y").doubleValue(Double.NaN);
+      this.position[row * 3 + 2] = field.get("z").doubleValue(Double.NaN);
+    }
+    this.updated[row] = timestamp;
+    return row;
+  }
+
+  /**
+   * note an update of a satellite which changed none of its fields.
+   * Returns false when it is not in the catalog.
+   */
+  public boolean touch(int catalogId, long timestamp) {
+    final int row = this.rows.get(catalogId);
+    if (row < 0) {
+      return false;
+    }
+    this.updated[row] = timestamp;
+    return true;
+  }
+
+  /**
+   * remove a satellite by moving the last row into its place.
+   * Returns false when it was not in the catalog.
+   */
+  public boolean remove(int catalogId) {
+    final int row = this.rows.remove(catalogId);
+    if (row < 0) {
+      return false;
+    }
+    final int last = this.size - 1;
+    if (row != last) {
+      this.catalogNumber[row] = this.catalogNumber[last];
+      this.name[row] = this.name[last];
+      this.intlDesignator[row] = this.intlDesignator[last];
+      System.arraycopy(this.tle, last * TLE_LINES, this.tle, row * TLE_LINES, TLE_LINES);
+      this.type[row] = this.type[last];
+      this.country[row] = this.country[last];
+      this.rcsSize[row] = this.rcsSize[last];
+      this.launchSite[row] = this.launchSite[last];
+      this.orbitalPeriod[row] = this.orbitalPeriod[last];
+      this.height[row] = this.height[last];
+      this.latitude[row] = this.latitude[last];
+      this.longitude[row] = this.longitude[last];
+      System.arraycopy(this.position, last * 3, this.position, row * 3, 3);
+      this.updated[row] = this.updated[last];
+      this.rows.put(this.catalogNumber[row], row);
+    }
+    // drop references so removed strings can be collected
+    this.name[last] = null;
+    this.intlDesignator[last] = null;
+    Arrays.fill(this.tle, last * TLE_LINES, last * TLE_LINES + TLE_LINES, null);
+    this.size = last;
+    return true;
+  }
+
+  /**
+   * project a row back into the same 13 slot record SatelliteAgent sends
+   */
+  public Value toValue(int row) {
+    if (row < 0 || row >= this.size) {
+      return Value.absent();
+    }
+    final Record tleLines = Record.create(TLE_LINES);
+    for (int i = 0; i < TLE_LINES; i++) {
+      final String line = this.tle[row * TLE_LINES + i];
+      if (line != null) {
+        tleLines.item(line);
+      }
+    }
+    final Record pos = Record.create(3)
+        .slot("x", number(this.position[row * 3]))
+        .slot("y", number(this.position[row * 3 + 1]))
+        .slot("z", number(this.position[row * 3 + 2]));
+    return Record.create(13)
+        .slot("name", text(this.name[row]))
+        .slot("catalogNumber", this.catalogNumber[row])
+        .slot("intlDesignator", text(this.intlDesignator[row]))
+        .slot("type", text(this.types.decode(this.type[row])))
+        .slot("orbitalPeriod", number(this.orbitalPeriod[row]))
+        .slot("tle", tleLines)
+        .slot("position", pos)
+        .slot("height", number(this.height[row]))
+        .slot("latitude", number(this.latitude[row]))
+        .slot("longitude", number(this.longitude[row]))
+        .slot("countryCode", text(this.countries.decode(this.country[row])))
+        .slot("rcsSize", text(this.rcsSizes.decode(this.rcsSize[row])))
+        .slot("launchSiteCode", text(this.launchSites.decode(this.launchSite[row])));
+  }
+
+  public Value toValue(String key) {
+    return toValue(row(parseKey(key)));
+  }
+
+  /**
+   * lane keys are catalog numbers as strings
+   */
+  public static int parseKey(String key) {
+    try {
+      return Integer.parseInt(key);
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+
+  /**
+   * lane keys for every row, or only rows matching typeFilter when it is not null
+   */
+  public Iterator<String> keys(TypeFilter typeFilter) {
+    return new KeyIterator(typeFilter);
+  }
+
+  private static Value text(String value) {
+    return value != null ? Value.fromObject(value) : Value.absent();
+  }
+
+  private static Value number(double value) {
+    return Double.isNaN(value) ? Value.absent() : Num.from(value);
+  }
+
+  private static Value number(float value) {
+    return Float.isNaN(value) ? Value.absent() : Num.from(value);
+  }
+
+  private void grow(int newCapacity) {
+    this.catalogNumber = Arrays.copyOf(this.catalogNumber, newCapacity);
+    this.name = Arrays.copyOf(this.name, newCapacity);
+    this.intlDesignator = Arrays.copyOf(this.intlDesignator, newCapacity);
+    this.tle = Arrays.copyOf(this.tle, newCapacity * TLE_LINES);
+    this.type = Arrays.copyOf(this.type, newCapacity);
+    this.country = Arrays.copyOf(this.country, newCapacity);
+    this.rcsSize = Arrays.copyOf(this.rcsSize, newCapacity);
+    this.launchSite = Arrays.copyOf(this.launchSite, newCapacity);
+    this.orbitalPeriod = Arrays.copyOf(this.orbitalPeriod, newCapacity);
+    this.height = Arrays.copyOf(this.height, newCapacity);
+    this.latitude = Arrays.copyOf(this.latitude, newCapacity);
+    this.longitude = Arrays.copyOf(this.longitude, newCapacity);
+    this.position = Arrays.copyOf(this.position, newCapacity * 3);
+    this.updated = Arrays.copyOf(this.updated, newCapacity);
+  }
+
+  /**
+   * picks the rows a lane view shows, by raw type string
+   */
+  public interface TypeFilter {
+    boolean matches(String type);
+  }
+
+  final class KeyIterator implements Iterator<String> {
+
+    final TypeFilter typeFilter;
+    int next;
+
+    KeyIterator(TypeFilter typeFilter) {
+      this.typeFilter = typeFilter;
+      this.next = advance(0);
+    }
+
+    private int advance(int row) {
+      while (row < SatelliteCatalog.this.size && this.typeFilter != null
+          && !this.typeFilter.matches(SatelliteCatalog.this.type(row))) {
+        row += 1;
+      }
+      return row;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return this.next < SatelliteCatalog.this.size;
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final String key = Integer.toString(SatelliteCatalog.this.catalogNumber[this.next]);
+      this.next = advance(this.next + 1);
+      return key;
+    }
+
+  }
+
+}
@@ -0,0 +1,196 @@
+package swim.sattrack.catalog;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import swim.sattrack.util.IntIntMap;
+
+/**
+ * Fixed latitude/longitude tile grid over satellite ground positions.
+ * Each member id lives in exactly one cell and only moves when its
+ * position crosses into another cell, so updates are O(1). A bounding
+ * box query visits the members of the cells it overlaps, callers do
+ * the exact position check. Not thread safe.
+ */
+public final class SpatialIndex {
+
+  private final double cellDegrees;
+  private final int rows;
+  private final int cols;
+  private final int[][] cellMembers;
+  private final int[] cellSizes;
+  private final IntIntMap memberCell;
+  private final IntIntMap memberIndex; // position of a member inside its cell
+
+  public SpatialIndex(double cellDegrees, int expectedMembers) {
+    this.cellDegrees = cellDegrees;
+    this.rows = (int) Math.ceil(180.0 / cellDegrees);
+    this.cols = (int) Math.ceil(360.0 / cellDegrees);
+    this.cellMembers = new int[this.rows * this.cols][];
+    this.cellSizes = new int[this.rows * this.cols];
+    this.memberCell = new IntIntMap(expectedMembers, -1);
+    this.memberIndex = new IntIntMap(expectedMembers, -1);
+  }
+
+  public int size() {
+    return this.memberCell.size();
+  }
+
+  /**
+   * place a member at a position, NaN coordinates take it out of the index
+   */
+  public void update(int id, double latitude, double longitude) {
+    if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+      remove(id);
+      return;
+    }
+    final int cell = cellOf(row(latitude), col(longitude));
+    final int oldCell = this.memberCell.get(id);
+    if (oldCell == cell) {
+      return;
+    }
+    if (oldCell >= 0) {
+      removeFromCell(id, oldCell);
+    }
+    int[] members = this.cellMembers[cell];
+    final int size = this.cellSizes[cell];
+    if (members == null) {
+      members = new int[4];
+      this.cellMembers[cell] = members;
+    } else if (size == members.length) {
+      members = Arrays.copyOf(members, size << 1);
+      this.cellMembers[cell] = members;
+    }
+    members[size] = id;
+    this.cellSizes[cell] = size + 1;
+    this.memberCell.put(id, cell);
+    this.memberIndex.put(id, size);
+  }
+
+  public void remove(int id) {
+    final int cell = this.memberCell.remove(id);
+    if (cell >= 0) {
+      removeFromCell(id, cell);
+      this.memberIndex.remove(id);
+    }
+  }
+
+  /**
+   * Visit every member in the cells overlapping the box, each once.
+   * Longitudes are taken modulo 360, a box whose west is east of its
+   * east crosses the antimeridian and one 360 degrees or wider covers
+   * every longitude.
+   */
+  public void query(double south, double west, double north, double east, IntConsumer visitor) {
+    final int fromRow = row(Math.min(south, north));
+    final int toRow = row(Math.max(south, north));
+    int fromCol = 0;
+    int toCol = this.cols - 1;
+    boolean wraps = false;
+    if (east - west < 360.0) {
+      fromCol = col(west);
+      toCol = eastCol(east);
+      wraps = normalize(west) > normalizeEast(east);
+      if (wraps && fromCol <= toCol) {
+        // west and east share a cell, the box goes all the way round
+        fromCol = 0;
+        toCol = this.cols - 1;
+        wraps = false;
+      } else if (!wraps && normalizeEast(east) == 180.0 && fromCol > 0) {
+        // 180 is also -180, which is in the first column
+        wraps = true;
+        toCol = 0;
+        fromCol = Math.max(fromCol, 1);
+      }
+    }
+    for (int r = fromRow; r <= toRow; r++) {
+      if (wraps) {
+        visitCols(r, fromCol, this.cols - 1, visitor);
+        visitCols(r, 0, toCol, visitor);
+      } else {
+        visitCols(r, fromCol, toCol, visitor);
+      }
+    }
+  }
+
+  /**
+   * the exact longitude check matching query, for callers filtering
+   * the members it visits
+   */
+  public static boolean containsLongitude(double west, double east, double longitude) {
+    if (east - west >= 360.0) {
+      return true;
+    }
+    final double w = normalize(west);
+    final double e = normalizeEast(east);
+    final double lng = normalize(longitude);
+    if (w <= e) {
+      return lng >= w && lng <= e || e == 180.0 && lng == -180.0;
+    }
+    return lng >= w || lng <= e;
+  }
+
+  private void visitCols(int r, int fromCol, int toCol, IntConsumer visitor) {
+    for (int c = fromCol; c <= toCol; c++) {
+      final int cell = cellOf(r, c);
+      final int[] members = this.cellMembers[cell];
+      final int size = this.cellSizes[cell];
+      for (int i = 0; i < size; i++) {
+        visitor.accept(members[i]);
+      }
+    }
+  }
+
+  private void removeFromCell(int id, int cell) {
+    final int[] members = this.cellMembers[cell];
+    final int index = this.memberIndex.get(id);
+    final int last = this.cellSizes[cell] - 1;
+    if (index != last) {
+      members[index] = members[last];
+      this.memberIndex.put(members[index], index);
+    }
+    this.cellSizes[cell] = last;
+  }
+
+  private int row(double latitude) {
+    final int r = (int) ((latitude + 90.0) / this.cellDegrees);
+    return Math.max(0, Math.min(this.rows - 1, r));
+  }
+
+  private int col(double longitude) {
+    final int c = (int) ((normalize(longitude) + 180.0) / this.cellDegrees);
+    return Math.max(0, Math.min(this.cols - 1, c));
+  }
+
+  /**
+   * column of the east edge of a box, which includes 180 rather than
+   * wrapping it to -180
+   */
+  private int eastCol(double east) {
+    final int c = (int) ((normalizeEast(east) + 180.0) / this.cellDegrees);
+    return Math.max(0, Math.min(this.cols - 1, c));
+  }
+
+  /**
+   * longitude in [-180, 180)
+   */
+  private static double normalize(double longitude) {
+    if (longitude < -180.0 || longitude >= 180.0) {
+      return ((longitude + 180.0) % 360.0 + 360.0) % 360.0 - 180.0;
+    }
+    return longitude;
+  }
+
+  /**
+   * longitude in (-180, 180], for the east edge of a box
+   */
+  private static double normalizeEast(double longitude) {
+    final double lng = normalize(longitude);
+    return lng == -180.0 ? 180.0 : lng;
+  }
+
+  private int cellOf(int r, int c) {
+    return r * this.cols + c;
+  }
+
+}
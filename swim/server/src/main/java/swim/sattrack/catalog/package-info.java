@@ -0,0 +1,4 @@
+/**
+ * Columnar satellite catalog used by the aggregation agents.
+ */
+package swim.sattrack.catalog;
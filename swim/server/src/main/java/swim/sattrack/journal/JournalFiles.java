@@ -0,0 +1,60 @@
+package swim.sattrack.journal;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * On disk layout of a journal directory. The journal is a sequence of
+ * segment files named after the journal position of their first byte,
+ * so positions keep growing across segments. A segment is
+ *   16 byte header: magic, version, base position (long),
+ *   entries: payload length, CRC32 of the payload, append time in ms
+ *   (long), then the payload in the TleCodec layout.
+ * A length of 0 is space not written yet and ROLLED ends the segment,
+ * the next entry is at the start of the next segment. The length is
+ * written last so a reader never sees a partial entry.
+ */
+final class JournalFiles {
+
+  static final int MAGIC = 0x544C454A; // TLEJ
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 16;
+  static final int ENTRY_HEADER_SIZE = 16;
+  static final int ROLLED = -1;
+  static final String SUFFIX = ".journal";
+
+  private JournalFiles() {
+  }
+
+  static Path segmentPath(Path directory, long base) {
+    return directory.resolve(String.format("%020d%s", base, SUFFIX));
+  }
+
+  /**
+   * base positions of the segments in the directory, oldest first
+   */
+  static List<Long> segmentBases(Path directory) throws IOException {
+    final List<Long> bases = new ArrayList<>();
+    if (!Files.isDirectory(directory)) {
+      return bases;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+      for (Path file : files) {
+        final String name = file.getFileName().toString();
+        try {
+          bases.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+        } catch (NumberFormatException ex) {
+          // not a segment
+        }
+      }
+    }
+    Collections.sort(bases);
+    return bases;
+  }
+
+}
@@ -0,0 +1,196 @@
+package swim.sattrack.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import swim.structure.Value;
+
+/**
+ * Reads vector lists from a journal directory in append order.
+ * Segments are mapped read only and entries are checked and decoded
+ * straight out of the mapping, nothing is copied through a read buffer.
+ * A reader only sees entries whose length and checksum are in place,
+ * so it can tail a journal a writer in another process is appending to.
+ * Readers keep their own position, committed to a small offset file
+ * per reader id. Not thread safe, owned by one consumer thread.
+ */
+public final class JournalReader {
+
+  public static final long EARLIEST = -1L;
+  public static final long LATEST = -2L;
+
+  /**
+   * receives each entry with its append time and the position after it
+   */
+  public interface Handler {
+    void onEntry(long nextPosition, long timestamp, Value vectorList);
+  }
+
+  private final Path directory;
+  private final TleCodec.Decoder decoder = new TleCodec.Decoder();
+  private final CRC32 crc = new CRC32();
+  private MappedByteBuffer segment;
+  private long segmentBase = -1L;
+  private int offset;
+  private long badPosition = -1L;
+
+  public JournalReader(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * the position of the next entry to read
+   */
+  public long position() {
+    return this.segmentBase < 0L ? 0L : this.segmentBase + this.offset;
+  }
+
+  /**
+   * start reading at position, EARLIEST or LATEST. Positions in
+   * segments which were deleted start at the oldest retained entry.
+   * Returns false when the journal has no segments yet.
+   */
+  public boolean seek(long position) throws IOException {
+    final List<Long> bases = JournalFiles.segmentBases(this.directory);
+    if (bases.isEmpty()) {
+      return false;
+    }
+    long base = bases.get(0);
+    if (position == LATEST) {
+      base = bases.get(bases.size() - 1);
+    } else if (position > base) {
+      for (long candidate : bases) {
+        if (candidate <= position) {
+          base = candidate;
+        }
+      }
+    }
+    if (!openSegment(base)) {
+      return false;
+    }
+    if (position == LATEST) {
+      skipToEnd();
+    } else if (position > base) {
+      this.offset = (int) Math.min(Math.max(position - base, JournalFiles.HEADER_SIZE), this.segment.capacity());
+    }
+    return true;
+  }
+
+  /**
+   * hand at most maxEntries new entries to handler, returns how many.
+   * 0 means the reader is caught up with the writer.
+   */
+  public int read(int maxEntries, Handler handler) throws IOException {
+    if (this.segment == null && !seek(EARLIEST)) {
+      return 0;
+    }
+    int count = 0;
+    while (count < maxEntries && this.offset + 4 <= this.segment.capacity()) {
+      final int length = this.segment.getInt(this.offset);
+      if (length == 0) {
+        break;
+      }
+      if (length == JournalFiles.ROLLED) {
+        if (!openSegment(this.segmentBase + this.offset)) {
+          break; // the writer has not created the next segment yet
+        }
+        continue;
+      }
+      final int start = this.offset + JournalFiles.ENTRY_HEADER_SIZE;
+      if (length < 0 || start + length > this.segment.capacity() || !checksumValid(start, length)) {
+        // either still being written by another process or corrupt, try again on the next read
+        if (this.badPosition != position()) {
+          this.badPosition = position();
+          System.out.println(String.format("[JournalReader] entry at %d is not readable yet", this.badPosition));
+        }
+        break;
+      }
+      final long timestamp = this.segment.getLong(this.offset + 8);
+      final ByteBuffer payload = this.segment.duplicate();
+      payload.position(start);
+      payload.limit(start + length);
+      final Value vectorList = this.decoder.readVectors(payload);
+      this.offset = start + length;
+      count += 1;
+      handler.onEntry(position(), timestamp, vectorList);
+    }
+    return count;
+  }
+
+  private boolean checksumValid(int start, int length) {
+    final ByteBuffer payload = this.segment.duplicate();
+    payload.position(start);
+    payload.limit(start + length);
+    this.crc.reset();
+    this.crc.update(payload);
+    return (int) this.crc.getValue() == this.segment.getInt(start - 8);
+  }
+
+  private void skipToEnd() throws IOException {
+    while (this.offset + 4 <= this.segment.capacity()) {
+      final int length = this.segment.getInt(this.offset);
+      if (length <= 0) {
+        return;
+      }
+      this.offset += JournalFiles.ENTRY_HEADER_SIZE + length;
+    }
+  }
+
+  /**
+   * map the segment at base, false when the writer has not finished creating it
+   */
+  private boolean openSegment(long base) throws IOException {
+    final Path file = JournalFiles.segmentPath(this.directory, base);
+    if (!Files.exists(file)) {
+      return false;
+    }
+    final MappedByteBuffer mapped;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() < JournalFiles.HEADER_SIZE) {
+        return false;
+      }
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+    }
+    if (mapped.getInt(0) == 0) {
+      return false;
+    }
+    if (mapped.getInt(0) != JournalFiles.MAGIC || mapped.getInt(4) != JournalFiles.VERSION) {
+      throw new IOException("not a journal segment " + file);
+    }
+    this.segment = mapped;
+    this.segmentBase = base;
+    this.offset = JournalFiles.HEADER_SIZE;
+    return true;
+  }
+
+  /**
+   * the position committed for readerId, or otherwise when there is none
+   */
+  public static long committedPosition(Path directory, String readerId, long otherwise) throws IOException {
+    final Path file = directory.resolve(readerId + ".offset");
+    if (!Files.exists(file)) {
+      return otherwise;
+    }
+    final byte[] bytes = Files.readAllBytes(file);
+    return bytes.length == 8 ? ByteBuffer.wrap(bytes).getLong() : otherwise;
+  }
+
+  /**
+   * save the position of readerId, through a temp file so a crash keeps the previous one
+   */
+  public static void commitPosition(Path directory, String readerId, long position) throws IOException {
+    final Path file = directory.resolve(readerId + ".offset");
+    final Path temp = directory.resolve(readerId + ".offset.tmp");
+    Files.write(temp, ByteBuffer.allocate(8).putLong(0, position).array());
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+}
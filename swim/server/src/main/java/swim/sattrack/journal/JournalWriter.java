@@ -0,0 +1,236 @@
+package swim.sattrack.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import swim.structure.Value;
+
+/**
+ * Appends TLE vector lists to a journal directory, for producers on
+ * the same host as the tracker. Entries go into memory-mapped segments
+ * of segmentSize bytes, the page cache makes them visible to readers
+ * straight away and flush() forces them to disk. When a segment is
+ * full the writer rolls to a new one and drops the oldest segments
+ * past retainSegments (0 keeps them all).
+ *
+ * Only one writer can hold a journal, enforced with a lock file.
+ * Reopening a journal after a crash truncates it after the last entry
+ * with a valid checksum. Thread safe.
+ */
+public final class JournalWriter implements AutoCloseable {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+  private final Path directory;
+  private final int segmentSize;
+  private final int retainSegments;
+  private final FileChannel lockChannel;
+  private final FileLock lock;
+  private final TleCodec.Encoder encoder = new TleCodec.Encoder();
+  private final CRC32 crc = new CRC32();
+  private MappedByteBuffer segment;
+  private long segmentBase;
+  private int position;
+
+  private JournalWriter(Path directory, int segmentSize, int retainSegments, FileChannel lockChannel, FileLock lock) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.retainSegments = retainSegments;
+    this.lockChannel = lockChannel;
+    this.lock = lock;
+  }
+
+  public static JournalWriter open(Path directory) throws IOException {
+    return open(directory, DEFAULT_SEGMENT_SIZE, 0);
+  }
+
+  public static JournalWriter open(Path directory, int segmentSize, int retainSegments) throws IOException {
+    Files.createDirectories(directory);
+    final FileChannel lockChannel = FileChannel.open(directory.resolve("writer.lock"),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    FileLock lock;
+    try {
+      lock = lockChannel.tryLock();
+    } catch (OverlappingFileLockException ex) {
+      lock = null; // held by a writer in this process
+    }
+    if (lock == null) {
+      lockChannel.close();
+      throw new IOException("journal " + directory + " already has a writer");
+    }
+    final JournalWriter writer = new JournalWriter(directory, segmentSize, retainSegments, lockChannel, lock);
+    try {
+      writer.recover();
+    } catch (IOException | RuntimeException ex) {
+      writer.close();
+      throw ex;
+    }
+    return writer;
+  }
+
+  /**
+   * journal position the next entry will be written at
+   */
+  public synchronized long position() {
+    return this.segmentBase + this.position;
+  }
+
+  /**
+   * append one vector list, a Kafka tleDataset record, stamped with the
+   * current time. Returns the position after the entry.
+   */
+  public long append(Value vectorList) throws IOException {
+    return append(vectorList, System.currentTimeMillis());
+  }
+
+  public synchronized long append(Value vectorList, long timestamp) throws IOException {
+    if (this.segment == null) {
+      throw new IOException("journal writer is closed");
+    }
+    final TleCodec.Encoder out = this.encoder.reset();
+    out.writeVectors(vectorList);
+    final int entrySize = JournalFiles.ENTRY_HEADER_SIZE + out.length;
+    // leave room for the ROLLED marker after every entry
+    if (JournalFiles.HEADER_SIZE + entrySize + 4 > this.segmentSize) {
+      throw new IllegalArgumentException("entry of " + entrySize + " bytes does not fit a " + this.segmentSize + " byte segment");
+    }
+    if (this.position + entrySize + 4 > this.segment.capacity()) {
+      roll();
+    }
+    this.crc.reset();
+    this.crc.update(out.bytes, 0, out.length);
+    final int at = this.position;
+    this.segment.putInt(at + 4, (int) this.crc.getValue());
+    this.segment.putLong(at + 8, timestamp);
+    final ByteBuffer payload = this.segment.duplicate();
+    payload.position(at + JournalFiles.ENTRY_HEADER_SIZE);
+    payload.put(out.bytes, 0, out.length);
+    // publish the entry
+    this.segment.putInt(at, out.length);
+    this.position += entrySize;
+    return this.segmentBase + this.position;
+  }
+
+  /**
+   * append several vector lists, returns the position after the last one
+   */
+  public synchronized long append(List<Value> vectorLists) throws IOException {
+    final long timestamp = System.currentTimeMillis();
+    for (Value vectorList : vectorLists) {
+      append(vectorList, timestamp);
+    }
+    return position();
+  }
+
+  /**
+   * force written entries to disk
+   */
+  public synchronized void flush() {
+    if (this.segment != null) {
+      this.segment.force();
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (this.segment != null) {
+      this.segment.force();
+      this.segment = null;
+    }
+    try {
+      this.lock.release();
+    } finally {
+      this.lockChannel.close();
+    }
+  }
+
+  /**
+   * map the last segment and find the end of its valid entries
+   */
+  private void recover() throws IOException {
+    final List<Long> bases = JournalFiles.segmentBases(this.directory);
+    if (bases.isEmpty()) {
+      createSegment(0L);
+      return;
+    }
+    this.segmentBase = bases.get(bases.size() - 1);
+    this.segment = map(this.segmentBase, 0);
+    if (this.segment.getInt(0) != JournalFiles.MAGIC || this.segment.getInt(4) != JournalFiles.VERSION) {
+      throw new IOException("not a journal segment " + JournalFiles.segmentPath(this.directory, this.segmentBase));
+    }
+    int at = JournalFiles.HEADER_SIZE;
+    while (at + 4 <= this.segment.capacity()) {
+      final int length = this.segment.getInt(at);
+      if (length == JournalFiles.ROLLED) {
+        // crashed between marking the segment and creating the next one
+        createSegment(this.segmentBase + at);
+        return;
+      }
+      if (length <= 0 || at + JournalFiles.ENTRY_HEADER_SIZE + length > this.segment.capacity() || !checksumValid(at, length)) {
+        break;
+      }
+      at += JournalFiles.ENTRY_HEADER_SIZE + length;
+    }
+    this.position = at;
+    // clear anything torn after the last good entry so readers stop there
+    for (int i = at; i < this.segment.capacity(); i++) {
+      if (this.segment.get(i) != 0) {
+        this.segment.put(i, (byte) 0);
+      }
+    }
+  }
+
+  private boolean checksumValid(int at, int length) {
+    final ByteBuffer payload = this.segment.duplicate();
+    payload.position(at + JournalFiles.ENTRY_HEADER_SIZE);
+    payload.limit(at + JournalFiles.ENTRY_HEADER_SIZE + length);
+    this.crc.reset();
+    this.crc.update(payload);
+    return (int) this.crc.getValue() == this.segment.getInt(at + 4);
+  }
+
+  private void roll() throws IOException {
+    final MappedByteBuffer previous = this.segment;
+    final int rolledAt = this.position;
+    createSegment(this.segmentBase + rolledAt);
+    previous.putInt(rolledAt, JournalFiles.ROLLED);
+    previous.force();
+    if (this.retainSegments > 0) {
+      final List<Long> bases = JournalFiles.segmentBases(this.directory);
+      for (int i = 0; i < bases.size() - this.retainSegments; i++) {
+        // readers still mapping a deleted segment keep their mapping
+        Files.deleteIfExists(JournalFiles.segmentPath(this.directory, bases.get(i)));
+      }
+    }
+  }
+
+  private void createSegment(long base) throws IOException {
+    this.segment = map(base, this.segmentSize);
+    this.segment.putInt(4, JournalFiles.VERSION);
+    this.segment.putLong(8, base);
+    // readers treat a segment without its magic as not created yet
+    this.segment.putInt(0, JournalFiles.MAGIC);
+    this.segmentBase = base;
+    this.position = JournalFiles.HEADER_SIZE;
+  }
+
+  /**
+   * map a segment read write, size 0 maps an existing segment whole
+   */
+  private MappedByteBuffer map(long base, int size) throws IOException {
+    try (FileChannel channel = FileChannel.open(JournalFiles.segmentPath(this.directory, base),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0L, size > 0 ? size : channel.size());
+    }
+  }
+
+}
@@ -0,0 +1,340 @@
+package swim.sattrack.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import swim.recon.Recon;
+import swim.structure.Field;
+import swim.structure.Item;
+import swim.structure.Num;
+import swim.structure.Record;
+import swim.structure.Text;
+import swim.structure.Value;
+
+/**
+ * Binary layout of a TLE vector list in the journal:
+ *   varint vector count, then per vector
+ *   varint bitmap of the FIELDS present, the present fields in FIELDS
+ *   order (strings as varint length and UTF-8, ints and longs as zigzag
+ *   varints, floats and doubles as their raw IEEE bits, position as
+ *   three doubles and tle as a varint count of strings),
+ *   varint count of extra slots not in FIELDS, each a key string, a
+ *   tag and the value (text, zigzag long, double or Recon text).
+ * Field names are implied by their bit, so a vector costs about a
+ * third of its Avro size plus nothing for the schema.
+ */
+final class TleCodec {
+
+  static final int STRING = 0;
+  static final int INT = 1;
+  static final int LONG = 2;
+  static final int FLOAT = 3;
+  static final int DOUBLE = 4;
+  static final int POSITION = 5;
+  static final int LINES = 6;
+
+  static final int EXTRA_TEXT = 0;
+  static final int EXTRA_LONG = 1;
+  static final int EXTRA_DOUBLE = 2;
+  static final int EXTRA_RECON = 3;
+
+  // the tle.avsc vector fields, then the ones the connectors add. Append only, the bit is the index
+  static final String[] FIELDS = {
+    "name", "intlDesignator", "catalogNumber", "type", "classificationType", "epoch",
+    "eccentricity", "inclination", "rightAscension", "argPericenter", "meanAnomaly", "meanMotion",
+    "meanMotionDot", "meanMotionDotDot", "bStar", "revolutionsAtEpoch", "elementSetNumber", "ephemerisType",
+    "comment", "originator", "ordinal", "file", "orbitalPeriod", "apogee", "perigee",
+    "latitude", "longitude", "height", "position", "tle", "countryCode", "rcsSize",
+    "launchSiteCode", "kafkaTimestamp"
+  };
+  static final int[] TYPES = {
+    STRING, STRING, INT, STRING, STRING, LONG,
+    FLOAT, FLOAT, FLOAT, FLOAT, FLOAT, FLOAT,
+    FLOAT, FLOAT, FLOAT, INT, INT, INT,
+    STRING, STRING, INT, INT, FLOAT, FLOAT, FLOAT,
+    DOUBLE, DOUBLE, FLOAT, POSITION, LINES, STRING, STRING,
+    STRING, LONG
+  };
+
+  private TleCodec() {
+  }
+
+  static int fieldIndex(String key) {
+    for (int i = 0; i < FIELDS.length; i++) {
+      if (FIELDS[i].equals(key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * growable byte buffer reused between appends, owned by the writer
+   */
+  static final class Encoder {
+
+    private final Value[] present = new Value[FIELDS.length];
+    byte[] bytes = new byte[1 << 16];
+    int length;
+
+    Encoder reset() {
+      this.length = 0;
+      return this;
+    }
+
+    void writeVectors(Value vectorList) {
+      writeVarint(vectorList.length());
+      for (Item vector : vectorList) {
+        writeVector(vector.toValue());
+      }
+    }
+
+    void writeVector(Value vector) {
+      Arrays.fill(this.present, null);
+      long bitmap = 0L;
+      int extras = 0;
+      for (Item item : vector) {
+        if (!(item instanceof Field)) {
+          continue;
+        }
+        final int index = fieldIndex(item.key().stringValue(""));
+        if (index >= 0 && item.toValue().isDefined()) {
+          this.present[index] = item.toValue();
+          bitmap |= 1L << index;
+        } else if (index < 0) {
+          extras += 1;
+        }
+      }
+      writeVarint(bitmap);
+      for (int i = 0; i < FIELDS.length; i++) {
+        final Value value = this.present[i];
+        if (value != null) {
+          writeField(TYPES[i], value);
+        }
+      }
+      writeVarint(extras);
+      if (extras > 0) {
+        for (Item item : vector) {
+          if (item instanceof Field && fieldIndex(item.key().stringValue("")) < 0) {
+            writeString(item.key().stringValue(""));
+            writeExtra(item.toValue());
+          }
+        }
+      }
+    }
+
+    private void writeField(int type, Value value) {
+      switch (type) {
+        case INT:
+        case LONG:
+          writeZigzag(value.longValue(0L));
+          break;
+        case FLOAT:
+          writeInt(Float.floatToRawIntBits(value.floatValue(0.0f)));
+          break;
+        case DOUBLE:
+          writeLong(Double.doubleToRawLongBits(value.doubleValue(0.0)));
+          break;
+        case POSITION:
+          writeLong(Double.doubleToRawLongBits(value.get("x").doubleValue(0.0)));
+          writeLong(Double.doubleToRawLongBits(value.get("y").doubleValue(0.0)));
+          writeLong(Double.doubleToRawLongBits(value.get("z").doubleValue(0.0)));
+          break;
+        case LINES:
+          writeVarint(value.length());
+          for (Item line : value) {
+            writeString(line.stringValue(""));
+          }
+          break;
+        default:
+          writeString(value.stringValue(""));
+      }
+    }
+
+    private void writeExtra(Value value) {
+      if (value instanceof Text) {
+        writeByte(EXTRA_TEXT);
+        writeString(value.stringValue());
+      } else if (value instanceof Num && (double) value.longValue() == value.doubleValue()) {
+        writeByte(EXTRA_LONG);
+        writeZigzag(value.longValue());
+      } else if (value instanceof Num) {
+        writeByte(EXTRA_DOUBLE);
+        writeLong(Double.doubleToRawLongBits(value.doubleValue()));
+      } else {
+        writeByte(EXTRA_RECON);
+        writeString(Recon.toString(value));
+      }
+    }
+
+    private void writeString(String string) {
+      if (!isAscii(string)) {
+        final byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+        writeVarint(utf8.length);
+        ensure(utf8.length);
+        System.arraycopy(utf8, 0, this.bytes, this.length, utf8.length);
+        this.length += utf8.length;
+        return;
+      }
+      // most fields are ASCII and are copied without an intermediate byte array
+      writeVarint(string.length());
+      ensure(string.length());
+      for (int i = 0; i < string.length(); i++) {
+        this.bytes[this.length + i] = (byte) string.charAt(i);
+      }
+      this.length += string.length();
+    }
+
+    private static boolean isAscii(String string) {
+      for (int i = 0; i < string.length(); i++) {
+        if (string.charAt(i) >= 0x80) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void ensure(int count) {
+      if (this.length + count > this.bytes.length) {
+        this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length << 1, this.length + count));
+      }
+    }
+
+    void writeByte(int value) {
+      ensure(1);
+      this.bytes[this.length] = (byte) value;
+      this.length += 1;
+    }
+
+    void writeInt(int value) {
+      writeByte(value >>> 24);
+      writeByte(value >>> 16);
+      writeByte(value >>> 8);
+      writeByte(value);
+    }
+
+    void writeLong(long value) {
+      writeInt((int) (value >>> 32));
+      writeInt((int) value);
+    }
+
+    void writeVarint(long value) {
+      while ((value & ~0x7FL) != 0L) {
+        writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      writeByte((int) value);
+    }
+
+    void writeZigzag(long value) {
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+
+  }
+
+  /**
+   * reads vector lists straight out of a mapped segment, the buffer is
+   * positioned at the start of an entry payload
+   */
+  static final class Decoder {
+
+    private byte[] scratch = new byte[256];
+
+    Value readVectors(ByteBuffer buffer) {
+      final int count = (int) readVarint(buffer);
+      final Record vectors = Record.create(count);
+      for (int i = 0; i < count; i++) {
+        vectors.item(readVector(buffer));
+      }
+      return vectors;
+    }
+
+    Value readVector(ByteBuffer buffer) {
+      final long bitmap = readVarint(buffer);
+      final Record vector = Record.create(Long.bitCount(bitmap));
+      for (int i = 0; i < FIELDS.length; i++) {
+        if ((bitmap & (1L << i)) != 0L) {
+          vector.slot(FIELDS[i], readField(buffer, TYPES[i]));
+        }
+      }
+      final int extras = (int) readVarint(buffer);
+      for (int i = 0; i < extras; i++) {
+        final String key = readString(buffer);
+        vector.slot(key, readExtra(buffer));
+      }
+      return vector;
+    }
+
+    private Value readField(ByteBuffer buffer, int type) {
+      switch (type) {
+        case INT:
+          return Num.from((int) readZigzag(buffer));
+        case LONG:
+          return Num.from(readZigzag(buffer));
+        case FLOAT:
+          return Num.from(buffer.getFloat());
+        case DOUBLE:
+          return Num.from(buffer.getDouble());
+        case POSITION:
+          return Record.create(3)
+              .slot("x", buffer.getDouble())
+              .slot("y", buffer.getDouble())
+              .slot("z", buffer.getDouble());
+        case LINES:
+          final int count = (int) readVarint(buffer);
+          final Record lines = Record.create(count);
+          for (int i = 0; i < count; i++) {
+            lines.item(readString(buffer));
+          }
+          return lines;
+        default:
+          return Text.from(readString(buffer));
+      }
+    }
+
+    private Value readExtra(ByteBuffer buffer) {
+      final int tag = buffer.get();
+      switch (tag) {
+        case EXTRA_TEXT:
+          return Text.from(readString(buffer));
+        case EXTRA_LONG:
+          return Num.from(readZigzag(buffer));
+        case EXTRA_DOUBLE:
+          return Num.from(buffer.getDouble());
+        case EXTRA_RECON:
+          return Recon.parse(readString(buffer));
+        default:
+          throw new IllegalStateException("unknown extra tag " + tag);
+      }
+    }
+
+    private String readString(ByteBuffer buffer) {
+      final int size = (int) readVarint(buffer);
+      if (this.scratch.length < size) {
+        this.scratch = new byte[Math.max(size, this.scratch.length << 1)];
+      }
+      buffer.get(this.scratch, 0, size);
+      return new String(this.scratch, 0, size, StandardCharsets.UTF_8);
+    }
+
+    static long readVarint(ByteBuffer buffer) {
+      long value = 0L;
+      int shift = 0;
+      int b;
+      do {
+        b = buffer.get();
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    static long readZigzag(ByteBuffer buffer) {
+      final long value = readVarint(buffer);
+      return (value >>> 1) ^ -(value & 1L);
+    }
+
+  }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Local append-only journal of TLE vector lists, a broker-less alternative to Kafka.
+ */
+package swim.sattrack.journal;
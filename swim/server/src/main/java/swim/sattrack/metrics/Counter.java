@@ -0,0 +1,40 @@
+package swim.sattrack.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonic count. Backed by a LongAdder so concurrent increments
+ * from consumer threads and agents land in separate cells.
+ */
+public final class Counter {
+
+  private final String name;
+  private final String help;
+  private final LongAdder count = new LongAdder();
+
+  Counter(String name, String help) {
+    this.name = name;
+    this.help = help;
+  }
+
+  public String name() {
+    return this.name;
+  }
+
+  public String help() {
+    return this.help;
+  }
+
+  public void increment() {
+    this.count.increment();
+  }
+
+  public void add(long amount) {
+    this.count.add(amount);
+  }
+
+  public long sum() {
+    return this.count.sum();
+  }
+
+}
@@ -0,0 +1,84 @@
+package swim.sattrack.metrics;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest values of one measurement, one per label set, for example
+ * the consumer lag of each topic partition. A gauge without labels
+ * holds a single value under no label values.
+ */
+public final class Gauge {
+
+  private final String name;
+  private final String help;
+  private final String[] labelNames;
+  private final Map<String, Sample> samples = new ConcurrentHashMap<>();
+
+  Gauge(String name, String help, String... labelNames) {
+    this.name = name;
+    this.help = help;
+    this.labelNames = labelNames;
+  }
+
+  public String name() {
+    return this.name;
+  }
+
+  public String help() {
+    return this.help;
+  }
+
+  /**
+   * set the value for labelValues, given in the order of the label names
+   */
+  public void set(double value, String... labelValues) {
+    final String key = key(labelValues);
+    final Sample sample = this.samples.get(key);
+    if (sample != null) {
+      sample.value = value;
+    } else {
+      this.samples.put(key, new Sample(key, labelValues, value));
+    }
+  }
+
+  public void remove(String... labelValues) {
+    this.samples.remove(key(labelValues));
+  }
+
+  public Collection<Sample> samples() {
+    return this.samples.values();
+  }
+
+  public String[] labelNames() {
+    return this.labelNames;
+  }
+
+  private static String key(String[] labelValues) {
+    return String.join("-", labelValues);
+  }
+
+  public static final class Sample {
+
+    final String key; // label values joined with "-"
+    final String[] labelValues;
+    volatile double value;
+
+    Sample(String key, String[] labelValues, double value) {
+      this.key = key;
+      this.labelValues = labelValues;
+      this.value = value;
+    }
+
+    public String key() {
+      return this.key;
+    }
+
+    public double value() {
+      return this.value;
+    }
+
+  }
+
+}
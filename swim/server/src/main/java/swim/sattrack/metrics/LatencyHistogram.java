@@ -0,0 +1,170 @@
+package swim.sattrack.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram in microseconds with HDR style log-linear
+ * buckets: exact below 64 us, then 32 sub-buckets per power of two, so
+ * any recorded value is within about 3% of its bucket. Recording is an
+ * index computation and two atomic adds, cheap enough for every batch
+ * and every satellite update.
+ *
+ * Counts and sums are cumulative. Quantiles are taken over the values
+ * recorded between two calls to roll(), which the MetricsAgent does
+ * once per publish interval.
+ */
+public final class LatencyHistogram {
+
+  static final int SUB_BUCKET_BITS = 5;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS; // index of Long.MAX_VALUE + 1
+  static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final String name;
+  private final String help;
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+  private long[] rolledBuckets = new long[BUCKETS]; // bucket counts at the last roll, owned by the roller
+  private volatile Snapshot interval = Snapshot.EMPTY;
+
+  LatencyHistogram(String name, String help) {
+    this.name = name;
+    this.help = help;
+  }
+
+  public String name() {
+    return this.name;
+  }
+
+  public String help() {
+    return this.help;
+  }
+
+  public void record(long micros) {
+    if (micros < 0L) {
+      micros = 0L;
+    }
+    this.buckets.incrementAndGet(bucketIndex(micros));
+    this.count.increment();
+    this.sum.add(micros);
+    this.max.accumulate(micros);
+  }
+
+  /**
+   * record the time since a System.nanoTime() start
+   */
+  public void recordNanosSince(long startNanos) {
+    record((System.nanoTime() - startNanos) / 1000L);
+  }
+
+  public long count() {
+    return this.count.sum();
+  }
+
+  public long sumMicros() {
+    return this.sum.sum();
+  }
+
+  public long maxMicros() {
+    return this.max.get();
+  }
+
+  /**
+   * the snapshot of the last interval
+   */
+  public Snapshot interval() {
+    return this.interval;
+  }
+
+  /**
+   * close the current interval and return its snapshot. Values recorded
+   * while rolling land in either interval, never both or neither.
+   * Only one thread may roll a histogram.
+   */
+  public Snapshot roll() {
+    final long[] counts = new long[BUCKETS];
+    long total = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      final long now = this.buckets.get(i);
+      counts[i] = now - this.rolledBuckets[i];
+      this.rolledBuckets[i] = now;
+      total += counts[i];
+    }
+    final long[] values = new long[QUANTILES.length];
+    if (total > 0L) {
+      int q = 0;
+      long seen = 0L;
+      for (int i = 0; i < BUCKETS && q < QUANTILES.length; i++) {
+        seen += counts[i];
+        while (q < QUANTILES.length && seen >= (long) Math.ceil(QUANTILES[q] * total)) {
+          values[q] = bucketValue(i);
+          q += 1;
+        }
+      }
+    }
+    this.interval = new Snapshot(total, values);
+    return this.interval;
+  }
+
+  static int bucketIndex(long value) {
+    if (value < (SUB_BUCKETS << 1)) {
+      return (int) value;
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  /**
+   * the middle of the range of values in a bucket
+   */
+  static long bucketValue(int index) {
+    if (index < (SUB_BUCKETS << 1)) {
+      return index;
+    }
+    final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    final long low = ((long) ((index & (SUB_BUCKETS - 1)) + SUB_BUCKETS)) << shift;
+    return low + ((1L << shift) >>> 1);
+  }
+
+  /**
+   * value count and quantiles in microseconds, in the order of QUANTILES
+   */
+  public static final class Snapshot {
+
+    static final Snapshot EMPTY = new Snapshot(0L, new long[QUANTILES.length]);
+
+    final long count;
+    final long[] quantiles;
+
+    Snapshot(long count, long[] quantiles) {
+      this.count = count;
+      this.quantiles = quantiles;
+    }
+
+    public long count() {
+      return this.count;
+    }
+
+    public long p50() {
+      return this.quantiles[0];
+    }
+
+    public long p90() {
+      return this.quantiles[1];
+    }
+
+    public long p99() {
+      return this.quantiles[2];
+    }
+
+    public long p999() {
+      return this.quantiles[3];
+    }
+
+  }
+
+}
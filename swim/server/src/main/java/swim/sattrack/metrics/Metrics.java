@@ -0,0 +1,120 @@
+package swim.sattrack.metrics;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the process wide counters, gauges and latency histograms.
+ * Instrumented code looks its metrics up once and keeps them in fields,
+ * so the hot path only touches the metric itself. The MetricsAgent
+ * publishes everything registered here on its lanes and in the
+ * Prometheus text format.
+ */
+public final class Metrics {
+
+  private static final Metrics SHARED = new Metrics();
+
+  private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+  private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+  private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+  public static Metrics shared() {
+    return SHARED;
+  }
+
+  /**
+   * the counter called name, registering it on first use
+   */
+  public Counter counter(String name, String help) {
+    return this.counters.computeIfAbsent(name, key -> new Counter(key, help));
+  }
+
+  public Gauge gauge(String name, String help, String... labelNames) {
+    return this.gauges.computeIfAbsent(name, key -> new Gauge(key, help, labelNames));
+  }
+
+  public LatencyHistogram histogram(String name, String help) {
+    return this.histograms.computeIfAbsent(name, key -> new LatencyHistogram(key, help));
+  }
+
+  public Collection<Counter> counters() {
+    return this.counters.values();
+  }
+
+  public Collection<Gauge> gauges() {
+    return this.gauges.values();
+  }
+
+  public Collection<LatencyHistogram> histograms() {
+    return this.histograms.values();
+  }
+
+  /**
+   * Everything in the Prometheus text exposition format. Histograms are
+   * written as summaries in seconds with the quantiles of the last
+   * rolled interval.
+   */
+  public String prometheusText() {
+    final StringBuilder out = new StringBuilder(4096);
+    for (Counter counter : this.counters.values()) {
+      header(out, counter.name(), counter.help(), "counter");
+      out.append(counter.name()).append(' ').append(counter.sum()).append('\n');
+    }
+    for (Gauge gauge : this.gauges.values()) {
+      header(out, gauge.name(), gauge.help(), "gauge");
+      final String[] labelNames = gauge.labelNames();
+      for (Gauge.Sample sample : gauge.samples()) {
+        out.append(gauge.name());
+        if (labelNames.length > 0) {
+          out.append('{');
+          for (int i = 0; i < labelNames.length; i++) {
+            if (i > 0) {
+              out.append(',');
+            }
+            out.append(labelNames[i]).append("=\"");
+            escapeLabel(out, i < sample.labelValues.length ? sample.labelValues[i] : "");
+            out.append('"');
+          }
+          out.append('}');
+        }
+        out.append(' ').append(sample.value()).append('\n');
+      }
+    }
+    for (LatencyHistogram histogram : this.histograms.values()) {
+      final String name = histogram.name();
+      header(out, name, histogram.help(), "summary");
+      final LatencyHistogram.Snapshot interval = histogram.interval();
+      for (int i = 0; i < LatencyHistogram.QUANTILES.length; i++) {
+        out.append(name).append("{quantile=\"").append(LatencyHistogram.QUANTILES[i]).append("\"} ")
+            .append(seconds(interval.quantiles[i])).append('\n');
+      }
+      out.append(name).append("_sum ").append(seconds(histogram.sumMicros())).append('\n');
+      out.append(name).append("_count ").append(histogram.count()).append('\n');
+    }
+    return out.toString();
+  }
+
+  private static void header(StringBuilder out, String name, String help, String type) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void escapeLabel(StringBuilder out, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '\\' || c == '"') {
+        out.append('\\').append(c);
+      } else if (c == '\n') {
+        out.append("\\n");
+      } else {
+        out.append(c);
+      }
+    }
+  }
+
+  private static double seconds(long micros) {
+    return micros / 1000000.0;
+  }
+
+}
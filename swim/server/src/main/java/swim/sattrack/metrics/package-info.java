@@ -0,0 +1,4 @@
+/**
+ * Low overhead ingest metrics, published by the MetricsAgent.
+ */
+package swim.sattrack.metrics;
@@ -0,0 +1,215 @@
+package swim.sattrack.orbit;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import swim.sattrack.util.LongIntMap;
+
+/**
+ * Close approach screening over a set of positions.
+ * Points are binned into a 3D spatial hash with cells as wide as the
+ * threshold, so any pair closer than the threshold is in the same or a
+ * neighbouring cell. Each point is then only checked against the 27
+ * cells around it, in parallel on the common fork/join pool or the
+ * pool it was made with.
+ * Reusable between screens but not thread safe itself.
+ */
+public final class ConjunctionScreen {
+
+  static final int FORK_THRESHOLD = 1024; // points per fork/join leaf
+  private static final long CELL_OFFSET = 1L << 20; // cell coordinates are kept in 21 bits
+  private static final long CELL_MASK = (1L << 21) - 1L;
+
+  private final ForkJoinPool pool;
+  private LongIntMap cellHeads = new LongIntMap(1024, -1);
+  private int[] next = new int[0]; // chain of points in the same cell
+  private long[] cellKeys = new long[0];
+
+  public ConjunctionScreen() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  public ConjunctionScreen(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Screen n points and return every pair closer than threshold km,
+   * closest first and at most maxPairs of them.
+   */
+  public Result screen(double[] x, double[] y, double[] z, int n, double threshold, int maxPairs) {
+    if (this.next.length < n) {
+      this.next = new int[n];
+      this.cellKeys = new long[n];
+    }
+    this.cellHeads.clear();
+    // bin every point, chaining points which share a cell
+    for (int i = 0; i < n; i++) {
+      final long key = cellKey(x[i], y[i], z[i], threshold);
+      this.cellKeys[i] = key;
+      this.next[i] = this.cellHeads.put(key, i);
+    }
+    final Result result = this.pool.invoke(new ScreenTask(x, y, z, 0, n, threshold));
+    result.sortAndTrim(maxPairs);
+    return result;
+  }
+
+  static long cellKey(double x, double y, double z, double cellSize) {
+    return cellKey((long) Math.floor(x / cellSize), (long) Math.floor(y / cellSize), (long) Math.floor(z / cellSize));
+  }
+
+  static long cellKey(long cx, long cy, long cz) {
+    return (((cx + CELL_OFFSET) & CELL_MASK) << 42) | (((cy + CELL_OFFSET) & CELL_MASK) << 21) | ((cz + CELL_OFFSET) & CELL_MASK);
+  }
+
+  final class ScreenTask extends RecursiveTask<Result> {
+
+    final double[] x;
+    final double[] y;
+    final double[] z;
+    final int from;
+    final int to;
+    final double threshold;
+
+    ScreenTask(double[] x, double[] y, double[] z, int from, int to, double threshold) {
+      this.x = x;
+      this.y = y;
+      this.z = z;
+      this.from = from;
+      this.to = to;
+      this.threshold = threshold;
+    }
+
+    @Override
+    protected Result compute() {
+      if (this.to - this.from <= FORK_THRESHOLD) {
+        return screenRange();
+      }
+      final int middle = (this.from + this.to) >>> 1;
+      final ScreenTask left = new ScreenTask(this.x, this.y, this.z, this.from, middle, this.threshold);
+      final ScreenTask right = new ScreenTask(this.x, this.y, this.z, middle, this.to, this.threshold);
+      left.fork();
+      final Result rightResult = right.compute();
+      return left.join().merge(rightResult);
+    }
+
+    /**
+     * each pair is reported once, by its lower index point
+     */
+    private Result screenRange() {
+      final Result result = new Result();
+      final double thresholdSquared = this.threshold * this.threshold;
+      final LongIntMap heads = ConjunctionScreen.this.cellHeads;
+      final int[] chain = ConjunctionScreen.this.next;
+      for (int i = this.from; i < this.to; i++) {
+        final double xi = this.x[i];
+        final double yi = this.y[i];
+        final double zi = this.z[i];
+        final long cx = (long) Math.floor(xi / this.threshold);
+        final long cy = (long) Math.floor(yi / this.threshold);
+        final long cz = (long) Math.floor(zi / this.threshold);
+        for (long dx = -1; dx <= 1; dx++) {
+          for (long dy = -1; dy <= 1; dy++) {
+            for (long dz = -1; dz <= 1; dz++) {
+              int j = heads.get(cellKey(cx + dx, cy + dy, cz + dz));
+              while (j >= 0) {
+                if (j > i) {
+                  final double ddx = this.x[j] - xi;
+                  final double ddy = this.y[j] - yi;
+                  final double ddz = this.z[j] - zi;
+                  final double distanceSquared = ddx * ddx + ddy * ddy + ddz * ddz;
+                  if (distanceSquared < thresholdSquared) {
+                    result.add(i, j, Math.sqrt(distanceSquared));
+                  }
+                }
+                j = chain[j];
+              }
+            }
+          }
+        }
+      }
+      return result;
+    }
+
+  }
+
+  /**
+   * close approach pairs as point indexes into the screened arrays
+   */
+  public static final class Result {
+
+    int size;
+    int[] a = new int[16];
+    int[] b = new int[16];
+    double[] distance = new double[16];
+
+    public int size() {
+      return this.size;
+    }
+
+    public int a(int i) {
+      return this.a[i];
+    }
+
+    public int b(int i) {
+      return this.b[i];
+    }
+
+    public double distance(int i) {
+      return this.distance[i];
+    }
+
+    void add(int pointA, int pointB, double pairDistance) {
+      if (this.size == this.a.length) {
+        final int capacity = this.size << 1;
+        this.a = Arrays.copyOf(this.a, capacity);
+        this.b = Arrays.copyOf(this.b, capacity);
+        this.distance = Arrays.copyOf(this.distance, capacity);
+      }
+      this.a[this.size] = pointA;
+      this.b[this.size] = pointB;
+      this.distance[this.size] = pairDistance;
+      this.size += 1;
+    }
+
+    Result merge(Result other) {
+      for (int i = 0; i < other.size; i++) {
+        add(other.a[i], other.b[i], other.distance[i]);
+      }
+      return this;
+    }
+
+    void sortAndTrim(int maxPairs) {
+      if (this.size == 0) {
+        return;
+      }
+      // sort an index by distance, pairs are few compared to points
+      final long[] order = new long[this.size];
+      for (int i = 0; i < this.size; i++) {
+        // distances are positive so their bits sort like the values
+        order[i] = Double.doubleToLongBits(this.distance[i]);
+      }
+      final Integer[] index = new Integer[this.size];
+      for (int i = 0; i < this.size; i++) {
+        index[i] = i;
+      }
+      Arrays.sort(index, (p, q) -> Long.compare(order[p], order[q]));
+      final int count = Math.min(this.size, maxPairs);
+      final int[] sortedA = new int[count];
+      final int[] sortedB = new int[count];
+      final double[] sortedDistance = new double[count];
+      for (int i = 0; i < count; i++) {
+        sortedA[i] = this.a[index[i]];
+        sortedB[i] = this.b[index[i]];
+        sortedDistance[i] = this.distance[index[i]];
+      }
+      this.a = sortedA;
+      this.b = sortedB;
+      this.distance = sortedDistance;
+      this.size = count;
+    }
+
+  }
+
+}
@@ -0,0 +1,56 @@
+package swim.sattrack.orbit;
+
+/**
+ * Conversion from TEME/ECI coordinates to WGS-84 geodetic latitude,
+ * longitude and height. Same iteration as eciToGeodetic in satellite.js.
+ * Also the reverse for ground observers, as earth fixed coordinates.
+ */
+public final class Geodetic {
+
+  static final double A = 6378.137; // equatorial radius km
+  static final double B = 6356.7523142; // polar radius km
+  static final double F = (A - B) / A;
+  static final double E2 = 2.0 * F - F * F;
+
+  private Geodetic() {
+    // static only
+  }
+
+  /**
+   * write latitude and longitude in degrees and height in km to out[offset..offset + 2]
+   */
+  public static void fromEci(double x, double y, double z, double gmst, double[] out, int offset) {
+    final double r = Math.sqrt(x * x + y * y);
+    double longitude = Math.atan2(y, x) - gmst;
+    while (longitude < -Math.PI) {
+      longitude += Sgp4.TWO_PI;
+    }
+    while (longitude > Math.PI) {
+      longitude -= Sgp4.TWO_PI;
+    }
+    double latitude = Math.atan2(z, r);
+    double c = 1.0;
+    for (int k = 0; k < 20; k++) {
+      final double sinLat = Math.sin(latitude);
+      c = 1.0 / Math.sqrt(1.0 - E2 * sinLat * sinLat);
+      latitude = Math.atan2(z + A * c * E2 * sinLat, r);
+    }
+    out[offset] = Math.toDegrees(latitude);
+    out[offset + 1] = Math.toDegrees(longitude);
+    out[offset + 2] = r / Math.cos(latitude) - A * c;
+  }
+
+  /**
+   * write the earth fixed x, y, z in km of a geodetic position to out[offset..offset + 2]
+   */
+  public static void toEcef(double latitude, double longitude, double height, double[] out, int offset) {
+    final double lat = Math.toRadians(latitude);
+    final double lng = Math.toRadians(longitude);
+    final double sinLat = Math.sin(lat);
+    final double c = A / Math.sqrt(1.0 - E2 * sinLat * sinLat);
+    out[offset] = (c + height) * Math.cos(lat) * Math.cos(lng);
+    out[offset + 1] = (c + height) * Math.cos(lat) * Math.sin(lng);
+    out[offset + 2] = (c * (1.0 - E2) + height) * sinLat;
+  }
+
+}
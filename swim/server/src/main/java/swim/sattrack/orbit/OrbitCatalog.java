@@ -0,0 +1,344 @@
+package swim.sattrack.orbit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import swim.sattrack.util.IntIntMap;
+
+/**
+ * Orbital elements for the whole catalog in structure of arrays form.
+ * Satellite agents submit and remove element sets from any thread, the
+ * tick applies them and then propagates every slot in parallel on the
+ * common fork/join pool. The slot of a removed satellite is reused by
+ * the next new one. Only one thread may call tick() at a time, which
+ * the PropagatorAgent guarantees by ticking from its own timer.
+ * Readers pin the last finished tick with acquireFrame() until they
+ * releaseFrame() it, a tick only writes into frames nobody holds.
+ */
+public final class OrbitCatalog {
+
+  static final int FORK_THRESHOLD = 256; // slots per fork/join leaf
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private static final OrbitCatalog SHARED = new OrbitCatalog(INITIAL_CAPACITY);
+
+  public static OrbitCatalog shared() {
+    return SHARED;
+  }
+
+  private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+
+  // everything below is owned by the ticking thread
+  private final IntIntMap slots;
+  private int size;
+  private int capacity;
+  private int[] catalogNumbers; // -1 for free slots
+  private OrbitHandle[] handles;
+  private int[] freeSlots;
+  private int freeCount;
+  private boolean[] active;
+  private int[] failure; // Sgp4 error code of inactive slots
+  private double[][] near;
+  private int[] deepRow; // -1 for near earth orbits
+  private int[] deepRowOf; // deep space row ever allocated to a slot
+  private double[][] deep;
+  private int deepCount;
+  private final List<OrbitFrame> frames = new ArrayList<>(); // every frame, the front one included
+  private long tickCount;
+
+  private volatile OrbitFrame front;
+
+  public OrbitCatalog(int initialCapacity) {
+    this.capacity = Math.max(16, initialCapacity);
+    this.slots = new IntIntMap(this.capacity, -1);
+    this.catalogNumbers = new int[this.capacity];
+    this.handles = new OrbitHandle[this.capacity];
+    this.freeSlots = new int[16];
+    this.active = new boolean[this.capacity];
+    this.failure = new int[this.capacity];
+    this.near = new double[Sgp4.NEAR_FIELDS][this.capacity];
+    this.deepRow = new int[this.capacity];
+    this.deepRowOf = new int[this.capacity];
+    Arrays.fill(this.deepRowOf, -1);
+    this.deep = new double[Sgp4.DEEP_FIELDS][16];
+    this.front = new OrbitFrame(this.capacity);
+    this.frames.add(this.front);
+  }
+
+  /**
+   * queue a new element set for a satellite, applied on the next tick.
+   * Throws IllegalArgumentException or NumberFormatException for a bad TLE.
+   */
+  public void submit(OrbitHandle handle, String line1, String line2) {
+    this.pending.add(new Pending(handle, handle.catalogNumber, Sgp4.elements(line1, line2)));
+  }
+
+  /**
+   * stop propagating a satellite, for one which decayed or whose agent
+   * passivated. Its slot is freed on the next tick and the handle is
+   * released until its next submit.
+   */
+  public void remove(OrbitHandle handle) {
+    handle.released = true;
+    this.pending.add(new Pending(handle, handle.catalogNumber, null));
+  }
+
+  /**
+   * remove a satellite by catalog number, for callers without its handle
+   */
+  public void remove(int catalogNumber) {
+    this.pending.add(new Pending(null, catalogNumber, null));
+  }
+
+  /**
+   * the most recent finished tick, pinned so no tick writes into it
+   * until it is given back to releaseFrame
+   */
+  public OrbitFrame acquireFrame() {
+    while (true) {
+      final OrbitFrame frame = this.front;
+      frame.readers.incrementAndGet();
+      if (frame == this.front) {
+        // still the front after pinning, so the tick choosing its next frame sees the pin
+        return frame;
+      }
+      frame.readers.decrementAndGet();
+    }
+  }
+
+  public void releaseFrame(OrbitFrame frame) {
+    frame.readers.decrementAndGet();
+  }
+
+  /**
+   * apply queued element sets, propagate every slot to timeMillis
+   * and publish the result as the new frame
+   */
+  public OrbitFrame tick(long timeMillis) {
+    applyPending();
+    final OrbitFrame frame = freeFrame();
+    final double jd = Sgp4.julianDate(timeMillis);
+    if (this.size > 0) {
+      ForkJoinPool.commonPool().invoke(new PropagateTask(frame, 0, this.size, jd, Sgp4.gmst(jd)));
+    }
+    System.arraycopy(this.catalogNumbers, 0, frame.catalogNumbers, 0, this.size);
+    this.tickCount += 1;
+    frame.size = this.size;
+    frame.tick = this.tickCount;
+    frame.timeMillis = timeMillis;
+    this.front = frame;
+    return frame;
+  }
+
+  /**
+   * satellites in the catalog
+   */
+  public int size() {
+    return this.size - this.freeCount;
+  }
+
+  public int deepSpaceCount() {
+    return this.deepCount;
+  }
+
+  /**
+   * a frame for the next tick: the newest one no reader holds, or a new
+   * one when they are all pinned. The front frame is never reused, a
+   * reader may be about to pin it.
+   */
+  private OrbitFrame freeFrame() {
+    final OrbitFrame current = this.front;
+    for (int i = this.frames.size() - 1; i >= 0; i--) {
+      final OrbitFrame frame = this.frames.get(i);
+      if (frame != current && frame.readers.get() == 0) {
+        if (frame.capacity() >= this.capacity) {
+          return frame;
+        }
+        // too small since the catalog grew
+        this.frames.remove(i);
+      }
+    }
+    final OrbitFrame frame = new OrbitFrame(this.capacity);
+    this.frames.add(frame);
+    return frame;
+  }
+
+  private void applyPending() {
+    Pending next;
+    while ((next = this.pending.poll()) != null) {
+      final int catalogNumber = next.catalogNumber;
+      if (next.elements == null) {
+        release(catalogNumber);
+        continue;
+      }
+      int slot = this.slots.get(catalogNumber);
+      if (slot < 0) {
+        if (this.freeCount > 0) {
+          this.freeCount -= 1;
+          slot = this.freeSlots[this.freeCount];
+        } else {
+          if (this.size == this.capacity) {
+            grow(this.capacity << 1);
+          }
+          slot = this.size;
+          this.size += 1;
+        }
+        this.slots.put(catalogNumber, slot);
+        this.catalogNumbers[slot] = catalogNumber;
+      }
+      this.handles[slot] = next.handle;
+      int row = -1;
+      if (Sgp4.isDeepSpace(next.elements)) {
+        row = this.deepRowOf[slot];
+        if (row < 0) {
+          if (this.deepCount == this.deep[0].length) {
+            growDeep(this.deepCount << 1);
+          }
+          row = this.deepCount;
+          this.deepCount += 1;
+          this.deepRowOf[slot] = row;
+        }
+      }
+      this.deepRow[slot] = row;
+      final int result = Sgp4.initialize(next.elements, this.near, slot, this.deep, row);
+      this.active[slot] = result == Sgp4.OK;
+      this.failure[slot] = result;
+      if (result != Sgp4.OK) {
+        System.out.println(String.format("[OrbitCatalog] unable to initialize %d error %d", catalogNumber, result));
+      }
+      next.handle.slot = slot;
+      next.handle.released = false;
+    }
+  }
+
+  /**
+   * free the slot of a removed satellite, it reports NO_DATA until reused
+   */
+  private void release(int catalogNumber) {
+    final int slot = this.slots.remove(catalogNumber);
+    if (slot < 0) {
+      return;
+    }
+    final OrbitHandle handle = this.handles[slot];
+    if (handle != null) {
+      handle.released = true;
+      handle.slot = -1;
+    }
+    this.handles[slot] = null;
+    this.catalogNumbers[slot] = -1;
+    this.active[slot] = false;
+    this.failure[slot] = OrbitFrame.NO_DATA;
+    if (this.freeCount == this.freeSlots.length) {
+      this.freeSlots = Arrays.copyOf(this.freeSlots, this.freeCount << 1);
+    }
+    this.freeSlots[this.freeCount] = slot;
+    this.freeCount += 1;
+  }
+
+  private void grow(int newCapacity) {
+    this.catalogNumbers = Arrays.copyOf(this.catalogNumbers, newCapacity);
+    this.handles = Arrays.copyOf(this.handles, newCapacity);
+    this.active = Arrays.copyOf(this.active, newCapacity);
+    this.failure = Arrays.copyOf(this.failure, newCapacity);
+    this.deepRow = Arrays.copyOf(this.deepRow, newCapacity);
+    final int oldCapacity = this.deepRowOf.length;
+    this.deepRowOf = Arrays.copyOf(this.deepRowOf, newCapacity);
+    Arrays.fill(this.deepRowOf, oldCapacity, newCapacity, -1);
+    for (int i = 0; i < this.near.length; i++) {
+      this.near[i] = Arrays.copyOf(this.near[i], newCapacity);
+    }
+    this.capacity = newCapacity;
+  }
+
+  private void growDeep(int newCapacity) {
+    for (int i = 0; i < this.deep.length; i++) {
+      this.deep[i] = Arrays.copyOf(this.deep[i], newCapacity);
+    }
+  }
+
+  /**
+   * propagate a range of slots, splitting until the range is small enough
+   */
+  final class PropagateTask extends RecursiveAction {
+
+    final OrbitFrame frame;
+    final int from;
+    final int to;
+    final double jd;
+    final double gmst;
+
+    PropagateTask(OrbitFrame frame, int from, int to, double jd, double gmst) {
+      this.frame = frame;
+      this.from = from;
+      this.to = to;
+      this.jd = jd;
+      this.gmst = gmst;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from <= FORK_THRESHOLD) {
+        propagateRange();
+      } else {
+        final int middle = (this.from + this.to) >>> 1;
+        invokeAll(new PropagateTask(this.frame, this.from, middle, this.jd, this.gmst),
+            new PropagateTask(this.frame, middle, this.to, this.jd, this.gmst));
+      }
+    }
+
+    private void propagateRange() {
+      final double[][] near = OrbitCatalog.this.near;
+      final double[][] deep = OrbitCatalog.this.deep;
+      final int[] deepRow = OrbitCatalog.this.deepRow;
+      final boolean[] active = OrbitCatalog.this.active;
+      final int[] failure = OrbitCatalog.this.failure;
+      final double[] epoch = near[Sgp4.EPOCH_JD];
+      final double[] state = this.frame.state;
+      final int[] status = this.frame.status;
+      final double[] rv = new double[6];
+      for (int slot = this.from; slot < this.to; slot++) {
+        if (!active[slot]) {
+          status[slot] = failure[slot];
+          continue;
+        }
+        final double tsince = (this.jd - epoch[slot]) * Sgp4.MINUTES_PER_DAY;
+        final int result = Sgp4.propagate(near, slot, deep, deepRow[slot], tsince, rv);
+        status[slot] = result;
+        if (result == Sgp4.OK) {
+          final int offset = slot * OrbitFrame.STRIDE;
+          state[offset + OrbitFrame.X] = rv[0];
+          state[offset + OrbitFrame.Y] = rv[1];
+          state[offset + OrbitFrame.Z] = rv[2];
+          Geodetic.fromEci(rv[0], rv[1], rv[2], this.gmst, state, offset + OrbitFrame.LATITUDE);
+        } else {
+          // decayed or bad elements stay off until a new element set arrives
+          active[slot] = false;
+          failure[slot] = result;
+        }
+      }
+    }
+
+  }
+
+  /**
+   * an element set to apply, or a removal when elements is null
+   */
+  static final class Pending {
+
+    final OrbitHandle handle;
+    final int catalogNumber;
+    final double[] elements;
+
+    Pending(OrbitHandle handle, int catalogNumber, double[] elements) {
+      this.handle = handle;
+      this.catalogNumber = catalogNumber;
+      this.elements = elements;
+    }
+
+  }
+
+}
@@ -0,0 +1,72 @@
+package swim.sattrack.orbit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The result of one propagation tick for every slot in the catalog.
+ * Positions are packed STRIDE doubles per slot: TEME x, y, z in km
+ * followed by latitude, longitude (degrees) and height (km).
+ * The catalog reuses frames once no reader holds them, so take one
+ * with OrbitCatalog.acquireFrame and hand it back with releaseFrame.
+ */
+public final class OrbitFrame {
+
+  public static final int X = 0;
+  public static final int Y = 1;
+  public static final int Z = 2;
+  public static final int LATITUDE = 3;
+  public static final int LONGITUDE = 4;
+  public static final int HEIGHT = 5;
+  public static final int STRIDE = 6;
+
+  public static final int NO_DATA = -1; // slot has no valid element set
+
+  final double[] state;
+  final int[] status;
+  final int[] catalogNumbers;
+  final AtomicInteger readers = new AtomicInteger(); // acquired and not released yet
+  int size;
+  long tick;
+  long timeMillis;
+
+  OrbitFrame(int capacity) {
+    this.state = new double[capacity * STRIDE];
+    this.status = new int[capacity];
+    this.catalogNumbers = new int[capacity];
+  }
+
+  int capacity() {
+    return this.status.length;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public long tick() {
+    return this.tick;
+  }
+
+  public long timeMillis() {
+    return this.timeMillis;
+  }
+
+  /**
+   * Sgp4.OK when the slot holds a position for this tick
+   */
+  public int status(int slot) {
+    return slot >= 0 && slot < this.size ? this.status[slot] : NO_DATA;
+  }
+
+  /**
+   * the satellite in a slot, -1 for a slot which is free in this tick
+   */
+  public int catalogNumber(int slot) {
+    return slot >= 0 && slot < this.size ? this.catalogNumbers[slot] : -1;
+  }
+
+  public double get(int slot, int field) {
+    return this.state[slot * STRIDE + field];
+  }
+
+}
@@ -0,0 +1,36 @@
+package swim.sattrack.orbit;
+
+/**
+ * A satellite's place in the OrbitCatalog.
+ * The slot is assigned by the propagation tick once the first
+ * element set has been applied, until then it is -1, and goes back to
+ * -1 once the satellite is removed. A removed handle is released until
+ * its next submit.
+ */
+public final class OrbitHandle {
+
+  final int catalogNumber;
+  volatile int slot = -1;
+  volatile boolean released;
+
+  public OrbitHandle(int catalogNumber) {
+    this.catalogNumber = catalogNumber;
+  }
+
+  public int catalogNumber() {
+    return this.catalogNumber;
+  }
+
+  public int slot() {
+    return this.slot;
+  }
+
+  /**
+   * true once removed from the catalog, the satellite has to submit its
+   * elements again to be propagated
+   */
+  public boolean isReleased() {
+    return this.released;
+  }
+
+}
@@ -0,0 +1,509 @@
+package swim.sattrack.orbit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rise, culmination and set prediction for ground stations over the
+ * whole catalog. Element sets are registered by the SatelliteAgents as
+ * their TLE changes. Passes are cached per station and satellite and
+ * reused until the satellite's TLE changes or the cached window no
+ * longer covers the requested horizon, so every agent watching the same
+ * station shares one computation. Safe to use from any thread.
+ */
+public final class PassPredictor {
+
+  static final int FORK_THRESHOLD = 64; // satellites per fork/join leaf
+  private static final long REFINE_MILLIS = 1000L; // rise/set/culmination precision
+  private static final double EARTH_ROTATION_RATE = Sgp4.TWO_PI / 1436.07; // radians per minute
+  private static final long STATION_IDLE_MILLIS = 3600000L; // drop caches of stations nobody asked for in an hour
+
+  private static final PassPredictor SHARED = new PassPredictor();
+
+  public static PassPredictor shared() {
+    return SHARED;
+  }
+
+  private final ConcurrentHashMap<Integer, Orbit> orbits = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Station, StationCache> stations = new ConcurrentHashMap<>();
+
+  /**
+   * register the current TLE for a satellite. Cached passes are only
+   * dropped when the lines actually differ from the last ones.
+   * Throws IllegalArgumentException or NumberFormatException for a bad TLE.
+   */
+  public void update(int catalogNumber, String line1, String line2) {
+    final Orbit current = this.orbits.get(catalogNumber);
+    if (current == null || !current.line1.equals(line1) || !current.line2.equals(line2)) {
+      this.orbits.put(catalogNumber, new Orbit(catalogNumber, line1, line2));
+    }
+  }
+
+  public void remove(int catalogNumber) {
+    this.orbits.remove(catalogNumber);
+    for (StationCache cache : this.stations.values()) {
+      cache.passes.remove(catalogNumber);
+    }
+  }
+
+  public int size() {
+    return this.orbits.size();
+  }
+
+  /**
+   * every pass over station which has not set by fromMillis and rises
+   * before fromMillis + horizonMillis, ordered by rise time.
+   * stepMillis is the coarse search step, passes shorter than it may be missed.
+   */
+  public Prediction predict(Station station, long fromMillis, long horizonMillis, long stepMillis) {
+    final long now = System.currentTimeMillis();
+    StationCache cache = this.stations.computeIfAbsent(station, StationCache::new);
+    cache.lastUsed = now;
+    this.stations.values().removeIf(idle -> now - idle.lastUsed > STATION_IDLE_MILLIS);
+
+    final Orbit[] snapshot = this.orbits.values().toArray(new Orbit[0]);
+    final Pass[][] results = new Pass[snapshot.length][];
+    final Prediction prediction = new Prediction();
+    if (snapshot.length > 0) {
+      ForkJoinPool.commonPool().invoke(new PredictTask(cache, snapshot, results, 0, snapshot.length,
+          fromMillis, horizonMillis, Math.max(REFINE_MILLIS, stepMillis), prediction));
+    }
+    final long toMillis = fromMillis + horizonMillis;
+    for (Pass[] passes : results) {
+      for (Pass pass : passes) {
+        if (pass.set >= fromMillis && pass.rise < toMillis) {
+          prediction.passes.add(pass);
+        }
+      }
+    }
+    Collections.sort(prediction.passes, Comparator.comparingLong(Pass::rise));
+    return prediction;
+  }
+
+  /**
+   * passes of one satellite over a station between fromMillis and toMillis
+   */
+  static Pass[] computePasses(Orbit orbit, Station station, long fromMillis, long toMillis, long stepMillis) {
+    if (!orbit.valid) {
+      return new Pass[0];
+    }
+    final Sampler sampler = new Sampler(orbit, station);
+    final List<Pass> passes = new ArrayList<>();
+    long previous = fromMillis;
+    double previousElevation = sampler.elevation(fromMillis);
+    double previousAngle = sampler.centralAngle;
+    long rise = previousElevation >= station.minElevation ? fromMillis : Long.MIN_VALUE;
+    long peak = fromMillis;
+    double peakElevation = previousElevation;
+    long t = fromMillis;
+    while (t <= toMillis && !Double.isNaN(previousElevation)) {
+      // while the satellite is far below the horizon jump straight to the earliest time it could rise
+      t = rise == Long.MIN_VALUE ? previous + Math.max(stepMillis, sampler.minTimeToRise(previousAngle)) : previous + stepMillis;
+      final double elevation = sampler.elevation(t);
+      final double angle = sampler.centralAngle;
+      if (Double.isNaN(elevation)) {
+        break;
+      }
+      final boolean wasUp = previousElevation >= station.minElevation;
+      final boolean isUp = elevation >= station.minElevation;
+      if (!wasUp && isUp) {
+        rise = sampler.crossing(previous, t, true);
+        peak = t;
+        peakElevation = elevation;
+      } else if (wasUp && isUp && elevation > peakElevation) {
+        peak = t;
+        peakElevation = elevation;
+      } else if (wasUp && !isUp && rise != Long.MIN_VALUE) {
+        final long set = sampler.crossing(previous, t, false);
+        passes.add(sampler.pass(rise, set, peak, stepMillis));
+        rise = Long.MIN_VALUE;
+      }
+      previous = t;
+      previousElevation = elevation;
+      previousAngle = angle;
+    }
+    if (rise != Long.MIN_VALUE && !Double.isNaN(previousElevation)) {
+      // still up at the end of the window
+      passes.add(sampler.pass(rise, previous, peak, stepMillis));
+    }
+    return passes.toArray(new Pass[passes.size()]);
+  }
+
+  final class PredictTask extends RecursiveAction {
+
+    final StationCache cache;
+    final Orbit[] orbits;
+    final Pass[][] results;
+    final int from;
+    final int to;
+    final long fromMillis;
+    final long horizonMillis;
+    final long stepMillis;
+    final Prediction prediction;
+
+    PredictTask(StationCache cache, Orbit[] orbits, Pass[][] results, int from, int to,
+                long fromMillis, long horizonMillis, long stepMillis, Prediction prediction) {
+      this.cache = cache;
+      this.orbits = orbits;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+      this.fromMillis = fromMillis;
+      this.horizonMillis = horizonMillis;
+      this.stepMillis = stepMillis;
+      this.prediction = prediction;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from <= FORK_THRESHOLD) {
+        predictRange();
+      } else {
+        final int middle = (this.from + this.to) >>> 1;
+        invokeAll(new PredictTask(this.cache, this.orbits, this.results, this.from, middle,
+                this.fromMillis, this.horizonMillis, this.stepMillis, this.prediction),
+            new PredictTask(this.cache, this.orbits, this.results, middle, this.to,
+                this.fromMillis, this.horizonMillis, this.stepMillis, this.prediction));
+      }
+    }
+
+    private void predictRange() {
+      final long toMillis = this.fromMillis + this.horizonMillis;
+      int computed = 0;
+      for (int i = this.from; i < this.to; i++) {
+        final Orbit orbit = this.orbits[i];
+        CachedPasses cached = this.cache.passes.get(orbit.catalogNumber);
+        if (cached == null || cached.orbit != orbit || cached.fromMillis > this.fromMillis || cached.toMillis < toMillis) {
+          // compute half a horizon ahead so the next few refreshes are served from the cache
+          final long cacheTo = toMillis + this.horizonMillis / 2;
+          cached = new CachedPasses(orbit, this.fromMillis, cacheTo,
+              computePasses(orbit, this.cache.station, this.fromMillis, cacheTo, this.stepMillis));
+          this.cache.passes.put(orbit.catalogNumber, cached);
+          computed += 1;
+        }
+        this.results[i] = cached.passes;
+      }
+      this.prediction.computed.addAndGet(computed);
+      this.prediction.cached.addAndGet(this.to - this.from - computed);
+    }
+
+  }
+
+  /**
+   * ground observer, equal stations share cached passes
+   */
+  public static final class Station {
+
+    final double latitude;
+    final double longitude;
+    final double height;
+    final double minElevation;
+    final double[] ecef = new double[3];
+    final double sinLat;
+    final double cosLat;
+
+    /**
+     * latitude, longitude and minElevation in degrees, height in km
+     */
+    public Station(double latitude, double longitude, double height, double minElevation) {
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.height = height;
+      this.minElevation = minElevation;
+      Geodetic.toEcef(latitude, longitude, height, this.ecef, 0);
+      this.sinLat = Math.sin(Math.toRadians(latitude));
+      this.cosLat = Math.cos(Math.toRadians(latitude));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      } else if (!(other instanceof Station)) {
+        return false;
+      }
+      final Station that = (Station) other;
+      return this.latitude == that.latitude && this.longitude == that.longitude
+          && this.height == that.height && this.minElevation == that.minElevation;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = Double.hashCode(this.latitude);
+      hash = 31 * hash + Double.hashCode(this.longitude);
+      hash = 31 * hash + Double.hashCode(this.height);
+      return 31 * hash + Double.hashCode(this.minElevation);
+    }
+
+  }
+
+  /**
+   * one pass, times in epoch ms and angles in degrees
+   */
+  public static final class Pass {
+
+    final int catalogNumber;
+    final long rise;
+    final long culmination;
+    final long set;
+    final double maxElevation;
+    final double riseAzimuth;
+    final double setAzimuth;
+
+    Pass(int catalogNumber, long rise, long culmination, long set,
+         double maxElevation, double riseAzimuth, double setAzimuth) {
+      this.catalogNumber = catalogNumber;
+      this.rise = rise;
+      this.culmination = culmination;
+      this.set = set;
+      this.maxElevation = maxElevation;
+      this.riseAzimuth = riseAzimuth;
+      this.setAzimuth = setAzimuth;
+    }
+
+    public int catalogNumber() {
+      return this.catalogNumber;
+    }
+
+    public long rise() {
+      return this.rise;
+    }
+
+    public long culmination() {
+      return this.culmination;
+    }
+
+    public long set() {
+      return this.set;
+    }
+
+    public double maxElevation() {
+      return this.maxElevation;
+    }
+
+    public double riseAzimuth() {
+      return this.riseAzimuth;
+    }
+
+    public double setAzimuth() {
+      return this.setAzimuth;
+    }
+
+  }
+
+  /**
+   * passes ordered by rise, and how many satellites were recomputed or served from the cache
+   */
+  public static final class Prediction {
+
+    final List<Pass> passes = new ArrayList<>();
+    final AtomicInteger computed = new AtomicInteger();
+    final AtomicInteger cached = new AtomicInteger();
+
+    public List<Pass> passes() {
+      return this.passes;
+    }
+
+    public int computed() {
+      return this.computed.get();
+    }
+
+    public int cached() {
+      return this.cached.get();
+    }
+
+  }
+
+  /**
+   * one satellite's element set initialized for sgp4
+   */
+  static final class Orbit {
+
+    final int catalogNumber;
+    final String line1;
+    final String line2;
+    final double[][] near = new double[Sgp4.NEAR_FIELDS][1];
+    final double[][] deep; // null for near earth orbits
+    final boolean valid;
+    final double apogeeRadius; // km
+    final double maxAngularRate; // radians per ms, an upper bound on how fast the ground track moves
+
+    Orbit(int catalogNumber, String line1, String line2) {
+      this.catalogNumber = catalogNumber;
+      this.line1 = line1;
+      this.line2 = line2;
+      final double[] elements = Sgp4.elements(line1, line2);
+      this.deep = Sgp4.isDeepSpace(elements) ? new double[Sgp4.DEEP_FIELDS][1] : null;
+      this.valid = Sgp4.initialize(elements, this.near, 0, this.deep, this.deep != null ? 0 : -1) == Sgp4.OK;
+      final double no = this.near[Sgp4.NO][0]; // radians per minute
+      final double ecco = Math.min(this.near[Sgp4.ECCO][0], 0.999);
+      final double semiMajorAxis = Math.pow(Sgp4.XKE / no, 2.0 / 3.0) * Sgp4.RADIUS_EARTH_KM;
+      this.apogeeRadius = semiMajorAxis * (1.0 + ecco);
+      // mean motion scaled up to the angular rate at perigee, plus the earth turning underneath
+      final double perigeeRate = no * (1.0 + ecco) * (1.0 + ecco) / Math.pow(1.0 - ecco * ecco, 1.5);
+      this.maxAngularRate = (perigeeRate + EARTH_ROTATION_RATE) / 60000.0;
+    }
+
+    /**
+     * propagate updates the deep space integrator, so each computation gets its own row
+     */
+    double[][] copyDeep() {
+      if (this.deep == null) {
+        return null;
+      }
+      final double[][] copy = new double[Sgp4.DEEP_FIELDS][];
+      for (int i = 0; i < copy.length; i++) {
+        copy[i] = this.deep[i].clone();
+      }
+      return copy;
+    }
+
+  }
+
+  /**
+   * look angles of one satellite from one station
+   */
+  static final class Sampler {
+
+    final Orbit orbit;
+    final Station station;
+    final double[][] deep;
+    final double[] rv = new double[6];
+    final double maxVisibleAngle; // widest earth central angle from the station at which the satellite can be seen
+    double azimuth; // of the last sample
+    double centralAngle; // of the last sample
+
+    Sampler(Orbit orbit, Station station) {
+      this.orbit = orbit;
+      this.station = station;
+      this.deep = orbit.copyDeep();
+      final double stationRadius = Math.sqrt(station.ecef[0] * station.ecef[0]
+          + station.ecef[1] * station.ecef[1] + station.ecef[2] * station.ecef[2]);
+      final double minElevation = Math.toRadians(Math.max(0.0, station.minElevation));
+      final double ratio = Math.min(1.0, stationRadius * Math.cos(minElevation) / orbit.apogeeRadius);
+      this.maxVisibleAngle = Math.acos(ratio) - minElevation;
+    }
+
+    /**
+     * ms until the satellite could possibly be above minElevation,
+     * from a sample at centralAngle radians away from the station
+     */
+    long minTimeToRise(double centralAngle) {
+      final double angle = centralAngle - this.maxVisibleAngle;
+      return angle > 0.0 ? (long) (angle / this.orbit.maxAngularRate) : 0L;
+    }
+
+    /**
+     * elevation in degrees at timeMillis, also sets azimuth. NaN once the orbit fails.
+     */
+    double elevation(long timeMillis) {
+      final double jd = Sgp4.julianDate(timeMillis);
+      final double tsince = (jd - this.orbit.near[Sgp4.EPOCH_JD][0]) * Sgp4.MINUTES_PER_DAY;
+      if (Sgp4.propagate(this.orbit.near, 0, this.deep, this.deep != null ? 0 : -1, tsince, this.rv) != Sgp4.OK) {
+        return Double.NaN;
+      }
+      // rotate the observer into the inertial frame
+      final double gmst = Sgp4.gmst(jd);
+      final double cosT = Math.cos(gmst);
+      final double sinT = Math.sin(gmst);
+      final double[] ecef = this.station.ecef;
+      final double ox = ecef[0] * cosT - ecef[1] * sinT;
+      final double oy = ecef[0] * sinT + ecef[1] * cosT;
+      final double oz = ecef[2];
+      final double rx = this.rv[0] - ox;
+      final double ry = this.rv[1] - oy;
+      final double rz = this.rv[2] - oz;
+      final double dot = this.rv[0] * ox + this.rv[1] * oy + this.rv[2] * oz;
+      final double norms = Math.sqrt((this.rv[0] * this.rv[0] + this.rv[1] * this.rv[1] + this.rv[2] * this.rv[2])
+          * (ox * ox + oy * oy + oz * oz));
+      this.centralAngle = Math.acos(Math.max(-1.0, Math.min(1.0, dot / norms)));
+      // topocentric south, east, zenith
+      final double theta = gmst + Math.toRadians(this.station.longitude);
+      final double cosTheta = Math.cos(theta);
+      final double sinTheta = Math.sin(theta);
+      final double south = this.station.sinLat * cosTheta * rx + this.station.sinLat * sinTheta * ry - this.station.cosLat * rz;
+      final double east = -sinTheta * rx + cosTheta * ry;
+      final double zenith = this.station.cosLat * cosTheta * rx + this.station.cosLat * sinTheta * ry + this.station.sinLat * rz;
+      final double range = Math.sqrt(south * south + east * east + zenith * zenith);
+      double az = Math.toDegrees(Math.atan2(east, -south));
+      this.azimuth = az < 0.0 ? az + 360.0 : az;
+      return Math.toDegrees(Math.asin(zenith / range));
+    }
+
+    /**
+     * bisect the time the satellite crosses minElevation between two samples
+     */
+    long crossing(long from, long to, boolean rising) {
+      while (to - from > REFINE_MILLIS) {
+        final long middle = from + ((to - from) >>> 1);
+        final double elevation = elevation(middle);
+        if ((elevation >= this.station.minElevation) == rising) {
+          to = middle;
+        } else {
+          from = middle;
+        }
+      }
+      return rising ? to : from;
+    }
+
+    /**
+     * refine the culmination around the best coarse sample and build the pass
+     */
+    Pass pass(long rise, long set, long peak, long stepMillis) {
+      long from = Math.max(rise, peak - stepMillis);
+      long to = Math.min(set, peak + stepMillis);
+      while (to - from > REFINE_MILLIS) {
+        final long left = from + (to - from) / 3;
+        final long right = to - (to - from) / 3;
+        if (elevation(left) < elevation(right)) {
+          from = left;
+        } else {
+          to = right;
+        }
+      }
+      final long culmination = from + ((to - from) >>> 1);
+      final double maxElevation = elevation(culmination);
+      elevation(rise);
+      final double riseAzimuth = this.azimuth;
+      elevation(set);
+      final double setAzimuth = this.azimuth;
+      return new Pass(this.orbit.catalogNumber, rise, culmination, set, maxElevation, riseAzimuth, setAzimuth);
+    }
+
+  }
+
+  static final class CachedPasses {
+
+    final Orbit orbit;
+    final long fromMillis;
+    final long toMillis;
+    final Pass[] passes;
+
+    CachedPasses(Orbit orbit, long fromMillis, long toMillis, Pass[] passes) {
+      this.orbit = orbit;
+      this.fromMillis = fromMillis;
+      this.toMillis = toMillis;
+      this.passes = passes;
+    }
+
+  }
+
+  static final class StationCache {
+
+    final Station station;
+    final ConcurrentHashMap<Integer, CachedPasses> passes = new ConcurrentHashMap<>();
+    volatile long lastUsed;
+
+    StationCache(Station station) {
+      this.station = station;
+    }
+
+  }
+
+}
@@ -0,0 +1,279 @@
+package swim.sattrack.orbit;
+
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding of the propagated positions of the whole
+ * catalog, one frame per tick, for downlinks which follow every
+ * satellite live.
+ *
+ * Positions are quantized to fixed point, LAT_LNG_SCALE units per
+ * degree and HEIGHT_SCALE units per km. A frame is
+ *   version byte, type byte (KEYFRAME or DELTA),
+ *   varint tick, varint base tick (the tick a delta applies to, 0 in keyframes),
+ *   varint timeMillis,
+ *   varint update count, then per update sorted by catalog number:
+ *     varint catalog number gap from the previous update (the first from 0),
+ *     zigzag varint latitude, longitude and height changes,
+ *   varint remove count, then the removed catalog numbers as varint gaps.
+ * Changes are from the value the client holds for that satellite, or
+ * from 0 for a satellite it has not seen yet, so a keyframe is a delta
+ * from nothing. Deltas only carry satellites whose quantized position
+ * changed. Not thread safe, owned by the PropagatorAgent.
+ */
+public final class PositionFrames {
+
+  public static final int VERSION = 1;
+  public static final int KEYFRAME = 0;
+  public static final int DELTA = 1;
+  public static final double LAT_LNG_SCALE = 10000.0; // ~11 m at the equator
+  public static final double HEIGHT_SCALE = 100.0; // 10 m
+
+  private long tick;
+  private long baseTick = -1L;
+  private long timeMillis;
+
+  // quantized state of the current and previous tick, sorted by catalog number
+  private State current = new State(0);
+  private State previous = new State(0);
+
+  private final Writer writer = new Writer();
+  private byte[] keyframe; // built on first request for the tick
+  private byte[] delta;
+  private long[] sortKeys = new long[0];
+
+  /**
+   * take the positions of a finished tick, satellites without a
+   * position this tick are removed
+   */
+  public void update(OrbitFrame frame) {
+    final int size = frame.size();
+    if (this.sortKeys.length < size) {
+      this.sortKeys = new long[size];
+    }
+    int count = 0;
+    for (int slot = 0; slot < size; slot++) {
+      if (frame.status(slot) == Sgp4.OK) {
+        this.sortKeys[count] = ((long) frame.catalogNumber(slot) << 32) | slot;
+        count += 1;
+      }
+    }
+    Arrays.sort(this.sortKeys, 0, count);
+
+    final State next = this.previous.ensureCapacity(count);
+    for (int i = 0; i < count; i++) {
+      final int slot = (int) this.sortKeys[i];
+      next.ids[i] = (int) (this.sortKeys[i] >>> 32);
+      next.latitude[i] = (int) Math.round(frame.get(slot, OrbitFrame.LATITUDE) * LAT_LNG_SCALE);
+      next.longitude[i] = (int) Math.round(frame.get(slot, OrbitFrame.LONGITUDE) * LAT_LNG_SCALE);
+      next.height[i] = (int) Math.round(frame.get(slot, OrbitFrame.HEIGHT) * HEIGHT_SCALE);
+    }
+    next.size = count;
+
+    this.previous = this.current;
+    this.current = next;
+    this.baseTick = this.tick;
+    this.tick = frame.tick();
+    this.timeMillis = frame.timeMillis();
+    this.keyframe = null;
+    this.delta = null;
+  }
+
+  public long tick() {
+    return this.tick;
+  }
+
+  public int size() {
+    return this.current.size;
+  }
+
+  /**
+   * the frame to send a subscriber which last received lastSentTick,
+   * -1 for a new subscriber. Only a subscriber which has the previous
+   * tick can apply the shared delta, anyone further behind gets a keyframe.
+   */
+  public byte[] frameFor(long lastSentTick) {
+    if (lastSentTick == this.tick) {
+      return encodeEmpty();
+    } else if (lastSentTick == this.baseTick && lastSentTick >= 0L) {
+      if (this.delta == null) {
+        this.delta = encodeDelta();
+      }
+      return this.delta;
+    } else {
+      if (this.keyframe == null) {
+        this.keyframe = encodeKeyframe();
+      }
+      return this.keyframe;
+    }
+  }
+
+  private byte[] encodeKeyframe() {
+    final State state = this.current;
+    final Writer out = header(KEYFRAME, 0L);
+    out.writeVarint(state.size);
+    int lastId = 0;
+    for (int i = 0; i < state.size; i++) {
+      out.writeVarint(state.ids[i] - lastId);
+      out.writeZigzag(state.latitude[i]);
+      out.writeZigzag(state.longitude[i]);
+      out.writeZigzag(state.height[i]);
+      lastId = state.ids[i];
+    }
+    out.writeVarint(0);
+    return out.toByteArray();
+  }
+
+  /**
+   * merge the two sorted states, writing changed and new satellites,
+   * then the removed ones
+   */
+  private byte[] encodeDelta() {
+    final State now = this.current;
+    final State before = this.previous;
+    final Writer out = header(DELTA, this.baseTick);
+    final int countAt = out.reserveVarint();
+    int updates = 0;
+    int lastId = 0;
+    int j = 0;
+    for (int i = 0; i < now.size; i++) {
+      final int id = now.ids[i];
+      while (j < before.size && before.ids[j] < id) {
+        j += 1;
+      }
+      final boolean known = j < before.size && before.ids[j] == id;
+      final int lat = now.latitude[i] - (known ? before.latitude[j] : 0);
+      final int lng = now.longitude[i] - (known ? before.longitude[j] : 0);
+      final int alt = now.height[i] - (known ? before.height[j] : 0);
+      if (!known || lat != 0 || lng != 0 || alt != 0) {
+        out.writeVarint(id - lastId);
+        out.writeZigzag(lat);
+        out.writeZigzag(lng);
+        out.writeZigzag(alt);
+        lastId = id;
+        updates += 1;
+      }
+    }
+    out.patchVarint(countAt, updates);
+
+    final int removeAt = out.reserveVarint();
+    int removes = 0;
+    lastId = 0;
+    int i = 0;
+    for (j = 0; j < before.size; j++) {
+      final int id = before.ids[j];
+      while (i < now.size && now.ids[i] < id) {
+        i += 1;
+      }
+      if (i == now.size || now.ids[i] != id) {
+        out.writeVarint(id - lastId);
+        lastId = id;
+        removes += 1;
+      }
+    }
+    out.patchVarint(removeAt, removes);
+    return out.toByteArray();
+  }
+
+  private byte[] encodeEmpty() {
+    final Writer out = header(DELTA, this.tick);
+    out.writeVarint(0);
+    out.writeVarint(0);
+    return out.toByteArray();
+  }
+
+  private Writer header(int type, long base) {
+    final Writer out = this.writer.reset();
+    out.writeByte(VERSION);
+    out.writeByte(type);
+    out.writeVarint(this.tick);
+    out.writeVarint(base);
+    out.writeVarint(this.timeMillis);
+    return out;
+  }
+
+  static final class State {
+
+    int size;
+    int[] ids;
+    int[] latitude;
+    int[] longitude;
+    int[] height;
+
+    State(int capacity) {
+      this.ids = new int[capacity];
+      this.latitude = new int[capacity];
+      this.longitude = new int[capacity];
+      this.height = new int[capacity];
+    }
+
+    State ensureCapacity(int capacity) {
+      return this.ids.length >= capacity ? this : new State(capacity);
+    }
+
+  }
+
+  /**
+   * growable byte buffer with varint writes, reused between frames
+   */
+  static final class Writer {
+
+    private static final int RESERVED_VARINT = 5; // enough for any int count
+
+    byte[] bytes = new byte[4096];
+    int length;
+
+    Writer reset() {
+      this.length = 0;
+      return this;
+    }
+
+    void writeByte(int value) {
+      if (this.length == this.bytes.length) {
+        this.bytes = Arrays.copyOf(this.bytes, this.bytes.length << 1);
+      }
+      this.bytes[this.length] = (byte) value;
+      this.length += 1;
+    }
+
+    void writeVarint(long value) {
+      while ((value & ~0x7FL) != 0L) {
+        writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      writeByte((int) value);
+    }
+
+    void writeZigzag(int value) {
+      writeVarint(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * leave room for a count which is only known after the entries
+     */
+    int reserveVarint() {
+      final int at = this.length;
+      for (int i = 0; i < RESERVED_VARINT; i++) {
+        writeByte(0);
+      }
+      return at;
+    }
+
+    /**
+     * write a varint padded to the reserved width with continuation bytes
+     */
+    void patchVarint(int at, int value) {
+      for (int i = 0; i < RESERVED_VARINT - 1; i++) {
+        this.bytes[at + i] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      this.bytes[at + RESERVED_VARINT - 1] = (byte) (value & 0x7F);
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(this.bytes, this.length);
+    }
+
+  }
+
+}
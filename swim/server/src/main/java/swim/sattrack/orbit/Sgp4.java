@@ -0,0 +1,1078 @@
+package swim.sattrack.orbit;
+
+/**
+ * SGP4/SDP4 orbit propagation (WGS-72, improved operation mode).
+ * This is a port of the Vallado et al. reference implementation used by
+ * satellite.js on the NodeJS side, rearranged so the per satellite
+ * constants live in structure of arrays columns instead of one satrec
+ * object per satellite. Near earth constants are indexed by catalog slot,
+ * deep space (period >= 225 min) constants by a separate deep space row.
+ */
+public final class Sgp4 {
+
+  // WGS-72 constants
+  public static final double RADIUS_EARTH_KM = 6378.135;
+  static final double MU = 398600.8;
+  static final double XKE = 60.0 / Math.sqrt(RADIUS_EARTH_KM * RADIUS_EARTH_KM * RADIUS_EARTH_KM / MU);
+  static final double J2 = 0.001082616;
+  static final double J3 = -0.00000253881;
+  static final double J4 = -0.00000165597;
+  static final double J3OJ2 = J3 / J2;
+  static final double VKMPERSEC = RADIUS_EARTH_KM * XKE / 60.0;
+  static final double X2O3 = 2.0 / 3.0;
+  static final double TWO_PI = 2.0 * Math.PI;
+  static final double TEMP4 = 1.5e-12;
+  public static final double MINUTES_PER_DAY = 1440.0;
+  static final double XPDOTP = MINUTES_PER_DAY / TWO_PI;
+
+  // propagation results
+  public static final int OK = 0;
+  public static final int ERROR_ECCENTRICITY = 1;
+  public static final int ERROR_MEAN_MOTION = 2;
+  public static final int ERROR_PERTURBED_ECCENTRICITY = 3;
+  public static final int ERROR_SEMI_LATUS_RECTUM = 4;
+  public static final int ERROR_DECAYED = 6;
+
+  // element inputs, see elements()
+  public static final int EL_EPOCH_JD = 0;
+  public static final int EL_ECCO = 1;
+  public static final int EL_INCLO = 2;
+  public static final int EL_NODEO = 3;
+  public static final int EL_ARGPO = 4;
+  public static final int EL_MO = 5;
+  public static final int EL_NO = 6;
+  public static final int EL_BSTAR = 7;
+  public static final int ELEMENT_COUNT = 8;
+
+  // near earth columns, kept for every slot
+  static final int EPOCH_JD = 0;
+  static final int ECCO = 1;
+  static final int INCLO = 2;
+  static final int NODEO = 3;
+  static final int ARGPO = 4;
+  static final int MO = 5;
+  static final int NO = 6;
+  static final int BSTAR = 7;
+  static final int ISIMP = 8;
+  static final int AYCOF = 9;
+  static final int CON41 = 10;
+  static final int CC1 = 11;
+  static final int CC4 = 12;
+  static final int CC5 = 13;
+  static final int D2 = 14;
+  static final int D3 = 15;
+  static final int D4 = 16;
+  static final int DELMO = 17;
+  static final int ETA = 18;
+  static final int ARGPDOT = 19;
+  static final int OMGCOF = 20;
+  static final int SINMAO = 21;
+  static final int T2COF = 22;
+  static final int T3COF = 23;
+  static final int T4COF = 24;
+  static final int T5COF = 25;
+  static final int X1MTH2 = 26;
+  static final int X7THM1 = 27;
+  static final int MDOT = 28;
+  static final int NODEDOT = 29;
+  static final int XLCOF = 30;
+  static final int XMCOF = 31;
+  static final int NODECF = 32;
+  static final int GSTO = 33;
+  public static final int NEAR_FIELDS = 34;
+
+  // deep space columns, only kept for deep space rows
+  static final int IREZ = 0;
+  static final int D2201 = 1;
+  static final int D2211 = 2;
+  static final int D3210 = 3;
+  static final int D3222 = 4;
+  static final int D4410 = 5;
+  static final int D4422 = 6;
+  static final int D5220 = 7;
+  static final int D5232 = 8;
+  static final int D5421 = 9;
+  static final int D5433 = 10;
+  static final int DEDT = 11;
+  static final int DEL1 = 12;
+  static final int DEL2 = 13;
+  static final int DEL3 = 14;
+  static final int DIDT = 15;
+  static final int DMDT = 16;
+  static final int DNODT = 17;
+  static final int DOMDT = 18;
+  static final int E3 = 19;
+  static final int EE2 = 20;
+  static final int PEO = 21;
+  static final int PGHO = 22;
+  static final int PHO = 23;
+  static final int PINCO = 24;
+  static final int PLO = 25;
+  static final int SE2 = 26;
+  static final int SE3 = 27;
+  static final int SGH2 = 28;
+  static final int SGH3 = 29;
+  static final int SGH4 = 30;
+  static final int SH2 = 31;
+  static final int SH3 = 32;
+  static final int SI2 = 33;
+  static final int SI3 = 34;
+  static final int SL2 = 35;
+  static final int SL3 = 36;
+  static final int SL4 = 37;
+  static final int XFACT = 38;
+  static final int XGH2 = 39;
+  static final int XGH3 = 40;
+  static final int XGH4 = 41;
+  static final int XH2 = 42;
+  static final int XH3 = 43;
+  static final int XI2 = 44;
+  static final int XI3 = 45;
+  static final int XL2 = 46;
+  static final int XL3 = 47;
+  static final int XL4 = 48;
+  static final int XLAMO = 49;
+  static final int ZMOL = 50;
+  static final int ZMOS = 51;
+  static final int ATIME = 52; // integrator state, updated by propagate()
+  static final int XLI = 53;
+  static final int XNI = 54;
+  public static final int DEEP_FIELDS = 55;
+
+  private Sgp4() {
+    // static only
+  }
+
+  /**
+   * Parse the two data lines of a TLE into the element inputs used by initialize().
+   * Angles are converted to radians and mean motion to radians per minute.
+   */
+  public static double[] elements(String line1, String line2) {
+    if (line1 == null || line2 == null || line1.length() < 64 || line2.length() < 63) {
+      throw new IllegalArgumentException("malformed TLE");
+    }
+    final double[] el = new double[ELEMENT_COUNT];
+    final int epochYear = Integer.parseInt(line1.substring(18, 20).trim());
+    final double epochDays = Double.parseDouble(line1.substring(20, 32).trim());
+    final int year = epochYear < 57 ? epochYear + 2000 : epochYear + 1900;
+    el[EL_EPOCH_JD] = julianDayOfYearStart(year) + epochDays;
+    el[EL_BSTAR] = parseExponent(line1.substring(53, 61));
+    el[EL_INCLO] = Math.toRadians(Double.parseDouble(line2.substring(8, 16).trim()));
+    el[EL_NODEO] = Math.toRadians(Double.parseDouble(line2.substring(17, 25).trim()));
+    el[EL_ECCO] = Double.parseDouble("." + line2.substring(26, 33).trim());
+    el[EL_ARGPO] = Math.toRadians(Double.parseDouble(line2.substring(34, 42).trim()));
+    el[EL_MO] = Math.toRadians(Double.parseDouble(line2.substring(43, 51).trim()));
+    el[EL_NO] = Double.parseDouble(line2.substring(52, 63).trim()) / XPDOTP;
+    return el;
+  }
+
+  /**
+   * parse TLE assumed decimal point fields such as " 28098-4" or "+18539-3"
+   */
+  static double parseExponent(String field) {
+    final String s = field.trim();
+    if (s.isEmpty()) {
+      return 0.0;
+    }
+    int i = 0;
+    String sign = "";
+    if (s.charAt(0) == '-' || s.charAt(0) == '+') {
+      sign = s.substring(0, 1);
+      i = 1;
+    }
+    final int expIndex = Math.max(s.lastIndexOf('-'), s.lastIndexOf('+'));
+    if (expIndex <= i) {
+      return Double.parseDouble(sign + "." + s.substring(i));
+    }
+    return Double.parseDouble(sign + "." + s.substring(i, expIndex).trim() + "e" + s.substring(expIndex));
+  }
+
+  /**
+   * julian date of 0h on January 0 of the given year
+   */
+  static double julianDayOfYearStart(int year) {
+    return 367.0 * year - Math.floor(7.0 * year * 0.25) + 30.0 + 1721013.5;
+  }
+
+  /**
+   * julian date for a unix timestamp in milliseconds
+   */
+  public static double julianDate(long timeMillis) {
+    return timeMillis / 86400000.0 + 2440587.5;
+  }
+
+  /**
+   * Greenwich mean sidereal time in radians for a julian date (UT1)
+   */
+  public static double gmst(double jdut1) {
+    final double tut1 = (jdut1 - 2451545.0) / 36525.0;
+    double temp = -6.2e-6 * tut1 * tut1 * tut1 + 0.093104 * tut1 * tut1
+        + (876600.0 * 3600.0 + 8640184.812866) * tut1 + 67310.54841;
+    temp = (Math.toRadians(temp) / 240.0) % TWO_PI;
+    if (temp < 0.0) {
+      temp += TWO_PI;
+    }
+    return temp;
+  }
+
+  /**
+   * true when the elements need the deep space (SDP4) terms
+   */
+  public static boolean isDeepSpace(double[] el) {
+    return TWO_PI / unKozai(el) >= 225.0;
+  }
+
+  private static double unKozai(double[] el) {
+    final double ecco = el[EL_ECCO];
+    final double cosio = Math.cos(el[EL_INCLO]);
+    final double omeosq = 1.0 - ecco * ecco;
+    final double rteosq = Math.sqrt(omeosq);
+    final double ak = Math.pow(XKE / el[EL_NO], X2O3);
+    final double d1 = 0.75 * J2 * (3.0 * cosio * cosio - 1.0) / (rteosq * omeosq);
+    double delPrime = d1 / (ak * ak);
+    final double adel = ak * (1.0 - delPrime * delPrime - delPrime * (1.0 / 3.0 + 134.0 * delPrime * delPrime / 81.0));
+    delPrime = d1 / (adel * adel);
+    return el[EL_NO] / (1.0 + delPrime);
+  }
+
+  /**
+   * Compute all the propagation constants for one satellite (sgp4init).
+   * Near earth constants are written to near[field][slot] and, for deep
+   * space orbits, deep space constants to deep[field][row].
+   * Returns OK or the error code from propagating to the epoch.
+   */
+  public static int initialize(double[] el, double[][] near, int slot, double[][] deep, int row) {
+    final double epoch = el[EL_EPOCH_JD] - 2433281.5; // days since 1950 Jan 0
+    final double ecco = el[EL_ECCO];
+    final double inclo = el[EL_INCLO];
+    final double nodeo = el[EL_NODEO];
+    final double argpo = el[EL_ARGPO];
+    final double mo = el[EL_MO];
+    final double bstar = el[EL_BSTAR];
+
+    final double ss = 78.0 / RADIUS_EARTH_KM + 1.0;
+    final double qzms2t = Math.pow((120.0 - 78.0) / RADIUS_EARTH_KM, 4);
+
+    // initl
+    final double eccsq = ecco * ecco;
+    final double omeosq = 1.0 - eccsq;
+    final double rteosq = Math.sqrt(omeosq);
+    final double cosio = Math.cos(inclo);
+    final double cosio2 = cosio * cosio;
+    final double no = unKozai(el);
+    final double ao = Math.pow(XKE / no, X2O3);
+    final double sinio = Math.sin(inclo);
+    final double po = ao * omeosq;
+    final double con42 = 1.0 - 5.0 * cosio2;
+    final double con41 = -con42 - cosio2 - cosio2;
+    final double posq = po * po;
+    final double rp = ao * (1.0 - ecco);
+    final double gsto = gmst(epoch + 2433281.5);
+
+    for (int i = 0; i < NEAR_FIELDS; i++) {
+      near[i][slot] = 0.0;
+    }
+    near[EPOCH_JD][slot] = el[EL_EPOCH_JD];
+    near[ECCO][slot] = ecco;
+    near[INCLO][slot] = inclo;
+    near[NODEO][slot] = nodeo;
+    near[ARGPO][slot] = argpo;
+    near[MO][slot] = mo;
+    near[NO][slot] = no;
+    near[BSTAR][slot] = bstar;
+    near[CON41][slot] = con41;
+    near[GSTO][slot] = gsto;
+
+    if (omeosq < 0.0 && no < 0.0) {
+      return ERROR_ECCENTRICITY;
+    }
+
+    double isimp = rp < 220.0 / RADIUS_EARTH_KM + 1.0 ? 1.0 : 0.0;
+    double sfour = ss;
+    double qzms24 = qzms2t;
+    final double perige = (rp - 1.0) * RADIUS_EARTH_KM;
+    if (perige < 156.0) {
+      sfour = perige - 78.0;
+      if (perige < 98.0) {
+        sfour = 20.0;
+      }
+      qzms24 = Math.pow((120.0 - sfour) / RADIUS_EARTH_KM, 4);
+      sfour = sfour / RADIUS_EARTH_KM + 1.0;
+    }
+    final double pinvsq = 1.0 / posq;
+    final double tsi = 1.0 / (ao - sfour);
+    final double eta = ao * ecco * tsi;
+    final double etasq = eta * eta;
+    final double eeta = ecco * eta;
+    final double psisq = Math.abs(1.0 - etasq);
+    final double coef = qzms24 * Math.pow(tsi, 4);
+    final double coef1 = coef / Math.pow(psisq, 3.5);
+    final double cc2 = coef1 * no * (ao * (1.0 + 1.5 * etasq + eeta * (4.0 + etasq))
+        + 0.375 * J2 * tsi / psisq * con41 * (8.0 + 3.0 * etasq * (8.0 + etasq)));
+    final double cc1 = bstar * cc2;
+    double cc3 = 0.0;
+    if (ecco > 1.0e-4) {
+      cc3 = -2.0 * coef * tsi * J3OJ2 * no * sinio / ecco;
+    }
+    final double x1mth2 = 1.0 - cosio2;
+    final double cc4 = 2.0 * no * coef1 * ao * omeosq * (eta * (2.0 + 0.5 * etasq) + ecco * (0.5 + 2.0 * etasq)
+        - J2 * tsi / (ao * psisq) * (-3.0 * con41 * (1.0 - 2.0 * eeta + etasq * (1.5 - 0.5 * eeta))
+        + 0.75 * x1mth2 * (2.0 * etasq - eeta * (1.0 + etasq)) * Math.cos(2.0 * argpo)));
+    final double cc5 = 2.0 * coef1 * ao * omeosq * (1.0 + 2.75 * (etasq + eeta) + eeta * etasq);
+    final double cosio4 = cosio2 * cosio2;
+    final double temp1 = 1.5 * J2 * pinvsq * no;
+    final double temp2 = 0.5 * temp1 * J2 * pinvsq;
+    final double temp3 = -0.46875 * J4 * pinvsq * pinvsq * no;
+    final double mdot = no + 0.5 * temp1 * rteosq * con41 + 0.0625 * temp2 * rteosq * (13.0 - 78.0 * cosio2 + 137.0 * cosio4);
+    final double argpdot = -0.5 * temp1 * con42 + 0.0625 * temp2 * (7.0 - 114.0 * cosio2 + 395.0 * cosio4)
+        + temp3 * (3.0 - 36.0 * cosio2 + 49.0 * cosio4);
+    final double xhdot1 = -temp1 * cosio;
+    final double nodedot = xhdot1 + (0.5 * temp2 * (4.0 - 19.0 * cosio2) + 2.0 * temp3 * (3.0 - 7.0 * cosio2)) * cosio;
+    final double xpidot = argpdot + nodedot;
+    final double omgcof = bstar * cc3 * Math.cos(argpo);
+    double xmcof = 0.0;
+    if (ecco > 1.0e-4) {
+      xmcof = -X2O3 * coef * bstar / eeta;
+    }
+    final double nodecf = 3.5 * omeosq * xhdot1 * cc1;
+    final double t2cof = 1.5 * cc1;
+    final double xlcof;
+    if (Math.abs(cosio + 1.0) > 1.5e-12) {
+      xlcof = -0.25 * J3OJ2 * sinio * (3.0 + 5.0 * cosio) / (1.0 + cosio);
+    } else {
+      xlcof = -0.25 * J3OJ2 * sinio * (3.0 + 5.0 * cosio) / TEMP4;
+    }
+    final double aycof = -0.5 * J3OJ2 * sinio;
+    final double delmotemp = 1.0 + eta * Math.cos(mo);
+    final double delmo = delmotemp * delmotemp * delmotemp;
+    final double sinmao = Math.sin(mo);
+    final double x7thm1 = 7.0 * cosio2 - 1.0;
+
+    near[ETA][slot] = eta;
+    near[CC1][slot] = cc1;
+    near[CC4][slot] = cc4;
+    near[CC5][slot] = cc5;
+    near[X1MTH2][slot] = x1mth2;
+    near[MDOT][slot] = mdot;
+    near[ARGPDOT][slot] = argpdot;
+    near[NODEDOT][slot] = nodedot;
+    near[OMGCOF][slot] = omgcof;
+    near[XMCOF][slot] = xmcof;
+    near[NODECF][slot] = nodecf;
+    near[T2COF][slot] = t2cof;
+    near[XLCOF][slot] = xlcof;
+    near[AYCOF][slot] = aycof;
+    near[DELMO][slot] = delmo;
+    near[SINMAO][slot] = sinmao;
+    near[X7THM1][slot] = x7thm1;
+
+    if (TWO_PI / no >= 225.0) {
+      if (deep == null || row < 0) {
+        throw new IllegalArgumentException("deep space orbit needs a deep space row");
+      }
+      isimp = 1.0;
+      initializeDeepSpace(epoch, ecco, inclo, nodeo, argpo, mo, no, eccsq, gsto, mdot, nodedot, xpidot, deep, row);
+    }
+
+    if (isimp != 1.0) {
+      final double cc1sq = cc1 * cc1;
+      final double d2 = 4.0 * ao * tsi * cc1sq;
+      final double temp = d2 * tsi * cc1 / 3.0;
+      final double d3 = (17.0 * ao + sfour) * temp;
+      final double d4 = 0.5 * temp * ao * tsi * (221.0 * ao + 31.0 * sfour) * cc1;
+      near[D2][slot] = d2;
+      near[D3][slot] = d3;
+      near[D4][slot] = d4;
+      near[T3COF][slot] = d2 + 2.0 * cc1sq;
+      near[T4COF][slot] = 0.25 * (3.0 * d3 + cc1 * (12.0 * d2 + 10.0 * cc1sq));
+      near[T5COF][slot] = 0.2 * (3.0 * d4 + 12.0 * cc1 * d3 + 6.0 * d2 * d2 + 15.0 * cc1sq * (2.0 * d2 + cc1sq));
+    }
+    near[ISIMP][slot] = isimp;
+
+    // propagate to the epoch to catch bad element sets early
+    return propagate(near, slot, deep, TWO_PI / no >= 225.0 ? row : -1, 0.0, new double[6]);
+  }
+
+  /**
+   * dscom + dsinit, the deep space constants. dpper at init time only
+   * matters when its offsets are applied, which never happens at the epoch.
+   */
+  private static void initializeDeepSpace(double epoch, double ecco, double inclo, double nodeo, double argpo,
+                                          double mo, double no, double eccsq, double gsto, double mdot,
+                                          double nodedot, double xpidot, double[][] deep, int row) {
+    for (int i = 0; i < DEEP_FIELDS; i++) {
+      deep[i][row] = 0.0;
+    }
+    // dscom
+    final double zes = 0.01675;
+    final double zel = 0.05490;
+    final double c1ss = 2.9864797e-6;
+    final double c1l = 4.7968065e-7;
+    final double zsinis = 0.39785416;
+    final double zcosis = 0.91744867;
+    final double zcosgs = 0.1945905;
+    final double zsings = -0.98088458;
+
+    double nm = no;
+    final double em = ecco;
+    final double snodm = Math.sin(nodeo);
+    final double cnodm = Math.cos(nodeo);
+    final double sinomm = Math.sin(argpo);
+    final double cosomm = Math.cos(argpo);
+    final double sinim = Math.sin(inclo);
+    final double cosim = Math.cos(inclo);
+    final double emsq = em * em;
+    final double betasq = 1.0 - emsq;
+    final double rtemsq = Math.sqrt(betasq);
+
+    final double day = epoch + 18261.5;
+    final double xnodce = (4.5236020 - 9.2422029e-4 * day) % TWO_PI;
+    final double stem = Math.sin(xnodce);
+    final double ctem = Math.cos(xnodce);
+    final double zcosil = 0.91375164 - 0.03568096 * ctem;
+    final double zsinil = Math.sqrt(1.0 - zcosil * zcosil);
+    final double zsinhl = 0.089683511 * stem / zsinil;
+    final double zcoshl = Math.sqrt(1.0 - zsinhl * zsinhl);
+    final double gam = 5.8351514 + 0.0019443680 * day;
+    double zx = 0.39785416 * stem / zsinil;
+    final double zy = zcoshl * ctem + 0.91744867 * zsinhl * stem;
+    zx = Math.atan2(zx, zy);
+    zx = gam + zx - xnodce;
+    final double zcosgl = Math.cos(zx);
+    final double zsingl = Math.sin(zx);
+
+    double zcosg = zcosgs;
+    double zsing = zsings;
+    double zcosi = zcosis;
+    double zsini = zsinis;
+    double zcosh = cnodm;
+    double zsinh = snodm;
+    double cc = c1ss;
+    final double xnoi = 1.0 / nm;
+
+    double s1 = 0.0, s2 = 0.0, s3 = 0.0, s4 = 0.0, s5 = 0.0, s6 = 0.0, s7 = 0.0;
+    double ss1 = 0.0, ss2 = 0.0, ss3 = 0.0, ss4 = 0.0, ss5 = 0.0, ss6 = 0.0, ss7 = 0.0;
+    double z1 = 0.0, z2 = 0.0, z3 = 0.0, z11 = 0.0, z12 = 0.0, z13 = 0.0, z21 = 0.0, z22 = 0.0, z23 = 0.0;
+    double z31 = 0.0, z32 = 0.0, z33 = 0.0;
+    double sz1 = 0.0, sz2 = 0.0, sz3 = 0.0, sz11 = 0.0, sz12 = 0.0, sz13 = 0.0, sz21 = 0.0, sz22 = 0.0;
+    double sz23 = 0.0, sz31 = 0.0, sz32 = 0.0, sz33 = 0.0;
+
+    for (int lsflg = 1; lsflg <= 2; lsflg++) {
+      final double a1 = zcosg * zcosh + zsing * zcosi * zsinh;
+      final double a3 = -zsing * zcosh + zcosg * zcosi * zsinh;
+      final double a7 = -zcosg * zsinh + zsing * zcosi * zcosh;
+      final double a8 = zsing * zsini;
+      final double a9 = zsing * zsinh + zcosg * zcosi * zcosh;
+      final double a10 = zcosg * zsini;
+      final double a2 = cosim * a7 + sinim * a8;
+      final double a4 = cosim * a9 + sinim * a10;
+      final double a5 = -sinim * a7 + cosim * a8;
+      final double a6 = -sinim * a9 + cosim * a10;
+
+      final double x1 = a1 * cosomm + a2 * sinomm;
+      final double x2 = a3 * cosomm + a4 * sinomm;
+      final double x3 = -a1 * sinomm + a2 * cosomm;
+      final double x4 = -a3 * sinomm + a4 * cosomm;
+      final double x5 = a5 * sinomm;
+      final double x6 = a6 * sinomm;
+      final double x7 = a5 * cosomm;
+      final double x8 = a6 * cosomm;
+
+      z31 = 12.0 * x1 * x1 - 3.0 * x3 * x3;
+      z32 = 24.0 * x1 * x2 - 6.0 * x3 * x4;
+      z33 = 12.0 * x2 * x2 - 3.0 * x4 * x4;
+      z1 = 3.0 * (a1 * a1 + a2 * a2) + z31 * emsq;
+      z2 = 6.0 * (a1 * a3 + a2 * a4) + z32 * emsq;
+      z3 = 3.0 * (a3 * a3 + a4 * a4) + z33 * emsq;
+      z11 = -6.0 * a1 * a5 + emsq * (-24.0 * x1 * x7 - 6.0 * x3 * x5);
+      z12 = -6.0 * (a1 * a6 + a3 * a5) + emsq * (-24.0 * (x2 * x7 + x1 * x8) + -6.0 * (x3 * x6 + x4 * x5));
+      z13 = -6.0 * a3 * a6 + emsq * (-24.0 * x2 * x8 - 6.0 * x4 * x6);
+      z21 = 6.0 * a2 * a5 + emsq * (24.0 * x1 * x5 - 6.0 * x3 * x7);
+      z22 = 6.0 * (a4 * a5 + a2 * a6) + emsq * (24.0 * (x2 * x5 + x1 * x6) - 6.0 * (x4 * x7 + x3 * x8));
+      z23 = 6.0 * a4 * a6 + emsq * (24.0 * x2 * x6 - 6.0 * x4 * x8);
+      z1 = z1 + z1 + betasq * z31;
+      z2 = z2 + z2 + betasq * z32;
+      z3 = z3 + z3 + betasq * z33;
+      s3 = cc * xnoi;
+      s2 = -0.5 * s3 / rtemsq;
+      s4 = s3 * rtemsq;
+      s1 = -15.0 * em * s4;
+      s5 = x1 * x3 + x2 * x4;
+      s6 = x2 * x3 + x1 * x4;
+      s7 = x2 * x4 - x1 * x3;
+
+      if (lsflg == 1) {
+        ss1 = s1;
+        ss2 = s2;
+        ss3 = s3;
+        ss4 = s4;
+        ss5 = s5;
+        ss6 = s6;
+        ss7 = s7;
+        sz1 = z1;
+        sz2 = z2;
+        sz3 = z3;
+        sz11 = z11;
+        sz12 = z12;
+        sz13 = z13;
+        sz21 = z21;
+        sz22 = z22;
+        sz23 = z23;
+        sz31 = z31;
+        sz32 = z32;
+        sz33 = z33;
+        zcosg = zcosgl;
+        zsing = zsingl;
+        zcosi = zcosil;
+        zsini = zsinil;
+        zcosh = zcoshl * cnodm + zsinhl * snodm;
+        zsinh = snodm * zcoshl - cnodm * zsinhl;
+        cc = c1l;
+      }
+    }
+
+    deep[ZMOL][row] = (4.7199672 + (0.22997150 * day - gam)) % TWO_PI;
+    deep[ZMOS][row] = (6.2565837 + 0.017201977 * day) % TWO_PI;
+
+    // solar terms
+    deep[SE2][row] = 2.0 * ss1 * ss6;
+    deep[SE3][row] = 2.0 * ss1 * ss7;
+    deep[SI2][row] = 2.0 * ss2 * sz12;
+    deep[SI3][row] = 2.0 * ss2 * (sz13 - sz11);
+    deep[SL2][row] = -2.0 * ss3 * sz2;
+    deep[SL3][row] = -2.0 * ss3 * (sz3 - sz1);
+    deep[SL4][row] = -2.0 * ss3 * (-21.0 - 9.0 * emsq) * zes;
+    deep[SGH2][row] = 2.0 * ss4 * sz32;
+    deep[SGH3][row] = 2.0 * ss4 * (sz33 - sz31);
+    deep[SGH4][row] = -18.0 * ss4 * zes;
+    deep[SH2][row] = -2.0 * ss2 * sz22;
+    deep[SH3][row] = -2.0 * ss2 * (sz23 - sz21);
+
+    // lunar terms
+    deep[EE2][row] = 2.0 * s1 * s6;
+    deep[E3][row] = 2.0 * s1 * s7;
+    deep[XI2][row] = 2.0 * s2 * z12;
+    deep[XI3][row] = 2.0 * s2 * (z13 - z11);
+    deep[XL2][row] = -2.0 * s3 * z2;
+    deep[XL3][row] = -2.0 * s3 * (z3 - z1);
+    deep[XL4][row] = -2.0 * s3 * (-21.0 - 9.0 * emsq) * zel;
+    deep[XGH2][row] = 2.0 * s4 * z32;
+    deep[XGH3][row] = 2.0 * s4 * (z33 - z31);
+    deep[XGH4][row] = -18.0 * s4 * zel;
+    deep[XH2][row] = -2.0 * s2 * z22;
+    deep[XH3][row] = -2.0 * s2 * (z23 - z21);
+
+    // dsinit
+    final double q22 = 1.7891679e-6;
+    final double q31 = 2.1460748e-6;
+    final double q33 = 2.2123015e-7;
+    final double root22 = 1.7891679e-6;
+    final double root44 = 7.3636953e-9;
+    final double root54 = 2.1765803e-9;
+    final double rptim = 4.37526908801129966e-3;
+    final double root32 = 3.7393792e-7;
+    final double root52 = 1.1428639e-7;
+    final double znl = 1.5835218e-4;
+    final double zns = 1.19459e-5;
+
+    int irez = 0;
+    if (nm < 0.0052359877 && nm > 0.0034906585) {
+      irez = 1;
+    }
+    if (nm >= 8.26e-3 && nm <= 9.24e-3 && em >= 0.5) {
+      irez = 2;
+    }
+
+    final double ses = ss1 * zns * ss5;
+    final double sis = ss2 * zns * (sz11 + sz13);
+    final double sls = -zns * ss3 * (sz1 + sz3 - 14.0 - 6.0 * emsq);
+    final double sghs = ss4 * zns * (sz31 + sz33 - 6.0);
+    double shs = -zns * ss2 * (sz21 + sz23);
+    if (inclo < 5.2359877e-2 || inclo > Math.PI - 5.2359877e-2) {
+      shs = 0.0;
+    }
+    if (sinim != 0.0) {
+      shs = shs / sinim;
+    }
+    final double sgs = sghs - cosim * shs;
+
+    final double dedt = ses + s1 * znl * s5;
+    final double didt = sis + s2 * znl * (z11 + z13);
+    final double dmdt = sls - znl * s3 * (z1 + z3 - 14.0 - 6.0 * emsq);
+    final double sghl = s4 * znl * (z31 + z33 - 6.0);
+    double shll = -znl * s2 * (z21 + z23);
+    if (inclo < 5.2359877e-2 || inclo > Math.PI - 5.2359877e-2) {
+      shll = 0.0;
+    }
+    double domdt = sgs + sghl;
+    double dnodt = shs;
+    if (sinim != 0.0) {
+      domdt = domdt - cosim / sinim * shll;
+      dnodt = dnodt + shll / sinim;
+    }
+    deep[DEDT][row] = dedt;
+    deep[DIDT][row] = didt;
+    deep[DMDT][row] = dmdt;
+    deep[DOMDT][row] = domdt;
+    deep[DNODT][row] = dnodt;
+
+    final double theta = gsto % TWO_PI;
+    double xlamo = 0.0;
+    if (irez != 0) {
+      final double aonv = Math.pow(nm / XKE, X2O3);
+
+      if (irez == 2) {
+        // geopotential resonance for 12 hour orbits
+        final double cosisq = cosim * cosim;
+        final double e = ecco;
+        final double esq = eccsq;
+        final double eoc = e * esq;
+        final double g201 = -0.306 - (e - 0.64) * 0.440;
+        final double g211, g310, g322, g410, g422, g520, g521, g532, g533;
+        if (e <= 0.65) {
+          g211 = 3.616 - 13.2470 * e + 16.2900 * esq;
+          g310 = -19.302 + 117.3900 * e - 228.4190 * esq + 156.5910 * eoc;
+          g322 = -18.9068 + 109.7927 * e - 214.6334 * esq + 146.5816 * eoc;
+          g410 = -41.122 + 242.6940 * e - 471.0940 * esq + 313.9530 * eoc;
+          g422 = -146.407 + 841.8800 * e - 1629.014 * esq + 1083.4350 * eoc;
+          g520 = -532.114 + 3017.977 * e - 5740.032 * esq + 3708.2760 * eoc;
+        } else {
+          g211 = -72.099 + 331.819 * e - 508.738 * esq + 266.724 * eoc;
+          g310 = -346.844 + 1582.851 * e - 2415.925 * esq + 1246.113 * eoc;
+          g322 = -342.585 + 1554.908 * e - 2366.899 * esq + 1215.972 * eoc;
+          g410 = -1052.797 + 4758.686 * e - 7193.992 * esq + 3651.957 * eoc;
+          g422 = -3581.690 + 16178.110 * e - 24462.770 * esq + 12422.520 * eoc;
+          if (e > 0.715) {
+            g520 = -5149.66 + 29936.92 * e - 54087.36 * esq + 31324.56 * eoc;
+          } else {
+            g520 = 1464.74 - 4664.75 * e + 3763.64 * esq;
+          }
+        }
+        if (e < 0.7) {
+          g533 = -919.22770 + 4988.6100 * e - 9064.7700 * esq + 5542.21 * eoc;
+          g521 = -822.71072 + 4568.6173 * e - 8491.4146 * esq + 5337.524 * eoc;
+          g532 = -853.66600 + 4690.2500 * e - 8624.7700 * esq + 5341.4 * eoc;
+        } else {
+          g533 = -37995.780 + 161616.52 * e - 229838.20 * esq + 109377.94 * eoc;
+          g521 = -51752.104 + 218913.95 * e - 309468.16 * esq + 146349.42 * eoc;
+          g532 = -40023.880 + 170470.89 * e - 242699.48 * esq + 115605.82 * eoc;
+        }
+        final double sini2 = sinim * sinim;
+        final double f220 = 0.75 * (1.0 + 2.0 * cosim + cosisq);
+        final double f221 = 1.5 * sini2;
+        final double f321 = 1.875 * sinim * (1.0 - 2.0 * cosim - 3.0 * cosisq);
+        final double f322 = -1.875 * sinim * (1.0 + 2.0 * cosim - 3.0 * cosisq);
+        final double f441 = 35.0 * sini2 * f220;
+        final double f442 = 39.3750 * sini2 * sini2;
+        final double f522 = 9.84375 * sinim * (sini2 * (1.0 - 2.0 * cosim - 5.0 * cosisq)
+            + 0.33333333 * (-2.0 + 4.0 * cosim + 6.0 * cosisq));
+        final double f523 = sinim * (4.92187512 * sini2 * (-2.0 - 4.0 * cosim + 10.0 * cosisq)
+            + 6.56250012 * (1.0 + 2.0 * cosim - 3.0 * cosisq));
+        final double f542 = 29.53125 * sinim * (2.0 - 8.0 * cosim + cosisq * (-12.0 + 8.0 * cosim + 10.0 * cosisq));
+        final double f543 = 29.53125 * sinim * (-2.0 - 8.0 * cosim + cosisq * (12.0 + 8.0 * cosim - 10.0 * cosisq));
+        final double xno2 = nm * nm;
+        final double ainv2 = aonv * aonv;
+        double temp1 = 3.0 * xno2 * ainv2;
+        double temp = temp1 * root22;
+        deep[D2201][row] = temp * f220 * g201;
+        deep[D2211][row] = temp * f221 * g211;
+        temp1 = temp1 * aonv;
+        temp = temp1 * root32;
+        deep[D3210][row] = temp * f321 * g310;
+        deep[D3222][row] = temp * f322 * g322;
+        temp1 = temp1 * aonv;
+        temp = 2.0 * temp1 * root44;
+        deep[D4410][row] = temp * f441 * g410;
+        deep[D4422][row] = temp * f442 * g422;
+        temp1 = temp1 * aonv;
+        temp = temp1 * root52;
+        deep[D5220][row] = temp * f522 * g520;
+        deep[D5232][row] = temp * f523 * g532;
+        temp = 2.0 * temp1 * root54;
+        deep[D5421][row] = temp * f542 * g521;
+        deep[D5433][row] = temp * f543 * g533;
+        xlamo = (mo + nodeo + nodeo - (theta + theta)) % TWO_PI;
+        deep[XFACT][row] = mdot + dmdt + 2.0 * (nodedot + dnodt - rptim) - no;
+      }
+
+      if (irez == 1) {
+        // synchronous resonance terms
+        final double g200 = 1.0 + emsq * (-2.5 + 0.8125 * emsq);
+        final double g310 = 1.0 + 2.0 * emsq;
+        final double g300 = 1.0 + emsq * (-6.0 + 6.60937 * emsq);
+        final double f220 = 0.75 * (1.0 + cosim) * (1.0 + cosim);
+        final double f311 = 0.9375 * sinim * sinim * (1.0 + 3.0 * cosim) - 0.75 * (1.0 + cosim);
+        double f330 = 1.0 + cosim;
+        f330 = 1.875 * f330 * f330 * f330;
+        final double del1 = 3.0 * nm * nm * aonv * aonv;
+        deep[DEL2][row] = 2.0 * del1 * f220 * g200 * q22;
+        deep[DEL3][row] = 3.0 * del1 * f330 * g300 * q33 * aonv;
+        deep[DEL1][row] = del1 * f311 * g310 * q31 * aonv;
+        xlamo = (mo + nodeo + argpo - theta) % TWO_PI;
+        deep[XFACT][row] = mdot + xpidot + dmdt + domdt + dnodt - (no + rptim);
+      }
+
+      // initialize the integrator
+      deep[XLI][row] = xlamo;
+      deep[XNI][row] = no;
+      deep[ATIME][row] = 0.0;
+    }
+    deep[XLAMO][row] = xlamo;
+    deep[IREZ][row] = irez;
+  }
+
+  /**
+   * Propagate one satellite tsince minutes from its epoch (sgp4).
+   * Writes the TEME position (km) and velocity (km/s) into rv[0..5].
+   * Deep space rows hold integrator state which is updated here, so a
+   * given slot must only be propagated by one thread at a time.
+   */
+  public static int propagate(double[][] near, int i, double[][] deep, int d, double tsince, double[] rv) {
+    final double t = tsince;
+    final double ecco = near[ECCO][i];
+    final double inclo = near[INCLO][i];
+    final double nodeo = near[NODEO][i];
+    final double argpo = near[ARGPO][i];
+    final double mo = near[MO][i];
+    final double no = near[NO][i];
+    final double bstar = near[BSTAR][i];
+    final double cc1 = near[CC1][i];
+    final double eta = near[ETA][i];
+
+    // update for secular gravity and atmospheric drag
+    final double xmdf = mo + near[MDOT][i] * t;
+    final double argpdf = argpo + near[ARGPDOT][i] * t;
+    final double nodedf = nodeo + near[NODEDOT][i] * t;
+    double argpm = argpdf;
+    double mm = xmdf;
+    final double t2 = t * t;
+    double nodem = nodedf + near[NODECF][i] * t2;
+    double tempa = 1.0 - cc1 * t;
+    double tempe = bstar * near[CC4][i] * t;
+    double templ = near[T2COF][i] * t2;
+
+    if (near[ISIMP][i] != 1.0) {
+      final double delomg = near[OMGCOF][i] * t;
+      final double delmtemp = 1.0 + eta * Math.cos(xmdf);
+      final double delm = near[XMCOF][i] * (delmtemp * delmtemp * delmtemp - near[DELMO][i]);
+      final double temp = delomg + delm;
+      mm = xmdf + temp;
+      argpm = argpdf - temp;
+      final double t3 = t2 * t;
+      final double t4 = t3 * t;
+      tempa = tempa - near[D2][i] * t2 - near[D3][i] * t3 - near[D4][i] * t4;
+      tempe = tempe + bstar * near[CC5][i] * (Math.sin(mm) - near[SINMAO][i]);
+      templ = templ + near[T3COF][i] * t3 + t4 * (near[T4COF][i] + t * near[T5COF][i]);
+    }
+
+    double nm = no;
+    double em = ecco;
+    double inclm = inclo;
+    if (d >= 0) {
+      // dspace, deep space secular effects and resonance integration
+      final double rptim = 4.37526908801129966e-3;
+      final double theta = (near[GSTO][i] + t * rptim) % TWO_PI;
+      em = em + deep[DEDT][d] * t;
+      inclm = inclm + deep[DIDT][d] * t;
+      argpm = argpm + deep[DOMDT][d] * t;
+      nodem = nodem + deep[DNODT][d] * t;
+      mm = mm + deep[DMDT][d] * t;
+
+      final int irez = (int) deep[IREZ][d];
+      if (irez != 0) {
+        final double fasx2 = 0.13130908;
+        final double fasx4 = 2.8843198;
+        final double fasx6 = 0.37448087;
+        final double g22 = 5.7686396;
+        final double g32 = 0.95240898;
+        final double g44 = 1.8014998;
+        final double g52 = 1.0508330;
+        final double g54 = 4.4108898;
+        final double stepp = 720.0;
+        final double stepn = -720.0;
+        final double step2 = 259200.0;
+
+        double atime = deep[ATIME][d];
+        double xli = deep[XLI][d];
+        double xni = deep[XNI][d];
+        final double xfact = deep[XFACT][d];
+        // epoch restart
+        if (atime == 0.0 || t * atime <= 0.0 || Math.abs(t) < Math.abs(atime)) {
+          atime = 0.0;
+          xni = no;
+          xli = deep[XLAMO][d];
+        }
+        final double delt = t > 0.0 ? stepp : stepn;
+        double xndt;
+        double xldot;
+        double xnddt;
+        double ft = 0.0;
+        while (true) {
+          if (irez != 2) {
+            // near synchronous resonance terms
+            final double del1 = deep[DEL1][d];
+            final double del2 = deep[DEL2][d];
+            final double del3 = deep[DEL3][d];
+            xndt = del1 * Math.sin(xli - fasx2) + del2 * Math.sin(2.0 * (xli - fasx4))
+                + del3 * Math.sin(3.0 * (xli - fasx6));
+            xldot = xni + xfact;
+            xnddt = del1 * Math.cos(xli - fasx2) + 2.0 * del2 * Math.cos(2.0 * (xli - fasx4))
+                + 3.0 * del3 * Math.cos(3.0 * (xli - fasx6));
+            xnddt = xnddt * xldot;
+          } else {
+            // near half day resonance terms
+            final double xomi = argpo + near[ARGPDOT][i] * atime;
+            final double x2omi = xomi + xomi;
+            final double x2li = xli + xli;
+            xndt = deep[D2201][d] * Math.sin(x2omi + xli - g22) + deep[D2211][d] * Math.sin(xli - g22)
+                + deep[D3210][d] * Math.sin(xomi + xli - g32) + deep[D3222][d] * Math.sin(-xomi + xli - g32)
+                + deep[D4410][d] * Math.sin(x2omi + x2li - g44) + deep[D4422][d] * Math.sin(x2li - g44)
+                + deep[D5220][d] * Math.sin(xomi + xli - g52) + deep[D5232][d] * Math.sin(-xomi + xli - g52)
+                + deep[D5421][d] * Math.sin(xomi + x2li - g54) + deep[D5433][d] * Math.sin(-xomi + x2li - g54);
+            xldot = xni + xfact;
+            xnddt = deep[D2201][d] * Math.cos(x2omi + xli - g22) + deep[D2211][d] * Math.cos(xli - g22)
+                + deep[D3210][d] * Math.cos(xomi + xli - g32) + deep[D3222][d] * Math.cos(-xomi + xli - g32)
+                + deep[D5220][d] * Math.cos(xomi + xli - g52) + deep[D5232][d] * Math.cos(-xomi + xli - g52)
+                + 2.0 * (deep[D4410][d] * Math.cos(x2omi + x2li - g44) + deep[D4422][d] * Math.cos(x2li - g44)
+                + deep[D5421][d] * Math.cos(xomi + x2li - g54) + deep[D5433][d] * Math.cos(-xomi + x2li - g54));
+            xnddt = xnddt * xldot;
+          }
+          if (Math.abs(t - atime) >= stepp) {
+            xli = xli + xldot * delt + xndt * step2;
+            xni = xni + xndt * delt + xnddt * step2;
+            atime = atime + delt;
+          } else {
+            ft = t - atime;
+            break;
+          }
+        }
+        deep[ATIME][d] = atime;
+        deep[XLI][d] = xli;
+        deep[XNI][d] = xni;
+
+        nm = xni + xndt * ft + xnddt * ft * ft * 0.5;
+        final double xl = xli + xldot * ft + xndt * ft * ft * 0.5;
+        if (irez != 1) {
+          mm = xl - 2.0 * nodem + 2.0 * theta;
+        } else {
+          mm = xl - nodem - argpm + theta;
+        }
+      }
+    }
+
+    if (nm <= 0.0) {
+      return ERROR_MEAN_MOTION;
+    }
+    final double am = Math.pow(XKE / nm, X2O3) * tempa * tempa;
+    nm = XKE / Math.pow(am, 1.5);
+    em = em - tempe;
+    if (em >= 1.0 || em < -0.001) {
+      return ERROR_ECCENTRICITY;
+    }
+    if (em < 1.0e-6) {
+      em = 1.0e-6;
+    }
+    mm = mm + no * templ;
+    double xlm = mm + argpm + nodem;
+    nodem = nodem % TWO_PI;
+    argpm = argpm % TWO_PI;
+    xlm = xlm % TWO_PI;
+    mm = (xlm - argpm - nodem) % TWO_PI;
+
+    final double sinim = Math.sin(inclm);
+    final double cosim = Math.cos(inclm);
+
+    // add lunar-solar periodics
+    double ep = em;
+    double xincp = inclm;
+    double argpp = argpm;
+    double nodep = nodem;
+    double mp = mm;
+    double sinip = sinim;
+    double cosip = cosim;
+    double aycof = near[AYCOF][i];
+    double xlcof = near[XLCOF][i];
+    double con41 = near[CON41][i];
+    double x1mth2 = near[X1MTH2][i];
+    double x7thm1 = near[X7THM1][i];
+
+    if (d >= 0) {
+      // dpper
+      final double zns = 1.19459e-5;
+      final double zes = 0.01675;
+      final double znl = 1.5835218e-4;
+      final double zel = 0.05490;
+      double zm = deep[ZMOS][d] + zns * t;
+      double zf = zm + 2.0 * zes * Math.sin(zm);
+      double sinzf = Math.sin(zf);
+      double f2 = 0.5 * sinzf * sinzf - 0.25;
+      double f3 = -0.5 * sinzf * Math.cos(zf);
+      final double ses = deep[SE2][d] * f2 + deep[SE3][d] * f3;
+      final double sis = deep[SI2][d] * f2 + deep[SI3][d] * f3;
+      final double sls = deep[SL2][d] * f2 + deep[SL3][d] * f3 + deep[SL4][d] * sinzf;
+      final double sghs = deep[SGH2][d] * f2 + deep[SGH3][d] * f3 + deep[SGH4][d] * sinzf;
+      final double shs = deep[SH2][d] * f2 + deep[SH3][d] * f3;
+      zm = deep[ZMOL][d] + znl * t;
+      zf = zm + 2.0 * zel * Math.sin(zm);
+      sinzf = Math.sin(zf);
+      f2 = 0.5 * sinzf * sinzf - 0.25;
+      f3 = -0.5 * sinzf * Math.cos(zf);
+      final double sel = deep[EE2][d] * f2 + deep[E3][d] * f3;
+      final double sil = deep[XI2][d] * f2 + deep[XI3][d] * f3;
+      final double sll = deep[XL2][d] * f2 + deep[XL3][d] * f3 + deep[XL4][d] * sinzf;
+      final double sghl = deep[XGH2][d] * f2 + deep[XGH3][d] * f3 + deep[XGH4][d] * sinzf;
+      final double shll = deep[XH2][d] * f2 + deep[XH3][d] * f3;
+      final double pe = ses + sel - deep[PEO][d];
+      final double pinc = sis + sil - deep[PINCO][d];
+      final double pl = sls + sll - deep[PLO][d];
+      double pgh = sghs + sghl - deep[PGHO][d];
+      double ph = shs + shll - deep[PHO][d];
+
+      xincp = xincp + pinc;
+      ep = ep + pe;
+      sinip = Math.sin(xincp);
+      cosip = Math.cos(xincp);
+      if (xincp >= 0.2) {
+        ph = ph / sinip;
+        pgh = pgh - cosip * ph;
+        argpp = argpp + pgh;
+        nodep = nodep + ph;
+        mp = mp + pl;
+      } else {
+        // apply periodics with lyddane modification
+        final double sinop = Math.sin(nodep);
+        final double cosop = Math.cos(nodep);
+        double alfdp = sinip * sinop;
+        double betdp = sinip * cosop;
+        final double dalf = ph * cosop + pinc * cosip * sinop;
+        final double dbet = -ph * sinop + pinc * cosip * cosop;
+        alfdp = alfdp + dalf;
+        betdp = betdp + dbet;
+        nodep = nodep % TWO_PI;
+        double xls = mp + argpp + cosip * nodep;
+        final double dls = pl + pgh - pinc * nodep * sinip;
+        xls = xls + dls;
+        final double xnoh = nodep;
+        nodep = Math.atan2(alfdp, betdp);
+        if (Math.abs(xnoh - nodep) > Math.PI) {
+          if (nodep < xnoh) {
+            nodep = nodep + TWO_PI;
+          } else {
+            nodep = nodep - TWO_PI;
+          }
+        }
+        mp = mp + pl;
+        argpp = xls - mp - cosip * nodep;
+      }
+
+      if (xincp < 0.0) {
+        xincp = -xincp;
+        nodep = nodep + Math.PI;
+        argpp = argpp - Math.PI;
+      }
+      if (ep < 0.0 || ep > 1.0) {
+        return ERROR_PERTURBED_ECCENTRICITY;
+      }
+
+      // long period periodics
+      sinip = Math.sin(xincp);
+      cosip = Math.cos(xincp);
+      aycof = -0.5 * J3OJ2 * sinip;
+      if (Math.abs(cosip + 1.0) > 1.5e-12) {
+        xlcof = -0.25 * J3OJ2 * sinip * (3.0 + 5.0 * cosip) / (1.0 + cosip);
+      } else {
+        xlcof = -0.25 * J3OJ2 * sinip * (3.0 + 5.0 * cosip) / TEMP4;
+      }
+    }
+
+    final double axnl = ep * Math.cos(argpp);
+    double temp = 1.0 / (am * (1.0 - ep * ep));
+    final double aynl = ep * Math.sin(argpp) + temp * aycof;
+    final double xl = mp + argpp + nodep + temp * xlcof * axnl;
+
+    // solve kepler's equation
+    final double u = (xl - nodep) % TWO_PI;
+    double eo1 = u;
+    double tem5 = 9999.9;
+    int ktr = 1;
+    double sineo1 = 0.0;
+    double coseo1 = 0.0;
+    while (Math.abs(tem5) >= 1.0e-12 && ktr <= 10) {
+      sineo1 = Math.sin(eo1);
+      coseo1 = Math.cos(eo1);
+      tem5 = 1.0 - coseo1 * axnl - sineo1 * aynl;
+      tem5 = (u - aynl * coseo1 + axnl * sineo1 - eo1) / tem5;
+      if (Math.abs(tem5) >= 0.95) {
+        tem5 = tem5 > 0.0 ? 0.95 : -0.95;
+      }
+      eo1 = eo1 + tem5;
+      ktr += 1;
+    }
+
+    // short period preliminary quantities
+    final double ecose = axnl * coseo1 + aynl * sineo1;
+    final double esine = axnl * sineo1 - aynl * coseo1;
+    final double el2 = axnl * axnl + aynl * aynl;
+    final double pl = am * (1.0 - el2);
+    if (pl < 0.0) {
+      return ERROR_SEMI_LATUS_RECTUM;
+    }
+    final double rl = am * (1.0 - ecose);
+    final double rdotl = Math.sqrt(am) * esine / rl;
+    final double rvdotl = Math.sqrt(pl) / rl;
+    final double betal = Math.sqrt(1.0 - el2);
+    temp = esine / (1.0 + betal);
+    final double sinu = am / rl * (sineo1 - aynl - axnl * temp);
+    final double cosu = am / rl * (coseo1 - axnl + aynl * temp);
+    double su = Math.atan2(sinu, cosu);
+    final double sin2u = (cosu + cosu) * sinu;
+    final double cos2u = 1.0 - 2.0 * sinu * sinu;
+    temp = 1.0 / pl;
+    final double temp1 = 0.5 * J2 * temp;
+    final double temp2 = temp1 * temp;
+
+    if (d >= 0) {
+      final double cosisq = cosip * cosip;
+      con41 = 3.0 * cosisq - 1.0;
+      x1mth2 = 1.0 - cosisq;
+      x7thm1 = 7.0 * cosisq - 1.0;
+    }
+
+    // update for short period periodics
+    final double mrt = rl * (1.0 - 1.5 * temp2 * betal * con41) + 0.5 * temp1 * x1mth2 * cos2u;
+    if (mrt < 1.0) {
+      return ERROR_DECAYED;
+    }
+    su = su - 0.25 * temp2 * x7thm1 * sin2u;
+    final double xnode = nodep + 1.5 * temp2 * cosip * sin2u;
+    final double xinc = xincp + 1.5 * temp2 * cosip * sinip * cos2u;
+    final double mvt = rdotl - nm * temp1 * x1mth2 * sin2u / XKE;
+    final double rvdot = rvdotl + nm * temp1 * (x1mth2 * cos2u + 1.5 * con41) / XKE;
+
+    // orientation vectors
+    final double sinsu = Math.sin(su);
+    final double cossu = Math.cos(su);
+    final double snod = Math.sin(xnode);
+    final double cnod = Math.cos(xnode);
+    final double sini = Math.sin(xinc);
+    final double cosi = Math.cos(xinc);
+    final double xmx = -snod * cosi;
+    final double xmy = cnod * cosi;
+    final double ux = xmx * sinsu + cnod * cossu;
+    final double uy = xmy * sinsu + snod * cossu;
+    final double uz = sini * sinsu;
+    final double vx = xmx * cossu - cnod * sinsu;
+    final double vy = xmy * cossu - snod * sinsu;
+    final double vz = sini * cossu;
+
+    // position and velocity in km and km/sec
+    rv[0] = mrt * ux * RADIUS_EARTH_KM;
+    rv[1] = mrt * uy * RADIUS_EARTH_KM;
+    rv[2] = mrt * uz * RADIUS_EARTH_KM;
+    rv[3] = (mvt * ux + rvdot * vx) * VKMPERSEC;
+    rv[4] = (mvt * uy + rvdot * vy) * VKMPERSEC;
+    rv[5] = (mvt * uz + rvdot * vz) * VKMPERSEC;
+    return OK;
+  }
+
+}
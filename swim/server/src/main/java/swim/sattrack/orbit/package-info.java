@@ -0,0 +1,4 @@
+/**
+ * Server side SGP4 orbit propagation for the whole satellite catalog.
+ */
+package swim.sattrack.orbit;
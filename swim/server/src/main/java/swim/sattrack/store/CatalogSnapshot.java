@@ -0,0 +1,243 @@
+package swim.sattrack.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Periodic snapshot of every satellite's state in a memory-mapped file.
+ * Satellite agents put their latest SatelliteState here at most once
+ * per interval after it changed. A single background thread writes the
+ * snapshot every interval when something changed, so lanes never wait
+ * on the disk.
+ * Each snapshot is written to a temporary file and moved over the old
+ * one, a crash mid-write leaves the previous snapshot in place.
+ *
+ * The file is a 32 byte header (magic, version, creation time,
+ * satellite count, body length, CRC32 of the body) followed by the
+ * satellites in the SnapshotCodec layout.
+ *
+ * On startup restore() maps the file and holds its satellites until
+ * each agent takes its own with takeRestored().
+ */
+public final class CatalogSnapshot {
+
+  static final int MAGIC = 0x53415453; // SATS
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+  static final long DEFAULT_INTERVAL = 10000L;
+
+  private static final CatalogSnapshot SHARED = new CatalogSnapshot();
+
+  private final Map<Integer, SatelliteState> states = new ConcurrentHashMap<>();
+  private final Map<Integer, SatelliteState> restored = new ConcurrentHashMap<>();
+  private final AtomicLong changes = new AtomicLong();
+  private long writtenChanges;
+  private final SnapshotCodec.Encoder encoder = new SnapshotCodec.Encoder();
+  private ScheduledExecutorService writer;
+  private Path path;
+  private volatile long interval = DEFAULT_INTERVAL;
+
+  public static CatalogSnapshot shared() {
+    return SHARED;
+  }
+
+  public void put(SatelliteState state) {
+    this.states.put(state.catalogNumber(), state);
+    this.changes.incrementAndGet();
+  }
+
+  public void remove(int catalogNumber) {
+    if (this.states.remove(catalogNumber) != null) {
+      this.changes.incrementAndGet();
+    }
+  }
+
+  /**
+   * remove a satellite unless its state was replaced since
+   */
+  public void remove(SatelliteState state) {
+    if (this.states.remove(state.catalogNumber(), state)) {
+      this.changes.incrementAndGet();
+    }
+  }
+
+  public int size() {
+    return this.states.size();
+  }
+
+  /**
+   * ms between snapshots, satellites put their changed state once per
+   * interval. DEFAULT_INTERVAL until the writer is started.
+   */
+  public long interval() {
+    return this.interval;
+  }
+
+  /**
+   * start writing to path every interval ms on a background thread
+   */
+  public synchronized void start(Path snapshotPath, long interval) {
+    if (this.writer != null) {
+      return;
+    }
+    this.path = snapshotPath;
+    this.interval = interval;
+    this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "catalog-snapshot");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.writer.scheduleWithFixedDelay(this::writeIfChanged, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * stop the writer after a last snapshot
+   */
+  public void stop() {
+    final ScheduledExecutorService stopping;
+    synchronized (this) {
+      stopping = this.writer;
+      this.writer = null;
+    }
+    if (stopping != null) {
+      stopping.shutdown();
+      try {
+        stopping.awaitTermination(5L, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      this.writeIfChanged();
+    }
+  }
+
+  private synchronized void writeIfChanged() {
+    final long changeCount = this.changes.get();
+    if (changeCount == this.writtenChanges || this.path == null) {
+      return;
+    }
+    try {
+      final long startTime = System.currentTimeMillis();
+      final int count = this.write(this.path);
+      this.writtenChanges = changeCount;
+      System.out.println(String.format("[CatalogSnapshot] wrote %d satellites in %d ms", count,
+          System.currentTimeMillis() - startTime));
+    } catch (Exception ex) {
+      System.out.println(String.format("[CatalogSnapshot] unable to write %s", this.path));
+      ex.printStackTrace();
+    }
+  }
+
+  /**
+   * write every satellite to snapshotPath now, returns the satellite count
+   */
+  public synchronized int write(Path snapshotPath) throws IOException {
+    final SnapshotCodec.Encoder body = this.encoder.reset();
+    int count = 0;
+    for (SatelliteState state : this.states.values()) {
+      body.writeState(state);
+      count += 1;
+    }
+    final CRC32 crc = new CRC32();
+    crc.update(body.bytes, 0, body.length);
+
+    final Path parent = snapshotPath.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    final Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0L, HEADER_SIZE + body.length);
+      mapped.putInt(MAGIC);
+      mapped.putInt(VERSION);
+      mapped.putLong(System.currentTimeMillis());
+      mapped.putInt(count);
+      mapped.putInt(body.length);
+      mapped.putLong(crc.getValue());
+      mapped.put(body.bytes, 0, body.length);
+      mapped.force();
+    }
+    Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return count;
+  }
+
+  /**
+   * map a snapshot and decode its satellites. Returns an empty list
+   * when there is no snapshot, throws when it is damaged.
+   */
+  public static List<SatelliteState> read(Path snapshotPath) throws IOException {
+    if (!Files.exists(snapshotPath)) {
+      return new ArrayList<>();
+    }
+    try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+      final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+      if (mapped.remaining() < HEADER_SIZE || mapped.getInt() != MAGIC) {
+        throw new IOException("not a catalog snapshot: " + snapshotPath);
+      }
+      final int version = mapped.getInt();
+      if (version != VERSION) {
+        throw new IOException("unsupported snapshot version " + version);
+      }
+      mapped.getLong(); // creation time
+      final int count = mapped.getInt();
+      final int bodyLength = mapped.getInt();
+      final long checksum = mapped.getLong();
+      if (mapped.remaining() < bodyLength) {
+        throw new IOException("truncated snapshot: " + snapshotPath);
+      }
+      final ByteBuffer body = mapped.slice();
+      body.limit(bodyLength);
+      final CRC32 crc = new CRC32();
+      crc.update(body.duplicate());
+      if (crc.getValue() != checksum) {
+        throw new IOException("snapshot checksum mismatch: " + snapshotPath);
+      }
+      final SnapshotCodec.Decoder decoder = new SnapshotCodec.Decoder(body);
+      final List<SatelliteState> satellites = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        satellites.add(decoder.readState());
+      }
+      return satellites;
+    }
+  }
+
+  /**
+   * read the snapshot at snapshotPath and hold its satellites for their
+   * agents, which also become the contents of the next snapshot.
+   * Returns the catalog numbers restored.
+   */
+  public int[] restore(Path snapshotPath) throws IOException {
+    final List<SatelliteState> satellites = read(snapshotPath);
+    final int[] catalogNumbers = new int[satellites.size()];
+    for (int i = 0; i < satellites.size(); i++) {
+      final SatelliteState state = satellites.get(i);
+      catalogNumbers[i] = state.catalogNumber();
+      this.restored.put(state.catalogNumber(), state);
+      this.states.putIfAbsent(state.catalogNumber(), state);
+    }
+    return catalogNumbers;
+  }
+
+  /**
+   * the restored state of a satellite, once
+   */
+  public SatelliteState takeRestored(int catalogNumber) {
+    return this.restored.remove(catalogNumber);
+  }
+
+}
@@ -0,0 +1,370 @@
+package swim.sattrack.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import swim.sattrack.util.IntLongMap;
+
+/**
+ * State of the satellites whose agents were passivated for being idle,
+ * in an append only log file. An agent hands its state over when it
+ * passivates and a background thread encodes it into the log, then
+ * drops it from the CatalogSnapshot so neither holds it on the heap.
+ * When the agent starts again it takes its state back, once: the entry
+ * is read and a tombstone appended so a restart only sees satellites
+ * which are still passivated. The log is compacted when more than half
+ * of it is dead entries.
+ *
+ * An entry is the catalog number, the payload length (-1 for a
+ * tombstone) and the CRC32 of the payload, then the payload: the
+ * satellite in the SnapshotCodec layout.
+ */
+public final class PassivationStore {
+
+  static final int ENTRY_HEADER_SIZE = 12;
+  static final int TOMBSTONE = -1;
+  static final long MIN_COMPACT_SIZE = 16L << 20;
+
+  private static final PassivationStore SHARED = new PassivationStore();
+
+  private final Map<Integer, SatelliteState> pending = new ConcurrentHashMap<>(); // handed over, not in the log yet
+  private final SnapshotCodec.Encoder encoder = new SnapshotCodec.Encoder(); // writer thread only
+  private final ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+  private final long minCompactSize; // log size below which it is never compacted
+  // everything below is guarded by this
+  private IntLongMap offsets = new IntLongMap(1024, -1L);
+  private FileChannel channel;
+  private Path path;
+  private long end;
+  private long liveSize;
+  private volatile ExecutorService writer;
+
+  PassivationStore(long minCompactSize) {
+    this.minCompactSize = minCompactSize;
+  }
+
+  private PassivationStore() {
+    this(MIN_COMPACT_SIZE);
+  }
+
+  public static PassivationStore shared() {
+    return SHARED;
+  }
+
+  /**
+   * open the log at logPath, indexing the satellites already in it
+   */
+  public synchronized void open(Path logPath) throws IOException {
+    if (this.channel != null) {
+      return;
+    }
+    final Path parent = logPath.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    this.channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.path = logPath;
+    scan();
+    this.writer = Executors.newSingleThreadExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "passivation-store");
+      thread.setDaemon(true);
+      return thread;
+    });
+    System.out.println(String.format("[PassivationStore] %d passivated satellites in %s", this.offsets.size(), logPath));
+  }
+
+  public boolean isOpen() {
+    return this.channel != null;
+  }
+
+  /**
+   * satellites passivated, written or not
+   */
+  public synchronized int size() {
+    return this.offsets.size() + this.pending.size();
+  }
+
+  /**
+   * hand over the state of a satellite whose agent is about to stop.
+   * Returns false when the store is not open.
+   */
+  public boolean passivate(SatelliteState state) {
+    final ExecutorService executor = this.writer;
+    if (executor == null) {
+      return false;
+    }
+    this.pending.put(state.catalogNumber(), state);
+    try {
+      executor.execute(() -> write(state));
+    } catch (RejectedExecutionException ex) {
+      // closing
+      this.pending.remove(state.catalogNumber(), state);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * the state of a passivated satellite, or null. Only the first call
+   * after a passivation gets it.
+   */
+  public synchronized SatelliteState take(int catalogNumber) {
+    final SatelliteState unwritten = this.pending.remove(catalogNumber);
+    if (unwritten != null || this.channel == null) {
+      return unwritten;
+    }
+    final long offset = this.offsets.remove(catalogNumber);
+    if (offset < 0L) {
+      return null;
+    }
+    try {
+      final int length = readHeader(offset);
+      this.liveSize -= ENTRY_HEADER_SIZE + length;
+      append(catalogNumber, null, 0, TOMBSTONE, 0);
+    } catch (IOException ex) {
+      System.out.println(String.format("[PassivationStore] unable to read %d", catalogNumber));
+      ex.printStackTrace();
+      return null;
+    }
+    return readState(catalogNumber, offset);
+  }
+
+  /**
+   * hand the state of every passivated satellite to action without
+   * taking it back, for the aggregation to list them after a restart.
+   * Entries which cannot be read are skipped.
+   */
+  public synchronized void forEach(Consumer<SatelliteState> action) {
+    for (SatelliteState unwritten : this.pending.values()) {
+      action.accept(unwritten);
+    }
+    if (this.channel == null) {
+      return;
+    }
+    long position = 0L;
+    try {
+      while (position < this.end) {
+        final int length = readHeader(position);
+        final int catalogNumber = this.header.getInt(0);
+        if (length != TOMBSTONE && this.offsets.get(catalogNumber) == position) {
+          final SatelliteState state = readState(catalogNumber, position);
+          if (state != null) {
+            action.accept(state);
+          }
+        }
+        position += ENTRY_HEADER_SIZE + Math.max(0, length);
+      }
+    } catch (IOException ex) {
+      System.out.println(String.format("[PassivationStore] unable to read the entry at %d", position));
+      ex.printStackTrace();
+    }
+  }
+
+  /**
+   * write whatever was handed over and close the log
+   */
+  public void close() {
+    final ExecutorService stopping;
+    synchronized (this) {
+      stopping = this.writer;
+      this.writer = null;
+    }
+    if (stopping == null) {
+      return;
+    }
+    stopping.shutdown();
+    try {
+      stopping.awaitTermination(5L, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      try {
+        this.channel.force(false);
+        this.channel.close();
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+      this.channel = null;
+    }
+  }
+
+  /**
+   * writer thread: encode a handed over state into the log unless its
+   * agent already took it back
+   */
+  private void write(SatelliteState state) {
+    final SnapshotCodec.Encoder payload = this.encoder.reset();
+    payload.writeState(state);
+    final CRC32 crc = new CRC32();
+    crc.update(payload.bytes, 0, payload.length);
+    synchronized (this) {
+      if (this.pending.get(state.catalogNumber()) != state || this.channel == null) {
+        return;
+      }
+      try {
+        forget(state.catalogNumber());
+        final long offset = append(state.catalogNumber(), payload.bytes, payload.length, payload.length, (int) crc.getValue());
+        this.offsets.put(state.catalogNumber(), offset);
+        this.liveSize += ENTRY_HEADER_SIZE + payload.length;
+        this.pending.remove(state.catalogNumber());
+        CatalogSnapshot.shared().remove(state);
+        if (this.end > this.minCompactSize && this.end - this.liveSize > this.liveSize) {
+          compact();
+        }
+      } catch (IOException ex) {
+        // keep it pending, it is still on the heap for take()
+        System.out.println(String.format("[PassivationStore] unable to write %d", state.catalogNumber()));
+        ex.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * decode the entry at offset, or null when it is damaged
+   */
+  private SatelliteState readState(int catalogNumber, long offset) {
+    try {
+      final int length = readHeader(offset);
+      final int checksum = this.header.getInt(8);
+      final ByteBuffer payload = ByteBuffer.allocate(length);
+      readFully(payload, offset + ENTRY_HEADER_SIZE);
+      final CRC32 crc = new CRC32();
+      crc.update(payload.array(), 0, length);
+      if ((int) crc.getValue() != checksum) {
+        System.out.println(String.format("[PassivationStore] damaged entry for %d", catalogNumber));
+        return null;
+      }
+      payload.flip();
+      return new SnapshotCodec.Decoder(payload).readState();
+    } catch (Exception ex) {
+      System.out.println(String.format("[PassivationStore] unable to read %d", catalogNumber));
+      ex.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * rebuild the index from the log, cutting off a torn last entry
+   */
+  private void scan() throws IOException {
+    final long size = this.channel.size();
+    long position = 0L;
+    while (position + ENTRY_HEADER_SIZE <= size) {
+      final int length = readHeader(position);
+      final int catalogNumber = this.header.getInt(0);
+      if (length < TOMBSTONE || position + ENTRY_HEADER_SIZE + Math.max(0, length) > size) {
+        break;
+      }
+      forget(catalogNumber);
+      if (length != TOMBSTONE) {
+        this.offsets.put(catalogNumber, position);
+        this.liveSize += ENTRY_HEADER_SIZE + length;
+      }
+      position += ENTRY_HEADER_SIZE + Math.max(0, length);
+    }
+    if (position < size) {
+      System.out.println(String.format("[PassivationStore] dropping %d bytes of a torn entry", size - position));
+      this.channel.truncate(position);
+    }
+    this.end = position;
+  }
+
+  /**
+   * copy the live entries to a new log and swap it in
+   */
+  private void compact() throws IOException {
+    final long startTime = System.currentTimeMillis();
+    final Path tempPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+    final IntLongMap moved = new IntLongMap(this.offsets.size(), -1L);
+    long written = 0L;
+    try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      long position = 0L;
+      while (position < this.end) {
+        final int length = readHeader(position);
+        final int catalogNumber = this.header.getInt(0);
+        final long entrySize = ENTRY_HEADER_SIZE + Math.max(0, length);
+        if (length != TOMBSTONE && this.offsets.get(catalogNumber) == position) {
+          long copied = 0L;
+          while (copied < entrySize) {
+            copied += this.channel.transferTo(position + copied, entrySize - copied, out);
+          }
+          moved.put(catalogNumber, written);
+          written += entrySize;
+        }
+        position += entrySize;
+      }
+      out.force(false);
+    }
+    this.channel.close();
+    Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    System.out.println(String.format("[PassivationStore] compacted %d to %d bytes in %d ms", this.end, written,
+        System.currentTimeMillis() - startTime));
+    this.offsets = moved;
+    this.end = written;
+    this.liveSize = written;
+  }
+
+  /**
+   * drop the live entry of a satellite from the index, if any
+   */
+  private void forget(int catalogNumber) throws IOException {
+    final long previous = this.offsets.remove(catalogNumber);
+    if (previous >= 0L) {
+      this.liveSize -= ENTRY_HEADER_SIZE + readHeader(previous);
+    }
+  }
+
+  /**
+   * returns the offset of the new entry
+   */
+  private long append(int catalogNumber, byte[] payload, int payloadLength, int length, int checksum) throws IOException {
+    final ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_SIZE + payloadLength);
+    entry.putInt(catalogNumber).putInt(length).putInt(checksum);
+    if (payload != null) {
+      entry.put(payload, 0, payloadLength);
+    }
+    entry.flip();
+    final long offset = this.end;
+    while (entry.hasRemaining()) {
+      this.channel.write(entry, offset + entry.position());
+    }
+    this.end = offset + ENTRY_HEADER_SIZE + payloadLength;
+    return offset;
+  }
+
+  /**
+   * read the entry header at offset into header, returns the payload length
+   */
+  private int readHeader(long offset) throws IOException {
+    this.header.clear();
+    readFully(this.header, offset);
+    return this.header.getInt(4);
+  }
+
+  private void readFully(ByteBuffer buffer, long offset) throws IOException {
+    final int start = buffer.position();
+    while (buffer.hasRemaining()) {
+      if (this.channel.read(buffer, offset + buffer.position() - start) < 0) {
+        throw new EOFException();
+      }
+    }
+  }
+
+}
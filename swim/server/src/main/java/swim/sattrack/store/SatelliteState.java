@@ -0,0 +1,81 @@
+package swim.sattrack.store;
+
+import swim.structure.Value;
+
+/**
+ * What a SatelliteAgent needs to come back after a restart: its latest
+ * full row (which holds the TLE), its position and its track history,
+ * oldest point first. Immutable once handed to the CatalogSnapshot.
+ */
+public final class SatelliteState {
+
+  private final int catalogNumber;
+  private final long lastUpdate;
+  private final Value row;
+  private final double latitude;
+  private final double longitude;
+  private final double height;
+  private final long[] trackTimestamps;
+  private final float[] trackLatitudes;
+  private final float[] trackLongitudes;
+  private final float[] trackHeights;
+
+  public SatelliteState(int catalogNumber, long lastUpdate, Value row, double latitude, double longitude, double height,
+                        long[] trackTimestamps, float[] trackLatitudes, float[] trackLongitudes, float[] trackHeights) {
+    this.catalogNumber = catalogNumber;
+    this.lastUpdate = lastUpdate;
+    this.row = row;
+    this.latitude = latitude;
+    this.longitude = longitude;
+    this.height = height;
+    this.trackTimestamps = trackTimestamps;
+    this.trackLatitudes = trackLatitudes;
+    this.trackLongitudes = trackLongitudes;
+    this.trackHeights = trackHeights;
+  }
+
+  public int catalogNumber() {
+    return this.catalogNumber;
+  }
+
+  public long lastUpdate() {
+    return this.lastUpdate;
+  }
+
+  public Value row() {
+    return this.row;
+  }
+
+  public double latitude() {
+    return this.latitude;
+  }
+
+  public double longitude() {
+    return this.longitude;
+  }
+
+  public double height() {
+    return this.height;
+  }
+
+  public int trackSize() {
+    return this.trackTimestamps.length;
+  }
+
+  public long trackTimestamp(int i) {
+    return this.trackTimestamps[i];
+  }
+
+  public float trackLatitude(int i) {
+    return this.trackLatitudes[i];
+  }
+
+  public float trackLongitude(int i) {
+    return this.trackLongitudes[i];
+  }
+
+  public float trackHeight(int i) {
+    return this.trackHeights[i];
+  }
+
+}
@@ -0,0 +1,310 @@
+package swim.sattrack.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import swim.structure.Bool;
+import swim.structure.Data;
+import swim.structure.Field;
+import swim.structure.Item;
+import swim.structure.Num;
+import swim.structure.Record;
+import swim.structure.Text;
+import swim.structure.Value;
+
+/**
+ * Binary layout of the satellites in a snapshot. Per satellite:
+ *   varint catalog number, varint lastUpdate,
+ *   double latitude, longitude and height,
+ *   varint track size, then the first timestamp as a varint and the
+ *   rest as zigzag varint gaps, then float latitudes, longitudes and heights,
+ *   the full row as a tagged value.
+ * Slot keys are written once per snapshot and referred to by index
+ * after that, so the repeated field names of 16k rows cost a byte each.
+ */
+final class SnapshotCodec {
+
+  static final int ABSENT = 0;
+  static final int EXTANT = 1;
+  static final int TEXT = 2;
+  static final int LONG = 3;
+  static final int DOUBLE = 4;
+  static final int TRUE = 5;
+  static final int FALSE = 6;
+  static final int DATA = 7;
+  static final int RECORD = 8;
+
+  static final int ITEM = 0;
+  static final int SLOT = 1;
+  static final int NEW_KEY = 0;
+  static final int KEY_REF = 1;
+
+  private SnapshotCodec() {
+  }
+
+  /**
+   * growable byte buffer reused between snapshots, owned by the writer thread
+   */
+  static final class Encoder {
+
+    private final Map<String, Integer> keys = new HashMap<>();
+    byte[] bytes = new byte[1 << 16];
+    int length;
+
+    Encoder reset() {
+      this.length = 0;
+      this.keys.clear();
+      return this;
+    }
+
+    void writeState(SatelliteState state) {
+      writeVarint(state.catalogNumber());
+      writeVarint(state.lastUpdate());
+      writeDouble(state.latitude());
+      writeDouble(state.longitude());
+      writeDouble(state.height());
+      final int size = state.trackSize();
+      writeVarint(size);
+      long last = 0L;
+      for (int i = 0; i < size; i++) {
+        final long timestamp = state.trackTimestamp(i);
+        if (i == 0) {
+          writeVarint(timestamp);
+        } else {
+          writeZigzag(timestamp - last);
+        }
+        last = timestamp;
+      }
+      for (int i = 0; i < size; i++) {
+        writeInt(Float.floatToRawIntBits(state.trackLatitude(i)));
+      }
+      for (int i = 0; i < size; i++) {
+        writeInt(Float.floatToRawIntBits(state.trackLongitude(i)));
+      }
+      for (int i = 0; i < size; i++) {
+        writeInt(Float.floatToRawIntBits(state.trackHeight(i)));
+      }
+      writeValue(state.row() != null ? state.row() : Value.absent());
+    }
+
+    void writeValue(Value value) {
+      if (value instanceof Record) {
+        writeByte(RECORD);
+        writeVarint(value.length());
+        for (Item item : value) {
+          if (item instanceof Field) {
+            writeByte(SLOT);
+            writeKey(item.key().stringValue(""));
+          } else {
+            writeByte(ITEM);
+          }
+          writeValue(item.toValue());
+        }
+      } else if (value instanceof Text) {
+        writeByte(TEXT);
+        writeString(value.stringValue());
+      } else if (value instanceof Num) {
+        final double doubleValue = value.doubleValue();
+        final long longValue = value.longValue();
+        if ((double) longValue == doubleValue) {
+          writeByte(LONG);
+          writeZigzag(longValue);
+        } else {
+          writeByte(DOUBLE);
+          writeDouble(doubleValue);
+        }
+      } else if (value instanceof Bool) {
+        writeByte(value.booleanValue() ? TRUE : FALSE);
+      } else if (value instanceof Data) {
+        final byte[] data = ((Data) value).toByteArray();
+        writeByte(DATA);
+        writeVarint(data.length);
+        writeBytes(data);
+      } else if (value.isDefined()) {
+        writeByte(EXTANT);
+      } else {
+        writeByte(ABSENT);
+      }
+    }
+
+    private void writeKey(String key) {
+      final Integer index = this.keys.get(key);
+      if (index != null) {
+        writeByte(KEY_REF);
+        writeVarint(index);
+      } else {
+        writeByte(NEW_KEY);
+        writeString(key);
+        this.keys.put(key, this.keys.size());
+      }
+    }
+
+    private void writeString(String string) {
+      final byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+      writeVarint(utf8.length);
+      writeBytes(utf8);
+    }
+
+    private void ensure(int count) {
+      if (this.length + count > this.bytes.length) {
+        this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length << 1, this.length + count));
+      }
+    }
+
+    void writeByte(int value) {
+      ensure(1);
+      this.bytes[this.length] = (byte) value;
+      this.length += 1;
+    }
+
+    void writeBytes(byte[] data) {
+      ensure(data.length);
+      System.arraycopy(data, 0, this.bytes, this.length, data.length);
+      this.length += data.length;
+    }
+
+    void writeInt(int value) {
+      writeByte(value >>> 24);
+      writeByte(value >>> 16);
+      writeByte(value >>> 8);
+      writeByte(value);
+    }
+
+    void writeDouble(double value) {
+      final long bits = Double.doubleToRawLongBits(value);
+      writeInt((int) (bits >>> 32));
+      writeInt((int) bits);
+    }
+
+    void writeVarint(long value) {
+      while ((value & ~0x7FL) != 0L) {
+        writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      writeByte((int) value);
+    }
+
+    void writeZigzag(long value) {
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+
+  }
+
+  /**
+   * reads satellites back from a (mapped) buffer positioned at the first one
+   */
+  static final class Decoder {
+
+    private final ByteBuffer buffer;
+    private final List<String> keys = new ArrayList<>();
+
+    Decoder(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    SatelliteState readState() {
+      final int catalogNumber = (int) readVarint();
+      final long lastUpdate = readVarint();
+      final double latitude = this.buffer.getDouble();
+      final double longitude = this.buffer.getDouble();
+      final double height = this.buffer.getDouble();
+      final int size = (int) readVarint();
+      final long[] timestamps = new long[size];
+      for (int i = 0; i < size; i++) {
+        timestamps[i] = i == 0 ? readVarint() : timestamps[i - 1] + readZigzag();
+      }
+      final float[] latitudes = readFloats(size);
+      final float[] longitudes = readFloats(size);
+      final float[] heights = readFloats(size);
+      final Value row = readValue();
+      return new SatelliteState(catalogNumber, lastUpdate, row, latitude, longitude, height,
+          timestamps, latitudes, longitudes, heights);
+    }
+
+    Value readValue() {
+      final int tag = this.buffer.get();
+      switch (tag) {
+        case RECORD:
+          final int size = (int) readVarint();
+          final Record record = Record.create(size);
+          for (int i = 0; i < size; i++) {
+            if (this.buffer.get() == SLOT) {
+              final String key = readKey();
+              record.slot(key, readValue());
+            } else {
+              record.item(readValue());
+            }
+          }
+          return record;
+        case TEXT:
+          return Text.from(readString());
+        case LONG:
+          final long longValue = readZigzag();
+          return longValue == (int) longValue ? Num.from((int) longValue) : Num.from(longValue);
+        case DOUBLE:
+          return Num.from(this.buffer.getDouble());
+        case TRUE:
+          return Bool.from(true);
+        case FALSE:
+          return Bool.from(false);
+        case DATA:
+          final byte[] data = new byte[(int) readVarint()];
+          this.buffer.get(data);
+          return Data.wrap(data);
+        case EXTANT:
+          return Value.extant();
+        case ABSENT:
+          return Value.absent();
+        default:
+          throw new IllegalStateException("unknown value tag " + tag);
+      }
+    }
+
+    private String readKey() {
+      if (this.buffer.get() == KEY_REF) {
+        return this.keys.get((int) readVarint());
+      }
+      final String key = readString();
+      this.keys.add(key);
+      return key;
+    }
+
+    private String readString() {
+      final byte[] utf8 = new byte[(int) readVarint()];
+      this.buffer.get(utf8);
+      return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private float[] readFloats(int size) {
+      final float[] values = new float[size];
+      for (int i = 0; i < size; i++) {
+        values[i] = this.buffer.getFloat();
+      }
+      return values;
+    }
+
+    long readVarint() {
+      long value = 0L;
+      int shift = 0;
+      int b;
+      do {
+        b = this.buffer.get();
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    long readZigzag() {
+      final long value = readVarint();
+      return (value >>> 1) ^ -(value & 1L);
+    }
+
+  }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * On disk state used to warm restart the tracker.
+ */
+package swim.sattrack.store;
@@ -0,0 +1,156 @@
+package swim.sattrack.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing int to int hash map with no boxing.
+ * Used to index catalog numbers into primitive column stores.
+ * Not thread safe.
+ */
+public final class IntIntMap {
+
+  private static final int FREE = Integer.MIN_VALUE; // catalog numbers are never negative
+
+  private int[] keys;
+  private int[] values;
+  private int size;
+  private int mask;
+  private final int missingValue;
+
+  public IntIntMap(int expectedSize, int missingValue) {
+    final int capacity = tableSize(expectedSize);
+    this.keys = new int[capacity];
+    this.values = new int[capacity];
+    this.mask = capacity - 1;
+    this.missingValue = missingValue;
+    Arrays.fill(this.keys, FREE);
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public int get(int key) {
+    int index = mix(key) & this.mask;
+    while (true) {
+      final int k = this.keys[index];
+      if (k == key) {
+        return this.values[index];
+      } else if (k == FREE) {
+        return this.missingValue;
+      }
+      index = (index + 1) & this.mask;
+    }
+  }
+
+  public boolean containsKey(int key) {
+    int index = mix(key) & this.mask;
+    while (true) {
+      final int k = this.keys[index];
+      if (k == key) {
+        return true;
+      } else if (k == FREE) {
+        return false;
+      }
+      index = (index + 1) & this.mask;
+    }
+  }
+
+  /**
+   * returns the previous value or the missing value
+   */
+  public int put(int key, int value) {
+    if (key == FREE) {
+      throw new IllegalArgumentException("reserved key " + key);
+    }
+    int index = mix(key) & this.mask;
+    while (true) {
+      final int k = this.keys[index];
+      if (k == key) {
+        final int old = this.values[index];
+        this.values[index] = value;
+        return old;
+      } else if (k == FREE) {
+        this.keys[index] = key;
+        this.values[index] = value;
+        this.size += 1;
+        if (this.size * 4 > this.keys.length * 3) {
+          rehash(this.keys.length << 1);
+        }
+        return this.missingValue;
+      }
+      index = (index + 1) & this.mask;
+    }
+  }
+
+  /**
+   * returns the removed value or the missing value
+   */
+  public int remove(int key) {
+    int index = mix(key) & this.mask;
+    while (true) {
+      final int k = this.keys[index];
+      if (k == key) {
+        final int old = this.values[index];
+        shiftDown(index);
+        this.size -= 1;
+        return old;
+      } else if (k == FREE) {
+        return this.missingValue;
+      }
+      index = (index + 1) & this.mask;
+    }
+  }
+
+  /**
+   * backward shift deletion keeps probe chains intact without tombstones
+   */
+  private void shiftDown(int index) {
+    int last = index;
+    int next = (index + 1) & this.mask;
+    while (this.keys[next] != FREE) {
+      final int home = mix(this.keys[next]) & this.mask;
+      if (last <= next ? (home <= last || home > next) : (home <= last && home > next)) {
+        this.keys[last] = this.keys[next];
+        this.values[last] = this.values[next];
+        last = next;
+      }
+      next = (next + 1) & this.mask;
+    }
+    this.keys[last] = FREE;
+  }
+
+  private void rehash(int capacity) {
+    final int[] oldKeys = this.keys;
+    final int[] oldValues = this.values;
+    this.keys = new int[capacity];
+    this.values = new int[capacity];
+    this.mask = capacity - 1;
+    Arrays.fill(this.keys, FREE);
+    for (int i = 0; i < oldKeys.length; i++) {
+      final int k = oldKeys[i];
+      if (k != FREE) {
+        int index = mix(k) & this.mask;
+        while (this.keys[index] != FREE) {
+          index = (index + 1) & this.mask;
+        }
+        this.keys[index] = k;
+        this.values[index] = oldValues[i];
+      }
+    }
+  }
+
+  static int tableSize(int expectedSize) {
+    int capacity = 16;
+    while (capacity * 3 < expectedSize * 4) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  static int mix(int key) {
+    final int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+}
@@ -0,0 +1,143 @@
+package swim.sattrack.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing int to long hash map with no boxing, the IntIntMap
+ * layout with long values, for file offsets and the like keyed by
+ * catalog number. Not thread safe.
+ */
+public final class IntLongMap {
+
+  private static final int FREE = Integer.MIN_VALUE; // catalog numbers are never negative
+
+  private int[] keys;
+  private long[] values;
+  private int size;
+  private int mask;
+  private final long missingValue;
+
+  public IntLongMap(int expectedSize, long missingValue) {
+    final int capacity = IntIntMap.tableSize(expectedSize);
+    this.keys = new int[capacity];
+    this.values = new long[capacity];
+    this.mask = capacity - 1;
+    this.missingValue = missingValue;
+    Arrays.fill(this.keys, FREE);
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public long get(int key) {
+    int index = IntIntMap.mix(key) & this.mask;
+    while (true) {
+      final int k = this.keys[index];
+      if (k == key) {
+        return this.values[index];
+      } else if (k == FREE) {
+        return this.missingValue;
+      }
+      index = (index + 1) & this.mask;
+    }
+  }
+
+  public boolean containsKey(int key) {
+    int index = IntIntMap.mix(key) & this.mask;
+    while (true) {
+      final int k = this.keys[index];
+      if (k == key) {
+        return true;
+      } else if (k == FREE) {
+        return false;
+      }
+      index = (index + 1) & this.mask;
+    }
+  }
+
+  /**
+   * returns the previous value or the missing value
+   */
+  public long put(int key, long value) {
+    if (key == FREE) {
+      throw new IllegalArgumentException("reserved key " + key);
+    }
+    int index = IntIntMap.mix(key) & this.mask;
+    while (true) {
+      final int k = this.keys[index];
+      if (k == key) {
+        final long old = this.values[index];
+        this.values[index] = value;
+        return old;
+      } else if (k == FREE) {
+        this.keys[index] = key;
+        this.values[index] = value;
+        this.size += 1;
+        if (this.size * 4 > this.keys.length * 3) {
+          rehash(this.keys.length << 1);
+        }
+        return this.missingValue;
+      }
+      index = (index + 1) & this.mask;
+    }
+  }
+
+  /**
+   * returns the removed value or the missing value
+   */
+  public long remove(int key) {
+    int index = IntIntMap.mix(key) & this.mask;
+    while (true) {
+      final int k = this.keys[index];
+      if (k == key) {
+        final long old = this.values[index];
+        shiftDown(index);
+        this.size -= 1;
+        return old;
+      } else if (k == FREE) {
+        return this.missingValue;
+      }
+      index = (index + 1) & this.mask;
+    }
+  }
+
+  /**
+   * backward shift deletion keeps probe chains intact without tombstones
+   */
+  private void shiftDown(int index) {
+    int last = index;
+    int next = (index + 1) & this.mask;
+    while (this.keys[next] != FREE) {
+      final int home = IntIntMap.mix(this.keys[next]) & this.mask;
+      if (last <= next ? (home <= last || home > next) : (home <= last && home > next)) {
+        this.keys[last] = this.keys[next];
+        this.values[last] = this.values[next];
+        last = next;
+      }
+      next = (next + 1) & this.mask;
+    }
+    this.keys[last] = FREE;
+  }
+
+  private void rehash(int capacity) {
+    final int[] oldKeys = this.keys;
+    final long[] oldValues = this.values;
+    this.keys = new int[capacity];
+    this.values = new long[capacity];
+    this.mask = capacity - 1;
+    Arrays.fill(this.keys, FREE);
+    for (int i = 0; i < oldKeys.length; i++) {
+      final int k = oldKeys[i];
+      if (k != FREE) {
+        int index = IntIntMap.mix(k) & this.mask;
+        while (this.keys[index] != FREE) {
+          index = (index + 1) & this.mask;
+        }
+        this.keys[index] = k;
+        this.values[index] = oldValues[i];
+      }
+    }
+  }
+
+}
@@ -0,0 +1,103 @@
+package swim.sattrack.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing long to int hash map with no boxing, for keys such
+ * as packed spatial hash cells. Insert and lookup only, clear() keeps
+ * the table so it can be refilled without allocating. Not thread safe.
+ */
+public final class LongIntMap {
+
+  private static final long FREE = Long.MIN_VALUE;
+
+  private long[] keys;
+  private int[] values;
+  private int size;
+  private int mask;
+  private final int missingValue;
+
+  public LongIntMap(int expectedSize, int missingValue) {
+    final int capacity = IntIntMap.tableSize(expectedSize);
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+    this.mask = capacity - 1;
+    this.missingValue = missingValue;
+    Arrays.fill(this.keys, FREE);
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public int get(long key) {
+    int index = mix(key) & this.mask;
+    while (true) {
+      final long k = this.keys[index];
+      if (k == key) {
+        return this.values[index];
+      } else if (k == FREE) {
+        return this.missingValue;
+      }
+      index = (index + 1) & this.mask;
+    }
+  }
+
+  /**
+   * returns the previous value or the missing value
+   */
+  public int put(long key, int value) {
+    if (key == FREE) {
+      throw new IllegalArgumentException("reserved key " + key);
+    }
+    int index = mix(key) & this.mask;
+    while (true) {
+      final long k = this.keys[index];
+      if (k == key) {
+        final int old = this.values[index];
+        this.values[index] = value;
+        return old;
+      } else if (k == FREE) {
+        this.keys[index] = key;
+        this.values[index] = value;
+        this.size += 1;
+        if (this.size * 4 > this.keys.length * 3) {
+          rehash(this.keys.length << 1);
+        }
+        return this.missingValue;
+      }
+      index = (index + 1) & this.mask;
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(this.keys, FREE);
+    this.size = 0;
+  }
+
+  private void rehash(int capacity) {
+    final long[] oldKeys = this.keys;
+    final int[] oldValues = this.values;
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+    this.mask = capacity - 1;
+    Arrays.fill(this.keys, FREE);
+    for (int i = 0; i < oldKeys.length; i++) {
+      final long k = oldKeys[i];
+      if (k != FREE) {
+        int index = mix(k) & this.mask;
+        while (this.keys[index] != FREE) {
+          index = (index + 1) & this.mask;
+        }
+        this.keys[index] = k;
+        this.values[index] = oldValues[i];
+      }
+    }
+  }
+
+  static int mix(long key) {
+    final long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+}
@@ -0,0 +1,53 @@
+package swim.sattrack.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding for low cardinality string columns such as
+ * satellite type or country code. Each distinct string is stored once
+ * and rows keep a small int code. Codes are never reused. Not thread safe.
+ */
+public final class StringDictionary {
+
+  public static final int NONE = -1; // code for a missing value
+
+  private final Map<String, Integer> codes = new HashMap<>();
+  private final List<String> strings = new ArrayList<>();
+
+  /**
+   * code for the given string, adding it when it is new
+   */
+  public int encode(String value) {
+    if (value == null) {
+      return NONE;
+    }
+    final Integer code = this.codes.get(value);
+    if (code != null) {
+      return code;
+    }
+    final int newCode = this.strings.size();
+    this.codes.put(value, newCode);
+    this.strings.add(value);
+    return newCode;
+  }
+
+  /**
+   * code for the given string or NONE when it has never been seen
+   */
+  public int codeOf(String value) {
+    final Integer code = value != null ? this.codes.get(value) : null;
+    return code != null ? code : NONE;
+  }
+
+  public String decode(int code) {
+    return code >= 0 && code < this.strings.size() ? this.strings.get(code) : null;
+  }
+
+  public int size() {
+    return this.strings.size();
+  }
+
+}
@@ -0,0 +1,191 @@
+package swim.sattrack.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Fixed capacity ring buffer of track points (timestamp, latitude,
+ * longitude, height) held in preallocated primitive arrays.
+ * Appending is O(1) and overwrites the oldest point once full.
+ * Timestamps are kept in increasing order: a point with the timestamp
+ * of the latest one replaces it and an older point is rejected.
+ * Not thread safe.
+ */
+public final class TrackRing {
+
+  public static final long NONE = Long.MIN_VALUE; // no timestamp
+  public static final long REJECTED = Long.MIN_VALUE + 1; // append of a point older than the latest
+
+  private final long[] timestamps;
+  private final double[] latitudes;
+  private final double[] longitudes;
+  private final double[] heights;
+  private int head; // index of the oldest point
+  private int size;
+
+  public TrackRing(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity " + capacity);
+    }
+    this.timestamps = new long[capacity];
+    this.latitudes = new double[capacity];
+    this.longitudes = new double[capacity];
+    this.heights = new double[capacity];
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public int capacity() {
+    return this.timestamps.length;
+  }
+
+  /**
+   * add a point, returns the timestamp of the point it evicted, NONE,
+   * or REJECTED when it is older than the latest point
+   */
+  public long append(long timestamp, double latitude, double longitude, double height) {
+    if (this.size > 0 && timestamp <= timestamp(this.size - 1)) {
+      if (timestamp < timestamp(this.size - 1)) {
+        return REJECTED;
+      }
+      final int last = physical(this.size - 1);
+      this.latitudes[last] = latitude;
+      this.longitudes[last] = longitude;
+      this.heights[last] = height;
+      return NONE;
+    }
+    long evicted = NONE;
+    int index;
+    if (this.size == this.timestamps.length) {
+      index = this.head;
+      evicted = this.timestamps[index];
+      this.head = (this.head + 1) % this.timestamps.length;
+    } else {
+      index = physical(this.size);
+      this.size += 1;
+    }
+    this.timestamps[index] = timestamp;
+    this.latitudes[index] = latitude;
+    this.longitudes[index] = longitude;
+    this.heights[index] = height;
+    return evicted;
+  }
+
+  /**
+   * drop the oldest point, returns its timestamp or NONE when empty
+   */
+  public long removeOldest() {
+    if (this.size == 0) {
+      return NONE;
+    }
+    final long timestamp = this.timestamps[this.head];
+    this.head = (this.head + 1) % this.timestamps.length;
+    this.size -= 1;
+    return timestamp;
+  }
+
+  /**
+   * timestamp of the oldest point or NONE when empty
+   */
+  public long oldestTimestamp() {
+    return this.size > 0 ? this.timestamps[this.head] : NONE;
+  }
+
+  // point accessors, i = 0 is the oldest point
+
+  public long timestamp(int i) {
+    return this.timestamps[physical(i)];
+  }
+
+  public double latitude(int i) {
+    return this.latitudes[physical(i)];
+  }
+
+  public double longitude(int i) {
+    return this.longitudes[physical(i)];
+  }
+
+  public double height(int i) {
+    return this.heights[physical(i)];
+  }
+
+  /**
+   * position of the point with the given timestamp or -1
+   */
+  public int indexOf(long timestamp) {
+    int low = 0;
+    int high = this.size - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final long t = timestamp(middle);
+      if (t < timestamp) {
+        low = middle + 1;
+      } else if (t > timestamp) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Pick at most maxPoints points spread evenly over the time covered
+   * by the ring, the newest point in each time bucket. The newest point
+   * overall is always included. Returns the positions of the picked points.
+   */
+  public int downsample(int maxPoints, int[] picked) {
+    if (this.size <= maxPoints) {
+      for (int i = 0; i < this.size; i++) {
+        picked[i] = i;
+      }
+      return this.size;
+    }
+    final long first = timestamp(0);
+    final long span = timestamp(this.size - 1) - first + 1;
+    int count = 0;
+    int lastBucket = -1;
+    for (int i = 0; i < this.size; i++) {
+      final int bucket = (int) ((timestamp(i) - first) * maxPoints / span);
+      if (bucket == lastBucket) {
+        picked[count - 1] = i; // keep the newest point of the bucket
+      } else {
+        picked[count] = i;
+        count += 1;
+        lastBucket = bucket;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * boxed timestamps, only used when a downlink syncs
+   */
+  public Iterator<Long> timestamps() {
+    return new Iterator<Long>() {
+      int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.next < TrackRing.this.size;
+      }
+
+      @Override
+      public Long next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final long timestamp = timestamp(this.next);
+        this.next += 1;
+        return timestamp;
+      }
+    };
+  }
+
+  private int physical(int i) {
+    return (this.head + i) % this.timestamps.length;
+  }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Small primitive collections shared by the agents.
+ */
+package swim.sattrack.util;
@@ -0,0 +1,122 @@
+package swim.sattrack.agents.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * JsonPatch operations on a layout: appending with "-", array index
+ * bounds, moves into the moved value itself and the document being left
+ * as it was when any operation of a patch fails.
+ */
+public class JsonPatchTest {
+
+  private static Record layout() {
+    return Record.create(3)
+        .slot("title", "Layout")
+        .slot("widgets", Record.of("a", "b", "c"))
+        .slot("style", Record.create(1).slot("width", 100));
+  }
+
+  private static Record op(String op, String path, Object value) {
+    final Record operation = Record.create(3).slot("op", op).slot("path", path);
+    if (value != null) {
+      operation.slot("value", Value.fromObject(value));
+    }
+    return operation;
+  }
+
+  private static Record move(String from, String path) {
+    return Record.create(3).slot("op", "move").slot("from", from).slot("path", path);
+  }
+
+  private static void assertRejected(Value document, Value operations) {
+    final Value before = JsonPatch.deepCopy(document);
+    try {
+      JsonPatch.apply(document, operations);
+      fail("applied " + operations);
+    } catch (JsonPatch.PatchException expected) {
+      assertEquals(before, document);
+    }
+  }
+
+  @Test
+  public void dashAppendsToAnArray() throws JsonPatch.PatchException {
+    final Value patched = JsonPatch.apply(layout(), Record.of(op("add", "/widgets/-", "d")));
+    assertEquals(Record.of("a", "b", "c", "d"), patched.get("widgets"));
+  }
+
+  @Test
+  public void addsAtAnIndexUpToTheSize() throws JsonPatch.PatchException {
+    Value patched = JsonPatch.apply(layout(), Record.of(op("add", "/widgets/0", "z")));
+    assertEquals(Record.of("z", "a", "b", "c"), patched.get("widgets"));
+    patched = JsonPatch.apply(layout(), Record.of(op("add", "/widgets/3", "z")));
+    assertEquals(Record.of("a", "b", "c", "z"), patched.get("widgets"));
+  }
+
+  @Test
+  public void rejectsIndexesOutOfBounds() {
+    assertRejected(layout(), Record.of(op("add", "/widgets/4", "z")));
+    assertRejected(layout(), Record.of(op("remove", "/widgets/3", null)));
+    assertRejected(layout(), Record.of(op("replace", "/widgets/3", "z")));
+    assertRejected(layout(), Record.of(op("remove", "/widgets/-", null)));
+  }
+
+  @Test
+  public void removesAndReplaces() throws JsonPatch.PatchException {
+    final Value patched = JsonPatch.apply(layout(), Record.of(
+        op("remove", "/widgets/1", null),
+        op("replace", "/style/width", 200),
+        op("test", "/title", "Layout")));
+    assertEquals(Record.of("a", "c"), patched.get("widgets"));
+    assertEquals(200, patched.get("style").get("width").intValue());
+  }
+
+  @Test
+  public void movesBetweenParents() throws JsonPatch.PatchException {
+    final Value patched = JsonPatch.apply(layout(), Record.of(move("/widgets/0", "/style/first")));
+    assertEquals(Record.of("b", "c"), patched.get("widgets"));
+    assertEquals("a", patched.get("style").get("first").stringValue());
+  }
+
+  @Test
+  public void rejectsMovesIntoThemselves() {
+    assertRejected(layout(), Record.of(move("/style", "/style/inner")));
+    assertRejected(layout(), Record.of(move("/widgets", "/widgets/0")));
+  }
+
+  @Test
+  public void failedPatchesChangeNothing() {
+    final Record document = layout();
+    // the first operations apply, the last one does not
+    assertRejected(document, Record.of(
+        op("add", "/widgets/-", "d"),
+        op("remove", "/title", null),
+        op("test", "/style/width", 101)));
+    assertEquals(layout(), document);
+  }
+
+  @Test
+  public void patchedDocumentsShareNothingWithThePatch() throws JsonPatch.PatchException {
+    final Record value = Record.create(1).slot("x", 1);
+    final Record operations = Record.of(Record.create(3).slot("op", "add").slot("path", "/style/inner").slot("value", value));
+    final Value patched = JsonPatch.apply(layout(), operations);
+    value.put("x", 2);
+    assertEquals(1, patched.get("style").get("inner").get("x").intValue());
+  }
+
+  @Test
+  public void parsesEscapedPointers() throws JsonPatch.PatchException {
+    assertEquals(0, JsonPatch.parsePointer("").size());
+    assertEquals("a/b", JsonPatch.parsePointer("/a~1b").get(0));
+    assertEquals("m~n", JsonPatch.parsePointer("/m~0n").get(0));
+    assertTrue(JsonPatch.parsePointer("/").get(0).isEmpty());
+    assertRejected(layout(), Record.of(op("add", "widgets", "z")));
+  }
+
+}
@@ -0,0 +1,134 @@
+package swim.sattrack.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * SpatialIndex queries compared with the exact box check, around the
+ * antimeridian in particular. Member ids are visited at most once.
+ */
+public class SpatialIndexTest {
+
+  private static final double[][] POSITIONS = {
+    {0.0, 0.0},
+    {10.0, -180.0},
+    {-10.0, -179.5},
+    {20.0, 179.9},
+    {-20.0, 178.5},
+    {45.0, 90.0},
+    {-45.0, -90.0},
+    {89.9, 10.0},
+    {-90.0, -10.0},
+    {5.0, 170.0},
+    {5.0, -170.0}
+  };
+
+  private static SpatialIndex index() {
+    final SpatialIndex index = new SpatialIndex(2.0, 16);
+    for (int id = 0; id < POSITIONS.length; id++) {
+      index.update(id, POSITIONS[id][0], POSITIONS[id][1]);
+    }
+    return index;
+  }
+
+  /**
+   * ids inside the box, checking the visited cells held every one of them
+   */
+  private static Set<Integer> query(SpatialIndex index, double south, double west, double north, double east) {
+    final List<Integer> visited = new ArrayList<>();
+    index.query(south, west, north, east, visited::add);
+    assertEquals("visited twice", new TreeSet<>(visited).size(), visited.size());
+    final Set<Integer> matched = new TreeSet<>();
+    for (int id : visited) {
+      if (inBox(id, south, west, north, east)) {
+        matched.add(id);
+      }
+    }
+    for (int id = 0; id < POSITIONS.length; id++) {
+      if (inBox(id, south, west, north, east)) {
+        assertTrue("missed " + id, matched.contains(id));
+      }
+    }
+    return matched;
+  }
+
+  private static boolean inBox(int id, double south, double west, double north, double east) {
+    final double lat = POSITIONS[id][0];
+    return lat >= south && lat <= north && SpatialIndex.containsLongitude(west, east, POSITIONS[id][1]);
+  }
+
+  private static Set<Integer> ids(int... ids) {
+    final Set<Integer> set = new TreeSet<>();
+    for (int id : ids) {
+      set.add(id);
+    }
+    return set;
+  }
+
+  @Test
+  public void worldQueryFindsEverything() {
+    final SpatialIndex index = index();
+    assertEquals(POSITIONS.length, index.size());
+    assertEquals(ids(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10), query(index, -90.0, -180.0, 90.0, 180.0));
+    assertEquals(ids(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10), query(index, -90.0, -540.0, 90.0, 540.0));
+  }
+
+  @Test
+  public void boxEndingAt180IncludesTheLastColumn() {
+    final SpatialIndex index = index();
+    // -180 is the same meridian as 180
+    assertEquals(ids(1, 3, 4, 9), query(index, -30.0, 160.0, 30.0, 180.0));
+  }
+
+  @Test
+  public void boxCrossingTheAntimeridian() {
+    final SpatialIndex index = index();
+    assertEquals(ids(1, 2, 3, 4, 9, 10), query(index, -30.0, 160.0, 30.0, -160.0));
+    // the same box with the east edge past 180
+    assertEquals(ids(1, 2, 3, 4, 9, 10), query(index, -30.0, 160.0, 30.0, 200.0));
+  }
+
+  @Test
+  public void boxGoingAllTheWayRound() {
+    final SpatialIndex index = index();
+    // west just east of east, inside the same cell
+    assertEquals(ids(0, 1, 2, 3, 4, 9, 10), query(index, -30.0, 0.5, 30.0, 0.2));
+  }
+
+  @Test
+  public void movesAndRemovesMembers() {
+    final SpatialIndex index = index();
+    final Set<Integer> visited = new TreeSet<>();
+    index.update(0, 0.0, 179.0);
+    index.query(-1.0, 178.0, 1.0, 180.0, visited::add);
+    assertTrue(visited.contains(0));
+    visited.clear();
+    index.query(-1.0, -1.0, 1.0, 1.0, visited::add);
+    assertFalse(visited.contains(0));
+    index.update(0, Double.NaN, 0.0);
+    visited.clear();
+    index.query(-90.0, -180.0, 90.0, 180.0, visited::add);
+    assertEquals(ids(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), visited);
+    assertEquals(POSITIONS.length - 1, index.size());
+  }
+
+  @Test
+  public void containsLongitudeNormalizes() {
+    assertTrue(SpatialIndex.containsLongitude(170.0, -170.0, 180.0));
+    assertTrue(SpatialIndex.containsLongitude(170.0, -170.0, -180.0));
+    assertTrue(SpatialIndex.containsLongitude(160.0, 180.0, -180.0));
+    assertTrue(SpatialIndex.containsLongitude(-180.0, 180.0, 0.0));
+    assertFalse(SpatialIndex.containsLongitude(170.0, -170.0, 0.0));
+    assertFalse(SpatialIndex.containsLongitude(-10.0, 10.0, 349.0));
+    assertTrue(SpatialIndex.containsLongitude(-10.0, 10.0, 355.0));
+  }
+
+}
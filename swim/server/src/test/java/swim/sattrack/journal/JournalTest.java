@@ -0,0 +1,199 @@
+package swim.sattrack.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * JournalWriter and JournalReader over small segments: reading across
+ * segment rolls, retention, a torn last entry left by a crash and the
+ * committed reader positions.
+ */
+public class JournalTest {
+
+  private static final int SEGMENT_SIZE = 128; // a handful of entries per segment
+
+  private Path directory;
+
+  @Before
+  public void createDirectory() throws IOException {
+    this.directory = Files.createTempDirectory("journal");
+  }
+
+  @After
+  public void deleteDirectory() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(this.directory);
+  }
+
+  private static Value vectors(int catalogNumber) {
+    return Record.of(Record.create(2).slot("name", "SAT " + catalogNumber).slot("catalogNumber", catalogNumber));
+  }
+
+  /**
+   * catalog numbers of every entry a reader gets from position on
+   */
+  private List<Integer> readAll(JournalReader reader) throws IOException {
+    final List<Integer> catalogNumbers = new ArrayList<>();
+    while (reader.read(7, (nextPosition, timestamp, vectorList) -> {
+      assertEquals(nextPosition, reader.position());
+      catalogNumbers.add(vectorList.getItem(0).get("catalogNumber").intValue());
+    }) > 0) {
+      // keep reading until caught up
+    }
+    return catalogNumbers;
+  }
+
+  private static List<Integer> range(int from, int to) {
+    final List<Integer> numbers = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      numbers.add(i);
+    }
+    return numbers;
+  }
+
+  @Test
+  public void readsAcrossSegmentRolls() throws IOException {
+    final long end;
+    try (JournalWriter writer = JournalWriter.open(this.directory, SEGMENT_SIZE, 0)) {
+      for (int i = 0; i < 20; i++) {
+        writer.append(vectors(i), 1000L + i);
+      }
+      end = writer.position();
+    }
+    assertTrue(JournalFiles.segmentBases(this.directory).size() > 3);
+    final JournalReader reader = new JournalReader(this.directory);
+    assertEquals(range(0, 20), readAll(reader));
+    assertEquals(end, reader.position());
+  }
+
+  @Test
+  public void entriesAreSeenWhileTheWriterAppends() throws IOException {
+    try (JournalWriter writer = JournalWriter.open(this.directory, SEGMENT_SIZE, 0)) {
+      final JournalReader reader = new JournalReader(this.directory);
+      writer.append(vectors(0));
+      assertEquals(range(0, 1), readAll(reader));
+      for (int i = 1; i < 10; i++) {
+        writer.append(vectors(i));
+      }
+      assertEquals(range(1, 10), readAll(reader));
+      assertEquals(writer.position(), reader.position());
+    }
+  }
+
+  @Test
+  public void retainsTheNewestSegments() throws IOException {
+    try (JournalWriter writer = JournalWriter.open(this.directory, SEGMENT_SIZE, 2)) {
+      for (int i = 0; i < 20; i++) {
+        writer.append(vectors(i));
+      }
+    }
+    assertEquals(2, JournalFiles.segmentBases(this.directory).size());
+    final List<Integer> read = readAll(new JournalReader(this.directory));
+    assertTrue(read.get(0) > 0);
+    assertEquals(range(read.get(0), 20), read);
+  }
+
+  @Test
+  public void seeksToAPositionOrTheEnd() throws IOException {
+    final long middle;
+    try (JournalWriter writer = JournalWriter.open(this.directory, SEGMENT_SIZE, 0)) {
+      for (int i = 0; i < 5; i++) {
+        writer.append(vectors(i));
+      }
+      middle = writer.position();
+      for (int i = 5; i < 10; i++) {
+        writer.append(vectors(i));
+      }
+      final JournalReader fromMiddle = new JournalReader(this.directory);
+      assertTrue(fromMiddle.seek(middle));
+      assertEquals(range(5, 10), readAll(fromMiddle));
+
+      final JournalReader latest = new JournalReader(this.directory);
+      assertTrue(latest.seek(JournalReader.LATEST));
+      writer.append(vectors(10));
+      assertEquals(range(10, 11), readAll(latest));
+    }
+  }
+
+  @Test
+  public void stopsAtATornEntryAndRecoversPastIt() throws IOException {
+    final long tornAt;
+    try (JournalWriter writer = JournalWriter.open(this.directory, 1 << 12, 0)) {
+      tornAt = writer.append(vectors(0));
+      writer.append(vectors(1));
+    }
+    // the second entry's length is in place but its payload is not what was checksummed
+    try (RandomAccessFile file = new RandomAccessFile(JournalFiles.segmentPath(this.directory, 0L).toFile(), "rw")) {
+      final long payload = tornAt + JournalFiles.ENTRY_HEADER_SIZE;
+      file.seek(payload);
+      final int b = file.read();
+      file.seek(payload);
+      file.write(b ^ 0xFF);
+    }
+    final JournalReader reader = new JournalReader(this.directory);
+    assertEquals(range(0, 1), readAll(reader));
+    assertEquals(tornAt, reader.position());
+
+    try (JournalWriter writer = JournalWriter.open(this.directory, 1 << 12, 0)) {
+      assertEquals(tornAt, writer.position());
+      writer.append(vectors(2));
+    }
+    final List<Integer> expected = new ArrayList<>();
+    expected.add(0);
+    expected.add(2);
+    assertEquals(expected, readAll(new JournalReader(this.directory)));
+  }
+
+  @Test
+  public void onlyOneWriter() throws IOException {
+    try (JournalWriter writer = JournalWriter.open(this.directory, SEGMENT_SIZE, 0)) {
+      try {
+        JournalWriter.open(this.directory, SEGMENT_SIZE, 0).close();
+        fail("opened a second writer");
+      } catch (IOException expected) {
+        // locked
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEntriesLargerThanASegment() throws IOException {
+    final StringBuilder name = new StringBuilder();
+    for (int i = 0; i < SEGMENT_SIZE; i++) {
+      name.append('x');
+    }
+    try (JournalWriter writer = JournalWriter.open(this.directory, SEGMENT_SIZE, 0)) {
+      writer.append(Record.of(Record.create(1).slot("name", name.toString())));
+    }
+  }
+
+  @Test
+  public void commitsReaderPositions() throws IOException {
+    assertEquals(-5L, JournalReader.committedPosition(this.directory, "reader", -5L));
+    JournalReader.commitPosition(this.directory, "reader", 1234L);
+    assertEquals(1234L, JournalReader.committedPosition(this.directory, "reader", -5L));
+    JournalReader.commitPosition(this.directory, "reader", 5678L);
+    assertEquals(5678L, JournalReader.committedPosition(this.directory, "reader", -5L));
+  }
+
+}
@@ -0,0 +1,79 @@
+package swim.sattrack.journal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * TleCodec round trips of every field type, absent fields and the
+ * extra slots a vector carries beyond FIELDS.
+ */
+public class TleCodecTest {
+
+  private static Value decode(TleCodec.Encoder encoder) {
+    return new TleCodec.Decoder().readVectors(ByteBuffer.wrap(encoder.bytes, 0, encoder.length));
+  }
+
+  @Test
+  public void vectorsRoundTrip() {
+    // FIELDS order first, the decoder writes the known fields in that order
+    final Record vector = Record.create(16)
+        .slot("name", "ISS (ZARYA)")
+        .slot("catalogNumber", 25544)
+        .slot("epoch", 1600000000123L)
+        .slot("eccentricity", 0.0001234f)
+        .slot("comment", "\u00dcn\u00efc\u00f6d\u00e9 \u03b1")
+        .slot("latitude", -51.123456789)
+        .slot("longitude", 179.987654321)
+        .slot("height", 420.5f)
+        .slot("position", Record.create(3).slot("x", 1.5).slot("y", -2.25).slot("z", 6771.0))
+        .slot("tle", Record.of("ISS (ZARYA)", "1 25544U 98067A", "2 25544  51.6416"))
+        .slot("kafkaTimestamp", 1600000000999L)
+        .slot("note", "extra")
+        .slot("count", 5L)
+        .slot("ratio", 0.5)
+        .slot("meta", Record.create(1).slot("source", "test"));
+    final Record sparse = Record.create(2).slot("catalogNumber", 7).slot("type", "DEBRIS");
+    final TleCodec.Encoder encoder = new TleCodec.Encoder().reset();
+    encoder.writeVectors(Record.of(vector, sparse));
+
+    final Value decoded = decode(encoder);
+    assertEquals(2, decoded.length());
+    assertEquals(vector, decoded.getItem(0).toValue());
+    assertEquals(sparse, decoded.getItem(1).toValue());
+  }
+
+  @Test
+  public void absentFieldsAreSkipped() {
+    final Record vector = Record.create(2).slot("name", "A").slot("type", Value.absent());
+    final TleCodec.Encoder encoder = new TleCodec.Encoder().reset();
+    encoder.writeVectors(Record.of(vector));
+    assertEquals(Record.create(1).slot("name", "A"), decode(encoder).getItem(0).toValue());
+  }
+
+  @Test
+  public void emptyListsRoundTrip() {
+    final TleCodec.Encoder encoder = new TleCodec.Encoder().reset();
+    encoder.writeVectors(Record.create());
+    assertEquals(1, encoder.length);
+    assertEquals(0, decode(encoder).length());
+  }
+
+  @Test
+  public void encoderGrowsForLongStrings() {
+    final StringBuilder comment = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      comment.append((char) ('a' + i % 26));
+    }
+    final Record vector = Record.create(1).slot("comment", comment.toString());
+    final TleCodec.Encoder encoder = new TleCodec.Encoder().reset();
+    encoder.writeVectors(Record.of(vector));
+    assertEquals(vector, decode(encoder).getItem(0).toValue());
+  }
+
+}
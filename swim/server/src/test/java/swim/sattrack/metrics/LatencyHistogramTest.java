@@ -0,0 +1,92 @@
+package swim.sattrack.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * LatencyHistogram bucket boundaries around each power of two, the
+ * relative error of bucket values and interval quantiles over rolls.
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void smallValuesAreExact() {
+    for (long value = 0L; value < 64L; value++) {
+      assertEquals(value, LatencyHistogram.bucketIndex(value));
+      assertEquals(value, LatencyHistogram.bucketValue((int) value));
+    }
+  }
+
+  @Test
+  public void bucketsAreContiguousAcrossPowersOfTwo() {
+    int last = LatencyHistogram.bucketIndex(0L);
+    for (long value = 1L; value < (1L << 20); value++) {
+      final int index = LatencyHistogram.bucketIndex(value);
+      assertTrue("bucket went back at " + value, index >= last);
+      assertTrue("bucket skipped at " + value, index - last <= 1);
+      last = index;
+    }
+    assertEquals(64, LatencyHistogram.bucketIndex(64L));
+    assertEquals(64, LatencyHistogram.bucketIndex(65L));
+    assertEquals(65, LatencyHistogram.bucketIndex(66L));
+    assertEquals(95, LatencyHistogram.bucketIndex(127L));
+    assertEquals(96, LatencyHistogram.bucketIndex(128L));
+    assertEquals(96, LatencyHistogram.bucketIndex(131L));
+    assertEquals(97, LatencyHistogram.bucketIndex(132L));
+  }
+
+  @Test
+  public void bucketValuesAreWithinThreePercent() {
+    for (int power = 6; power < 63; power++) {
+      final long base = 1L << power;
+      final long[] values = {base - 1L, base, base + 1L, base + (base >>> 1), (base << 1) - 1L};
+      for (long value : values) {
+        final long bucketValue = LatencyHistogram.bucketValue(LatencyHistogram.bucketIndex(value));
+        assertTrue("error too large at " + value, Math.abs(bucketValue - value) <= value / 32L);
+      }
+    }
+  }
+
+  @Test
+  public void largestValueFitsTheLastBucket() {
+    assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    assertTrue(LatencyHistogram.bucketValue(LatencyHistogram.BUCKETS - 1) > 0L);
+  }
+
+  @Test
+  public void quantilesOfAnInterval() {
+    final LatencyHistogram histogram = new LatencyHistogram("test", "test");
+    for (long value = 1L; value <= 100L; value++) {
+      histogram.record(value);
+    }
+    final LatencyHistogram.Snapshot snapshot = histogram.roll();
+    assertEquals(100L, snapshot.count());
+    assertEquals(50L, snapshot.p50());
+    assertEquals(91L, snapshot.p90()); // 90 and 91 share a bucket
+    assertEquals(99L, snapshot.p99());
+    assertEquals(101L, snapshot.p999());
+    assertEquals(100L, histogram.maxMicros());
+    assertEquals(5050L, histogram.sumMicros());
+  }
+
+  @Test
+  public void rollOnlyCountsTheLastInterval() {
+    final LatencyHistogram histogram = new LatencyHistogram("test", "test");
+    histogram.record(10L);
+    histogram.roll();
+    final LatencyHistogram.Snapshot empty = histogram.roll();
+    assertEquals(0L, empty.count());
+    assertEquals(0L, empty.p99());
+    histogram.record(-5L); // clamped to 0
+    histogram.record(20L);
+    final LatencyHistogram.Snapshot snapshot = histogram.roll();
+    assertEquals(2L, snapshot.count());
+    assertEquals(0L, snapshot.p50());
+    assertEquals(20L, snapshot.p99());
+    assertEquals(3L, histogram.count());
+    assertEquals(snapshot, histogram.interval());
+  }
+
+}
@@ -0,0 +1,99 @@
+package swim.sattrack.orbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * ConjunctionScreen against a brute force scan of every pair, on
+ * clustered random points so plenty of pairs straddle cell boundaries.
+ */
+public class ConjunctionScreenTest {
+
+  private static final double THRESHOLD = 10.0;
+
+  @Test
+  public void matchesABruteForceScan() {
+    final Random random = new Random(42L);
+    // more points than one fork/join leaf, so the screen splits
+    final int n = ConjunctionScreen.FORK_THRESHOLD * 3 + 17;
+    final double[] x = new double[n];
+    final double[] y = new double[n];
+    final double[] z = new double[n];
+    for (int i = 0; i < n; i++) {
+      // a few dense clusters either side of zero plus scattered points
+      final double spread = i % 4 == 0 ? 40000.0 : 200.0;
+      final double center = (i % 7 - 3) * 500.0;
+      x[i] = center + (random.nextDouble() - 0.5) * spread;
+      y[i] = -center + (random.nextDouble() - 0.5) * spread;
+      z[i] = (random.nextDouble() - 0.5) * spread;
+    }
+    final Set<Long> expected = new TreeSet<>();
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        if (distance(x, y, z, i, j) < THRESHOLD) {
+          expected.add(pair(i, j));
+        }
+      }
+    }
+    assertTrue("no pairs to compare", expected.size() > 100);
+
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      final ConjunctionScreen.Result result = new ConjunctionScreen(pool)
+          .screen(x, y, z, n, THRESHOLD, Integer.MAX_VALUE);
+      final Set<Long> found = new TreeSet<>();
+      double last = 0.0;
+      for (int i = 0; i < result.size(); i++) {
+        assertTrue(result.a(i) < result.b(i));
+        assertEquals(distance(x, y, z, result.a(i), result.b(i)), result.distance(i), 1e-9);
+        assertTrue("closest first", result.distance(i) >= last);
+        last = result.distance(i);
+        assertTrue("reported twice", found.add(pair(result.a(i), result.b(i))));
+      }
+      assertEquals(expected, found);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void keepsTheClosestMaxPairs() {
+    final double[] x = {0.0, 1.0, 100.0, 103.0, 200.0, 202.0};
+    final double[] y = new double[6];
+    final double[] z = new double[6];
+    final ConjunctionScreen screen = new ConjunctionScreen();
+    final ConjunctionScreen.Result result = screen.screen(x, y, z, 6, THRESHOLD, 2);
+    assertEquals(2, result.size());
+    assertEquals(0, result.a(0));
+    assertEquals(1, result.b(0));
+    assertEquals(1.0, result.distance(0), 0.0);
+    assertEquals(4, result.a(1));
+    assertEquals(2.0, result.distance(1), 0.0);
+    // the screen is reusable, with fewer points the second time
+    assertEquals(1, screen.screen(x, y, z, 2, THRESHOLD, 10).size());
+  }
+
+  @Test
+  public void findsNothingInAnEmptyScreen() {
+    assertEquals(0, new ConjunctionScreen().screen(new double[0], new double[0], new double[0], 0, THRESHOLD, 10).size());
+  }
+
+  private static double distance(double[] x, double[] y, double[] z, int i, int j) {
+    final double dx = x[j] - x[i];
+    final double dy = y[j] - y[i];
+    final double dz = z[j] - z[i];
+    return Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  private static long pair(int i, int j) {
+    return (long) i << 32 | j;
+  }
+
+}
@@ -0,0 +1,149 @@
+package swim.sattrack.orbit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * PositionFrames keyframes and deltas decoded the way a client does,
+ * a delta applied to the previous tick must give the keyframe of the
+ * current one.
+ */
+public class PositionFramesTest {
+
+  /**
+   * a frame with the given catalog numbers and positions, NaN latitude marks a decayed slot
+   */
+  private static OrbitFrame frame(long tick, int[] catalogNumbers, double[][] positions) {
+    final OrbitFrame frame = new OrbitFrame(catalogNumbers.length);
+    frame.size = catalogNumbers.length;
+    frame.tick = tick;
+    frame.timeMillis = 1000L * tick;
+    for (int slot = 0; slot < catalogNumbers.length; slot++) {
+      frame.catalogNumbers[slot] = catalogNumbers[slot];
+      final boolean decayed = Double.isNaN(positions[slot][0]);
+      frame.status[slot] = decayed ? Sgp4.ERROR_DECAYED : Sgp4.OK;
+      frame.state[slot * OrbitFrame.STRIDE + OrbitFrame.LATITUDE] = positions[slot][0];
+      frame.state[slot * OrbitFrame.STRIDE + OrbitFrame.LONGITUDE] = positions[slot][1];
+      frame.state[slot * OrbitFrame.STRIDE + OrbitFrame.HEIGHT] = positions[slot][2];
+    }
+    return frame;
+  }
+
+  @Test
+  public void keyframeHoldsEverySatellite() {
+    final PositionFrames frames = new PositionFrames();
+    frames.update(frame(1L, new int[] {25544, 5, 900}, new double[][] {
+      {51.5, -0.1, 420.0}, {-33.9, 151.2, 1000.0}, {0.0, 180.0, 35786.0}}));
+    final Decoded keyframe = decode(frames.frameFor(-1L), new TreeMap<>());
+    assertEquals(PositionFrames.KEYFRAME, keyframe.type);
+    assertEquals(1L, keyframe.tick);
+    assertEquals(1000L, keyframe.timeMillis);
+    assertEquals(3, keyframe.updates);
+    assertEquals(3, keyframe.positions.size());
+    assertArrayEquals(new int[] {-339000, 1512000, 100000}, keyframe.positions.get(5));
+    assertArrayEquals(new int[] {515000, -1000, 42000}, keyframe.positions.get(25544));
+    assertArrayEquals(new int[] {0, 1800000, 3578600}, keyframe.positions.get(900));
+  }
+
+  @Test
+  public void deltaFromThePreviousTickMatchesTheKeyframe() {
+    final PositionFrames frames = new PositionFrames();
+    frames.update(frame(1L, new int[] {1, 2, 3, 4}, new double[][] {
+      {10.0, 20.0, 400.0}, {11.0, 21.0, 410.0}, {12.0, 22.0, 420.0}, {13.0, 23.0, 430.0}}));
+    final Map<Integer, int[]> client = decode(frames.frameFor(-1L), new TreeMap<>()).positions;
+
+    // 1 moves, 2 stays put, 3 decays, 4 leaves the catalog and 7 is new
+    frames.update(frame(2L, new int[] {2, 1, 3, 7}, new double[][] {
+      {11.0, 21.0, 410.0}, {10.5, 20.5, 401.0}, {Double.NaN, 0.0, 0.0}, {-5.0, -6.0, 700.0}}));
+    final Decoded delta = decode(frames.frameFor(1L), client);
+    assertEquals(PositionFrames.DELTA, delta.type);
+    assertEquals(1L, delta.baseTick);
+    assertEquals(2, delta.updates);
+    assertEquals(2, delta.removes);
+    final Map<Integer, int[]> expected = decode(frames.frameFor(-1L), new TreeMap<>()).positions;
+    assertEquals(expected.keySet(), client.keySet());
+    for (Map.Entry<Integer, int[]> entry : expected.entrySet()) {
+      assertArrayEquals(entry.getValue(), client.get(entry.getKey()));
+    }
+  }
+
+  @Test
+  public void subscribersBehindGetAKeyframe() {
+    final PositionFrames frames = new PositionFrames();
+    final int[] ids = {1};
+    frames.update(frame(1L, ids, new double[][] {{1.0, 1.0, 1.0}}));
+    frames.update(frame(2L, ids, new double[][] {{2.0, 2.0, 2.0}}));
+    frames.update(frame(3L, ids, new double[][] {{3.0, 3.0, 3.0}}));
+    assertEquals(PositionFrames.KEYFRAME, decode(frames.frameFor(1L), new TreeMap<>()).type);
+    assertEquals(PositionFrames.DELTA, decode(frames.frameFor(2L), new TreeMap<>()).type);
+    final Decoded upToDate = decode(frames.frameFor(3L), new TreeMap<>());
+    assertEquals(PositionFrames.DELTA, upToDate.type);
+    assertEquals(3L, upToDate.baseTick);
+    assertEquals(0, upToDate.updates);
+    assertEquals(0, upToDate.removes);
+  }
+
+  static final class Decoded {
+    int type;
+    long tick;
+    long baseTick;
+    long timeMillis;
+    int updates;
+    int removes;
+    Map<Integer, int[]> positions;
+  }
+
+  /**
+   * apply a frame to the positions a client holds, a keyframe replaces them
+   */
+  private static Decoded decode(byte[] bytes, Map<Integer, int[]> positions) {
+    final int[] at = {0};
+    final Decoded decoded = new Decoded();
+    assertEquals(PositionFrames.VERSION, bytes[at[0]++]);
+    decoded.type = bytes[at[0]++];
+    decoded.tick = readVarint(bytes, at);
+    decoded.baseTick = readVarint(bytes, at);
+    decoded.timeMillis = readVarint(bytes, at);
+    if (decoded.type == PositionFrames.KEYFRAME) {
+      positions.clear();
+    }
+    decoded.updates = (int) readVarint(bytes, at);
+    int id = 0;
+    for (int i = 0; i < decoded.updates; i++) {
+      id += (int) readVarint(bytes, at);
+      final int[] position = positions.computeIfAbsent(id, key -> new int[3]);
+      for (int field = 0; field < 3; field++) {
+        final long zigzag = readVarint(bytes, at);
+        position[field] += (int) (zigzag >>> 1) ^ -(int) (zigzag & 1L);
+      }
+    }
+    decoded.removes = (int) readVarint(bytes, at);
+    id = 0;
+    for (int i = 0; i < decoded.removes; i++) {
+      id += (int) readVarint(bytes, at);
+      positions.remove(id);
+    }
+    assertEquals("trailing bytes", bytes.length, at[0]);
+    decoded.positions = positions;
+    return decoded;
+  }
+
+  private static long readVarint(byte[] bytes, int[] at) {
+    long value = 0L;
+    int shift = 0;
+    while (true) {
+      final int b = bytes[at[0]++];
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+      shift += 7;
+    }
+  }
+
+}
@@ -0,0 +1,91 @@
+package swim.sattrack.orbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Sgp4 against the verification vectors of Vallado et al., "Revisiting
+ * Spacetrack Report #3" (tcppver.out, WGS-72, improved mode). Each row
+ * is minutes since epoch, then the TEME position (km) and velocity (km/s).
+ */
+public class Sgp4Test {
+
+  private static final double POSITION_TOLERANCE = 1e-6; // km, the vectors are printed to 1e-8
+  private static final double VELOCITY_TOLERANCE = 1e-8; // km/s, printed to 1e-9
+
+  /**
+   * Vanguard 1, near earth with a perigee low enough for the simplified drag terms
+   */
+  @Test
+  public void nearEarth00005() {
+    assertVectors(
+        "1 00005U 58002B   00179.78495062  .00000023  00000-0  28098-4 0  4753",
+        "2 00005  34.2682 348.7242 1859667 331.7664  19.3264 10.82419157413667",
+        false,
+        new double[][] {
+          {0.0, 7022.46529266, -1400.08296755, 0.03995155, 1.893841015, 6.405893759, 4.534807250},
+          {360.0, -7154.03120202, -3783.17682504, -3536.19412294, 4.741887409, -4.151817765, -2.093935425},
+          {720.0, -7134.59340119, 6531.68641334, 3260.27186483, -4.113793027, -2.911922039, -2.557327851},
+          {1080.0, 5568.53901181, 4492.06992591, 3863.87641983, -4.209106476, 5.159719888, 2.744852980},
+          {1440.0, -938.55923943, -6268.18748831, -4294.02924751, 7.536105209, -0.427127707, 0.989878080}
+        });
+  }
+
+  /**
+   * Delta 1 debris, the near earth normal drag case
+   */
+  @Test
+  public void nearEarthDrag06251() {
+    assertVectors(
+        "1 06251U 62025E   06176.82412014  .00008885  00000-0  12808-3 0  3985",
+        "2 06251  58.0579  54.0425 0030035 139.1568 221.1854 15.56387291  6774",
+        false,
+        new double[][] {
+          {0.0, 3988.31022699, 5498.96657235, 0.90055879, -3.290032738, 2.357652820, 6.496623475},
+          {120.0, -3935.69800083, 409.10980837, 5471.33577327, -3.374784183, -6.635211043, -1.942056221},
+          {240.0, -1675.12766915, -5683.30432352, -3286.21510937, 5.282496925, 1.508674259, -5.354872978},
+          {360.0, 4993.62642836, 2890.54969900, -3600.40145627, 0.347333429, 5.707031557, 5.070699638}
+        });
+  }
+
+  /**
+   * Molniya 3-8, deep space with 12 hour resonance
+   */
+  @Test
+  public void deepSpace08195() {
+    assertVectors(
+        "1 08195U 75081A   06176.33215444  .00000099  00000-0  11873-3 0   813",
+        "2 08195  64.1586 279.0717 6877146 264.7651  20.2257  2.00491383225656",
+        true,
+        new double[][] {
+          {0.0, 2349.89483350, -14785.93811562, 0.02119378, 2.721488096, -3.256811655, 4.498416672},
+          {120.0, 15223.91713658, -17852.95881713, 25280.39558224, 1.079041732, 0.875187372, 2.485682813}
+        });
+  }
+
+  private static void assertVectors(String line1, String line2, boolean deepSpace, double[][] expected) {
+    final double[] elements = Sgp4.elements(line1, line2);
+    if (deepSpace) {
+      assertTrue(Sgp4.isDeepSpace(elements));
+    } else {
+      assertFalse(Sgp4.isDeepSpace(elements));
+    }
+    final double[][] near = new double[Sgp4.NEAR_FIELDS][1];
+    final double[][] deep = deepSpace ? new double[Sgp4.DEEP_FIELDS][1] : null;
+    final int row = deepSpace ? 0 : -1;
+    assertEquals(Sgp4.OK, Sgp4.initialize(elements, near, 0, deep, row));
+    final double[] rv = new double[6];
+    for (double[] vector : expected) {
+      final String at = line2.substring(2, 7) + " at " + vector[0] + " min";
+      assertEquals(at, Sgp4.OK, Sgp4.propagate(near, 0, deep, row, vector[0], rv));
+      for (int i = 0; i < 3; i++) {
+        assertEquals(at, vector[1 + i], rv[i], POSITION_TOLERANCE);
+        assertEquals(at, vector[4 + i], rv[3 + i], VELOCITY_TOLERANCE);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,164 @@
+package swim.sattrack.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import swim.structure.Record;
+
+/**
+ * PassivationStore hand over and take back, tombstones surviving a
+ * reopen, a torn last entry being cut off and compaction keeping only
+ * the satellites which are still passivated.
+ */
+public class PassivationStoreTest {
+
+  private Path directory;
+  private Path logPath;
+  private PassivationStore store;
+
+  @Before
+  public void openStore() throws IOException {
+    this.directory = Files.createTempDirectory("passivation");
+    this.logPath = this.directory.resolve("passivated.log");
+    this.store = new PassivationStore(0L); // compact as soon as half the log is dead
+    this.store.open(this.logPath);
+  }
+
+  @After
+  public void deleteLog() throws IOException {
+    this.store.close();
+    Files.deleteIfExists(this.logPath);
+    Files.deleteIfExists(this.logPath.resolveSibling(this.logPath.getFileName() + ".tmp"));
+    Files.deleteIfExists(this.directory);
+  }
+
+  private static SatelliteState state(int catalogNumber, long lastUpdate) {
+    return new SatelliteState(catalogNumber, lastUpdate, Record.create(1).slot("name", "SAT " + catalogNumber),
+        1.0, 2.0, 3.0, new long[] {lastUpdate - 1L, lastUpdate}, new float[] {1.0f, 1.5f},
+        new float[] {2.0f, 2.5f}, new float[] {3.0f, 3.5f});
+  }
+
+  /**
+   * close and open the log again, which waits for every hand over to be written
+   */
+  private void reopen() throws IOException {
+    this.store.close();
+    this.store = new PassivationStore(0L);
+    this.store.open(this.logPath);
+  }
+
+  private Set<Integer> passivated() {
+    final Set<Integer> catalogNumbers = new TreeSet<>();
+    this.store.forEach(state -> catalogNumbers.add(state.catalogNumber()));
+    return catalogNumbers;
+  }
+
+  private static Set<Integer> ids(int from, int to) {
+    final Set<Integer> ids = new TreeSet<>();
+    for (int i = from; i <= to; i++) {
+      ids.add(i);
+    }
+    return ids;
+  }
+
+  @Test
+  public void takesAStateBackOnce() {
+    assertTrue(this.store.passivate(state(1, 100L)));
+    final SatelliteState taken = this.store.take(1);
+    assertNotNull(taken);
+    assertEquals(100L, taken.lastUpdate());
+    assertEquals(2, taken.trackSize());
+    assertNull(this.store.take(1));
+    assertEquals(0, this.store.size());
+  }
+
+  @Test
+  public void tombstonesSurviveAReopen() throws IOException {
+    for (int i = 1; i <= 3; i++) {
+      this.store.passivate(state(i, 100L + i));
+    }
+    reopen();
+    assertEquals(3, this.store.size());
+    assertEquals(ids(1, 3), passivated());
+    final SatelliteState taken = this.store.take(2);
+    assertEquals(102L, taken.lastUpdate());
+    assertEquals(Record.create(1).slot("name", "SAT 2"), taken.row());
+    assertEquals(1.5f, taken.trackLatitude(1), 0.0f);
+
+    reopen();
+    assertEquals(2, this.store.size());
+    assertNull(this.store.take(2));
+    assertEquals(101L, this.store.take(1).lastUpdate());
+  }
+
+  @Test
+  public void theLatestPassivationWins() throws IOException {
+    this.store.passivate(state(5, 100L));
+    reopen();
+    this.store.passivate(state(5, 200L));
+    reopen();
+    assertEquals(1, this.store.size());
+    assertEquals(200L, this.store.take(5).lastUpdate());
+  }
+
+  @Test
+  public void cutsOffATornEntry() throws IOException {
+    this.store.passivate(state(1, 100L));
+    this.store.close();
+    final long size = Files.size(this.logPath);
+    // a header promising more payload than was written
+    try (FileChannel channel = FileChannel.open(this.logPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      final ByteBuffer torn = ByteBuffer.allocate(PassivationStore.ENTRY_HEADER_SIZE + 5);
+      torn.putInt(2).putInt(1000).putInt(0);
+      torn.clear();
+      channel.write(torn);
+    }
+    this.store = new PassivationStore(0L);
+    this.store.open(this.logPath);
+    assertEquals(size, Files.size(this.logPath));
+    assertEquals(ids(1, 1), passivated());
+    // appends land after the cut
+    this.store.passivate(state(3, 300L));
+    reopen();
+    assertEquals(2, this.store.size());
+    assertEquals(300L, this.store.take(3).lastUpdate());
+  }
+
+  @Test
+  public void compactsToTheLiveEntries() throws IOException {
+    for (int i = 1; i <= 10; i++) {
+      this.store.passivate(state(i, 100L + i));
+    }
+    reopen();
+    for (int i = 1; i <= 8; i++) {
+      assertNotNull(this.store.take(i));
+    }
+    reopen();
+    final long before = Files.size(this.logPath);
+    // more than half the log is dead, the next write compacts it
+    this.store.passivate(state(11, 111L));
+    reopen();
+    assertTrue(Files.size(this.logPath) < before);
+    assertEquals(3, this.store.size());
+    final Set<Integer> expected = ids(9, 11);
+    assertEquals(expected, passivated());
+    assertEquals(110L, this.store.take(10).lastUpdate());
+    assertNull(this.store.take(4));
+  }
+
+}
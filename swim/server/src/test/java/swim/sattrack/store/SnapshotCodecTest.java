@@ -0,0 +1,170 @@
+package swim.sattrack.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+import swim.structure.Bool;
+import swim.structure.Data;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * SnapshotCodec and CatalogSnapshot round trips: every tagged value
+ * kind, slot keys shared between satellites, track gaps going backwards
+ * and a damaged file being refused.
+ */
+public class SnapshotCodecTest {
+
+  private static Value row(int catalogNumber, String name) {
+    return Record.create(8)
+        .slot("catalogNumber", catalogNumber)
+        .slot("name", name)
+        .slot("orbitalPeriod", 92.68)
+        .slot("launchEpoch", 911174400000L)
+        .slot("active", true)
+        .slot("decayed", Bool.from(false))
+        .slot("raw", Data.wrap(new byte[] {1, 2, 3}))
+        .slot("tle", Record.of(name, "1 25544U 98067A", "2 25544  51.6416"))
+        .slot("extant", Value.extant());
+  }
+
+  private static SatelliteState state(int catalogNumber, String name, long... timestamps) {
+    final float[] latitudes = new float[timestamps.length];
+    final float[] longitudes = new float[timestamps.length];
+    final float[] heights = new float[timestamps.length];
+    for (int i = 0; i < timestamps.length; i++) {
+      latitudes[i] = -51.5f + i;
+      longitudes[i] = 179.75f - i;
+      heights[i] = 408.25f + i;
+    }
+    return new SatelliteState(catalogNumber, 1600000000123L + catalogNumber, row(catalogNumber, name),
+        12.5, -170.25, 420.125, timestamps, latitudes, longitudes, heights);
+  }
+
+  private static void assertSameState(SatelliteState expected, SatelliteState actual) {
+    assertEquals(expected.catalogNumber(), actual.catalogNumber());
+    assertEquals(expected.lastUpdate(), actual.lastUpdate());
+    assertEquals(expected.row(), actual.row());
+    assertEquals(expected.latitude(), actual.latitude(), 0.0);
+    assertEquals(expected.longitude(), actual.longitude(), 0.0);
+    assertEquals(expected.height(), actual.height(), 0.0);
+    assertEquals(expected.trackSize(), actual.trackSize());
+    for (int i = 0; i < expected.trackSize(); i++) {
+      assertEquals(expected.trackTimestamp(i), actual.trackTimestamp(i));
+      assertEquals(expected.trackLatitude(i), actual.trackLatitude(i), 0.0f);
+      assertEquals(expected.trackLongitude(i), actual.trackLongitude(i), 0.0f);
+      assertEquals(expected.trackHeight(i), actual.trackHeight(i), 0.0f);
+    }
+  }
+
+  @Test
+  public void statesRoundTrip() {
+    final SatelliteState first = state(25544, "ISS (ZARYA)", 1600000000000L, 1600000060000L, 1600000030000L);
+    final SatelliteState second = state(7, "Sputnik", 5L);
+    final SatelliteState empty = new SatelliteState(0, 0L, null, 0.0, 0.0, 0.0,
+        new long[0], new float[0], new float[0], new float[0]);
+    final SnapshotCodec.Encoder encoder = new SnapshotCodec.Encoder().reset();
+    encoder.writeState(first);
+    encoder.writeState(second);
+    encoder.writeState(empty);
+
+    final SnapshotCodec.Decoder decoder = new SnapshotCodec.Decoder(ByteBuffer.wrap(encoder.bytes, 0, encoder.length));
+    assertSameState(first, decoder.readState());
+    assertSameState(second, decoder.readState());
+    final SatelliteState decodedEmpty = decoder.readState();
+    assertEquals(0, decodedEmpty.trackSize());
+    assertEquals(Value.absent(), decodedEmpty.row());
+  }
+
+  @Test
+  public void keysAreWrittenOncePerSnapshot() {
+    final SnapshotCodec.Encoder encoder = new SnapshotCodec.Encoder().reset();
+    encoder.writeValue(row(1, "a"));
+    final int firstLength = encoder.length;
+    encoder.writeValue(row(2, "b"));
+    // the second row refers to every key by index
+    final int secondLength = encoder.length - firstLength;
+    assertTrue(secondLength < firstLength - 40);
+    final SnapshotCodec.Decoder decoder = new SnapshotCodec.Decoder(ByteBuffer.wrap(encoder.bytes, 0, encoder.length));
+    assertEquals(row(1, "a"), decoder.readValue());
+    assertEquals(row(2, "b"), decoder.readValue());
+  }
+
+  @Test
+  public void varintsRoundTrip() {
+    final long[] values = {0L, 1L, 127L, 128L, 300L, Integer.MAX_VALUE, Long.MAX_VALUE, -1L, Long.MIN_VALUE};
+    final SnapshotCodec.Encoder encoder = new SnapshotCodec.Encoder().reset();
+    for (long value : values) {
+      encoder.writeVarint(value);
+      encoder.writeZigzag(value);
+    }
+    final SnapshotCodec.Decoder decoder = new SnapshotCodec.Decoder(ByteBuffer.wrap(encoder.bytes, 0, encoder.length));
+    final long[] varints = new long[values.length];
+    final long[] zigzags = new long[values.length];
+    for (int i = 0; i < values.length; i++) {
+      varints[i] = decoder.readVarint();
+      zigzags[i] = decoder.readZigzag();
+    }
+    assertArrayEquals(values, varints);
+    assertArrayEquals(values, zigzags);
+  }
+
+  @Test
+  public void snapshotFileRoundTrip() throws IOException {
+    final Path directory = Files.createTempDirectory("snapshot");
+    final Path path = directory.resolve("catalog.snap");
+    final CatalogSnapshot snapshot = CatalogSnapshot.shared();
+    final SatelliteState first = state(900001, "first", 10L, 20L);
+    final SatelliteState second = state(900002, "second", 30L);
+    snapshot.put(first);
+    snapshot.put(second);
+    try {
+      final int count = snapshot.write(path);
+      final List<SatelliteState> states = CatalogSnapshot.read(path);
+      assertEquals(count, states.size());
+      int found = 0;
+      for (SatelliteState state : states) {
+        if (state.catalogNumber() == first.catalogNumber()) {
+          assertSameState(first, state);
+          found += 1;
+        } else if (state.catalogNumber() == second.catalogNumber()) {
+          assertSameState(second, state);
+          found += 1;
+        }
+      }
+      assertEquals(2, found);
+      assertEquals(0, CatalogSnapshot.read(directory.resolve("missing.snap")).size());
+
+      // flip a body byte, the checksum no longer matches
+      try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+        file.seek(CatalogSnapshot.HEADER_SIZE + 1);
+        final int b = file.read();
+        file.seek(CatalogSnapshot.HEADER_SIZE + 1);
+        file.write(b ^ 0xFF);
+      }
+      try {
+        CatalogSnapshot.read(path);
+        fail("read a damaged snapshot");
+      } catch (IOException expected) {
+        // refused
+      }
+    } finally {
+      snapshot.remove(first);
+      snapshot.remove(second);
+      Files.deleteIfExists(path);
+      Files.deleteIfExists(directory);
+    }
+  }
+
+}
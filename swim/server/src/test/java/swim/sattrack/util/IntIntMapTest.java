@@ -0,0 +1,64 @@
+package swim.sattrack.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * IntIntMap against a HashMap through puts, removes and rehashes, the
+ * removes checking that backward shift deletion keeps probe chains whole.
+ */
+public class IntIntMapTest {
+
+  @Test
+  public void matchesAHashMap() {
+    final IntIntMap map = new IntIntMap(4, -1);
+    final Map<Integer, Integer> expected = new HashMap<>();
+    final Random random = new Random(13L);
+    for (int i = 0; i < 50000; i++) {
+      // small key range so keys repeat and chains collide
+      final int key = random.nextInt(3000);
+      if (random.nextInt(3) == 0) {
+        final Integer old = expected.remove(key);
+        assertEquals(old != null ? old.intValue() : -1, map.remove(key));
+      } else {
+        final Integer old = expected.put(key, i);
+        assertEquals(old != null ? old.intValue() : -1, map.put(key, i));
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (int key = 0; key < 3000; key++) {
+      final Integer value = expected.get(key);
+      assertEquals(value != null ? value.intValue() : -1, map.get(key));
+      assertEquals(value != null, map.containsKey(key));
+    }
+  }
+
+  @Test
+  public void removesEveryKey() {
+    final IntIntMap map = new IntIntMap(4, -1);
+    for (int key = 0; key < 1000; key++) {
+      map.put(key, key * 10);
+    }
+    for (int key = 999; key >= 0; key -= 2) {
+      assertEquals(key * 10, map.remove(key));
+    }
+    assertEquals(500, map.size());
+    for (int key = 0; key < 1000; key += 2) {
+      assertEquals(key * 10, map.remove(key));
+    }
+    assertEquals(0, map.size());
+    assertEquals(-1, map.get(0));
+    assertEquals(-1, map.remove(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTheReservedKey() {
+    new IntIntMap(4, -1).put(Integer.MIN_VALUE, 1);
+  }
+
+}
@@ -0,0 +1,65 @@
+package swim.sattrack.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * IntLongMap against a HashMap through puts, removes and rehashes, the
+ * removes checking that backward shift deletion keeps probe chains whole.
+ */
+public class IntLongMapTest {
+
+  @Test
+  public void matchesAHashMap() {
+    final IntLongMap map = new IntLongMap(4, -1L);
+    final Map<Integer, Long> expected = new HashMap<>();
+    final Random random = new Random(11L);
+    for (int i = 0; i < 50000; i++) {
+      // small key range so keys repeat and chains collide
+      final int key = random.nextInt(3000);
+      if (random.nextInt(3) == 0) {
+        final Long old = expected.remove(key);
+        assertEquals(old != null ? old.longValue() : -1L, map.remove(key));
+      } else {
+        final long value = (long) i << 32;
+        final Long old = expected.put(key, value);
+        assertEquals(old != null ? old.longValue() : -1L, map.put(key, value));
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (int key = 0; key < 3000; key++) {
+      final Long value = expected.get(key);
+      assertEquals(value != null ? value.longValue() : -1L, map.get(key));
+      assertEquals(value != null, map.containsKey(key));
+    }
+  }
+
+  @Test
+  public void removesEveryKey() {
+    final IntLongMap map = new IntLongMap(4, -1L);
+    for (int key = 0; key < 1000; key++) {
+      map.put(key, key * 10L);
+    }
+    for (int key = 999; key >= 0; key -= 2) {
+      assertEquals(key * 10L, map.remove(key));
+    }
+    assertEquals(500, map.size());
+    for (int key = 0; key < 1000; key += 2) {
+      assertEquals(key * 10L, map.remove(key));
+    }
+    assertEquals(0, map.size());
+    assertEquals(-1L, map.get(0));
+    assertEquals(-1L, map.remove(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTheReservedKey() {
+    new IntLongMap(4, -1L).put(Integer.MIN_VALUE, 1L);
+  }
+
+}
@@ -0,0 +1,52 @@
+package swim.sattrack.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * LongIntMap against a HashMap, through rehashes and clears.
+ */
+public class LongIntMapTest {
+
+  @Test
+  public void matchesAHashMap() {
+    final LongIntMap map = new LongIntMap(4, -1);
+    final Map<Long, Integer> expected = new HashMap<>();
+    final Random random = new Random(7L);
+    for (int i = 0; i < 20000; i++) {
+      // small key range so keys repeat, and negative keys
+      final long key = random.nextInt(5000) - 2500L << 40;
+      final Integer old = expected.put(key, i);
+      assertEquals(old != null ? old.intValue() : -1, map.put(key, i));
+    }
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getValue().intValue(), map.get(entry.getKey()));
+    }
+    assertEquals(-1, map.get(1L));
+  }
+
+  @Test
+  public void clearKeepsItUsable() {
+    final LongIntMap map = new LongIntMap(4, -1);
+    for (long key = 0L; key < 100L; key++) {
+      map.put(key, (int) key);
+    }
+    map.clear();
+    assertEquals(0, map.size());
+    assertEquals(-1, map.get(5L));
+    assertEquals(-1, map.put(5L, 50));
+    assertEquals(50, map.get(5L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTheReservedKey() {
+    new LongIntMap(4, -1).put(Long.MIN_VALUE, 1);
+  }
+
+}
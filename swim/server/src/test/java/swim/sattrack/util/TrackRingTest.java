@@ -0,0 +1,102 @@
+package swim.sattrack.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * TrackRing appends, wrap around and eviction, and the ordering rules
+ * for repeated and out of order timestamps.
+ */
+public class TrackRingTest {
+
+  @Test
+  public void appendsUntilFull() {
+    final TrackRing ring = new TrackRing(3);
+    assertEquals(TrackRing.NONE, ring.oldestTimestamp());
+    assertEquals(TrackRing.NONE, ring.append(10L, 1.0, 2.0, 3.0));
+    assertEquals(TrackRing.NONE, ring.append(20L, 4.0, 5.0, 6.0));
+    assertEquals(2, ring.size());
+    assertEquals(10L, ring.timestamp(0));
+    assertEquals(20L, ring.timestamp(1));
+    assertEquals(4.0, ring.latitude(1), 0.0);
+    assertEquals(5.0, ring.longitude(1), 0.0);
+    assertEquals(6.0, ring.height(1), 0.0);
+  }
+
+  @Test
+  public void wrapsAndEvictsTheOldest() {
+    final TrackRing ring = new TrackRing(3);
+    for (long t = 1L; t <= 3L; t++) {
+      assertEquals(TrackRing.NONE, ring.append(t, t, t, t));
+    }
+    assertEquals(1L, ring.append(4L, 4.0, 4.0, 4.0));
+    assertEquals(2L, ring.append(5L, 5.0, 5.0, 5.0));
+    assertEquals(3, ring.size());
+    assertEquals(3L, ring.oldestTimestamp());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(3L + i, ring.timestamp(i));
+      assertEquals(3.0 + i, ring.latitude(i), 0.0);
+    }
+    assertEquals(2, ring.indexOf(5L));
+    assertEquals(-1, ring.indexOf(2L));
+  }
+
+  @Test
+  public void replacesThePointWithTheLatestTimestamp() {
+    final TrackRing ring = new TrackRing(2);
+    ring.append(10L, 1.0, 1.0, 1.0);
+    assertEquals(TrackRing.NONE, ring.append(10L, 2.0, 3.0, 4.0));
+    assertEquals(1, ring.size());
+    assertEquals(2.0, ring.latitude(0), 0.0);
+    assertEquals(3.0, ring.longitude(0), 0.0);
+    assertEquals(4.0, ring.height(0), 0.0);
+  }
+
+  @Test
+  public void rejectsOlderPoints() {
+    final TrackRing ring = new TrackRing(4);
+    ring.append(10L, 1.0, 1.0, 1.0);
+    ring.append(20L, 2.0, 2.0, 2.0);
+    assertEquals(TrackRing.REJECTED, ring.append(15L, 9.0, 9.0, 9.0));
+    assertEquals(2, ring.size());
+    assertEquals(20L, ring.timestamp(1));
+    assertEquals(2.0, ring.latitude(1), 0.0);
+  }
+
+  @Test
+  public void removesTheOldestAcrossTheWrap() {
+    final TrackRing ring = new TrackRing(2);
+    ring.append(1L, 1.0, 1.0, 1.0);
+    ring.append(2L, 2.0, 2.0, 2.0);
+    ring.append(3L, 3.0, 3.0, 3.0);
+    assertEquals(2L, ring.removeOldest());
+    assertEquals(3L, ring.removeOldest());
+    assertEquals(TrackRing.NONE, ring.removeOldest());
+    assertEquals(0, ring.size());
+    assertEquals(TrackRing.NONE, ring.append(4L, 4.0, 4.0, 4.0));
+    assertEquals(4L, ring.timestamp(0));
+  }
+
+  @Test
+  public void downsamplesKeepingTheNewestPoint() {
+    final TrackRing ring = new TrackRing(10);
+    for (long t = 0L; t < 10L; t++) {
+      ring.append(t * 100L, t, t, t);
+    }
+    final int[] picked = new int[10];
+    final int count = ring.downsample(5, picked);
+    assertEquals(5, count);
+    assertArrayEquals(new int[] {1, 3, 5, 7, 9}, Arrays.copyOf(picked, count));
+    assertEquals(10, ring.downsample(10, picked));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void needsACapacity() {
+    new TrackRing(0);
+  }
+
+}
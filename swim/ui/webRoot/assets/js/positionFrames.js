@@ -0,0 +1,82 @@
+/**
+ * Decoder for the binary frames on the propagator positionFrames lane.
+ * Keeps the latest position of every satellite in this.positions, keyed
+ * by catalog number, as {lat, lng, height}. See PositionFrames.java for the format.
+ *
+ * swim.nodeRef(swimUrl, '/propagator').downlinkValue().laneUri('positionFrames')
+ *     .didSet((frame) => decoder.decode(frame))
+ *     .open();
+ */
+class PositionFrameDecoder {
+
+    constructor() {
+        this.positions = new Map();
+        this.quantized = new Map();
+        this.tick = -1;
+        this.timeMillis = 0;
+        this.bytes = null;
+        this.offset = 0;
+    }
+
+    /**
+     * apply one frame, returns the catalog numbers which were updated and removed
+     */
+    decode(frame) {
+        this.bytes = frame.toUint8Array ? frame.toUint8Array() : frame;
+        this.offset = 0;
+        if (this.bytes.length < 2 || this.bytes[0] !== 1) {
+            return null;
+        }
+        const type = this.bytes[1];
+        this.offset = 2;
+        const tick = this.readVarint();
+        const baseTick = this.readVarint();
+        this.timeMillis = this.readVarint();
+        if (type === 0) {
+            this.quantized.clear();
+            this.positions.clear();
+        } else if (baseTick !== this.tick) {
+            // a delta we cannot apply, the server sends a keyframe next
+            return null;
+        }
+        this.tick = tick;
+
+        const updated = [];
+        let id = 0;
+        for (let count = this.readVarint(); count > 0; count--) {
+            id += this.readVarint();
+            const last = this.quantized.get(id) || [0, 0, 0];
+            const next = [last[0] + this.readZigzag(), last[1] + this.readZigzag(), last[2] + this.readZigzag()];
+            this.quantized.set(id, next);
+            this.positions.set(id, { lat: next[0] / 10000, lng: next[1] / 10000, height: next[2] / 100 });
+            updated.push(id);
+        }
+        const removed = [];
+        id = 0;
+        for (let count = this.readVarint(); count > 0; count--) {
+            id += this.readVarint();
+            this.quantized.delete(id);
+            this.positions.delete(id);
+            removed.push(id);
+        }
+        return { updated: updated, removed: removed };
+    }
+
+    readVarint() {
+        let value = 0;
+        let scale = 1;
+        while (true) {
+            const b = this.bytes[this.offset++];
+            value += (b & 0x7f) * scale;
+            if (b < 0x80) {
+                return value;
+            }
+            scale *= 128;
+        }
+    }
+
+    readZigzag() {
+        const value = this.readVarint();
+        return value % 2 === 0 ? value / 2 : -(value + 1) / 2;
+    }
+}